@@ -0,0 +1,134 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.mapsforge.map.reader.header.FileOpenResult;
+import org.mapsforge.map.reader.header.MapFileHeader;
+import org.mapsforge.map.reader.header.SubFileParameter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the lookup of index entries in the {@link IndexCache} class.
+ * <p>
+ * A cache without capacity reads the index block of every lookup from the map file, so that the hit and the miss path
+ * can be compared. The preloaded index and the memory-mapped index are measured as well.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 5)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5)
+public class IndexCacheBenchmark {
+	/**
+	 * The configuration of the index.
+	 */
+	public enum IndexMode {
+		/**
+		 * Index cache with the default capacity, every lookup after the first one is a hit.
+		 */
+		CACHE_HIT,
+
+		/**
+		 * Index cache without capacity, every lookup is a miss.
+		 */
+		CACHE_MISS,
+
+		/**
+		 * Memory-mapped map file.
+		 */
+		MAPPED,
+
+		/**
+		 * Preloaded index.
+		 */
+		PRELOADED
+	}
+
+	/**
+	 * The zoom level of the sub-file whose index is queried.
+	 */
+	private static final byte ZOOM_LEVEL = 14;
+
+	/**
+	 * The configuration of the index.
+	 */
+	@Param({ "CACHE_HIT", "CACHE_MISS", "MAPPED", "PRELOADED" })
+	public IndexMode indexMode;
+
+	/**
+	 * The map file which is queried, relative to the directory of this module.
+	 */
+	@Param("../mapsforge-map-reader/src/test/resources/with_data/with_data.map")
+	public String mapFile;
+
+	private long blockNumber;
+	private IndexCache indexCache;
+	private SharedMapDatabase sharedMapDatabase;
+	private SubFileParameter subFileParameter;
+
+	/**
+	 * Closes the map file.
+	 */
+	@TearDown
+	public void closeMapFile() {
+		this.sharedMapDatabase.closeFile();
+	}
+
+	/**
+	 * @return the index entry of the next block.
+	 */
+	@Benchmark
+	public long getIndexEntry() {
+		if (++this.blockNumber == this.subFileParameter.numberOfBlocks) {
+			this.blockNumber = 0;
+		}
+		return this.indexCache.getIndexEntry(this.subFileParameter, this.blockNumber);
+	}
+
+	/**
+	 * Opens the map file with the configured index.
+	 */
+	@Setup
+	public void openMapFile() {
+		this.sharedMapDatabase = new SharedMapDatabase();
+		this.sharedMapDatabase.setIndexCacheCapacity(this.indexMode == IndexMode.CACHE_MISS ? 0
+				: SharedMapDatabase.DEFAULT_INDEX_CACHE_CAPACITY);
+		this.sharedMapDatabase.setIndexPreloadEnabled(this.indexMode == IndexMode.PRELOADED);
+		this.sharedMapDatabase.setMemoryMapped(this.indexMode == IndexMode.MAPPED);
+		FileOpenResult fileOpenResult = this.sharedMapDatabase.openFile(new File(this.mapFile));
+		if (!fileOpenResult.isSuccess()) {
+			throw new IllegalStateException(fileOpenResult.getErrorMessage());
+		}
+
+		this.indexCache = this.sharedMapDatabase.getDatabaseIndexCache();
+		MapFileHeader mapFileHeader = this.sharedMapDatabase.getMapFileHeader();
+		this.subFileParameter = mapFileHeader.getSubFileParameter(mapFileHeader.getQueryZoomLevel(ZOOM_LEVEL));
+	}
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.mapsforge.core.MercatorProjection;
+import org.mapsforge.core.Tag;
+import org.mapsforge.core.Tile;
+import org.mapsforge.map.reader.header.FileOpenResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks tile queries of the {@link MapDatabase} class.
+ * <p>
+ * The default zoom levels cover the three cases of a query with the default map file: below the base zoom level of a
+ * sub-file (8), at the base zoom level (10) and above it, where the way tile bitmask is used (16).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 5)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5)
+public class MapDatabaseBenchmark {
+	/**
+	 * A sink which only counts the read elements without decoding their tags.
+	 */
+	private static final class CountingMapDataSink implements MapDataSink {
+		int numberOfElements;
+
+		CountingMapDataSink() {
+			// do nothing
+		}
+
+		@Override
+		public void onBlockAborted(int numberOfPois, int numberOfWays) {
+			this.numberOfElements -= numberOfPois + numberOfWays;
+		}
+
+		@Override
+		public void onPoi(PoiData poiData) {
+			++this.numberOfElements;
+		}
+
+		@Override
+		public void onQueryFinished(boolean isWater) {
+			// do nothing
+		}
+
+		@Override
+		public void onWay(WayData wayData) {
+			++this.numberOfElements;
+		}
+	}
+
+	/**
+	 * A sink which decodes the tags and the name of all read elements.
+	 */
+	private static final class TagMapDataSink implements MapDataSink {
+		int hashCode;
+
+		TagMapDataSink() {
+			// do nothing
+		}
+
+		@Override
+		public void onBlockAborted(int numberOfPois, int numberOfWays) {
+			// the benchmark map file does not contain corrupt blocks
+		}
+
+		@Override
+		public void onPoi(PoiData poiData) {
+			for (int i = 0; i < poiData.getNumberOfTags(); ++i) {
+				add(poiData.getTag(i));
+			}
+			add(poiData.getName());
+		}
+
+		@Override
+		public void onQueryFinished(boolean isWater) {
+			// do nothing
+		}
+
+		@Override
+		public void onWay(WayData wayData) {
+			for (int i = 0; i < wayData.getNumberOfTags(); ++i) {
+				add(wayData.getTag(i));
+			}
+			add(wayData.getName());
+		}
+
+		private void add(Object object) {
+			this.hashCode = 31 * this.hashCode + (object == null ? 0 : object.hashCode());
+		}
+	}
+
+	private static final double LATITUDE = 0.04;
+	private static final double LONGITUDE = 0.08;
+
+	/**
+	 * The map file which is queried, relative to the directory of this module.
+	 */
+	@Param("../mapsforge-map-reader/src/test/resources/with_data/with_data.map")
+	public String mapFile;
+
+	/**
+	 * True if the map file should be memory-mapped, false otherwise.
+	 */
+	@Param({ "false", "true" })
+	public boolean memoryMapped;
+
+	/**
+	 * The zoom level of the queried tile.
+	 */
+	@Param({ "8", "10", "16" })
+	public byte zoomLevel;
+
+	private MapDatabase mapDatabase;
+	private Tile tile;
+
+	/**
+	 * Closes the map file.
+	 */
+	@TearDown
+	public void closeMapFile() {
+		this.mapDatabase.closeFile();
+	}
+
+	/**
+	 * Opens the map file and selects the tile which contains the data of the default map file.
+	 */
+	@Setup
+	public void openMapFile() {
+		this.mapDatabase = new MapDatabase();
+		this.mapDatabase.setMemoryMapped(this.memoryMapped);
+		FileOpenResult fileOpenResult = this.mapDatabase.openFile(new File(this.mapFile));
+		if (!fileOpenResult.isSuccess()) {
+			throw new IllegalStateException(fileOpenResult.getErrorMessage());
+		}
+
+		long tileX = MercatorProjection.longitudeToTileX(LONGITUDE, this.zoomLevel);
+		long tileY = MercatorProjection.latitudeToTileY(LATITUDE, this.zoomLevel);
+		this.tile = new Tile(tileX, tileY, this.zoomLevel);
+	}
+
+	/**
+	 * @return the read map data.
+	 */
+	@Benchmark
+	public MapReadResult readMapData() {
+		return this.mapDatabase.readMapData(this.tile);
+	}
+
+	/**
+	 * Reads the map data without decoding any tags, the difference to {@link #readMapDataTags()} is the cost of tag
+	 * decoding.
+	 * 
+	 * @return the number of read elements.
+	 */
+	@Benchmark
+	public int readMapDataSink() {
+		CountingMapDataSink countingMapDataSink = new CountingMapDataSink();
+		this.mapDatabase.readMapData(this.tile, countingMapDataSink);
+		return countingMapDataSink.numberOfElements;
+	}
+
+	/**
+	 * Reads the map data and decodes the tags and names of all elements.
+	 * 
+	 * @return a hash code of all decoded tags.
+	 */
+	@Benchmark
+	public int readMapDataTags() {
+		TagMapDataSink tagMapDataSink = new TagMapDataSink();
+		this.mapDatabase.readMapData(this.tile, tagMapDataSink);
+		return tagMapDataSink.hashCode;
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the variable-byte decoding of the {@link ReadBuffer} class.
+ * <p>
+ * The buffer holds a mix of small values, as they occur for delta encoded coordinates, and a few larger values.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 5)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5)
+public class ReadBufferBenchmark {
+	private static final int NUMBER_OF_VALUES = 4096;
+
+	/**
+	 * Percentage of values which need more than one byte.
+	 */
+	private static final int PERCENTAGE_OF_LARGE_VALUES = 20;
+
+	private static final long SEED = 42;
+
+	private static void writeSignedInt(ByteArrayOutputStream byteArrayOutputStream, int value) {
+		int absoluteValue = Math.abs(value);
+		while (absoluteValue > 0x3f) {
+			byteArrayOutputStream.write((absoluteValue & 0x7f) | 0x80);
+			absoluteValue >>>= 7;
+		}
+		byteArrayOutputStream.write(value < 0 ? absoluteValue | 0x40 : absoluteValue);
+	}
+
+	private static void writeUnsignedInt(ByteArrayOutputStream byteArrayOutputStream, int value) {
+		int remainingValue = value;
+		while (remainingValue > 0x7f) {
+			byteArrayOutputStream.write((remainingValue & 0x7f) | 0x80);
+			remainingValue >>>= 7;
+		}
+		byteArrayOutputStream.write(remainingValue);
+	}
+
+	private ReadBuffer signedReadBuffer;
+	private ReadBuffer unsignedReadBuffer;
+	private int[] values;
+
+	/**
+	 * @return the sum of all decoded values.
+	 */
+	@Benchmark
+	public int readSignedInt() {
+		this.signedReadBuffer.setBufferPosition(0);
+		int sum = 0;
+		for (int i = 0; i < NUMBER_OF_VALUES; ++i) {
+			sum += this.signedReadBuffer.readSignedInt();
+		}
+		return sum;
+	}
+
+	/**
+	 * @return the decoded values.
+	 */
+	@Benchmark
+	public int[] readSignedInts() {
+		this.signedReadBuffer.setBufferPosition(0);
+		this.signedReadBuffer.readSignedInts(this.values, 0, NUMBER_OF_VALUES);
+		return this.values;
+	}
+
+	/**
+	 * @return the sum of all decoded values.
+	 */
+	@Benchmark
+	public int readUnsignedInt() {
+		this.unsignedReadBuffer.setBufferPosition(0);
+		int sum = 0;
+		for (int i = 0; i < NUMBER_OF_VALUES; ++i) {
+			sum += this.unsignedReadBuffer.readUnsignedInt();
+		}
+		return sum;
+	}
+
+	/**
+	 * Encodes the random values which are decoded by the benchmarks.
+	 */
+	@Setup
+	public void setUp() {
+		Random random = new Random(SEED);
+		ByteArrayOutputStream signedValues = new ByteArrayOutputStream();
+		ByteArrayOutputStream unsignedValues = new ByteArrayOutputStream();
+		for (int i = 0; i < NUMBER_OF_VALUES; ++i) {
+			boolean large = random.nextInt(100) < PERCENTAGE_OF_LARGE_VALUES;
+			int value = large ? random.nextInt(1 << 20) : random.nextInt(64);
+			writeSignedInt(signedValues, random.nextBoolean() ? value : -value);
+			writeUnsignedInt(unsignedValues, value);
+		}
+
+		this.signedReadBuffer = new ReadBuffer(signedValues.toByteArray());
+		this.unsignedReadBuffer = new ReadBuffer(unsignedValues.toByteArray());
+		this.values = new int[NUMBER_OF_VALUES];
+	}
+}
@@ -73,14 +73,29 @@ public class Tag implements Serializable {
 			return false;
 		} else if (this.key != null && !this.key.equals(other.key)) {
 			return false;
-		} else if (this.value == null && other.value != null) {
+		}
+
+		// the value field of a subclass may be null even if the tag has a value
+		String thisValue = getValue();
+		String otherValue = other.getValue();
+		if (thisValue == null && otherValue != null) {
 			return false;
-		} else if (this.value != null && !this.value.equals(other.value)) {
+		} else if (thisValue != null && !thisValue.equals(otherValue)) {
 			return false;
 		}
 		return true;
 	}
 
+	/**
+	 * Returns the value of this tag. Subclasses may decode the value only when it is requested for the first time and
+	 * leave the {@link #value} field null, so code which reads the text of a tag should use this method.
+	 * 
+	 * @return the value of this tag.
+	 */
+	public String getValue() {
+		return this.value;
+	}
+
 	@Override
 	public int hashCode() {
 		return this.hashCodeValue;
@@ -92,7 +107,7 @@ public class Tag implements Serializable {
 		stringBuilder.append("Tag [key=");
 		stringBuilder.append(this.key);
 		stringBuilder.append(", value=");
-		stringBuilder.append(this.value);
+		stringBuilder.append(getValue());
 		stringBuilder.append("]");
 		return stringBuilder.toString();
 	}
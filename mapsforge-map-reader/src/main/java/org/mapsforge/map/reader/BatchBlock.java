@@ -0,0 +1,81 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.mapsforge.map.reader.header.SubFileParameter;
+
+/**
+ * A block which is needed by at least one tile of a batch query. Blocks are ordered by their position in the file.
+ */
+class BatchBlock implements Comparable<BatchBlock> {
+	final List<BatchTile> batchTiles;
+	final BlockCacheKey blockCacheKey;
+	CachedBlock cachedBlock;
+	final long column;
+	final long position;
+	final long row;
+	final int size;
+	final SubFileParameter subFileParameter;
+
+	/**
+	 * @param subFileParameter
+	 *            the parameters of the sub-file which contains the block.
+	 * @param blockCacheKey
+	 *            the sub-file and number of the block.
+	 * @param row
+	 *            the row of the block in the sub-file.
+	 * @param column
+	 *            the column of the block in the sub-file.
+	 * @param position
+	 *            the absolute position of the block in the file.
+	 * @param size
+	 *            the size of the block in bytes.
+	 */
+	BatchBlock(SubFileParameter subFileParameter, BlockCacheKey blockCacheKey, long row, long column, long position,
+			int size) {
+		this.subFileParameter = subFileParameter;
+		this.blockCacheKey = blockCacheKey;
+		this.row = row;
+		this.column = column;
+		this.position = position;
+		this.size = size;
+		this.batchTiles = new ArrayList<BatchTile>(1);
+	}
+
+	@Override
+	public int compareTo(BatchBlock batchBlock) {
+		if (this.position < batchBlock.position) {
+			return -1;
+		} else if (this.position > batchBlock.position) {
+			return 1;
+		}
+		return 0;
+	}
+
+	/**
+	 * @return true if at least one tile of this block is above the base zoom level and uses the tile bitmask.
+	 */
+	boolean usesTileBitmask() {
+		for (int i = 0, n = this.batchTiles.size(); i < n; ++i) {
+			if (this.batchTiles.get(i).queryParameters.useTileBitmask) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
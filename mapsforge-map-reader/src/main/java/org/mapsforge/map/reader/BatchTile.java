@@ -0,0 +1,57 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import org.mapsforge.map.reader.header.SubFileParameter;
+
+/**
+ * The state of a single tile during a batch query.
+ */
+class BatchTile {
+	boolean failed;
+	final MapReadResultBuilder mapReadResultBuilder;
+	final QueryParameters queryParameters;
+	boolean queryIsWater;
+	boolean queryReadWaterInfo;
+	final SubFileParameter subFileParameter;
+
+	/**
+	 * @param queryParameters
+	 *            the parameters of the query for the tile.
+	 * @param subFileParameter
+	 *            the parameters of the sub-file which contains the tile.
+	 */
+	BatchTile(QueryParameters queryParameters, SubFileParameter subFileParameter) {
+		this.queryParameters = queryParameters;
+		this.subFileParameter = subFileParameter;
+		this.mapReadResultBuilder = new MapReadResultBuilder();
+		this.queryIsWater = true;
+	}
+
+	/**
+	 * @return the read map data for the tile or null if the query has failed.
+	 */
+	MapReadResult build() {
+		if (this.failed) {
+			return null;
+		}
+
+		// the query is finished, was the water flag set for all blocks?
+		if (this.queryIsWater && this.queryReadWaterInfo) {
+			this.mapReadResultBuilder.isWater = true;
+		}
+		return this.mapReadResultBuilder.build();
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.util.logging.Logger;
+
+import org.mapsforge.map.reader.header.SubFileParameter;
+
+/**
+ * A compact summary of the index of one sub-file, which stores two bits per block: whether the block contains any map
+ * data and whether it is flagged as water. The bitmap is immutable once it has been created.
+ */
+final class BlockBitmap {
+	private static final Logger LOGGER = Logger.getLogger(BlockBitmap.class.getName());
+
+	/**
+	 * Maximum number of blocks of a sub-file for which a bitmap is created (4 MB per bitmap).
+	 */
+	private static final long MAXIMUM_NUMBER_OF_BLOCKS = 1L << 24;
+
+	/**
+	 * Reads the complete index of the given sub-file and summarizes it in a new bitmap.
+	 * 
+	 * @param indexCache
+	 *            the index cache of the map file.
+	 * @param subFileParameter
+	 *            the parameters of the sub-file.
+	 * @return the new bitmap or null if the sub-file is too large or its index is invalid.
+	 */
+	static BlockBitmap create(IndexCache indexCache, SubFileParameter subFileParameter) {
+		long numberOfBlocks = subFileParameter.numberOfBlocks;
+		if (numberOfBlocks > MAXIMUM_NUMBER_OF_BLOCKS) {
+			return null;
+		}
+
+		BlockBitmap blockBitmap = new BlockBitmap((int) numberOfBlocks);
+		long currentIndexEntry = indexCache.getIndexEntry(subFileParameter, 0);
+		for (int blockNumber = 0; blockNumber < numberOfBlocks; ++blockNumber) {
+			if (currentIndexEntry < 0) {
+				LOGGER.warning("invalid index entry for block: " + blockNumber);
+				return null;
+			}
+
+			long nextIndexEntry;
+			long nextBlockPointer;
+			if (blockNumber + 1 == numberOfBlocks) {
+				nextIndexEntry = -1;
+				nextBlockPointer = subFileParameter.subFileSize;
+			} else {
+				nextIndexEntry = indexCache.getIndexEntry(subFileParameter, blockNumber + 1);
+				nextBlockPointer = nextIndexEntry & MapDatabase.BITMASK_INDEX_OFFSET;
+			}
+
+			if (nextBlockPointer != (currentIndexEntry & MapDatabase.BITMASK_INDEX_OFFSET)) {
+				blockBitmap.dataBits[blockNumber >>> 6] |= 1L << blockNumber;
+			}
+			if ((currentIndexEntry & MapDatabase.BITMASK_INDEX_WATER) != 0) {
+				blockBitmap.waterBits[blockNumber >>> 6] |= 1L << blockNumber;
+			}
+			currentIndexEntry = nextIndexEntry;
+		}
+		return blockBitmap;
+	}
+
+	private final long[] dataBits;
+	private final long[] waterBits;
+
+	private BlockBitmap(int numberOfBlocks) {
+		this.dataBits = new long[(numberOfBlocks + 63) >>> 6];
+		this.waterBits = new long[(numberOfBlocks + 63) >>> 6];
+	}
+
+	/**
+	 * @param blockNumber
+	 *            the number of the block in the sub-file.
+	 * @return true if the given block contains any map data, false otherwise.
+	 */
+	boolean hasData(long blockNumber) {
+		return (this.dataBits[(int) (blockNumber >>> 6)] & (1L << blockNumber)) != 0;
+	}
+
+	/**
+	 * @param blockNumber
+	 *            the number of the block in the sub-file.
+	 * @return true if the given block is flagged as water, false otherwise.
+	 */
+	boolean isWater(long blockNumber) {
+		return (this.waterBits[(int) (blockNumber >>> 6)] & (1L << blockNumber)) != 0;
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.util.Map;
+
+import org.mapsforge.core.LRUCache;
+
+/**
+ * A thread-safe cache for decoded blocks with a fixed size and LRU policy.
+ */
+class BlockCache {
+	private long hits;
+	private final Map<BlockCacheKey, CachedBlock> map;
+	private long misses;
+
+	/**
+	 * @param capacity
+	 *            the maximum number of blocks in the cache.
+	 * @throws IllegalArgumentException
+	 *             if the capacity is negative.
+	 */
+	BlockCache(int capacity) {
+		this.map = new LRUCache<BlockCacheKey, CachedBlock>(capacity);
+	}
+
+	/**
+	 * Destroy the cache at the end of its lifetime.
+	 */
+	synchronized void destroy() {
+		this.map.clear();
+	}
+
+	/**
+	 * @param blockCacheKey
+	 *            the key of the requested block.
+	 * @return the cached block or null if the block is not in the cache.
+	 */
+	synchronized CachedBlock get(BlockCacheKey blockCacheKey) {
+		CachedBlock cachedBlock = this.map.get(blockCacheKey);
+		if (cachedBlock == null) {
+			++this.misses;
+		} else {
+			++this.hits;
+		}
+		return cachedBlock;
+	}
+
+	/**
+	 * @return the number of cache hits since this cache was created.
+	 */
+	synchronized long getHits() {
+		return this.hits;
+	}
+
+	/**
+	 * @return the number of cache misses since this cache was created.
+	 */
+	synchronized long getMisses() {
+		return this.misses;
+	}
+
+	/**
+	 * @param blockCacheKey
+	 *            the key of the block.
+	 * @param cachedBlock
+	 *            the decoded block.
+	 */
+	synchronized void put(BlockCacheKey blockCacheKey, CachedBlock cachedBlock) {
+		this.map.put(blockCacheKey, cachedBlock);
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.mapsforge.map.reader.header.SubFileParameter;
+
+/**
+ * A block whose POIs and ways have been decoded for all zoom levels of its sub-file, together with the zoom table and
+ * the tile bitmask of each way. A cached block can answer queries for any zoom level and tile inside the block. The
+ * POIs and ways must be passed to the cached block in the order in which they are stored in the block.
+ */
+class CachedBlock implements MapDataSink {
+	private static final int INITIAL_WAY_CAPACITY = 16;
+
+	private final List<PointOfInterest> pois;
+	private int[] wayRecords;
+	private final List<Way> ways;
+	private int[] wayTileBitmasks;
+	private int[][] zoomTable;
+
+	CachedBlock() {
+		this.pois = new ArrayList<PointOfInterest>();
+		this.ways = new ArrayList<Way>();
+		this.wayRecords = new int[INITIAL_WAY_CAPACITY];
+		this.wayTileBitmasks = new int[INITIAL_WAY_CAPACITY];
+	}
+
+	@Override
+	public void onBlockAborted(int numberOfPois, int numberOfWays) {
+		// a corrupt block is never cached, so this block is discarded anyway
+	}
+
+	@Override
+	public void onPoi(PoiData poiData) {
+		this.pois.add(poiData.toPointOfInterest());
+	}
+
+	@Override
+	public void onQueryFinished(boolean isWater) {
+		// do nothing
+	}
+
+	@Override
+	public void onWay(WayData wayData) {
+		int index = this.ways.size();
+		if (index == this.wayRecords.length) {
+			this.wayRecords = Arrays.copyOf(this.wayRecords, index * 2);
+			this.wayTileBitmasks = Arrays.copyOf(this.wayTileBitmasks, index * 2);
+		}
+		this.ways.add(wayData.toWay());
+		this.wayRecords[index] = wayData.wayRecord;
+		this.wayTileBitmasks[index] = wayData.tileBitmask;
+	}
+
+	/**
+	 * Selects the POIs and ways which are needed for the given query. The ways are copied for each query because
+	 * callers are allowed to modify their way nodes.
+	 * 
+	 * @param queryParameters
+	 *            the parameters of the query.
+	 * @param subFileParameter
+	 *            the parameters of the sub-file which contains this block.
+	 * @return the POIs and ways for the given query.
+	 */
+	PoiWayBundle getPoiWayBundle(QueryParameters queryParameters, SubFileParameter subFileParameter) {
+		int zoomTableRow = queryParameters.queryZoomLevel - subFileParameter.zoomLevelMin;
+		int poisOnQueryZoomLevel = Math.min(this.zoomTable[zoomTableRow][0], this.pois.size());
+		int waysOnQueryZoomLevel = this.zoomTable[zoomTableRow][1];
+
+		List<PointOfInterest> queryPois = new ArrayList<PointOfInterest>(this.pois.subList(0, poisOnQueryZoomLevel));
+		List<Way> queryWays = new ArrayList<Way>();
+		for (int i = 0, n = this.ways.size(); i < n && this.wayRecords[i] < waysOnQueryZoomLevel; ++i) {
+			if (queryParameters.useTileBitmask && (queryParameters.queryTileBitmask & this.wayTileBitmasks[i]) == 0) {
+				continue;
+			}
+			queryWays.add(this.ways.get(i).copy());
+		}
+		return new PoiWayBundle(queryPois, queryWays);
+	}
+
+	/**
+	 * @param zoomTable
+	 *            the zoom table of the block.
+	 */
+	void setZoomTable(int[][] zoomTable) {
+		this.zoomTable = zoomTable;
+	}
+}
@@ -0,0 +1,441 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.util.Arrays;
+
+/**
+ * A reusable container for the data of a query which stores all POIs and ways in a few primitive arrays instead of
+ * one object per element, see {@link MapDatabase#readMapData(org.mapsforge.core.Tile, ColumnarMapReadResult)}.
+ * <p>
+ * The coordinates of all ways are stored in microdegrees in a single coordinate array, in the order
+ * longitude/latitude like in {@link WayData#getCoordinates()}. Each way consists of one or more segments, each
+ * segment is a range of this array. The ranges are described by offset tables with one more entry than elements:
+ * segment {@code s} covers the coordinates from {@code getSegmentOffsets()[s]} up to, but excluding,
+ * {@code getSegmentOffsets()[s + 1]}. The segments of a way and the tag IDs of a POI or way are described the same
+ * way. Tags are given as IDs into {@link org.mapsforge.map.reader.header.MapFileInfo#poiTags} and
+ * {@link org.mapsforge.map.reader.header.MapFileInfo#wayTags}.
+ * <p>
+ * All arrays grow as needed and are kept when the result is cleared, so that a single instance which is used for
+ * many queries does not allocate anything once it has reached its working size. Arrays which are returned by the
+ * getters are valid only until the next query.
+ */
+public class ColumnarMapReadResult implements MapDataSink {
+	private static final int INITIAL_COORDINATES_CAPACITY = 4096;
+	private static final int INITIAL_POIS_CAPACITY = 16;
+	private static final int INITIAL_SEGMENTS_CAPACITY = 128;
+	private static final int INITIAL_TAGS_CAPACITY = 128;
+	private static final int INITIAL_WAYS_CAPACITY = 128;
+
+	private int[] coordinates;
+	private boolean isWater;
+	private int numberOfPois;
+	private int numberOfSegments;
+	private int numberOfWays;
+	private int[] poiElevations;
+	private boolean[] poiHasElevation;
+	private String[] poiHouseNumbers;
+	private int[] poiLatitudes;
+	private byte[] poiLayers;
+	private int[] poiLongitudes;
+	private String[] poiNames;
+	private int[] poiTagIds;
+	private int[] poiTagOffsets;
+	private int[] segmentOffsets;
+	private boolean[] wayHasLabelPosition;
+	private String[] wayHouseNumbers;
+	private int[] wayLabelLatitudes;
+	private int[] wayLabelLongitudes;
+	private byte[] wayLayers;
+	private String[] wayNames;
+	private String[] wayRefs;
+	private int[] waySegmentOffsets;
+	private int[] wayTagIds;
+	private int[] wayTagOffsets;
+
+	/**
+	 * Creates an empty result.
+	 */
+	public ColumnarMapReadResult() {
+		this.coordinates = new int[INITIAL_COORDINATES_CAPACITY];
+		this.poiElevations = new int[INITIAL_POIS_CAPACITY];
+		this.poiHasElevation = new boolean[INITIAL_POIS_CAPACITY];
+		this.poiHouseNumbers = new String[INITIAL_POIS_CAPACITY];
+		this.poiLatitudes = new int[INITIAL_POIS_CAPACITY];
+		this.poiLayers = new byte[INITIAL_POIS_CAPACITY];
+		this.poiLongitudes = new int[INITIAL_POIS_CAPACITY];
+		this.poiNames = new String[INITIAL_POIS_CAPACITY];
+		this.poiTagIds = new int[INITIAL_TAGS_CAPACITY];
+		this.poiTagOffsets = new int[INITIAL_POIS_CAPACITY + 1];
+		this.segmentOffsets = new int[INITIAL_SEGMENTS_CAPACITY + 1];
+		this.wayHasLabelPosition = new boolean[INITIAL_WAYS_CAPACITY];
+		this.wayHouseNumbers = new String[INITIAL_WAYS_CAPACITY];
+		this.wayLabelLatitudes = new int[INITIAL_WAYS_CAPACITY];
+		this.wayLabelLongitudes = new int[INITIAL_WAYS_CAPACITY];
+		this.wayLayers = new byte[INITIAL_WAYS_CAPACITY];
+		this.wayNames = new String[INITIAL_WAYS_CAPACITY];
+		this.wayRefs = new String[INITIAL_WAYS_CAPACITY];
+		this.waySegmentOffsets = new int[INITIAL_WAYS_CAPACITY + 1];
+		this.wayTagIds = new int[INITIAL_TAGS_CAPACITY];
+		this.wayTagOffsets = new int[INITIAL_WAYS_CAPACITY + 1];
+	}
+
+	/**
+	 * Removes all POIs and ways from this result. The allocated arrays are kept for the next query.
+	 */
+	public void clear() {
+		// release the strings of the previous query
+		Arrays.fill(this.poiHouseNumbers, 0, this.numberOfPois, null);
+		Arrays.fill(this.poiNames, 0, this.numberOfPois, null);
+		Arrays.fill(this.wayHouseNumbers, 0, this.numberOfWays, null);
+		Arrays.fill(this.wayNames, 0, this.numberOfWays, null);
+		Arrays.fill(this.wayRefs, 0, this.numberOfWays, null);
+
+		this.isWater = false;
+		this.numberOfPois = 0;
+		this.numberOfSegments = 0;
+		this.numberOfWays = 0;
+	}
+
+	/**
+	 * Returns the coordinates of all ways. Only the first {@code getSegmentOffsets()[getNumberOfSegments()]} values
+	 * are valid.
+	 * 
+	 * @return the coordinate array.
+	 */
+	public int[] getCoordinates() {
+		return this.coordinates;
+	}
+
+	/**
+	 * @return the number of POIs in this result.
+	 */
+	public int getNumberOfPois() {
+		return this.numberOfPois;
+	}
+
+	/**
+	 * @return the number of segments of all ways in this result.
+	 */
+	public int getNumberOfSegments() {
+		return this.numberOfSegments;
+	}
+
+	/**
+	 * @return the number of ways in this result. A way which consists of several way data blocks is counted once for
+	 *         each block.
+	 */
+	public int getNumberOfWays() {
+		return this.numberOfWays;
+	}
+
+	/**
+	 * @param poi
+	 *            the index of the POI.
+	 * @return the elevation of the given POI, only valid if {@link #hasPoiElevation(int)} returns true.
+	 */
+	public int getPoiElevation(int poi) {
+		return this.poiElevations[poi];
+	}
+
+	/**
+	 * @param poi
+	 *            the index of the POI.
+	 * @return the house number of the given POI (may be null).
+	 */
+	public String getPoiHouseNumber(int poi) {
+		return this.poiHouseNumbers[poi];
+	}
+
+	/**
+	 * @param poi
+	 *            the index of the POI.
+	 * @return the latitude of the given POI in microdegrees.
+	 */
+	public int getPoiLatitude(int poi) {
+		return this.poiLatitudes[poi];
+	}
+
+	/**
+	 * @param poi
+	 *            the index of the POI.
+	 * @return the layer of the given POI + 5 (to avoid negative values).
+	 */
+	public byte getPoiLayer(int poi) {
+		return this.poiLayers[poi];
+	}
+
+	/**
+	 * @param poi
+	 *            the index of the POI.
+	 * @return the longitude of the given POI in microdegrees.
+	 */
+	public int getPoiLongitude(int poi) {
+		return this.poiLongitudes[poi];
+	}
+
+	/**
+	 * @param poi
+	 *            the index of the POI.
+	 * @return the name of the given POI (may be null).
+	 */
+	public String getPoiName(int poi) {
+		return this.poiNames[poi];
+	}
+
+	/**
+	 * @return the tag IDs of all POIs.
+	 */
+	public int[] getPoiTagIds() {
+		return this.poiTagIds;
+	}
+
+	/**
+	 * @return the offsets of the tag IDs of each POI in {@link #getPoiTagIds()}, with
+	 *         {@link #getNumberOfPois()} + 1 valid entries.
+	 */
+	public int[] getPoiTagOffsets() {
+		return this.poiTagOffsets;
+	}
+
+	/**
+	 * @return the offsets of each segment in {@link #getCoordinates()}, with {@link #getNumberOfSegments()} + 1 valid
+	 *         entries.
+	 */
+	public int[] getSegmentOffsets() {
+		return this.segmentOffsets;
+	}
+
+	/**
+	 * @param way
+	 *            the index of the way.
+	 * @return the house number of the given way (may be null).
+	 */
+	public String getWayHouseNumber(int way) {
+		return this.wayHouseNumbers[way];
+	}
+
+	/**
+	 * @param way
+	 *            the index of the way.
+	 * @return the latitude of the label position of the given way in microdegrees, only valid if
+	 *         {@link #hasWayLabelPosition(int)} returns true.
+	 */
+	public int getWayLabelLatitude(int way) {
+		return this.wayLabelLatitudes[way];
+	}
+
+	/**
+	 * @param way
+	 *            the index of the way.
+	 * @return the longitude of the label position of the given way in microdegrees, only valid if
+	 *         {@link #hasWayLabelPosition(int)} returns true.
+	 */
+	public int getWayLabelLongitude(int way) {
+		return this.wayLabelLongitudes[way];
+	}
+
+	/**
+	 * @param way
+	 *            the index of the way.
+	 * @return the layer of the given way + 5 (to avoid negative values).
+	 */
+	public byte getWayLayer(int way) {
+		return this.wayLayers[way];
+	}
+
+	/**
+	 * @param way
+	 *            the index of the way.
+	 * @return the name of the given way (may be null).
+	 */
+	public String getWayName(int way) {
+		return this.wayNames[way];
+	}
+
+	/**
+	 * @param way
+	 *            the index of the way.
+	 * @return the reference of the given way (may be null).
+	 */
+	public String getWayRef(int way) {
+		return this.wayRefs[way];
+	}
+
+	/**
+	 * @return the offsets of the first segment of each way in {@link #getSegmentOffsets()}, with
+	 *         {@link #getNumberOfWays()} + 1 valid entries.
+	 */
+	public int[] getWaySegmentOffsets() {
+		return this.waySegmentOffsets;
+	}
+
+	/**
+	 * @return the tag IDs of all ways.
+	 */
+	public int[] getWayTagIds() {
+		return this.wayTagIds;
+	}
+
+	/**
+	 * @return the offsets of the tag IDs of each way in {@link #getWayTagIds()}, with {@link #getNumberOfWays()} + 1
+	 *         valid entries.
+	 */
+	public int[] getWayTagOffsets() {
+		return this.wayTagOffsets;
+	}
+
+	/**
+	 * @param poi
+	 *            the index of the POI.
+	 * @return true if the given POI has an elevation, false otherwise.
+	 */
+	public boolean hasPoiElevation(int poi) {
+		return this.poiHasElevation[poi];
+	}
+
+	/**
+	 * @param way
+	 *            the index of the way.
+	 * @return true if the given way has a label position, false otherwise.
+	 */
+	public boolean hasWayLabelPosition(int way) {
+		return this.wayHasLabelPosition[way];
+	}
+
+	/**
+	 * @return true if the read area is completely covered by water, false otherwise.
+	 */
+	public boolean isWater() {
+		return this.isWater;
+	}
+
+	@Override
+	public void onBlockAborted(int numberOfPois, int numberOfWays) {
+		int poiEnd = this.numberOfPois;
+		this.numberOfPois -= numberOfPois;
+		Arrays.fill(this.poiHouseNumbers, this.numberOfPois, poiEnd, null);
+		Arrays.fill(this.poiNames, this.numberOfPois, poiEnd, null);
+
+		int wayEnd = this.numberOfWays;
+		this.numberOfWays -= numberOfWays;
+		Arrays.fill(this.wayHouseNumbers, this.numberOfWays, wayEnd, null);
+		Arrays.fill(this.wayNames, this.numberOfWays, wayEnd, null);
+		Arrays.fill(this.wayRefs, this.numberOfWays, wayEnd, null);
+		this.numberOfSegments = this.waySegmentOffsets[this.numberOfWays];
+	}
+
+	@Override
+	public void onPoi(PoiData poiData) {
+		int poi = this.numberOfPois;
+		if (poi == this.poiLatitudes.length) {
+			growPois();
+		}
+
+		int tagOffset = this.poiTagOffsets[poi];
+		int tagEnd = tagOffset + poiData.numberOfTags;
+		if (tagEnd > this.poiTagIds.length) {
+			this.poiTagIds = Arrays.copyOf(this.poiTagIds, Math.max(tagEnd, this.poiTagIds.length * 2));
+		}
+		System.arraycopy(poiData.tagIds, 0, this.poiTagIds, tagOffset, poiData.numberOfTags);
+		this.poiTagOffsets[poi + 1] = tagEnd;
+
+		this.poiElevations[poi] = poiData.elevation;
+		this.poiHasElevation[poi] = poiData.hasElevation;
+		this.poiHouseNumbers[poi] = poiData.getHouseNumber();
+		this.poiLatitudes[poi] = poiData.latitude;
+		this.poiLayers[poi] = poiData.layer;
+		this.poiLongitudes[poi] = poiData.longitude;
+		this.poiNames[poi] = poiData.getName();
+		++this.numberOfPois;
+	}
+
+	@Override
+	public void onQueryFinished(boolean isWater) {
+		this.isWater = isWater;
+	}
+
+	@Override
+	public void onWay(WayData wayData) {
+		int way = this.numberOfWays;
+		if (way == this.wayLayers.length) {
+			growWays();
+		}
+
+		int tagOffset = this.wayTagOffsets[way];
+		int tagEnd = tagOffset + wayData.numberOfTags;
+		if (tagEnd > this.wayTagIds.length) {
+			this.wayTagIds = Arrays.copyOf(this.wayTagIds, Math.max(tagEnd, this.wayTagIds.length * 2));
+		}
+		System.arraycopy(wayData.tagIds, 0, this.wayTagIds, tagOffset, wayData.numberOfTags);
+		this.wayTagOffsets[way + 1] = tagEnd;
+
+		// append all segments of the way to the coordinate array
+		int[] wayCoordinates = wayData.getCoordinates();
+		int wayNumberOfSegments = wayData.getNumberOfSegments();
+		int segmentEnd = this.numberOfSegments + wayNumberOfSegments;
+		if (segmentEnd >= this.segmentOffsets.length) {
+			this.segmentOffsets = Arrays.copyOf(this.segmentOffsets,
+					Math.max(segmentEnd + 1, this.segmentOffsets.length * 2));
+		}
+		for (int segment = 0; segment < wayNumberOfSegments; ++segment) {
+			int segmentLength = wayData.getSegmentLength(segment);
+			int coordinatesOffset = this.segmentOffsets[this.numberOfSegments];
+			int coordinatesEnd = coordinatesOffset + segmentLength;
+			if (coordinatesEnd > this.coordinates.length) {
+				this.coordinates = Arrays.copyOf(this.coordinates,
+						Math.max(coordinatesEnd, this.coordinates.length * 2));
+			}
+			System.arraycopy(wayCoordinates, wayData.getSegmentOffset(segment), this.coordinates, coordinatesOffset,
+					segmentLength);
+			this.segmentOffsets[++this.numberOfSegments] = coordinatesEnd;
+		}
+		this.waySegmentOffsets[way + 1] = this.numberOfSegments;
+
+		this.wayHasLabelPosition[way] = wayData.hasLabelPosition;
+		this.wayHouseNumbers[way] = wayData.getHouseNumber();
+		this.wayLabelLatitudes[way] = wayData.labelLatitude;
+		this.wayLabelLongitudes[way] = wayData.labelLongitude;
+		this.wayLayers[way] = wayData.layer;
+		this.wayNames[way] = wayData.getName();
+		this.wayRefs[way] = wayData.getRef();
+		++this.numberOfWays;
+	}
+
+	private void growPois() {
+		int capacity = this.poiLatitudes.length * 2;
+		this.poiElevations = Arrays.copyOf(this.poiElevations, capacity);
+		this.poiHasElevation = Arrays.copyOf(this.poiHasElevation, capacity);
+		this.poiHouseNumbers = Arrays.copyOf(this.poiHouseNumbers, capacity);
+		this.poiLatitudes = Arrays.copyOf(this.poiLatitudes, capacity);
+		this.poiLayers = Arrays.copyOf(this.poiLayers, capacity);
+		this.poiLongitudes = Arrays.copyOf(this.poiLongitudes, capacity);
+		this.poiNames = Arrays.copyOf(this.poiNames, capacity);
+		this.poiTagOffsets = Arrays.copyOf(this.poiTagOffsets, capacity + 1);
+	}
+
+	private void growWays() {
+		int capacity = this.wayLayers.length * 2;
+		this.wayHasLabelPosition = Arrays.copyOf(this.wayHasLabelPosition, capacity);
+		this.wayHouseNumbers = Arrays.copyOf(this.wayHouseNumbers, capacity);
+		this.wayLabelLatitudes = Arrays.copyOf(this.wayLabelLatitudes, capacity);
+		this.wayLabelLongitudes = Arrays.copyOf(this.wayLabelLongitudes, capacity);
+		this.wayLayers = Arrays.copyOf(this.wayLayers, capacity);
+		this.wayNames = Arrays.copyOf(this.wayNames, capacity);
+		this.wayRefs = Arrays.copyOf(this.wayRefs, capacity);
+		this.waySegmentOffsets = Arrays.copyOf(this.waySegmentOffsets, capacity + 1);
+		this.wayTagOffsets = Arrays.copyOf(this.wayTagOffsets, capacity + 1);
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Builds the result of an area query, which may read several blocks containing copies of the same way.
+ * <p>
+ * The map writer stores a way in every block whose tile it touches. A way which lies strictly inside the tile of the
+ * current block therefore cannot have copies in other blocks and is added directly. All other ways are identified by
+ * their content and added only once. The map format has no way IDs, so pieces of a way which have been clipped to
+ * different tiles cannot be recognized as parts of the same way.
+ */
+class DeduplicatingMapReadResultBuilder extends MapReadResultBuilder {
+	private final List<WayKey> blockBorderWays;
+	private int blockDuplicateWays;
+	private final Set<WayKey> borderWays;
+	private int maxLatitude;
+	private int maxLongitude;
+	private int minLatitude;
+	private int minLongitude;
+
+	DeduplicatingMapReadResultBuilder() {
+		super();
+		this.blockBorderWays = new ArrayList<WayKey>();
+		this.borderWays = new HashSet<WayKey>();
+	}
+
+	@Override
+	public void onBlockAborted(int numberOfPois, int numberOfWays) {
+		int addedWays = numberOfWays;
+		if (numberOfWays > 0) {
+			// the border ways of the corrupt block may still be read from other blocks
+			this.borderWays.removeAll(this.blockBorderWays);
+			this.blockBorderWays.clear();
+			addedWays -= this.blockDuplicateWays;
+		}
+		super.onBlockAborted(numberOfPois, addedWays);
+	}
+
+	@Override
+	public void onWay(WayData wayData) {
+		if (!isInsideBlock(wayData)) {
+			WayKey wayKey = new WayKey(wayData);
+			if (!this.borderWays.add(wayKey)) {
+				// the way has already been read from another block
+				++this.blockDuplicateWays;
+				return;
+			}
+			this.blockBorderWays.add(wayKey);
+		}
+		super.onWay(wayData);
+	}
+
+	/**
+	 * Sets the boundaries of the tile of the block which is decoded next.
+	 * 
+	 * @param minLatitudeE6
+	 *            the minimum latitude of the tile in microdegrees.
+	 * @param minLongitudeE6
+	 *            the minimum longitude of the tile in microdegrees.
+	 * @param maxLatitudeE6
+	 *            the maximum latitude of the tile in microdegrees.
+	 * @param maxLongitudeE6
+	 *            the maximum longitude of the tile in microdegrees.
+	 */
+	void setBlockBoundaries(int minLatitudeE6, int minLongitudeE6, int maxLatitudeE6, int maxLongitudeE6) {
+		this.minLatitude = minLatitudeE6;
+		this.minLongitude = minLongitudeE6;
+		this.maxLatitude = maxLatitudeE6;
+		this.maxLongitude = maxLongitudeE6;
+		this.blockBorderWays.clear();
+		this.blockDuplicateWays = 0;
+	}
+
+	/**
+	 * @param wayData
+	 *            the way which should be checked.
+	 * @return true if all way nodes lie strictly inside the tile of the current block, false otherwise.
+	 */
+	private boolean isInsideBlock(WayData wayData) {
+		int[] coordinates = wayData.getCoordinates();
+		for (int segment = 0, n = wayData.getNumberOfSegments(); segment < n; ++segment) {
+			int offset = wayData.getSegmentOffset(segment);
+			for (int i = offset, end = offset + wayData.getSegmentLength(segment); i < end; i += 2) {
+				int longitude = coordinates[i];
+				int latitude = coordinates[i + 1];
+				if (longitude <= this.minLongitude || longitude >= this.maxLongitude || latitude <= this.minLatitude
+						|| latitude >= this.maxLatitude) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+/**
+ * Defines how a {@link MultiMapDatabase} merges the results of map files which overlap at their borders.
+ */
+public enum DuplicatePolicy {
+	/**
+	 * Only the data of the first map file which returns any POIs or ways for a tile is used. Map files are ordered as
+	 * they have been added.
+	 */
+	FIRST_MAP_FILE,
+
+	/**
+	 * The results of all map files are concatenated.
+	 */
+	KEEP_ALL,
+
+	/**
+	 * The results of all map files are concatenated, POIs and ways with identical content are returned only once.
+	 */
+	REMOVE_DUPLICATES
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.util.Map;
+
+import org.mapsforge.core.LRUCache;
+import org.mapsforge.map.reader.header.MapFileHeader;
+import org.mapsforge.map.reader.header.SubFileParameter;
+
+/**
+ * A process-wide cache for the parsed headers of map files, so that reopening a map file which has been opened before
+ * does not need to read and validate its header again. The entries are keyed by the canonical path, the size and the
+ * modification time of the file, a changed file therefore gets a new entry.
+ * <p>
+ * Each entry also keeps the most recent index cache and block bitmaps of its map file, which continue to be used when
+ * the file is reopened. All methods are thread-safe.
+ */
+final class HeaderCache {
+	/**
+	 * The cached data of one map file.
+	 */
+	static final class Entry {
+		volatile Map<SubFileParameter, BlockBitmap> blockBitmaps;
+		volatile IndexCache indexCache;
+		final MapFileHeader mapFileHeader;
+
+		Entry(MapFileHeader mapFileHeader) {
+			this.mapFileHeader = mapFileHeader;
+		}
+	}
+
+	private static final class Key {
+		private final String canonicalPath;
+		private final long fileSize;
+		private final int hashCodeValue;
+		private final long lastModified;
+
+		Key(String canonicalPath, long fileSize, long lastModified) {
+			this.canonicalPath = canonicalPath;
+			this.fileSize = fileSize;
+			this.lastModified = lastModified;
+			this.hashCodeValue = calculateHashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			} else if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return this.fileSize == other.fileSize && this.lastModified == other.lastModified
+					&& this.canonicalPath.equals(other.canonicalPath);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hashCodeValue;
+		}
+
+		private int calculateHashCode() {
+			int result = 7;
+			result = 31 * result + this.canonicalPath.hashCode();
+			result = 31 * result + (int) (this.fileSize ^ (this.fileSize >>> 32));
+			result = 31 * result + (int) (this.lastModified ^ (this.lastModified >>> 32));
+			return result;
+		}
+	}
+
+	/**
+	 * Maximum number of map files in the cache.
+	 */
+	private static final int CAPACITY = 32;
+
+	private static final Map<Key, Entry> ENTRIES = new LRUCache<Key, Entry>(CAPACITY);
+
+	/**
+	 * Removes all entries from the cache.
+	 */
+	static void clear() {
+		synchronized (ENTRIES) {
+			ENTRIES.clear();
+		}
+	}
+
+	/**
+	 * @param canonicalPath
+	 *            the canonical path of the map file.
+	 * @param fileSize
+	 *            the size of the map file in bytes.
+	 * @param lastModified
+	 *            the modification time of the map file.
+	 * @return the cached entry or null if the map file is not in the cache.
+	 */
+	static Entry get(String canonicalPath, long fileSize, long lastModified) {
+		synchronized (ENTRIES) {
+			return ENTRIES.get(new Key(canonicalPath, fileSize, lastModified));
+		}
+	}
+
+	/**
+	 * Adds a new entry for the given map file. An existing entry for the same file is replaced.
+	 * 
+	 * @param canonicalPath
+	 *            the canonical path of the map file.
+	 * @param fileSize
+	 *            the size of the map file in bytes.
+	 * @param lastModified
+	 *            the modification time of the map file.
+	 * @param mapFileHeader
+	 *            the valid header of the map file.
+	 * @return the new entry.
+	 */
+	static Entry put(String canonicalPath, long fileSize, long lastModified, MapFileHeader mapFileHeader) {
+		Entry entry = new Entry(mapFileHeader);
+		synchronized (ENTRIES) {
+			ENTRIES.put(new Key(canonicalPath, fileSize, lastModified), entry);
+		}
+		return entry;
+	}
+
+	/**
+	 * @return the number of map files in the cache.
+	 */
+	static int size() {
+		synchronized (ENTRIES) {
+			return ENTRIES.size();
+		}
+	}
+
+	private HeaderCache() {
+		throw new IllegalStateException();
+	}
+}
@@ -16,6 +16,8 @@ package org.mapsforge.map.reader;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -24,9 +26,30 @@ import org.mapsforge.core.LRUCache;
 import org.mapsforge.map.reader.header.SubFileParameter;
 
 /**
- * A cache for database index blocks with a fixed size and LRU policy.
+ * A thread-safe cache for database index blocks with a fixed size and LRU policy. If the map file is memory-mapped, the
+ * index entries are read directly from the mapped memory and no index blocks are cached.
+ * <p>
+ * The cache is split into independently locked segments, so that concurrent queries rarely wait for each other. The
+ * complete index of a sub-file can also be preloaded into an array, see {@link #preload(SubFileParameter)}.
  */
 class IndexCache {
+	/**
+	 * One independently locked part of the cache.
+	 */
+	private static final class Segment {
+		final Map<IndexCacheEntryKey, byte[]> map;
+
+		/**
+		 * Key which is reused for all lookups in this segment, guarded by the map.
+		 */
+		final IndexCacheEntryKey probeKey;
+
+		Segment(int capacity) {
+			this.map = new LRUCache<IndexCacheEntryKey, byte[]>(capacity);
+			this.probeKey = new IndexCacheEntryKey(null, 0);
+		}
+	}
+
 	/**
 	 * Number of index entries that one index block consists of.
 	 */
@@ -34,32 +57,100 @@ class IndexCache {
 
 	private static final Logger LOGGER = Logger.getLogger(IndexCache.class.getName());
 
+	/**
+	 * Maximum number of index entries of a sub-file which can be preloaded (1 GB).
+	 */
+	private static final long MAXIMUM_PRELOAD_ENTRIES = 1L << 27;
+
+	/**
+	 * Maximum number of segments of the cache.
+	 */
+	private static final int MAXIMUM_SEGMENTS = 16;
+
+	/**
+	 * Number of index blocks which are read at once while preloading the index of a sub-file.
+	 */
+	private static final int PRELOAD_BLOCKS_PER_READ = 64;
+
 	/**
 	 * Maximum size in bytes of one index block.
 	 */
 	private static final int SIZE_OF_INDEX_BLOCK = INDEX_ENTRIES_PER_BLOCK * SubFileParameter.BYTES_PER_INDEX_ENTRY;
 
-	private final Map<IndexCacheEntryKey, byte[]> map;
+	private static Segment[] createSegments(int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+		}
+		int numberOfSegments = Math.max(Math.min(capacity, MAXIMUM_SEGMENTS), 1);
+		int segmentCapacity = (capacity + numberOfSegments - 1) / numberOfSegments;
+		Segment[] segments = new Segment[numberOfSegments];
+		for (int i = 0; i < numberOfSegments; ++i) {
+			segments[i] = new Segment(segmentCapacity);
+		}
+		return segments;
+	}
+
+	private final int capacity;
+	private final MappedFile mappedFile;
+	private final Map<SubFileParameter, long[]> preloadedIndexes;
 	private final RandomAccessFile randomAccessFile;
+	private final Segment[] segments;
 
 	/**
 	 * @param randomAccessFile
 	 *            the map file from which the index should be read and cached.
+	 * @param mappedFile
+	 *            the memory mapping of the map file (may be null).
 	 * @param capacity
-	 *            the maximum number of entries in the cache.
+	 *            the maximum number of index blocks in the cache.
 	 * @throws IllegalArgumentException
 	 *             if the capacity is negative.
 	 */
-	IndexCache(RandomAccessFile randomAccessFile, int capacity) {
+	IndexCache(RandomAccessFile randomAccessFile, MappedFile mappedFile, int capacity) {
+		this(randomAccessFile, mappedFile, capacity, createSegments(capacity),
+				new HashMap<SubFileParameter, long[]>());
+	}
+
+	/**
+	 * Creates a cache for a reopened map file which starts with the content of the cache of a previous instance of
+	 * the same file. The cached index blocks are shared with the previous cache if both have the same capacity, the
+	 * preloaded indexes are always shared. The previous cache must not be destroyed afterwards.
+	 * 
+	 * @param randomAccessFile
+	 *            the map file from which the index should be read and cached.
+	 * @param mappedFile
+	 *            the memory mapping of the map file (may be null).
+	 * @param capacity
+	 *            the maximum number of index blocks in the cache.
+	 * @param warmIndexCache
+	 *            the cache of a previous instance of the same map file.
+	 * @throws IllegalArgumentException
+	 *             if the capacity is negative.
+	 */
+	IndexCache(RandomAccessFile randomAccessFile, MappedFile mappedFile, int capacity, IndexCache warmIndexCache) {
+		this(randomAccessFile, mappedFile, capacity, warmIndexCache.capacity == capacity ? warmIndexCache.segments
+				: createSegments(capacity), new HashMap<SubFileParameter, long[]>(warmIndexCache.preloadedIndexes));
+	}
+
+	private IndexCache(RandomAccessFile randomAccessFile, MappedFile mappedFile, int capacity, Segment[] segments,
+			Map<SubFileParameter, long[]> preloadedIndexes) {
 		this.randomAccessFile = randomAccessFile;
-		this.map = new LRUCache<IndexCacheEntryKey, byte[]>(capacity);
+		this.mappedFile = mappedFile;
+		this.capacity = capacity;
+		this.segments = segments;
+		this.preloadedIndexes = preloadedIndexes;
 	}
 
 	/**
 	 * Destroy the cache at the end of its lifetime.
 	 */
 	void destroy() {
-		this.map.clear();
+		for (Segment segment : this.segments) {
+			synchronized (segment.map) {
+				segment.map.clear();
+			}
+		}
+		this.preloadedIndexes.clear();
 	}
 
 	/**
@@ -73,36 +164,81 @@ class IndexCache {
 	 * @return the index entry or -1 if the block number is invalid.
 	 */
 	long getIndexEntry(SubFileParameter subFileParameter, long blockNumber) {
+		return getIndexEntry(subFileParameter, blockNumber, null);
+	}
+
+	/**
+	 * Returns the index entry of a block in the given map file, see {@link #getIndexEntry(SubFileParameter, long)}.
+	 * 
+	 * @param subFileParameter
+	 *            the parameters of the map file for which the index entry is needed.
+	 * @param blockNumber
+	 *            the number of the block in the map file.
+	 * @param queryStatistics
+	 *            the statistics of the current query which are updated by this lookup (may be null).
+	 * @return the index entry or -1 if the block number is invalid.
+	 */
+	long getIndexEntry(SubFileParameter subFileParameter, long blockNumber, QueryStatistics queryStatistics) {
 		try {
 			// check if the block number is out of bounds
 			if (blockNumber >= subFileParameter.numberOfBlocks) {
 				return -1;
 			}
 
+			long[] preloadedIndex = this.preloadedIndexes.get(subFileParameter);
+			if (preloadedIndex != null) {
+				if (queryStatistics != null) {
+					++queryStatistics.indexCacheHits;
+				}
+				return preloadedIndex[(int) blockNumber];
+			}
+
+			if (this.mappedFile != null) {
+				if (queryStatistics != null) {
+					++queryStatistics.indexCacheHits;
+				}
+				// read the index entry directly from the mapped index
+				return this.mappedFile.getFiveBytesLong(subFileParameter.indexStartAddress + blockNumber
+						* SubFileParameter.BYTES_PER_INDEX_ENTRY);
+			}
+
 			// calculate the index block number
 			long indexBlockNumber = blockNumber / INDEX_ENTRIES_PER_BLOCK;
 
-			// create the cache entry key for this request
-			IndexCacheEntryKey indexCacheEntryKey = new IndexCacheEntryKey(subFileParameter, indexBlockNumber);
-
-			// check for cached index block
-			byte[] indexBlock = this.map.get(indexCacheEntryKey);
+			// check for cached index block, the probe key avoids an allocation on cache hits
+			Segment segment = getSegment(subFileParameter, indexBlockNumber);
+			byte[] indexBlock;
+			synchronized (segment.map) {
+				segment.probeKey.set(subFileParameter, indexBlockNumber);
+				indexBlock = segment.map.get(segment.probeKey);
+			}
 			if (indexBlock == null) {
-				// cache miss, seek to the correct index block in the file and read it
+				// cache miss, read the correct index block from the file
 				long indexBlockPosition = subFileParameter.indexStartAddress + indexBlockNumber * SIZE_OF_INDEX_BLOCK;
 
 				int remainingIndexSize = (int) (subFileParameter.indexEndAddress - indexBlockPosition);
 				int indexBlockSize = Math.min(SIZE_OF_INDEX_BLOCK, remainingIndexSize);
 				indexBlock = new byte[indexBlockSize];
 
-				this.randomAccessFile.seek(indexBlockPosition);
-				if (this.randomAccessFile.read(indexBlock, 0, indexBlockSize) != indexBlockSize) {
+				long startTime = queryStatistics == null ? 0 : System.nanoTime();
+				// use a positional read so that concurrent cache misses do not interfere with each other
+				if (!ReadBuffer.readFully(this.randomAccessFile.getChannel(), ByteBuffer.wrap(indexBlock),
+						indexBlockPosition)) {
 					LOGGER.warning("reading the current index block has failed");
 					return -1;
 				}
+				if (queryStatistics != null) {
+					++queryStatistics.indexCacheMisses;
+					queryStatistics.bytesRead += indexBlockSize;
+					queryStatistics.readTime += System.nanoTime() - startTime;
+				}
 
 				// put the index block in the map
-				this.map.put(indexCacheEntryKey, indexBlock);
+				synchronized (segment.map) {
+					segment.map.put(new IndexCacheEntryKey(subFileParameter, indexBlockNumber), indexBlock);
+				}
+			} else if (queryStatistics != null) {
+				++queryStatistics.indexCacheHits;
 			}
 
 			// calculate the address of the index entry inside the index block
@@ -116,4 +252,68 @@ class IndexCache {
 			return -1;
 		}
 	}
+
+	/**
+	 * @param subFileParameter
+	 *            the parameters of the sub-file.
+	 * @return true if the index of the given sub-file has been preloaded, false otherwise.
+	 */
+	boolean isPreloaded(SubFileParameter subFileParameter) {
+		return this.preloadedIndexes.containsKey(subFileParameter);
+	}
+
+	/**
+	 * Reads the complete index of the given sub-file into an array, so that all following lookups for this sub-file
+	 * are plain array accesses. This method is not thread-safe and must be called before the cache is used by more
+	 * than one thread.
+	 * 
+	 * @param subFileParameter
+	 *            the parameters of the sub-file whose index should be preloaded.
+	 * @return true if the index has been preloaded, false if it is too large or could not be read.
+	 */
+	boolean preload(SubFileParameter subFileParameter) {
+		try {
+			if (subFileParameter.numberOfBlocks > MAXIMUM_PRELOAD_ENTRIES) {
+				return false;
+			}
+
+			int numberOfBlocks = (int) subFileParameter.numberOfBlocks;
+			long[] index = new long[numberOfBlocks];
+			if (this.mappedFile != null) {
+				for (int blockNumber = 0; blockNumber < numberOfBlocks; ++blockNumber) {
+					index[blockNumber] = this.mappedFile.getFiveBytesLong(subFileParameter.indexStartAddress
+							+ (long) blockNumber * SubFileParameter.BYTES_PER_INDEX_ENTRY);
+				}
+			} else {
+				byte[] buffer = new byte[PRELOAD_BLOCKS_PER_READ * SIZE_OF_INDEX_BLOCK];
+				int entriesPerRead = PRELOAD_BLOCKS_PER_READ * INDEX_ENTRIES_PER_BLOCK;
+				for (int firstBlock = 0; firstBlock < numberOfBlocks; firstBlock += entriesPerRead) {
+					int entries = Math.min(entriesPerRead, numberOfBlocks - firstBlock);
+					int length = entries * SubFileParameter.BYTES_PER_INDEX_ENTRY;
+					ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, length);
+					long position = subFileParameter.indexStartAddress + (long) firstBlock
+							* SubFileParameter.BYTES_PER_INDEX_ENTRY;
+					if (!ReadBuffer.readFully(this.randomAccessFile.getChannel(), byteBuffer, position)) {
+						LOGGER.warning("reading the index has failed: " + subFileParameter);
+						return false;
+					}
+					for (int i = 0; i < entries; ++i) {
+						index[firstBlock + i] = Deserializer.getFiveBytesLong(buffer, i
+								* SubFileParameter.BYTES_PER_INDEX_ENTRY);
+					}
+				}
+			}
+
+			this.preloadedIndexes.put(subFileParameter, index);
+			return true;
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, null, e);
+			return false;
+		}
+	}
+
+	private Segment getSegment(SubFileParameter subFileParameter, long indexBlockNumber) {
+		int hashCode = 31 * subFileParameter.hashCode() + (int) (indexBlockNumber ^ (indexBlockNumber >>> 32));
+		return this.segments[(hashCode & Integer.MAX_VALUE) % this.segments.length];
+	}
 }
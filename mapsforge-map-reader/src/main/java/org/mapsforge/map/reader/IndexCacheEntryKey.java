@@ -17,15 +17,16 @@ package org.mapsforge.map.reader;
 import org.mapsforge.map.reader.header.SubFileParameter;
 
 /**
- * An immutable container class which is the key for the index cache.
+ * A container class which is the key for the index cache. A key must not be modified after it has been stored in a
+ * map, only keys which are used for lookups may be reused via {@link #set(SubFileParameter, long)}.
  */
 class IndexCacheEntryKey {
-	private final int hashCodeValue;
-	private final long indexBlockNumber;
-	private final SubFileParameter subFileParameter;
+	private int hashCodeValue;
+	private long indexBlockNumber;
+	private SubFileParameter subFileParameter;
 
 	/**
-	 * Creates an immutable key to be stored in a map.
+	 * Creates a key to be stored in a map.
 	 * 
 	 * @param subFileParameter
 	 *            the parameters of the map file.
@@ -33,9 +34,7 @@ class IndexCacheEntryKey {
 	 *            the number of the index block.
 	 */
 	IndexCacheEntryKey(SubFileParameter subFileParameter, long indexBlockNumber) {
-		this.subFileParameter = subFileParameter;
-		this.indexBlockNumber = indexBlockNumber;
-		this.hashCodeValue = calculateHashCode();
+		set(subFileParameter, indexBlockNumber);
 	}
 
 	@Override
@@ -61,6 +60,20 @@ class IndexCacheEntryKey {
 		return this.hashCodeValue;
 	}
 
+	/**
+	 * Changes the content of this key.
+	 * 
+	 * @param newSubFileParameter
+	 *            the parameters of the map file.
+	 * @param newIndexBlockNumber
+	 *            the number of the index block.
+	 */
+	void set(SubFileParameter newSubFileParameter, long newIndexBlockNumber) {
+		this.subFileParameter = newSubFileParameter;
+		this.indexBlockNumber = newIndexBlockNumber;
+		this.hashCodeValue = calculateHashCode();
+	}
+
 	/**
 	 * @return the hash code of this object.
 	 */
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.mapsforge.core.Tag;
+
+/**
+ * A label tag (name, house number or ref) whose value is kept in its UTF-8 encoded form and decoded only when
+ * {@link #getValue()} is called for the first time. The public {@link #value} field of a label tag is always null.
+ * <p>
+ * Like all tags, a label tag is equal to any {@link Tag} with the same key and value and has the same hash code. Two
+ * label tags with the same encoded value are recognized as equal without decoding them. A label tag is serialized as
+ * a plain tag with the decoded value.
+ */
+final class LabelTag extends Tag {
+	private static final String CHARSET_UTF8 = "UTF-8";
+	private static final long serialVersionUID = 1L;
+
+	private volatile String decodedValue;
+	private final byte[] encodedValue;
+	private volatile int hashCodeValue;
+	private final transient StringCache stringCache;
+
+	/**
+	 * @param key
+	 *            the key of the tag.
+	 * @param encodedValue
+	 *            the UTF-8 encoded value of the tag.
+	 * @param stringCache
+	 *            the cache which is used to decode the value (may be null).
+	 */
+	LabelTag(String key, byte[] encodedValue, StringCache stringCache) {
+		super(key, null);
+		this.encodedValue = encodedValue;
+		this.stringCache = stringCache;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj instanceof LabelTag) {
+			LabelTag other = (LabelTag) obj;
+			if (this.key.equals(other.key) && Arrays.equals(this.encodedValue, other.encodedValue)) {
+				return true;
+			}
+		}
+		return super.equals(obj);
+	}
+
+	@Override
+	public String getValue() {
+		String value = this.decodedValue;
+		if (value == null) {
+			value = decode();
+			this.decodedValue = value;
+		}
+		return value;
+	}
+
+	@Override
+	public int hashCode() {
+		int hashCode = this.hashCodeValue;
+		if (hashCode == 0) {
+			// must be consistent with a plain tag of the same key and value
+			hashCode = new Tag(this.key, getValue()).hashCode();
+			this.hashCodeValue = hashCode;
+		}
+		return hashCode;
+	}
+
+	private String decode() {
+		if (this.stringCache != null) {
+			return this.stringCache.getString(ByteBuffer.wrap(this.encodedValue), 0, this.encodedValue.length);
+		}
+		try {
+			return new String(this.encodedValue, CHARSET_UTF8);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private Object writeReplace() {
+		return new Tag(this.key, getValue());
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+/**
+ * Receives the POIs and ways of a query while they are decoded by the {@link MapDatabase}.
+ * <p>
+ * The {@link PoiData} and {@link WayData} objects which are passed to a sink, including all of their arrays, are
+ * reused for the next element. They are valid only until the callback returns and must not be stored. Tags are given
+ * as IDs into {@link org.mapsforge.map.reader.header.MapFileInfo#poiTags} and
+ * {@link org.mapsforge.map.reader.header.MapFileInfo#wayTags}, so that a query does not need to allocate any objects.
+ * <p>
+ * The elements of a block are passed to the sink while the block is decoded. If a block turns out to be corrupt, the
+ * sink may already have received some of its POIs and ways. These must be discarded when
+ * {@link #onBlockAborted(int, int)} is called, as the query skips corrupt blocks completely.
+ */
+public interface MapDataSink {
+	/**
+	 * Called if the current block is corrupt after some of its POIs and ways have already been passed to this sink.
+	 * These are always the most recently received elements.
+	 * 
+	 * @param numberOfPois
+	 *            the number of POIs of the block which have been passed to this sink and must be discarded.
+	 * @param numberOfWays
+	 *            the number of ways of the block which have been passed to this sink and must be discarded.
+	 */
+	void onBlockAborted(int numberOfPois, int numberOfWays);
+
+	/**
+	 * Called for each POI of the query.
+	 * 
+	 * @param poiData
+	 *            the current POI, valid only during this call.
+	 */
+	void onPoi(PoiData poiData);
+
+	/**
+	 * Called once after all POIs and ways of a successful query have been passed to this sink.
+	 * 
+	 * @param isWater
+	 *            true if the queried area is completely covered by water, false otherwise.
+	 */
+	void onQueryFinished(boolean isWater);
+
+	/**
+	 * Called for each way of the query. A way which consists of several way data blocks is passed once for each block.
+	 * 
+	 * @param wayData
+	 *            the current way, valid only during this call.
+	 */
+	void onWay(WayData wayData);
+}
@@ -16,15 +16,19 @@ package org.mapsforge.map.reader;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.mapsforge.core.BoundingBox;
 import org.mapsforge.core.GeoPoint;
 import org.mapsforge.core.MercatorProjection;
-import org.mapsforge.core.Tag;
 import org.mapsforge.core.Tile;
 import org.mapsforge.map.reader.header.FileOpenResult;
 import org.mapsforge.map.reader.header.MapFileHeader;
@@ -34,7 +38,9 @@ import org.mapsforge.map.reader.header.SubFileParameter;
 /**
  * A class for reading binary map files.
  * <p>
- * This class is not thread-safe. Each thread should use its own instance.
+ * This class is not thread-safe. Each thread should use its own instance. To query the same map file from many threads
+ * without parsing its header for each thread, open it once as a {@link SharedMapDatabase} and create one cursor per
+ * thread via {@link SharedMapDatabase#createCursor()}.
  * 
  * @see <a href="https://code.google.com/p/mapsforge/wiki/SpecificationBinaryMapFile">Specification</a>
  */
@@ -42,12 +48,12 @@ public class MapDatabase {
 	/**
 	 * Bitmask to extract the block offset from an index entry.
 	 */
-	private static final long BITMASK_INDEX_OFFSET = 0x7FFFFFFFFFL;
+	static final long BITMASK_INDEX_OFFSET = 0x7FFFFFFFFFL;
 
 	/**
 	 * Bitmask to extract the water information from an index entry.
 	 */
-	private static final long BITMASK_INDEX_WATER = 0x8000000000L;
+	static final long BITMASK_INDEX_WATER = 0x8000000000L;
 
 	/**
 	 * Debug message prefix for the block signature.
@@ -64,11 +70,6 @@ public class MapDatabase {
 	 */
 	private static final String DEBUG_SIGNATURE_WAY = "way signature: ";
 
-	/**
-	 * Amount of cache blocks that the index cache should store.
-	 */
-	private static final int INDEX_CACHE_SIZE = 64;
-
 	/**
 	 * Error message for an invalid first way offset.
 	 */
@@ -77,15 +78,20 @@ public class MapDatabase {
 	private static final Logger LOGGER = Logger.getLogger(MapDatabase.class.getName());
 
 	/**
-	 * Maximum way nodes sequence length which is considered as valid.
+	 * Maximum number of bytes of a variable-byte encoded 32-bit integer.
 	 */
-	private static final int MAXIMUM_WAY_NODES_SEQUENCE_LENGTH = 8192;
+	private static final int MAXIMUM_VARIABLE_BYTE_LENGTH = 5;
 
 	/**
 	 * Maximum number of map objects in the zoom table which is considered as valid.
 	 */
 	private static final int MAXIMUM_ZOOM_TABLE_OBJECTS = 65536;
 
+	/**
+	 * Distance in bytes between the touched bytes of a prefetched block, at most the size of a memory page.
+	 */
+	private static final int PAGE_SIZE = 4096;
+
 	/**
 	 * Bitmask for the optional POI feature "elevation".
 	 */
@@ -116,8 +122,6 @@ public class MapDatabase {
 	 */
 	private static final int POI_NUMBER_OF_TAGS_BITMASK = 0x0f;
 
-	private static final String READ_ONLY_MODE = "r";
-
 	/**
 	 * Length of the debug signature at the beginning of each block.
 	 */
@@ -133,26 +137,6 @@ public class MapDatabase {
 	 */
 	private static final byte SIGNATURE_LENGTH_WAY = 32;
 
-	/**
-	 * The key of the elevation OpenStreetMap tag.
-	 */
-	private static final String TAG_KEY_ELE = "ele";
-
-	/**
-	 * The key of the house number OpenStreetMap tag.
-	 */
-	private static final String TAG_KEY_HOUSE_NUMBER = "addr:housenumber";
-
-	/**
-	 * The key of the name OpenStreetMap tag.
-	 */
-	private static final String TAG_KEY_NAME = "name";
-
-	/**
-	 * The key of the reference OpenStreetMap tag.
-	 */
-	private static final String TAG_KEY_REF = "ref";
-
 	/**
 	 * Bitmask for the optional way data blocks byte.
 	 */
@@ -198,40 +182,265 @@ public class MapDatabase {
 	 */
 	private static final int WAY_NUMBER_OF_TAGS_BITMASK = 0x0f;
 
+	/**
+	 * @param boundingBox
+	 *            the bounding box which should be checked.
+	 * @param latitude
+	 *            the latitude of the point in microdegrees.
+	 * @param longitude
+	 *            the longitude of the point in microdegrees.
+	 * @return true if the given bounding box contains the given point, false otherwise.
+	 */
+	private static boolean isInside(BoundingBox boundingBox, int latitude, int longitude) {
+		return latitude >= boundingBox.minLatitudeE6 && latitude <= boundingBox.maxLatitudeE6
+				&& longitude >= boundingBox.minLongitudeE6 && longitude <= boundingBox.maxLongitudeE6;
+	}
+
+	private Map<SubFileParameter, BlockBitmap> blockBitmaps;
+	private boolean blockBitmapsEnabled;
+	private BlockCache blockCache;
+	private int blockCacheCapacity;
+	private int blockPois;
+	private int blockWays;
 	private IndexCache databaseIndexCache;
 	private long fileSize;
-	private RandomAccessFile inputFile;
+	private boolean headerCacheEnabled;
+	private int indexCacheCapacity = SharedMapDatabase.DEFAULT_INDEX_CACHE_CAPACITY;
+	private boolean indexPreloadEnabled;
+	private boolean lazyLabelsEnabled;
+	private boolean lazyWayNodesEnabled;
 	private MapFileHeader mapFileHeader;
+	private boolean memoryMapped;
+	private PoiData poiData;
+	private QueryListener queryListener;
+	private long queryStartTime;
+	private QueryStatistics queryStatistics;
 	private ReadBuffer readBuffer;
+	private ResolvedTagFilter resolvedTagFilter;
+	private SharedMapDatabase sharedMapDatabase;
+	private boolean sharedMapDatabaseOwner;
 	private String signatureBlock;
 	private String signaturePoi;
 	private String signatureWay;
+	private int stringCacheCapacity;
 	private int tileLatitude;
 	private int tileLongitude;
+	private WayData wayData;
 
 	/**
-	 * Closes the map file and destroys all internal caches. Has no effect if no map file is currently opened.
+	 * Creates a new MapDatabase without an opened map file.
+	 */
+	public MapDatabase() {
+		// do nothing
+	}
+
+	/**
+	 * Creates a new cursor for the given shared map file.
+	 * 
+	 * @param sharedMapDatabase
+	 *            the opened map file which should be queried.
+	 */
+	MapDatabase(SharedMapDatabase sharedMapDatabase) {
+		attach(sharedMapDatabase, false);
+		this.blockBitmapsEnabled = sharedMapDatabase.isBlockBitmapsEnabled();
+		this.queryListener = sharedMapDatabase.getQueryListener();
+	}
+
+	/**
+	 * Classifies the given tile as empty, water or data by reading only the index of the map file. No block is read.
+	 * If block bitmaps are enabled, not even the index is read.
+	 * 
+	 * @param tile
+	 *            the tile which should be classified.
+	 * @return the content of the tile or null if the index could not be read.
+	 * @see #setBlockBitmapsEnabled(boolean)
+	 */
+	public TileContent classifyTile(Tile tile) {
+		QueryParameters queryParameters = new QueryParameters();
+		queryParameters.queryZoomLevel = this.mapFileHeader.getQueryZoomLevel(tile.zoomLevel);
+
+		// get and check the sub-file for the query zoom level
+		SubFileParameter subFileParameter = this.mapFileHeader.getSubFileParameter(queryParameters.queryZoomLevel);
+		if (subFileParameter == null) {
+			LOGGER.warning("no sub-file for zoom level: " + queryParameters.queryZoomLevel);
+			return null;
+		}
+
+		QueryCalculations.calculateBaseTiles(queryParameters, tile, subFileParameter);
+		QueryCalculations.calculateBlocks(queryParameters, subFileParameter);
+		return classifyBlocks(queryParameters, subFileParameter);
+	}
+
+	/**
+	 * Classifies all tiles of the given range as empty, water or data by reading only the index of the map file, see
+	 * {@link #classifyTile(Tile)}.
+	 * 
+	 * @param fromTileX
+	 *            the X number of the left-most tiles.
+	 * @param fromTileY
+	 *            the Y number of the top-most tiles.
+	 * @param toTileX
+	 *            the X number of the right-most tiles.
+	 * @param toTileY
+	 *            the Y number of the bottom-most tiles.
+	 * @param zoomLevel
+	 *            the zoom level of the tiles.
+	 * @return the content of all tiles in row-major order or null if the index could not be read.
+	 * @throws IllegalArgumentException
+	 *             if the tile range is empty or contains more than {@link Integer#MAX_VALUE} tiles.
+	 */
+	public TileContent[] classifyTiles(long fromTileX, long fromTileY, long toTileX, long toTileY, byte zoomLevel) {
+		long width = toTileX - fromTileX + 1;
+		long height = toTileY - fromTileY + 1;
+		if (width < 1 || height < 1 || width * height > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("invalid tile range: " + width + "x" + height);
+		}
+
+		TileContent[] tileContents = new TileContent[(int) (width * height)];
+		int index = 0;
+		for (long tileY = fromTileY; tileY <= toTileY; ++tileY) {
+			for (long tileX = fromTileX; tileX <= toTileX; ++tileX) {
+				TileContent tileContent = classifyTile(new Tile(tileX, tileY, zoomLevel));
+				if (tileContent == null) {
+					return null;
+				}
+				tileContents[index++] = tileContent;
+			}
+		}
+		return tileContents;
+	}
+
+	/**
+	 * Closes the map file and destroys all internal caches. Has no effect if no map file is currently opened. If this
+	 * MapDatabase is a cursor of a {@link SharedMapDatabase}, only the cursor is detached and the shared map file stays
+	 * open.
 	 */
 	public void closeFile() {
-		try {
-			this.mapFileHeader = null;
+		if (this.sharedMapDatabase != null && this.sharedMapDatabaseOwner) {
+			this.sharedMapDatabase.closeFile();
+		}
+
+		this.sharedMapDatabase = null;
+		this.sharedMapDatabaseOwner = false;
+		this.mapFileHeader = null;
+		this.blockBitmaps = null;
+		this.blockCache = null;
+		this.databaseIndexCache = null;
+		this.readBuffer = null;
+		this.poiData = null;
+		this.wayData = null;
+		this.resolvedTagFilter = null;
+	}
 
-			if (this.databaseIndexCache != null) {
-				this.databaseIndexCache.destroy();
-				this.databaseIndexCache = null;
+	/**
+	 * Creates a new cursor for the map file which is currently opened by this MapDatabase, see
+	 * {@link SharedMapDatabase#createCursor()}. The cursor can be used by another thread and must not be used anymore
+	 * after this MapDatabase has closed or reopened its map file.
+	 * 
+	 * @return a new cursor for the current map file.
+	 * @throws IllegalStateException
+	 *             if no map file is currently opened.
+	 */
+	public MapDatabase createCursor() {
+		if (this.sharedMapDatabase == null) {
+			throw new IllegalStateException("no map file is currently opened");
+		}
+		return this.sharedMapDatabase.createCursor();
+	}
+
+	/**
+	 * Finds the closest POI and the closest way to the given point, see
+	 * {@link #findNearest(GeoPoint, double, TagFilter, byte)}. The sub-file of the highest zoom level is searched,
+	 * which contains the most detailed geometry.
+	 * 
+	 * @param geoPoint
+	 *            the query point.
+	 * @param maxDistance
+	 *            the maximum distance in meters of the returned POI and way.
+	 * @param tagFilter
+	 *            selects the POIs and ways which should be considered (may be null).
+	 * @return the closest POI and way or null if the map data could not be read.
+	 * @throws IllegalArgumentException
+	 *             if the maximum distance is negative.
+	 */
+	public NearestResult findNearest(GeoPoint geoPoint, double maxDistance, TagFilter tagFilter) {
+		return findNearest(geoPoint, maxDistance, tagFilter, Byte.MAX_VALUE);
+	}
+
+	/**
+	 * Finds the closest POI and the closest way to the given point in the sub-file of the given zoom level. The blocks
+	 * of the sub-file are searched ring by ring outwards from the block which contains the point. Blocks which are
+	 * farther away than the current candidates are skipped without being read, and the search stops as soon as no
+	 * remaining block can contain a closer element. The distance of a way is the distance to the closest point of its
+	 * segments. No tiles are materialized, only the closest POI and way are converted into result objects.
+	 * <p>
+	 * Distances are calculated in an equirectangular projection around the query point, which is accurate to well
+	 * below one percent for distances of some kilometers.
+	 * 
+	 * @param geoPoint
+	 *            the query point.
+	 * @param maxDistance
+	 *            the maximum distance in meters of the returned POI and way.
+	 * @param tagFilter
+	 *            selects the POIs and ways which should be considered (may be null).
+	 * @param zoomLevel
+	 *            the zoom level whose sub-file and zoom table are used.
+	 * @return the closest POI and way or null if the map data could not be read.
+	 * @throws IllegalArgumentException
+	 *             if the maximum distance is negative.
+	 */
+	public NearestResult findNearest(GeoPoint geoPoint, double maxDistance, TagFilter tagFilter, byte zoomLevel) {
+		if (!(maxDistance >= 0)) {
+			throw new IllegalArgumentException("invalid maximum distance: " + maxDistance);
+		}
+
+		startQuery();
+		try {
+			QueryParameters queryParameters = new QueryParameters();
+			queryParameters.queryZoomLevel = this.mapFileHeader.getQueryZoomLevel(zoomLevel);
+			if (tagFilter != null) {
+				queryParameters.tagFilter = resolveTagFilter(tagFilter);
 			}
 
-			if (this.inputFile != null) {
-				this.inputFile.close();
-				this.inputFile = null;
+			// get and check the sub-file for the query zoom level
+			SubFileParameter subFileParameter = this.mapFileHeader.getSubFileParameter(queryParameters.queryZoomLevel);
+			if (subFileParameter == null) {
+				LOGGER.warning("no sub-file for zoom level: " + queryParameters.queryZoomLevel);
+				return null;
 			}
 
-			this.readBuffer = null;
+			ResolvedTagFilter resolvedTagFilter = queryParameters.tagFilter;
+			NearestResultBuilder nearestResultBuilder = new NearestResultBuilder(geoPoint, maxDistance,
+					resolvedTagFilter == null || resolvedTagFilter.acceptsAnyPoi, resolvedTagFilter == null
+							|| resolvedTagFilter.acceptsAnyWay);
+			if (!processNearestBlocks(queryParameters, subFileParameter, geoPoint, nearestResultBuilder)) {
+				return null;
+			}
+			return nearestResultBuilder.build();
 		} catch (IOException e) {
 			LOGGER.log(Level.SEVERE, null, e);
+			return null;
+		} finally {
+			finishQuery();
 		}
 	}
 
+	/**
+	 * @return the number of block cache hits since the current map file was opened.
+	 * @see #setBlockCacheCapacity(int)
+	 */
+	public long getBlockCacheHits() {
+		return this.blockCache == null ? 0 : this.blockCache.getHits();
+	}
+
+	/**
+	 * @return the number of block cache misses since the current map file was opened.
+	 * @see #setBlockCacheCapacity(int)
+	 */
+	public long getBlockCacheMisses() {
+		return this.blockCache == null ? 0 : this.blockCache.getMisses();
+	}
+
 	/**
 	 * @return the metadata for the current map file.
 	 * @throws IllegalStateException
@@ -248,7 +457,54 @@ public class MapDatabase {
 	 * @return true if a map file is currently opened, false otherwise.
 	 */
 	public boolean hasOpenFile() {
-		return this.inputFile != null;
+		return this.sharedMapDatabase != null && this.sharedMapDatabase.hasOpenFile();
+	}
+
+	/**
+	 * @return true if block bitmaps are created when a map file is opened, false otherwise.
+	 * @see #setBlockBitmapsEnabled(boolean)
+	 */
+	public boolean isBlockBitmapsEnabled() {
+		return this.blockBitmapsEnabled;
+	}
+
+	/**
+	 * @return true if the process-wide header cache is used when a map file is opened, false otherwise.
+	 * @see #setHeaderCacheEnabled(boolean)
+	 */
+	public boolean isHeaderCacheEnabled() {
+		return this.headerCacheEnabled;
+	}
+
+	/**
+	 * @return true if the index of each sub-file is preloaded when a map file is opened, false otherwise.
+	 * @see #setIndexPreloadEnabled(boolean)
+	 */
+	public boolean isIndexPreloadEnabled() {
+		return this.indexPreloadEnabled;
+	}
+
+	/**
+	 * @return true if label tags are decoded only when their value is requested, false otherwise.
+	 * @see #setLazyLabelsEnabled(boolean)
+	 */
+	public boolean isLazyLabelsEnabled() {
+		return this.lazyLabelsEnabled;
+	}
+
+	/**
+	 * @return true if the way nodes of ways are decoded only when they are requested, false otherwise.
+	 * @see #setLazyWayNodesEnabled(boolean)
+	 */
+	public boolean isLazyWayNodesEnabled() {
+		return this.lazyWayNodesEnabled;
+	}
+
+	/**
+	 * @return true if map files are memory-mapped, false otherwise.
+	 */
+	public boolean isMemoryMapped() {
+		return this.memoryMapped;
 	}
 
 	/**
@@ -261,158 +517,1027 @@ public class MapDatabase {
 	 *             if the given map file is null.
 	 */
 	public FileOpenResult openFile(File mapFile) {
+		if (mapFile == null) {
+			throw new IllegalArgumentException("mapFile must not be null");
+		}
+
+		// make sure to close any previously opened file first
+		closeFile();
+
+		SharedMapDatabase newSharedMapDatabase = new SharedMapDatabase();
+		newSharedMapDatabase.setBlockBitmapsEnabled(this.blockBitmapsEnabled);
+		newSharedMapDatabase.setBlockCacheCapacity(this.blockCacheCapacity);
+		newSharedMapDatabase.setHeaderCacheEnabled(this.headerCacheEnabled);
+		newSharedMapDatabase.setIndexCacheCapacity(this.indexCacheCapacity);
+		newSharedMapDatabase.setIndexPreloadEnabled(this.indexPreloadEnabled);
+		newSharedMapDatabase.setLazyLabelsEnabled(this.lazyLabelsEnabled);
+		newSharedMapDatabase.setLazyWayNodesEnabled(this.lazyWayNodesEnabled);
+		newSharedMapDatabase.setMemoryMapped(this.memoryMapped);
+		newSharedMapDatabase.setStringCacheCapacity(this.stringCacheCapacity);
+		FileOpenResult fileOpenResult = newSharedMapDatabase.openFile(mapFile);
+		if (!fileOpenResult.isSuccess()) {
+			return fileOpenResult;
+		}
+
+		attach(newSharedMapDatabase, true);
+		return FileOpenResult.SUCCESS;
+	}
+
+	/**
+	 * Loads the index entries and the blocks of the given tile into memory without decoding them, so that a following
+	 * query of the tile or of a tile which shares its blocks does not need to wait for the storage. The index entries
+	 * are kept in the index cache, the blocks in the page cache of the operating system. No query is reported to the
+	 * query listener.
+	 * 
+	 * @param tile
+	 *            the tile whose map data should be loaded.
+	 * @return true if all blocks of the tile have been loaded, false otherwise.
+	 */
+	public boolean prefetchMapData(Tile tile) {
+		QueryParameters queryParameters = new QueryParameters();
+		queryParameters.queryZoomLevel = this.mapFileHeader.getQueryZoomLevel(tile.zoomLevel);
+
+		// get and check the sub-file for the query zoom level
+		SubFileParameter subFileParameter = this.mapFileHeader.getSubFileParameter(queryParameters.queryZoomLevel);
+		if (subFileParameter == null) {
+			LOGGER.warning("no sub-file for zoom level: " + queryParameters.queryZoomLevel);
+			return false;
+		}
+
+		QueryCalculations.calculateBaseTiles(queryParameters, tile, subFileParameter);
+		QueryCalculations.calculateBlocks(queryParameters, subFileParameter);
+
+		try {
+			for (long row = queryParameters.fromBlockY; row <= queryParameters.toBlockY; ++row) {
+				for (long column = queryParameters.fromBlockX; column <= queryParameters.toBlockX; ++column) {
+					long blockNumber = row * subFileParameter.blocksWidth + column;
+					long currentBlockPointer = getIndexEntry(subFileParameter, blockNumber) & BITMASK_INDEX_OFFSET;
+					int currentBlockSize = calculateBlockSize(subFileParameter, blockNumber, currentBlockPointer);
+					if (currentBlockSize < 0) {
+						return false;
+					} else if (currentBlockSize == 0) {
+						continue;
+					}
+
+					long currentBlockPosition = subFileParameter.startAddress + currentBlockPointer;
+					if (!this.readBuffer.readFromFile(currentBlockPosition, currentBlockSize)) {
+						return false;
+					}
+
+					// a memory-mapped block is only loaded when its pages are accessed
+					for (int offset = 0; offset < currentBlockSize; offset += PAGE_SIZE) {
+						this.readBuffer.setBufferPosition(offset);
+						this.readBuffer.readByte();
+					}
+				}
+			}
+			return true;
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, null, e);
+			return false;
+		}
+	}
+
+	/**
+	 * Reads the map data of the given bounding box at the given zoom level. The result contains the same data as the
+	 * tile queries of all tiles at the given zoom level which intersect the bounding box, but each block is read only
+	 * once and ways which are stored unchanged in several blocks are returned only once. Ways which have been clipped
+	 * to the block boundaries by the map writer differ from block to block and are returned once per block. The
+	 * decoded block cache is not used by this method.
+	 * 
+	 * @param boundingBox
+	 *            the area of the read map data.
+	 * @param zoomLevel
+	 *            the zoom level of the read map data.
+	 * @return the read map data.
+	 */
+	public MapReadResult readMapData(BoundingBox boundingBox, byte zoomLevel) {
+		return executeAreaQuery(new QueryArea(boundingBox), zoomLevel, null, false);
+	}
+
+	/**
+	 * Reads all map data for the areas covered by the given tiles at their tile zoom levels. Each block which is needed
+	 * by at least one of the tiles is read only once, the blocks are read in the order of their position in the file
+	 * and adjacent blocks are read with a single file access. A block which is shared by several tiles is decoded only
+	 * once for all of them.
+	 * 
+	 * @param tiles
+	 *            the tiles for which the map data should be read.
+	 * @return the read map data of each tile in the iteration order of the given tiles, a tile is mapped to null if its
+	 *         data could not be read. The whole result is null if an I/O error occurs.
+	 */
+	public Map<Tile, MapReadResult> readMapData(Collection<Tile> tiles) {
+		startQuery();
+		try {
+			Map<BlockCacheKey, BatchBlock> batchBlocks = new HashMap<BlockCacheKey, BatchBlock>();
+			Map<Tile, BatchTile> batchTiles = new LinkedHashMap<Tile, BatchTile>();
+			for (Tile tile : tiles) {
+				if (!batchTiles.containsKey(tile)) {
+					batchTiles.put(tile, prepareBatchTile(tile, batchBlocks));
+				}
+			}
+
+			List<BatchBlock> sortedBatchBlocks = new ArrayList<BatchBlock>(batchBlocks.values());
+			Collections.sort(sortedBatchBlocks);
+			processBatchBlocks(sortedBatchBlocks);
+
+			Map<Tile, MapReadResult> mapReadResults = new LinkedHashMap<Tile, MapReadResult>();
+			for (Map.Entry<Tile, BatchTile> entry : batchTiles.entrySet()) {
+				BatchTile batchTile = entry.getValue();
+				mapReadResults.put(entry.getKey(), batchTile == null ? null : batchTile.build());
+			}
+			return mapReadResults;
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, null, e);
+			return null;
+		} finally {
+			finishQuery();
+		}
+	}
+
+	/**
+	 * Reads the map data of the given polygon at the given zoom level, see {@link #readMapData(BoundingBox, byte)}.
+	 * Blocks and tiles which do not intersect the polygon are skipped. The elements of the intersecting tiles are
+	 * returned completely, they are not clipped to the polygon.
+	 * 
+	 * @param polygon
+	 *            the vertices of the area of the read map data, the closing edge is implicit.
+	 * @param zoomLevel
+	 *            the zoom level of the read map data.
+	 * @return the read map data.
+	 * @throws IllegalArgumentException
+	 *             if the polygon has less than three vertices.
+	 */
+	public MapReadResult readMapData(List<GeoPoint> polygon, byte zoomLevel) {
+		return executeAreaQuery(new QueryArea(polygon), zoomLevel, null, false);
+	}
+
+	/**
+	 * Reads all map data for the area covered by the given tile at the tile zoom level.
+	 * 
+	 * @param tile
+	 *            defines area and zoom level of read map data.
+	 * @return the read map data.
+	 */
+	public MapReadResult readMapData(Tile tile) {
+		MapReadResultBuilder mapReadResultBuilder = new MapReadResultBuilder();
+		if (!executeQuery(tile, null, mapReadResultBuilder, mapReadResultBuilder, false)) {
+			return null;
+		}
+		return mapReadResultBuilder.build();
+	}
+
+	/**
+	 * Reads all map data for the area covered by the given tile at the tile zoom level into the given columnar
+	 * result. The previous content of the result is removed first, its arrays are reused. The decoded block cache is
+	 * not used by this method.
+	 * 
+	 * @param tile
+	 *            defines area and zoom level of read map data.
+	 * @param columnarMapReadResult
+	 *            the result which receives the read map data.
+	 * @return true if the map data was read successfully, false otherwise.
+	 */
+	public boolean readMapData(Tile tile, ColumnarMapReadResult columnarMapReadResult) {
+		columnarMapReadResult.clear();
+		return executeQuery(tile, null, columnarMapReadResult, null, false);
+	}
+
+	/**
+	 * Reads all map data for the area covered by the given tile at the tile zoom level and passes it to the given
+	 * sink. In contrast to {@link #readMapData(Tile)}, no objects are created for the POIs and ways, so that a tile
+	 * can be processed without producing garbage. The decoded block cache is not used by this method.
+	 * 
+	 * @param tile
+	 *            defines area and zoom level of read map data.
+	 * @param mapDataSink
+	 *            the sink which receives the read map data.
+	 * @return true if the map data was read successfully, false otherwise.
+	 */
+	public boolean readMapData(Tile tile, MapDataSink mapDataSink) {
+		return executeQuery(tile, null, mapDataSink, null, false);
+	}
+
+	/**
+	 * Reads the map data for the area covered by the given tile at the tile zoom level, restricted to the POIs and
+	 * ways which are selected by the given tag filter. The tags of a way are checked before its coordinates are
+	 * decoded, so that the rest of a rejected way is skipped. The decoded block cache is not used by this method.
+	 * 
+	 * @param tile
+	 *            defines area and zoom level of read map data.
+	 * @param tagFilter
+	 *            selects the POIs and ways which should be returned.
+	 * @return the read map data.
+	 */
+	public MapReadResult readMapData(Tile tile, TagFilter tagFilter) {
+		MapReadResultBuilder mapReadResultBuilder = new MapReadResultBuilder();
+		if (!executeQuery(tile, tagFilter, mapReadResultBuilder, null, false)) {
+			return null;
+		}
+		return mapReadResultBuilder.build();
+	}
+
+	/**
+	 * Reads the map data for the area covered by the given tile at the tile zoom level, restricted to the POIs and
+	 * ways which are selected by the given tag filter, and passes it to the given sink.
+	 * 
+	 * @param tile
+	 *            defines area and zoom level of read map data.
+	 * @param tagFilter
+	 *            selects the POIs and ways which should be passed to the sink.
+	 * @param mapDataSink
+	 *            the sink which receives the read map data.
+	 * @return true if the map data was read successfully, false otherwise.
+	 * @see #readMapData(Tile, TagFilter)
+	 */
+	public boolean readMapData(Tile tile, TagFilter tagFilter, MapDataSink mapDataSink) {
+		return executeQuery(tile, tagFilter, mapDataSink, null, false);
+	}
+
+	/**
+	 * Reads only the POIs of the given bounding box at the given zoom level. Only the POI section at the beginning of
+	 * each block is read and decoded, the ways are skipped completely. In contrast to
+	 * {@link #readMapData(BoundingBox, byte)}, only POIs which lie inside of the bounding box are returned.
+	 * 
+	 * @param boundingBox
+	 *            the area of the read POIs.
+	 * @param zoomLevel
+	 *            the zoom level of the read POIs.
+	 * @param tagFilter
+	 *            selects the POIs which should be returned (may be null).
+	 * @return the read POIs, the list of ways is always empty.
+	 */
+	public MapReadResult readPoiData(BoundingBox boundingBox, byte zoomLevel, TagFilter tagFilter) {
+		return executeAreaQuery(new QueryArea(boundingBox), zoomLevel, tagFilter, true);
+	}
+
+	/**
+	 * Reads only the POIs for the area covered by the given tile at the tile zoom level. Only the POI section at the
+	 * beginning of each block is read and decoded, the ways are skipped completely. The result contains the same
+	 * POIs as {@link #readMapData(Tile, TagFilter)}.
+	 * 
+	 * @param tile
+	 *            defines area and zoom level of read POIs.
+	 * @param tagFilter
+	 *            selects the POIs which should be returned (may be null).
+	 * @return the read POIs, the list of ways is always empty.
+	 */
+	public MapReadResult readPoiData(Tile tile, TagFilter tagFilter) {
+		MapReadResultBuilder mapReadResultBuilder = new MapReadResultBuilder();
+		if (!executeQuery(tile, tagFilter, mapReadResultBuilder, null, true)) {
+			return null;
+		}
+		return mapReadResultBuilder.build();
+	}
+
+	/**
+	 * Reads only the POIs for the area covered by the given tile at the tile zoom level and passes them to the given
+	 * sink, see {@link #readPoiData(Tile, TagFilter)}. The name and house number of a POI are decoded only when they
+	 * are requested, so a sink which filters POIs by name does not decode the names of POIs which are rejected by the
+	 * tag filter.
+	 * 
+	 * @param tile
+	 *            defines area and zoom level of read POIs.
+	 * @param tagFilter
+	 *            selects the POIs which should be passed to the sink (may be null).
+	 * @param mapDataSink
+	 *            the sink which receives the read POIs.
+	 * @return true if the POIs were read successfully, false otherwise.
+	 */
+	public boolean readPoiData(Tile tile, TagFilter tagFilter, MapDataSink mapDataSink) {
+		return executeQuery(tile, tagFilter, mapDataSink, null, true);
+	}
+
+	/**
+	 * Enables or disables the block bitmaps. If enabled, the complete index of each sub-file is read when a map file is
+	 * opened and summarized in a bitmap with two bits per block, so that {@link #classifyTile(Tile)} needs no further
+	 * index reads. The new setting takes effect the next time a map file is opened.
+	 * 
+	 * @param blockBitmapsEnabled
+	 *            true if block bitmaps should be created, false otherwise.
+	 */
+	public void setBlockBitmapsEnabled(boolean blockBitmapsEnabled) {
+		this.blockBitmapsEnabled = blockBitmapsEnabled;
+	}
+
+	/**
+	 * Sets the capacity of the decoded block cache. The cache keeps the completely decoded content of recently used
+	 * blocks, so that all tiles above the base zoom level of a sub-file which lie in the same block are answered by a
+	 * single decoding step. A capacity of zero, which is the default, disables the cache. The new setting takes effect
+	 * the next time a map file is opened. Cursors of a {@link SharedMapDatabase} use the cache of the shared map file.
+	 * 
+	 * @param blockCacheCapacity
+	 *            the maximum number of decoded blocks in the cache.
+	 * @throws IllegalArgumentException
+	 *             if the capacity is negative.
+	 */
+	public void setBlockCacheCapacity(int blockCacheCapacity) {
+		if (blockCacheCapacity < 0) {
+			throw new IllegalArgumentException("blockCacheCapacity must not be negative: " + blockCacheCapacity);
+		}
+		this.blockCacheCapacity = blockCacheCapacity;
+	}
+
+	/**
+	 * Enables or disables the process-wide header cache. If enabled, reopening an unchanged map file reuses its parsed
+	 * header, index cache and block bitmaps instead of reading them again. The new setting takes effect the next time
+	 * a map file is opened.
+	 * 
+	 * @param headerCacheEnabled
+	 *            true if the header cache should be used, false otherwise.
+	 * @see SharedMapDatabase#setHeaderCacheEnabled(boolean)
+	 */
+	public void setHeaderCacheEnabled(boolean headerCacheEnabled) {
+		this.headerCacheEnabled = headerCacheEnabled;
+	}
+
+	/**
+	 * Sets the capacity of the index cache. Each cached index block holds the entries of 128 blocks. Sub-files whose
+	 * index has been preloaded do not use the index cache. The new setting takes effect the next time a map file is
+	 * opened.
+	 * 
+	 * @param indexCacheCapacity
+	 *            the maximum number of index blocks in the cache (default: 64).
+	 * @throws IllegalArgumentException
+	 *             if the capacity is negative.
+	 */
+	public void setIndexCacheCapacity(int indexCacheCapacity) {
+		if (indexCacheCapacity < 0) {
+			throw new IllegalArgumentException("indexCacheCapacity must not be negative: " + indexCacheCapacity);
+		}
+		this.indexCacheCapacity = indexCacheCapacity;
+	}
+
+	/**
+	 * Enables or disables the index preload. If enabled, the complete index of each sub-file is read into an array
+	 * when a map file is opened, so that looking up an index entry is a plain array access. The new setting takes
+	 * effect the next time a map file is opened.
+	 * 
+	 * @param indexPreloadEnabled
+	 *            true if the index should be preloaded, false otherwise.
+	 * @see SharedMapDatabase#setIndexPreloadEnabled(boolean)
+	 */
+	public void setIndexPreloadEnabled(boolean indexPreloadEnabled) {
+		this.indexPreloadEnabled = indexPreloadEnabled;
+	}
+
+	/**
+	 * Enables or disables lazy label tags. If enabled, the name, house number and ref tags of ways and POIs decode
+	 * their value only when {@link org.mapsforge.core.Tag#getValue()} is called. The new setting takes effect the next
+	 * time a map file is opened.
+	 * 
+	 * @param lazyLabelsEnabled
+	 *            true if label tags should be decoded lazily, false otherwise.
+	 * @see SharedMapDatabase#setLazyLabelsEnabled(boolean)
+	 */
+	public void setLazyLabelsEnabled(boolean lazyLabelsEnabled) {
+		this.lazyLabelsEnabled = lazyLabelsEnabled;
+	}
+
+	/**
+	 * Enables or disables lazy way nodes. If enabled, the {@link Way#wayNodes} field of a way with a single way data
+	 * block is null, the way keeps its encoded coordinates and {@link Way#getWayNodes()} decodes them on the first
+	 * call. Only the size of the encoded coordinates is checked while the block is read. The new setting takes effect
+	 * the next time a map file is opened.
+	 * 
+	 * @param lazyWayNodesEnabled
+	 *            true if way nodes should be decoded lazily, false otherwise.
+	 * @see SharedMapDatabase#setLazyWayNodesEnabled(boolean)
+	 */
+	public void setLazyWayNodesEnabled(boolean lazyWayNodesEnabled) {
+		this.lazyWayNodesEnabled = lazyWayNodesEnabled;
+	}
+
+	/**
+	 * Enables or disables memory-mapped file access. If enabled, the map file is mapped into memory and all blocks and
+	 * index entries are decoded directly from the mapping instead of being read into a buffer first. The new setting
+	 * takes effect the next time a map file is opened.
+	 * 
+	 * @param memoryMapped
+	 *            true if map files should be memory-mapped, false otherwise.
+	 */
+	public void setMemoryMapped(boolean memoryMapped) {
+		this.memoryMapped = memoryMapped;
+	}
+
+	/**
+	 * Sets the listener which receives the statistics of each query. While no listener is set, which is the default,
+	 * queries do not collect any statistics.
+	 * 
+	 * @param queryListener
+	 *            the new listener (may be null).
+	 */
+	public void setQueryListener(QueryListener queryListener) {
+		this.queryListener = queryListener;
+	}
+
+	/**
+	 * Sets the capacity of the string cache, which interns the labels of ways and POIs. A capacity of zero, which is
+	 * the default, disables the cache. The new setting takes effect the next time a map file is opened.
+	 * 
+	 * @param stringCacheCapacity
+	 *            the maximum number of strings in the cache, rounded up to the next power of two.
+	 * @throws IllegalArgumentException
+	 *             if the capacity is negative or larger than 2^30.
+	 * @see SharedMapDatabase#setStringCacheCapacity(int)
+	 */
+	public void setStringCacheCapacity(int stringCacheCapacity) {
+		if (stringCacheCapacity < 0 || stringCacheCapacity > 1 << 30) {
+			throw new IllegalArgumentException("invalid stringCacheCapacity: " + stringCacheCapacity);
+		}
+		this.stringCacheCapacity = stringCacheCapacity;
+	}
+
+	/**
+	 * Tells the given sink to discard the POIs and ways of a corrupt block which it has already received.
+	 * 
+	 * @param mapDataSink
+	 *            the sink of the current block.
+	 */
+	private void abortBlock(MapDataSink mapDataSink) {
+		if (this.blockPois > 0 || this.blockWays > 0) {
+			mapDataSink.onBlockAborted(this.blockPois, this.blockWays);
+		}
+	}
+
+	private void attach(SharedMapDatabase newSharedMapDatabase, boolean owner) {
+		this.sharedMapDatabase = newSharedMapDatabase;
+		this.sharedMapDatabaseOwner = owner;
+		this.mapFileHeader = newSharedMapDatabase.getMapFileHeader();
+		this.blockBitmaps = newSharedMapDatabase.getBlockBitmaps();
+		this.blockCache = newSharedMapDatabase.getBlockCache();
+		this.databaseIndexCache = newSharedMapDatabase.getDatabaseIndexCache();
+		this.fileSize = newSharedMapDatabase.getFileSize();
+		this.readBuffer = newSharedMapDatabase.createReadBuffer();
+		this.poiData = new PoiData(this.readBuffer, this.mapFileHeader.getMapFileInfo().poiTags);
+		this.wayData = new WayData(this.readBuffer, this.mapFileHeader.getMapFileInfo().wayTags,
+				newSharedMapDatabase.isLazyWayNodesEnabled());
+	}
+
+	/**
+	 * Calculates the size of a block from its own and the following index entry.
+	 * 
+	 * @param subFileParameter
+	 *            the parameters of the sub-file which contains the block.
+	 * @param blockNumber
+	 *            the number of the block.
+	 * @param currentBlockPointer
+	 *            the offset of the block in the sub-file.
+	 * @return the size of the block in bytes, zero if the block should be skipped or -1 if the index is invalid.
+	 * @throws IOException
+	 *             if an error occurs while reading the index.
+	 */
+	private int calculateBlockSize(SubFileParameter subFileParameter, long blockNumber, long currentBlockPointer)
+			throws IOException {
+		// check the current block pointer
+		if (currentBlockPointer < 1 || currentBlockPointer > subFileParameter.subFileSize) {
+			LOGGER.warning("invalid current block pointer: " + currentBlockPointer);
+			LOGGER.warning("subFileSize: " + subFileParameter.subFileSize);
+			return -1;
+		}
+
+		long nextBlockPointer;
+		// check if the current block is the last block in the file
+		if (blockNumber + 1 == subFileParameter.numberOfBlocks) {
+			// set the next block pointer to the end of the file
+			nextBlockPointer = subFileParameter.subFileSize;
+		} else {
+			// get and check the next block pointer
+			nextBlockPointer = getIndexEntry(subFileParameter, blockNumber + 1) & BITMASK_INDEX_OFFSET;
+			if (nextBlockPointer < 1 || nextBlockPointer > subFileParameter.subFileSize) {
+				LOGGER.warning("invalid next block pointer: " + nextBlockPointer);
+				LOGGER.warning("sub-file size: " + subFileParameter.subFileSize);
+				return -1;
+			}
+		}
+
+		// calculate the size of the current block
+		int currentBlockSize = (int) (nextBlockPointer - currentBlockPointer);
+		if (currentBlockSize < 0) {
+			LOGGER.warning("current block size must not be negative: " + currentBlockSize);
+			return -1;
+		} else if (currentBlockSize > ReadBuffer.MAXIMUM_BUFFER_SIZE) {
+			// the current block is too large, continue with the next block
+			LOGGER.warning("current block size too large: " + currentBlockSize);
+			return 0;
+		} else if (currentBlockPointer + currentBlockSize > this.fileSize) {
+			LOGGER.warning("current block largher than file size: " + currentBlockSize);
+			return -1;
+		}
+		return currentBlockSize;
+	}
+
+	/**
+	 * Calculates the top-left coordinates of the tile which underlies the given block.
+	 * 
+	 * @param subFileParameter
+	 *            the parameters of the sub-file which contains the block.
+	 * @param row
+	 *            the row of the block in the sub-file.
+	 * @param column
+	 *            the column of the block in the sub-file.
+	 */
+	private void calculateTileCoordinates(SubFileParameter subFileParameter, long row, long column) {
+		double tileLatitudeDeg = MercatorProjection.tileYToLatitude(subFileParameter.boundaryTileTop + row,
+				subFileParameter.baseZoomLevel);
+		double tileLongitudeDeg = MercatorProjection.tileXToLongitude(subFileParameter.boundaryTileLeft + column,
+				subFileParameter.baseZoomLevel);
+		this.tileLatitude = (int) (tileLatitudeDeg * 1000000);
+		this.tileLongitude = (int) (tileLongitudeDeg * 1000000);
+	}
+
+	/**
+	 * Classifies the blocks of the given query by their index entries.
+	 * 
+	 * @param queryParameters
+	 *            the parameters of the query.
+	 * @param subFileParameter
+	 *            the parameters of the sub-file which contains the blocks.
+	 * @return the content of the queried blocks or null if the index could not be read.
+	 */
+	private TileContent classifyBlocks(QueryParameters queryParameters, SubFileParameter subFileParameter) {
+		BlockBitmap blockBitmap = this.blockBitmaps == null ? null : this.blockBitmaps.get(subFileParameter);
+		boolean queryIsWater = true;
+		boolean queryReadWaterInfo = false;
+
+		for (long row = queryParameters.fromBlockY; row <= queryParameters.toBlockY; ++row) {
+			for (long column = queryParameters.fromBlockX; column <= queryParameters.toBlockX; ++column) {
+				long blockNumber = row * subFileParameter.blocksWidth + column;
+
+				if (blockBitmap != null) {
+					if (blockBitmap.hasData(blockNumber)) {
+						return TileContent.DATA;
+					}
+					queryIsWater &= blockBitmap.isWater(blockNumber);
+					queryReadWaterInfo = true;
+					continue;
+				}
+
+				long currentBlockIndexEntry = getIndexEntry(subFileParameter, blockNumber);
+				if (currentBlockIndexEntry < 0) {
+					return null;
+				}
+				queryIsWater &= (currentBlockIndexEntry & BITMASK_INDEX_WATER) != 0;
+				queryReadWaterInfo = true;
+
+				// a block is empty if the next block starts at the same position
+				long nextBlockPointer;
+				if (blockNumber + 1 == subFileParameter.numberOfBlocks) {
+					nextBlockPointer = subFileParameter.subFileSize;
+				} else {
+					long nextBlockIndexEntry = getIndexEntry(subFileParameter, blockNumber + 1);
+					if (nextBlockIndexEntry < 0) {
+						return null;
+					}
+					nextBlockPointer = nextBlockIndexEntry & BITMASK_INDEX_OFFSET;
+				}
+				if (nextBlockPointer != (currentBlockIndexEntry & BITMASK_INDEX_OFFSET)) {
+					return TileContent.DATA;
+				}
+			}
+		}
+
+		return queryIsWater && queryReadWaterInfo ? TileContent.WATER : TileContent.EMPTY;
+	}
+
+	/**
+	 * Executes a query for the given area.
+	 * 
+	 * @param queryArea
+	 *            the area of the query.
+	 * @param zoomLevel
+	 *            the zoom level of the query.
+	 * @param tagFilter
+	 *            selects the POIs and ways which should be read (may be null).
+	 * @param poisOnly
+	 *            true if only the POIs inside of the bounding box of the area should be read, false otherwise.
+	 * @return the read map data or null if the map data could not be read.
+	 */
+	private MapReadResult executeAreaQuery(QueryArea queryArea, byte zoomLevel, TagFilter tagFilter,
+			boolean poisOnly) {
+		startQuery();
+		try {
+			QueryParameters queryParameters = new QueryParameters();
+			queryParameters.queryZoomLevel = this.mapFileHeader.getQueryZoomLevel(zoomLevel);
+			if (tagFilter != null) {
+				queryParameters.tagFilter = resolveTagFilter(tagFilter);
+			}
+			if (poisOnly) {
+				queryParameters.poisOnly = true;
+				queryParameters.poiBoundingBox = queryArea.boundingBox;
+			}
+
+			// get and check the sub-file for the query zoom level
+			SubFileParameter subFileParameter = this.mapFileHeader.getSubFileParameter(queryParameters.queryZoomLevel);
+			if (subFileParameter == null) {
+				LOGGER.warning("no sub-file for zoom level: " + queryParameters.queryZoomLevel);
+				return null;
+			}
+
+			// above the base zoom level, the area is matched against the sub-tiles of the way tile bitmask
+			int zoomLevelDifference = Math.min(Math.max(zoomLevel - subFileParameter.baseZoomLevel, 0), 2);
+			byte areaZoomLevel = (byte) (subFileParameter.baseZoomLevel + zoomLevelDifference);
+			BoundingBox boundingBox = queryArea.boundingBox;
+			queryParameters.fromBaseTileX = MercatorProjection.longitudeToTileX(boundingBox.getMinLongitude(),
+					areaZoomLevel) >>> zoomLevelDifference;
+			queryParameters.fromBaseTileY = MercatorProjection.latitudeToTileY(boundingBox.getMaxLatitude(),
+					areaZoomLevel) >>> zoomLevelDifference;
+			queryParameters.toBaseTileX = MercatorProjection.longitudeToTileX(boundingBox.getMaxLongitude(),
+					areaZoomLevel) >>> zoomLevelDifference;
+			queryParameters.toBaseTileY = MercatorProjection.latitudeToTileY(boundingBox.getMinLatitude(),
+					areaZoomLevel) >>> zoomLevelDifference;
+			queryParameters.useTileBitmask = zoomLevelDifference > 0;
+			QueryCalculations.calculateBlocks(queryParameters, subFileParameter);
+
+			DeduplicatingMapReadResultBuilder mapReadResultBuilder = new DeduplicatingMapReadResultBuilder();
+			if (!processAreaBlocks(queryParameters, subFileParameter, queryArea, zoomLevelDifference,
+					mapReadResultBuilder)) {
+				return null;
+			}
+			return mapReadResultBuilder.build();
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, null, e);
+			return null;
+		} finally {
+			finishQuery();
+		}
+	}
+
+	/**
+	 * Executes a query for the given tile.
+	 * 
+	 * @param tile
+	 *            defines area and zoom level of read map data.
+	 * @param tagFilter
+	 *            selects the POIs and ways which should be read (may be null).
+	 * @param mapDataSink
+	 *            the sink which receives the read map data.
+	 * @param mapReadResultBuilder
+	 *            the sink if it is a result builder, which allows to answer the query from the block cache (may be
+	 *            null).
+	 * @param poisOnly
+	 *            true if only the POI section of each block should be read, false otherwise.
+	 * @return true if the map data was read successfully, false otherwise.
+	 */
+	private boolean executeQuery(Tile tile, TagFilter tagFilter, MapDataSink mapDataSink,
+			MapReadResultBuilder mapReadResultBuilder, boolean poisOnly) {
+		startQuery();
 		try {
-			if (mapFile == null) {
-				throw new IllegalArgumentException("mapFile must not be null");
+			QueryParameters queryParameters = new QueryParameters();
+			queryParameters.queryZoomLevel = this.mapFileHeader.getQueryZoomLevel(tile.zoomLevel);
+			queryParameters.poisOnly = poisOnly;
+			if (tagFilter != null) {
+				queryParameters.tagFilter = resolveTagFilter(tagFilter);
 			}
 
-			// make sure to close any previously opened file first
-			closeFile();
+			// get and check the sub-file for the query zoom level
+			SubFileParameter subFileParameter = this.mapFileHeader.getSubFileParameter(queryParameters.queryZoomLevel);
+			if (subFileParameter == null) {
+				LOGGER.warning("no sub-file for zoom level: " + queryParameters.queryZoomLevel);
+				return false;
+			}
+
+			QueryCalculations.calculateBaseTiles(queryParameters, tile, subFileParameter);
+			QueryCalculations.calculateBlocks(queryParameters, subFileParameter);
+
+			return processBlocks(queryParameters, subFileParameter, mapDataSink, mapReadResultBuilder);
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, null, e);
+			return false;
+		} finally {
+			finishQuery();
+		}
+	}
+
+	/**
+	 * Reports the statistics of the current query to the query listener, if any.
+	 */
+	private void finishQuery() {
+		if (this.queryStatistics != null) {
+			QueryStatistics finishedQueryStatistics = this.queryStatistics;
+			this.queryStatistics = null;
+			finishedQueryStatistics.decodeTime = System.nanoTime() - this.queryStartTime
+					- finishedQueryStatistics.readTime;
+			this.queryListener.onQueryFinished(finishedQueryStatistics);
+		}
+	}
+
+	private long getIndexEntry(SubFileParameter subFileParameter, long blockNumber) {
+		return this.databaseIndexCache.getIndexEntry(subFileParameter, blockNumber, this.queryStatistics);
+	}
+
+	/**
+	 * Logs the debug signatures of the current way and block.
+	 */
+	private void logDebugSignatures() {
+		if (this.mapFileHeader.getMapFileInfo().debugFile) {
+			LOGGER.warning(DEBUG_SIGNATURE_WAY + this.signatureWay);
+			LOGGER.warning(DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
+		}
+	}
+
+	/**
+	 * Calculates the blocks which are needed for the given tile of a batch query and registers the tile with them.
+	 * 
+	 * @param tile
+	 *            the queried tile.
+	 * @param batchBlocks
+	 *            all blocks of the batch query so far.
+	 * @return the state of the tile or null if the map file has no sub-file for the tile.
+	 * @throws IOException
+	 *             if an error occurs while reading the index.
+	 */
+	private BatchTile prepareBatchTile(Tile tile, Map<BlockCacheKey, BatchBlock> batchBlocks) throws IOException {
+		QueryParameters queryParameters = new QueryParameters();
+		queryParameters.queryZoomLevel = this.mapFileHeader.getQueryZoomLevel(tile.zoomLevel);
+
+		// get and check the sub-file for the query zoom level
+		SubFileParameter subFileParameter = this.mapFileHeader.getSubFileParameter(queryParameters.queryZoomLevel);
+		if (subFileParameter == null) {
+			LOGGER.warning("no sub-file for zoom level: " + queryParameters.queryZoomLevel);
+			return null;
+		}
+
+		QueryCalculations.calculateBaseTiles(queryParameters, tile, subFileParameter);
+		QueryCalculations.calculateBlocks(queryParameters, subFileParameter);
 
-			// check if the file exists and is readable
-			if (!mapFile.exists()) {
-				return new FileOpenResult("file does not exist: " + mapFile);
-			} else if (!mapFile.isFile()) {
-				return new FileOpenResult("not a file: " + mapFile);
-			} else if (!mapFile.canRead()) {
-				return new FileOpenResult("cannot read file: " + mapFile);
+		BatchTile batchTile = new BatchTile(queryParameters, subFileParameter);
+		for (long row = queryParameters.fromBlockY; row <= queryParameters.toBlockY; ++row) {
+			for (long column = queryParameters.fromBlockX; column <= queryParameters.toBlockX; ++column) {
+				// calculate the actual block number of the needed block in the file
+				long blockNumber = row * subFileParameter.blocksWidth + column;
+
+				// get the current index entry
+				long currentBlockIndexEntry = getIndexEntry(subFileParameter, blockNumber);
+
+				// check if the current query would still return a water tile
+				if (batchTile.queryIsWater) {
+					// check the water flag of the current block in its index entry
+					batchTile.queryIsWater &= (currentBlockIndexEntry & BITMASK_INDEX_WATER) != 0;
+					batchTile.queryReadWaterInfo = true;
+				}
+
+				// get the current block pointer and calculate the size of the current block
+				long currentBlockPointer = currentBlockIndexEntry & BITMASK_INDEX_OFFSET;
+				int currentBlockSize = calculateBlockSize(subFileParameter, blockNumber, currentBlockPointer);
+				if (currentBlockSize < 0) {
+					batchTile.failed = true;
+					return batchTile;
+				} else if (currentBlockSize == 0) {
+					// the current block is empty or too large, continue with the next block
+					continue;
+				}
+
+				BlockCacheKey blockCacheKey = new BlockCacheKey(subFileParameter, blockNumber);
+				BatchBlock batchBlock = batchBlocks.get(blockCacheKey);
+				if (batchBlock == null) {
+					long currentBlockPosition = subFileParameter.startAddress + currentBlockPointer;
+					batchBlock = new BatchBlock(subFileParameter, blockCacheKey, row, column, currentBlockPosition,
+							currentBlockSize);
+					batchBlocks.put(blockCacheKey, batchBlock);
+				}
+				batchBlock.batchTiles.add(batchTile);
 			}
+		}
+		return batchTile;
+	}
+
+	/**
+	 * Reads and decodes all blocks of an area query which intersect the area.
+	 * 
+	 * @param queryParameters
+	 *            the parameters of the current query.
+	 * @param subFileParameter
+	 *            the parameters of the sub-file which contains the blocks.
+	 * @param queryArea
+	 *            the area of the query.
+	 * @param zoomLevelDifference
+	 *            the difference between the zoom level of the sub-tiles which are matched against the area and the
+	 *            base zoom level, at most two.
+	 * @param mapReadResultBuilder
+	 *            the builder which receives the decoded POIs and ways.
+	 * @return true if the map data was read successfully, false otherwise.
+	 * @throws IOException
+	 *             if an error occurs while reading the map file.
+	 */
+	private boolean processAreaBlocks(QueryParameters queryParameters, SubFileParameter subFileParameter,
+			QueryArea queryArea, int zoomLevelDifference, DeduplicatingMapReadResultBuilder mapReadResultBuilder)
+			throws IOException {
+		boolean queryIsWater = true;
+		boolean queryReadWaterInfo = false;
+		byte baseZoomLevel = subFileParameter.baseZoomLevel;
+		byte areaZoomLevel = (byte) (baseZoomLevel + zoomLevelDifference);
+		int subTiles = 1 << zoomLevelDifference;
+
+		for (long row = queryParameters.fromBlockY; row <= queryParameters.toBlockY; ++row) {
+			for (long column = queryParameters.fromBlockX; column <= queryParameters.toBlockX; ++column) {
+				long baseTileX = subFileParameter.boundaryTileLeft + column;
+				long baseTileY = subFileParameter.boundaryTileTop + row;
 
-			// open the file in read only mode
-			this.inputFile = new RandomAccessFile(mapFile, READ_ONLY_MODE);
-			this.fileSize = this.inputFile.length();
+				// check which parts of the block intersect the area
+				if (zoomLevelDifference == 0) {
+					if (!queryArea.intersectsTile(baseTileX, baseTileY, baseZoomLevel)) {
+						continue;
+					}
+				} else {
+					int queryTileBitmask = 0;
+					for (long tileY = baseTileY * subTiles; tileY < (baseTileY + 1) * subTiles; ++tileY) {
+						for (long tileX = baseTileX * subTiles; tileX < (baseTileX + 1) * subTiles; ++tileX) {
+							if (queryArea.intersectsTile(tileX, tileY, areaZoomLevel)) {
+								Tile tile = new Tile(tileX, tileY, areaZoomLevel);
+								queryTileBitmask |= QueryCalculations.calculateTileBitmask(tile, zoomLevelDifference);
+							}
+						}
+					}
+					if (queryTileBitmask == 0) {
+						continue;
+					}
+					queryParameters.queryTileBitmask = queryTileBitmask;
+				}
+
+				// calculate the actual block number of the needed block in the file
+				long blockNumber = row * subFileParameter.blocksWidth + column;
+
+				// get the current index entry
+				long currentBlockIndexEntry = getIndexEntry(subFileParameter, blockNumber);
+
+				// check if the current query would still return a water tile
+				if (queryIsWater) {
+					// check the water flag of the current block in its index entry
+					queryIsWater &= (currentBlockIndexEntry & BITMASK_INDEX_WATER) != 0;
+					queryReadWaterInfo = true;
+				}
+
+				// get the current block pointer and calculate the size of the current block
+				long currentBlockPointer = currentBlockIndexEntry & BITMASK_INDEX_OFFSET;
+				int currentBlockSize = calculateBlockSize(subFileParameter, blockNumber, currentBlockPointer);
+				if (currentBlockSize < 0) {
+					return false;
+				} else if (currentBlockSize == 0) {
+					// the current block is empty or too large, continue with the next block
+					continue;
+				}
+
+				long currentBlockPosition = subFileParameter.startAddress + currentBlockPointer;
+				calculateTileCoordinates(subFileParameter, row, column);
+				if (queryParameters.poisOnly) {
+					if (!processPoiBlock(queryParameters, subFileParameter, currentBlockPosition, currentBlockSize,
+							mapReadResultBuilder)) {
+						return false;
+					}
+					continue;
+				}
+
+				// read the current block into the buffer
+				if (!readFromFile(currentBlockPosition, currentBlockSize, 1)) {
+					LOGGER.warning("reading current block has failed: " + currentBlockSize);
+					return false;
+				}
+				int minLatitude = (int) (MercatorProjection.tileYToLatitude(baseTileY + 1, baseZoomLevel) * 1000000);
+				int maxLongitude = (int) (MercatorProjection.tileXToLongitude(baseTileX + 1, baseZoomLevel) * 1000000);
+				mapReadResultBuilder.setBlockBoundaries(minLatitude, this.tileLongitude, this.tileLatitude,
+						maxLongitude);
 
-			this.readBuffer = new ReadBuffer(this.inputFile);
-			this.mapFileHeader = new MapFileHeader();
-			FileOpenResult fileOpenResult = this.mapFileHeader.readHeader(this.readBuffer, this.fileSize);
-			if (!fileOpenResult.isSuccess()) {
-				closeFile();
-				return fileOpenResult;
+				processBlockAtomically(queryParameters, subFileParameter, mapReadResultBuilder);
 			}
-
-			return FileOpenResult.SUCCESS;
-		} catch (IOException e) {
-			LOGGER.log(Level.SEVERE, null, e);
-			// make sure that the file is closed
-			closeFile();
-			return new FileOpenResult(e.getMessage());
 		}
+
+		// the query is finished, was the water flag set for all read blocks?
+		mapReadResultBuilder.onQueryFinished(queryIsWater && queryReadWaterInfo);
+		return true;
 	}
 
 	/**
-	 * Reads all map data for the area covered by the given tile at the tile zoom level.
+	 * Decodes the given block of a batch query, which must be the current content of the read buffer, and adds its
+	 * POIs and ways to all tiles of the block.
 	 * 
-	 * @param tile
-	 *            defines area and zoom level of read map data.
-	 * @return the read map data.
+	 * @param batchBlock
+	 *            the block of the batch query.
 	 */
-	public MapReadResult readMapData(Tile tile) {
-		try {
-			prepareExecution();
-			QueryParameters queryParameters = new QueryParameters();
-			queryParameters.queryZoomLevel = this.mapFileHeader.getQueryZoomLevel(tile.zoomLevel);
+	private void processBatchBlock(BatchBlock batchBlock) {
+		calculateTileCoordinates(batchBlock.subFileParameter, batchBlock.row, batchBlock.column);
 
-			// get and check the sub-file for the query zoom level
-			SubFileParameter subFileParameter = this.mapFileHeader.getSubFileParameter(queryParameters.queryZoomLevel);
-			if (subFileParameter == null) {
-				LOGGER.warning("no sub-file for zoom level: " + queryParameters.queryZoomLevel);
-				return null;
+		try {
+			boolean cacheable = this.blockCache != null && batchBlock.usesTileBitmask();
+			if (batchBlock.batchTiles.size() == 1 && !cacheable) {
+				BatchTile batchTile = batchBlock.batchTiles.get(0);
+				if (!batchTile.failed) {
+					processBlockAtomically(batchTile.queryParameters, batchBlock.subFileParameter,
+							batchTile.mapReadResultBuilder);
+				}
+				return;
 			}
 
-			QueryCalculations.calculateBaseTiles(queryParameters, tile, subFileParameter);
-			QueryCalculations.calculateBlocks(queryParameters, subFileParameter);
-
-			return processBlocks(queryParameters, subFileParameter);
-		} catch (IOException e) {
+			// decode the complete block once and select the POIs and ways of each tile from it
+			QueryParameters queryParameters = batchBlock.batchTiles.get(0).queryParameters;
+			CachedBlock cachedBlock = new CachedBlock();
+			if (processBlock(queryParameters, batchBlock.subFileParameter, null, cachedBlock)) {
+				if (cacheable) {
+					this.blockCache.put(batchBlock.blockCacheKey, cachedBlock);
+				}
+				batchBlock.cachedBlock = cachedBlock;
+				shareCachedBlock(batchBlock);
+			}
+		} catch (IndexOutOfBoundsException e) {
 			LOGGER.log(Level.SEVERE, null, e);
-			return null;
 		}
 	}
 
-	private void decodeWayNodesDoubleDelta(float[] waySegment) {
-		// get the first way node latitude offset (VBE-S)
-		int wayNodeLatitude = this.tileLatitude + this.readBuffer.readSignedInt();
-
-		// get the first way node longitude offset (VBE-S)
-		int wayNodeLongitude = this.tileLongitude + this.readBuffer.readSignedInt();
-
-		// store the first way node
-		waySegment[1] = wayNodeLatitude;
-		waySegment[0] = wayNodeLongitude;
-
-		int previousSingleDeltaLatitude = 0;
-		int previousSingleDeltaLongitude = 0;
-
-		for (int wayNodesIndex = 2; wayNodesIndex < waySegment.length; wayNodesIndex += 2) {
-			// get the way node latitude double-delta offset (VBE-S)
-			int doubleDeltaLatitude = this.readBuffer.readSignedInt();
-
-			// get the way node longitude double-delta offset (VBE-S)
-			int doubleDeltaLongitude = this.readBuffer.readSignedInt();
-
-			int singleDeltaLatitude = doubleDeltaLatitude + previousSingleDeltaLatitude;
-			int singleDeltaLongitude = doubleDeltaLongitude + previousSingleDeltaLongitude;
-
-			wayNodeLatitude = wayNodeLatitude + singleDeltaLatitude;
-			wayNodeLongitude = wayNodeLongitude + singleDeltaLongitude;
-
-			waySegment[wayNodesIndex + 1] = wayNodeLatitude;
-			waySegment[wayNodesIndex] = wayNodeLongitude;
-
-			previousSingleDeltaLatitude = singleDeltaLatitude;
-			previousSingleDeltaLongitude = singleDeltaLongitude;
+	/**
+	 * Reads and decodes the given blocks of a batch query. Blocks which directly follow each other in the file are
+	 * read with a single file access.
+	 * 
+	 * @param batchBlocks
+	 *            the blocks of the batch query, sorted by their position in the file.
+	 * @throws IOException
+	 *             if an error occurs while reading the file.
+	 */
+	private void processBatchBlocks(List<BatchBlock> batchBlocks) throws IOException {
+		// blocks which are already decoded do not need to be read again
+		if (this.blockCache != null) {
+			for (int i = 0, n = batchBlocks.size(); i < n; ++i) {
+				BatchBlock batchBlock = batchBlocks.get(i);
+				if (batchBlock.usesTileBitmask()) {
+					batchBlock.cachedBlock = this.blockCache.get(batchBlock.blockCacheKey);
+				}
+			}
 		}
-	}
-
-	private void decodeWayNodesSingleDelta(float[] waySegment) {
-		// get the first way node latitude single-delta offset (VBE-S)
-		int wayNodeLatitude = this.tileLatitude + this.readBuffer.readSignedInt();
 
-		// get the first way node longitude single-delta offset (VBE-S)
-		int wayNodeLongitude = this.tileLongitude + this.readBuffer.readSignedInt();
-
-		// store the first way node
-		waySegment[1] = wayNodeLatitude;
-		waySegment[0] = wayNodeLongitude;
+		int numberOfBlocks = batchBlocks.size();
+		int blockIndex = 0;
+		while (blockIndex < numberOfBlocks) {
+			BatchBlock firstBatchBlock = batchBlocks.get(blockIndex);
+			if (firstBatchBlock.cachedBlock != null) {
+				shareCachedBlock(firstBatchBlock);
+				++blockIndex;
+				continue;
+			}
 
-		for (int wayNodesIndex = 2; wayNodesIndex < waySegment.length; wayNodesIndex += 2) {
-			// get the way node latitude offset (VBE-S)
-			wayNodeLatitude = wayNodeLatitude + this.readBuffer.readSignedInt();
+			// extend the read as long as the next block directly follows in the file and still fits into the buffer
+			int readLength = firstBatchBlock.size;
+			int lastBlockIndex = blockIndex;
+			while (lastBlockIndex + 1 < numberOfBlocks) {
+				BatchBlock nextBatchBlock = batchBlocks.get(lastBlockIndex + 1);
+				if (nextBatchBlock.cachedBlock != null
+						|| nextBatchBlock.position != firstBatchBlock.position + readLength
+						|| readLength + nextBatchBlock.size > ReadBuffer.MAXIMUM_BUFFER_SIZE) {
+					break;
+				}
+				readLength += nextBatchBlock.size;
+				++lastBlockIndex;
+			}
 
-			// get the way node longitude offset (VBE-S)
-			wayNodeLongitude = wayNodeLongitude + this.readBuffer.readSignedInt();
+			if (readFromFile(firstBatchBlock.position, readLength, lastBlockIndex - blockIndex + 1)) {
+				for (int i = blockIndex; i <= lastBlockIndex; ++i) {
+					BatchBlock batchBlock = batchBlocks.get(i);
+					this.readBuffer.selectRegion((int) (batchBlock.position - firstBatchBlock.position),
+							batchBlock.size);
+					processBatchBlock(batchBlock);
+				}
+			} else {
+				LOGGER.warning("reading blocks has failed: " + readLength);
+				for (int i = blockIndex; i <= lastBlockIndex; ++i) {
+					for (BatchTile batchTile : batchBlocks.get(i).batchTiles) {
+						batchTile.failed = true;
+					}
+				}
+			}
 
-			waySegment[wayNodesIndex + 1] = wayNodeLatitude;
-			waySegment[wayNodesIndex] = wayNodeLongitude;
+			blockIndex = lastBlockIndex + 1;
 		}
 	}
 
 	/**
-	 * Logs the debug signatures of the current way and block.
+	 * Decodes the current block.
+	 * 
+	 * @param queryParameters
+	 *            the parameters of the current query.
+	 * @param subFileParameter
+	 *            the parameters of the sub-file which contains the block.
+	 * @param mapDataSink
+	 *            the sink which receives the decoded POIs and ways.
+	 * @param cachedBlock
+	 *            if not null, all POIs and ways of the block are decoded for all zoom levels and passed to the given
+	 *            cached block instead of the sink, regardless of the query zoom level and tile bitmask.
+	 * @return true if the block was decoded successfully, false otherwise.
 	 */
-	private void logDebugSignatures() {
-		if (this.mapFileHeader.getMapFileInfo().debugFile) {
-			LOGGER.warning(DEBUG_SIGNATURE_WAY + this.signatureWay);
-			LOGGER.warning(DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
-		}
-	}
-
-	private void prepareExecution() {
-		if (this.databaseIndexCache == null) {
-			this.databaseIndexCache = new IndexCache(this.inputFile, INDEX_CACHE_SIZE);
-		}
-	}
-
-	private PoiWayBundle processBlock(QueryParameters queryParameters, SubFileParameter subFileParameter) {
+	private boolean processBlock(QueryParameters queryParameters, SubFileParameter subFileParameter,
+			MapDataSink mapDataSink, CachedBlock cachedBlock) {
 		if (!processBlockSignature()) {
-			return null;
+			return false;
 		}
 
 		int[][] zoomTable = readZoomTable(subFileParameter);
 		if (zoomTable == null) {
-			return null;
+			return false;
+		}
+		int zoomTableRow;
+		if (cachedBlock == null) {
+			zoomTableRow = queryParameters.queryZoomLevel - subFileParameter.zoomLevelMin;
+		} else {
+			zoomTableRow = subFileParameter.zoomLevelMax - subFileParameter.zoomLevelMin;
+			cachedBlock.setZoomTable(zoomTable);
 		}
-		int zoomTableRow = queryParameters.queryZoomLevel - subFileParameter.zoomLevelMin;
 		int poisOnQueryZoomLevel = zoomTable[zoomTableRow][0];
 		int waysOnQueryZoomLevel = zoomTable[zoomTableRow][1];
 
@@ -423,7 +1548,7 @@ public class MapDatabase {
 			if (this.mapFileHeader.getMapFileInfo().debugFile) {
 				LOGGER.warning(DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
 			}
-			return null;
+			return false;
 		}
 
 		// add the current buffer position to the relative first way offset
@@ -433,41 +1558,70 @@ public class MapDatabase {
 			if (this.mapFileHeader.getMapFileInfo().debugFile) {
 				LOGGER.warning(DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
 			}
-			return null;
+			return false;
 		}
 
-		List<PointOfInterest> pois = processPOIs(poisOnQueryZoomLevel);
-		if (pois == null) {
-			return null;
-		}
+		MapDataSink blockDataSink = cachedBlock == null ? mapDataSink : cachedBlock;
+		ResolvedTagFilter tagFilter = cachedBlock == null ? queryParameters.tagFilter : null;
 
-		// finished reading POIs, check if the current buffer position is valid
-		if (this.readBuffer.getBufferPosition() > firstWayOffset) {
-			LOGGER.warning("invalid buffer position: " + this.readBuffer.getBufferPosition());
-			if (this.mapFileHeader.getMapFileInfo().debugFile) {
-				LOGGER.warning(DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
+		// skip all POIs if the tag filter does not accept any of them
+		if (tagFilter == null || tagFilter.acceptsAnyPoi) {
+			if (!processPOIs(poisOnQueryZoomLevel, blockDataSink, tagFilter, null)) {
+				return false;
 			}
-			return null;
+
+			// finished reading POIs, check if the current buffer position is valid
+			if (this.readBuffer.getBufferPosition() > firstWayOffset) {
+				LOGGER.warning("invalid buffer position: " + this.readBuffer.getBufferPosition());
+				if (this.mapFileHeader.getMapFileInfo().debugFile) {
+					LOGGER.warning(DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
+				}
+				return false;
+			}
+		}
+
+		// skip all ways if the tag filter does not accept any of them
+		if (tagFilter != null && !tagFilter.acceptsAnyWay) {
+			return true;
 		}
 
 		// move the pointer to the first way
 		this.readBuffer.setBufferPosition(firstWayOffset);
 
-		List<Way> ways = processWays(queryParameters, waysOnQueryZoomLevel);
-		if (ways == null) {
-			return null;
-		}
+		return processWays(queryParameters, waysOnQueryZoomLevel, blockDataSink, tagFilter, cachedBlock != null);
+	}
 
-		return new PoiWayBundle(pois, ways);
+	/**
+	 * Decodes the block which is the current content of the read buffer and passes its POIs and ways to the given
+	 * sink. If the block turns out to be corrupt, the sink is told to discard the POIs and ways of the block which it
+	 * has already received, so that a corrupt block never contributes to the result of a query.
+	 * 
+	 * @param queryParameters
+	 *            the parameters of the current query.
+	 * @param subFileParameter
+	 *            the parameters of the sub-file which contains the block.
+	 * @param mapDataSink
+	 *            the sink which receives the decoded POIs and ways.
+	 */
+	private void processBlockAtomically(QueryParameters queryParameters, SubFileParameter subFileParameter,
+			MapDataSink mapDataSink) {
+		this.blockPois = 0;
+		this.blockWays = 0;
+		try {
+			if (processBlock(queryParameters, subFileParameter, mapDataSink, null)) {
+				return;
+			}
+		} catch (IndexOutOfBoundsException e) {
+			LOGGER.log(Level.SEVERE, null, e);
+		}
+		abortBlock(mapDataSink);
 	}
 
-	private MapReadResult processBlocks(QueryParameters queryParameters, SubFileParameter subFileParameter)
-			throws IOException {
+	private boolean processBlocks(QueryParameters queryParameters, SubFileParameter subFileParameter,
+			MapDataSink mapDataSink, MapReadResultBuilder mapReadResultBuilder) throws IOException {
 		boolean queryIsWater = true;
 		boolean queryReadWaterInfo = false;
 
-		MapReadResultBuilder mapReadResultBuilder = new MapReadResultBuilder();
-
 		// read and process all blocks from top to bottom and from left to right
 		for (long row = queryParameters.fromBlockY; row <= queryParameters.toBlockY; ++row) {
 			for (long column = queryParameters.fromBlockX; column <= queryParameters.toBlockX; ++column) {
@@ -476,7 +1630,7 @@ public class MapDatabase {
 				long blockNumber = row * subFileParameter.blocksWidth + column;
 
 				// get the current index entry
-				long currentBlockIndexEntry = this.databaseIndexCache.getIndexEntry(subFileParameter, blockNumber);
+				long currentBlockIndexEntry = getIndexEntry(subFileParameter, blockNumber);
 
 				// check if the current query would still return a water tile
 				if (queryIsWater) {
@@ -485,80 +1639,66 @@ public class MapDatabase {
 					queryReadWaterInfo = true;
 				}
 
-				// get and check the current block pointer
+				// get the current block pointer and calculate the size of the current block
 				long currentBlockPointer = currentBlockIndexEntry & BITMASK_INDEX_OFFSET;
-				if (currentBlockPointer < 1 || currentBlockPointer > subFileParameter.subFileSize) {
-					LOGGER.warning("invalid current block pointer: " + currentBlockPointer);
-					LOGGER.warning("subFileSize: " + subFileParameter.subFileSize);
-					return null;
+				int currentBlockSize = calculateBlockSize(subFileParameter, blockNumber, currentBlockPointer);
+				if (currentBlockSize < 0) {
+					return false;
+				} else if (currentBlockSize == 0) {
+					// the current block is empty or too large, continue with the next block
+					continue;
 				}
 
-				long nextBlockPointer;
-				// check if the current block is the last block in the file
-				if (blockNumber + 1 == subFileParameter.numberOfBlocks) {
-					// set the next block pointer to the end of the file
-					nextBlockPointer = subFileParameter.subFileSize;
-				} else {
-					// get and check the next block pointer
-					nextBlockPointer = this.databaseIndexCache.getIndexEntry(subFileParameter, blockNumber + 1)
-							& BITMASK_INDEX_OFFSET;
-					if (nextBlockPointer < 1 || nextBlockPointer > subFileParameter.subFileSize) {
-						LOGGER.warning("invalid next block pointer: " + nextBlockPointer);
-						LOGGER.warning("sub-file size: " + subFileParameter.subFileSize);
-						return null;
+				// only tiles above the base zoom level share their blocks with other tiles
+				BlockCacheKey blockCacheKey = null;
+				CachedBlock cachedBlock = null;
+				if (mapReadResultBuilder != null && this.blockCache != null && queryParameters.useTileBitmask) {
+					blockCacheKey = new BlockCacheKey(subFileParameter, blockNumber);
+					cachedBlock = this.blockCache.get(blockCacheKey);
+					if (cachedBlock != null) {
+						mapReadResultBuilder.add(cachedBlock.getPoiWayBundle(queryParameters, subFileParameter));
+						continue;
 					}
 				}
 
-				// calculate the size of the current block
-				int currentBlockSize = (int) (nextBlockPointer - currentBlockPointer);
-				if (currentBlockSize < 0) {
-					LOGGER.warning("current block size must not be negative: " + currentBlockSize);
-					return null;
-				} else if (currentBlockSize == 0) {
-					// the current block is empty, continue with the next block
-					continue;
-				} else if (currentBlockSize > ReadBuffer.MAXIMUM_BUFFER_SIZE) {
-					// the current block is too large, continue with the next block
-					LOGGER.warning("current block size too large: " + currentBlockSize);
+				long currentBlockPosition = subFileParameter.startAddress + currentBlockPointer;
+				calculateTileCoordinates(subFileParameter, row, column);
+				if (queryParameters.poisOnly) {
+					if (!processPoiBlock(queryParameters, subFileParameter, currentBlockPosition, currentBlockSize,
+							mapDataSink)) {
+						return false;
+					}
 					continue;
-				} else if (currentBlockPointer + currentBlockSize > this.fileSize) {
-					LOGGER.warning("current block largher than file size: " + currentBlockSize);
-					return null;
 				}
 
-				// seek to the current block in the map file
-				this.inputFile.seek(subFileParameter.startAddress + currentBlockPointer);
-
 				// read the current block into the buffer
-				if (!this.readBuffer.readFromFile(currentBlockSize)) {
+				if (!readFromFile(currentBlockPosition, currentBlockSize, 1)) {
 					// skip the current block
 					LOGGER.warning("reading current block has failed: " + currentBlockSize);
-					return null;
+					return false;
 				}
 
-				// calculate the top-left coordinates of the underlying tile
-				double tileLatitudeDeg = MercatorProjection.tileYToLatitude(subFileParameter.boundaryTileTop + row,
-						subFileParameter.baseZoomLevel);
-				double tileLongitudeDeg = MercatorProjection.tileXToLongitude(subFileParameter.boundaryTileLeft
-						+ column, subFileParameter.baseZoomLevel);
-				this.tileLatitude = (int) (tileLatitudeDeg * 1000000);
-				this.tileLongitude = (int) (tileLongitudeDeg * 1000000);
+				if (blockCacheKey == null) {
+					processBlockAtomically(queryParameters, subFileParameter, mapDataSink);
+					continue;
+				}
 
 				try {
-					PoiWayBundle poiWayBundle = processBlock(queryParameters, subFileParameter);
-					mapReadResultBuilder.add(poiWayBundle);
-				} catch (ArrayIndexOutOfBoundsException e) {
+					// decode the complete block once and answer this and all following queries from the cache
+					cachedBlock = new CachedBlock();
+					if (processBlock(queryParameters, subFileParameter, null, cachedBlock)) {
+						this.blockCache.put(blockCacheKey, cachedBlock);
+						mapReadResultBuilder.add(cachedBlock.getPoiWayBundle(queryParameters, subFileParameter));
+					}
+				} catch (IndexOutOfBoundsException e) {
 					LOGGER.log(Level.SEVERE, null, e);
 				}
 			}
 		}
 
 		// the query is finished, was the water flag set for all blocks?
-		if (queryIsWater && queryReadWaterInfo) {
-			mapReadResultBuilder.isWater = true;
-		}
-
-		return mapReadResultBuilder.build();
+		mapDataSink.onQueryFinished(queryIsWater && queryReadWaterInfo);
+		return true;
 	}
 
 	/**
@@ -578,9 +1718,216 @@ public class MapDatabase {
 		return true;
 	}
 
-	private List<PointOfInterest> processPOIs(int numberOfPois) {
-		List<PointOfInterest> pois = new ArrayList<PointOfInterest>();
-		Tag[] poiTags = this.mapFileHeader.getMapFileInfo().poiTags;
+	/**
+	 * Reads and decodes a single block of a nearest-feature lookup.
+	 * 
+	 * @param queryParameters
+	 *            the parameters of the current query.
+	 * @param subFileParameter
+	 *            the parameters of the sub-file which contains the block.
+	 * @param row
+	 *            the row of the block in the sub-file.
+	 * @param column
+	 *            the column of the block in the sub-file.
+	 * @param nearestResultBuilder
+	 *            the sink which receives the POIs and ways of the block.
+	 * @return true if the block was processed successfully, false otherwise.
+	 * @throws IOException
+	 *             if an error occurs while reading the block.
+	 */
+	private boolean processNearestBlock(QueryParameters queryParameters, SubFileParameter subFileParameter, long row,
+			long column, NearestResultBuilder nearestResultBuilder) throws IOException {
+		long blockNumber = row * subFileParameter.blocksWidth + column;
+		BlockBitmap blockBitmap = this.blockBitmaps == null ? null : this.blockBitmaps.get(subFileParameter);
+		if (blockBitmap != null && !blockBitmap.hasData(blockNumber)) {
+			return true;
+		}
+
+		// get the current block pointer and calculate the size of the current block
+		long currentBlockPointer = getIndexEntry(subFileParameter, blockNumber) & BITMASK_INDEX_OFFSET;
+		int currentBlockSize = calculateBlockSize(subFileParameter, blockNumber, currentBlockPointer);
+		if (currentBlockSize < 0) {
+			return false;
+		} else if (currentBlockSize == 0) {
+			// the current block is empty or too large
+			return true;
+		}
+
+		long currentBlockPosition = subFileParameter.startAddress + currentBlockPointer;
+		if (!readFromFile(currentBlockPosition, currentBlockSize, 1)) {
+			LOGGER.warning("reading current block has failed: " + currentBlockSize);
+			return false;
+		}
+		calculateTileCoordinates(subFileParameter, row, column);
+
+		nearestResultBuilder.startBlock();
+		processBlockAtomically(queryParameters, subFileParameter, nearestResultBuilder);
+		return true;
+	}
+
+	/**
+	 * Searches the blocks of a nearest-feature lookup ring by ring outwards from the block which contains the query
+	 * point. A ring consists of all blocks whose row or column differs by exactly its radius from the center block.
+	 * 
+	 * @param queryParameters
+	 *            the parameters of the current query.
+	 * @param subFileParameter
+	 *            the parameters of the sub-file which should be searched.
+	 * @param geoPoint
+	 *            the query point.
+	 * @param nearestResultBuilder
+	 *            the sink which keeps the closest POI and way.
+	 * @return true if all needed blocks were processed successfully, false otherwise.
+	 * @throws IOException
+	 *             if an error occurs while reading a block.
+	 */
+	private boolean processNearestBlocks(QueryParameters queryParameters, SubFileParameter subFileParameter,
+			GeoPoint geoPoint, NearestResultBuilder nearestResultBuilder) throws IOException {
+		byte baseZoomLevel = subFileParameter.baseZoomLevel;
+		long centerTileX = MercatorProjection.longitudeToTileX(geoPoint.getLongitude(), baseZoomLevel);
+		long centerTileY = MercatorProjection.latitudeToTileY(geoPoint.getLatitude(), baseZoomLevel);
+		long centerColumn = centerTileX - subFileParameter.boundaryTileLeft;
+		long centerRow = centerTileY - subFileParameter.boundaryTileTop;
+		long maximumColumnDistance = Math.max(Math.abs(centerColumn),
+				Math.abs(subFileParameter.blocksWidth - 1 - centerColumn));
+		long maximumRowDistance = Math.max(Math.abs(centerRow),
+				Math.abs(subFileParameter.blocksHeight - 1 - centerRow));
+		long maximumRadius = Math.max(maximumColumnDistance, maximumRowDistance);
+
+		for (long radius = 0; radius <= maximumRadius; ++radius) {
+			if (radius > 0) {
+				// all blocks of this and the following rings lie outside of the blocks of the previous rings
+				double distance = nearestResultBuilder.calculateDistanceToBoundary(
+						MercatorProjection.tileYToLatitude(centerTileY + radius, baseZoomLevel),
+						MercatorProjection.tileXToLongitude(centerTileX - radius + 1, baseZoomLevel),
+						MercatorProjection.tileYToLatitude(centerTileY - radius + 1, baseZoomLevel),
+						MercatorProjection.tileXToLongitude(centerTileX + radius, baseZoomLevel));
+				if (distance > nearestResultBuilder.getDistanceLimit()) {
+					break;
+				}
+			}
+
+			for (long row = centerRow - radius; row <= centerRow + radius; ++row) {
+				if (row < 0 || row >= subFileParameter.blocksHeight) {
+					continue;
+				}
+
+				// inner rows of the ring contain only the first and the last column
+				boolean edgeRow = row == centerRow - radius || row == centerRow + radius;
+				long columnStep = edgeRow || radius == 0 ? 1 : 2 * radius;
+				for (long column = centerColumn - radius; column <= centerColumn + radius; column += columnStep) {
+					if (column < 0 || column >= subFileParameter.blocksWidth) {
+						continue;
+					}
+
+					long tileX = subFileParameter.boundaryTileLeft + column;
+					long tileY = subFileParameter.boundaryTileTop + row;
+					double distance = nearestResultBuilder.calculateDistanceToRectangle(
+							MercatorProjection.tileYToLatitude(tileY + 1, baseZoomLevel),
+							MercatorProjection.tileXToLongitude(tileX, baseZoomLevel),
+							MercatorProjection.tileYToLatitude(tileY, baseZoomLevel),
+							MercatorProjection.tileXToLongitude(tileX + 1, baseZoomLevel));
+					if (distance > nearestResultBuilder.getDistanceLimit()) {
+						continue;
+					}
+
+					if (!processNearestBlock(queryParameters, subFileParameter, row, column, nearestResultBuilder)) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads and decodes only the POI section of a block. The block header is read first to get the size of the POI
+	 * section, which is then read exactly. The way section is never read.
+	 * 
+	 * @param queryParameters
+	 *            the parameters of the current query.
+	 * @param subFileParameter
+	 *            the parameters of the sub-file which contains the block.
+	 * @param blockPosition
+	 *            the absolute position of the block in the map file.
+	 * @param blockSize
+	 *            the size of the block in bytes.
+	 * @param mapDataSink
+	 *            the sink which receives the decoded POIs.
+	 * @return false if the block could not be read, true otherwise.
+	 * @throws IOException
+	 *             if an error occurs while reading the map file.
+	 */
+	private boolean processPoiBlock(QueryParameters queryParameters, SubFileParameter subFileParameter,
+			long blockPosition, int blockSize, MapDataSink mapDataSink) throws IOException {
+		ResolvedTagFilter tagFilter = queryParameters.tagFilter;
+		if (tagFilter != null && !tagFilter.acceptsAnyPoi) {
+			// no POI can be accepted, so there is no need to read the block
+			return true;
+		}
+
+		// the block header consists of the optional signature, the zoom table and the offset to the first way
+		int zoomTableRows = subFileParameter.zoomLevelMax - subFileParameter.zoomLevelMin + 1;
+		int headerSize = (zoomTableRows * 2 + 1) * MAXIMUM_VARIABLE_BYTE_LENGTH;
+		if (this.mapFileHeader.getMapFileInfo().debugFile) {
+			headerSize += SIGNATURE_LENGTH_BLOCK;
+		}
+		headerSize = Math.min(blockSize, headerSize);
+		if (!readFromFile(blockPosition, headerSize, 1)) {
+			LOGGER.warning("reading current block has failed: " + headerSize);
+			return false;
+		}
+
+		try {
+			if (!processBlockSignature()) {
+				return true;
+			}
+
+			int[][] zoomTable = readZoomTable(subFileParameter);
+			if (zoomTable == null) {
+				return true;
+			}
+			int poisOnQueryZoomLevel = zoomTable[queryParameters.queryZoomLevel - subFileParameter.zoomLevelMin][0];
+
+			// get the relative offset to the first stored way in the block, which is the end of the POI section
+			int firstWayOffset = this.readBuffer.readUnsignedInt();
+			if (firstWayOffset < 0 || firstWayOffset + this.readBuffer.getBufferPosition() > blockSize) {
+				LOGGER.warning(INVALID_FIRST_WAY_OFFSET + firstWayOffset);
+				if (this.mapFileHeader.getMapFileInfo().debugFile) {
+					LOGGER.warning(DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
+				}
+				return true;
+			}
+			firstWayOffset += this.readBuffer.getBufferPosition();
+
+			if (firstWayOffset > headerSize) {
+				// read the block up to the end of the POI section
+				int bufferPosition = this.readBuffer.getBufferPosition();
+				if (!readFromFile(blockPosition, firstWayOffset, 0)) {
+					LOGGER.warning("reading current block has failed: " + firstWayOffset);
+					return false;
+				}
+				this.readBuffer.setBufferPosition(bufferPosition);
+			}
+
+			this.blockPois = 0;
+			this.blockWays = 0;
+			if (processPOIs(poisOnQueryZoomLevel, mapDataSink, tagFilter, queryParameters.poiBoundingBox)) {
+				return true;
+			}
+		} catch (IndexOutOfBoundsException e) {
+			LOGGER.log(Level.SEVERE, null, e);
+		}
+		abortBlock(mapDataSink);
+		return true;
+	}
+
+	private boolean processPOIs(int numberOfPois, MapDataSink mapDataSink, ResolvedTagFilter tagFilter,
+			BoundingBox boundingBox) {
+		int numberOfPoiTags = this.mapFileHeader.getMapFileInfo().poiTags.length;
+		if (this.queryStatistics != null) {
+			this.queryStatistics.poisDecoded += numberOfPois;
+		}
 
 		for (int elementCounter = numberOfPois; elementCounter != 0; --elementCounter) {
 			if (this.mapFileHeader.getMapFileInfo().debugFile) {
@@ -589,38 +1936,37 @@ public class MapDatabase {
 				if (!this.signaturePoi.startsWith("***POIStart")) {
 					LOGGER.warning("invalid POI signature: " + this.signaturePoi);
 					LOGGER.warning(DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
-					return null;
+					return false;
 				}
 			}
 
 			// get the POI latitude offset (VBE-S)
-			int latitude = this.tileLatitude + this.readBuffer.readSignedInt();
+			this.poiData.latitude = this.tileLatitude + this.readBuffer.readSignedInt();
 
 			// get the POI longitude offset (VBE-S)
-			int longitude = this.tileLongitude + this.readBuffer.readSignedInt();
+			this.poiData.longitude = this.tileLongitude + this.readBuffer.readSignedInt();
 
 			// get the special byte which encodes multiple flags
 			byte specialByte = this.readBuffer.readByte();
 
 			// bit 1-4 represent the layer
-			byte layer = (byte) ((specialByte & POI_LAYER_BITMASK) >>> POI_LAYER_SHIFT);
+			this.poiData.layer = (byte) ((specialByte & POI_LAYER_BITMASK) >>> POI_LAYER_SHIFT);
 			// bit 5-8 represent the number of tag IDs
 			byte numberOfTags = (byte) (specialByte & POI_NUMBER_OF_TAGS_BITMASK);
-
-			List<Tag> tags = new ArrayList<Tag>();
+			this.poiData.numberOfTags = numberOfTags;
 
 			// get the tag IDs (VBE-U)
-			for (byte tagIndex = numberOfTags; tagIndex != 0; --tagIndex) {
+			for (int tagIndex = 0; tagIndex < numberOfTags; ++tagIndex) {
 				int tagId = this.readBuffer.readUnsignedInt();
-				if (tagId < 0 || tagId >= poiTags.length) {
+				if (tagId < 0 || tagId >= numberOfPoiTags) {
 					LOGGER.warning("invalid POI tag ID: " + tagId);
 					if (this.mapFileHeader.getMapFileInfo().debugFile) {
 						LOGGER.warning(DEBUG_SIGNATURE_POI + this.signaturePoi);
 						LOGGER.warning(DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
 					}
-					return null;
+					return false;
 				}
-				tags.add(poiTags[tagId]);
+				this.poiData.tagIds[tagIndex] = tagId;
 			}
 
 			// get the feature bitmask (1 byte)
@@ -631,70 +1977,32 @@ public class MapDatabase {
 			boolean featureHouseNumber = (featureByte & POI_FEATURE_HOUSE_NUMBER) != 0;
 			boolean featureElevation = (featureByte & POI_FEATURE_ELEVATION) != 0;
 
-			// check if the POI has a name
-			if (featureName) {
-				tags.add(new Tag(TAG_KEY_NAME, this.readBuffer.readUTF8EncodedString()));
-			}
+			// check if the POI has a name, it is decoded only on request
+			this.poiData.namePosition = featureName ? this.readBuffer.skipUTF8EncodedString() : -1;
 
-			// check if the POI has a house number
-			if (featureHouseNumber) {
-				tags.add(new Tag(TAG_KEY_HOUSE_NUMBER, this.readBuffer.readUTF8EncodedString()));
-			}
+			// check if the POI has a house number, it is decoded only on request
+			this.poiData.houseNumberPosition = featureHouseNumber ? this.readBuffer.skipUTF8EncodedString() : -1;
 
 			// check if the POI has an elevation
+			this.poiData.hasElevation = featureElevation;
 			if (featureElevation) {
-				tags.add(new Tag(TAG_KEY_ELE, Integer.toString(this.readBuffer.readSignedInt())));
-			}
-
-			pois.add(new PointOfInterest(layer, tags, new GeoPoint(latitude, longitude)));
-		}
-
-		return pois;
-	}
-
-	private float[][] processWayDataBlock(boolean doubleDeltaEncoding) {
-		// get and check the number of way coordinate blocks (VBE-U)
-		int numberOfWayCoordinateBlocks = this.readBuffer.readUnsignedInt();
-		if (numberOfWayCoordinateBlocks < 1 || numberOfWayCoordinateBlocks > Short.MAX_VALUE) {
-			LOGGER.warning("invalid number of way coordinate blocks: " + numberOfWayCoordinateBlocks);
-			logDebugSignatures();
-			return null;
-		}
-
-		// create the array which will store the different way coordinate blocks
-		float[][] wayCoordinates = new float[numberOfWayCoordinateBlocks][];
-
-		// read the way coordinate blocks
-		for (int coordinateBlock = 0; coordinateBlock < numberOfWayCoordinateBlocks; ++coordinateBlock) {
-			// get and check the number of way nodes (VBE-U)
-			int numberOfWayNodes = this.readBuffer.readUnsignedInt();
-			if (numberOfWayNodes < 2 || numberOfWayNodes > MAXIMUM_WAY_NODES_SEQUENCE_LENGTH) {
-				LOGGER.warning("invalid number of way nodes: " + numberOfWayNodes);
-				logDebugSignatures();
-				return null;
+				this.poiData.elevation = this.readBuffer.readSignedInt();
 			}
 
-			// each way node consists of latitude and longitude
-			int wayNodesSequenceLength = numberOfWayNodes * 2;
-
-			// create the array which will store the current way segment
-			float[] waySegment = new float[wayNodesSequenceLength];
-
-			if (doubleDeltaEncoding) {
-				decodeWayNodesDoubleDelta(waySegment);
-			} else {
-				decodeWayNodesSingleDelta(waySegment);
+			// POIs have no size, so a rejected POI can only be dropped after it has been decoded
+			if ((tagFilter == null || tagFilter.acceptsPoi(this.poiData.tagIds, numberOfTags))
+					&& (boundingBox == null || isInside(boundingBox, this.poiData.latitude, this.poiData.longitude))) {
+				mapDataSink.onPoi(this.poiData);
+				++this.blockPois;
 			}
-
-			wayCoordinates[coordinateBlock] = waySegment;
 		}
 
-		return wayCoordinates;
+		return true;
 	}
 
-	private List<Way> processWays(QueryParameters queryParameters, int numberOfWays) {
-		List<Way> ways = new ArrayList<Way>();
-		Tag[] wayTags = this.mapFileHeader.getMapFileInfo().wayTags;
+	private boolean processWays(QueryParameters queryParameters, int numberOfWays, MapDataSink mapDataSink,
+			ResolvedTagFilter tagFilter, boolean allWays) {
+		int numberOfWayTags = this.mapFileHeader.getMapFileInfo().wayTags.length;
 
 		for (int elementCounter = numberOfWays; elementCounter != 0; --elementCounter) {
 			if (this.mapFileHeader.getMapFileInfo().debugFile) {
@@ -703,7 +2011,7 @@ public class MapDatabase {
 				if (!this.signatureWay.startsWith("---WayStart")) {
 					LOGGER.warning("invalid way signature: " + this.signatureWay);
 					LOGGER.warning(DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
-					return null;
+					return false;
 				}
 			}
 
@@ -714,41 +2022,59 @@ public class MapDatabase {
 				if (this.mapFileHeader.getMapFileInfo().debugFile) {
 					LOGGER.warning(DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
 				}
-				return null;
+				return false;
 			}
+			int wayDataStart = this.readBuffer.getBufferPosition();
 
-			if (queryParameters.useTileBitmask) {
+			if (allWays) {
+				// get the way tile bitmask (2 bytes) and keep the way for all tiles of the block
+				this.wayData.tileBitmask = this.readBuffer.readShort();
+			} else if (queryParameters.useTileBitmask) {
 				// get the way tile bitmask (2 bytes)
-				int tileBitmask = this.readBuffer.readShort();
+				this.wayData.tileBitmask = this.readBuffer.readShort();
 				// check if the way is inside the requested tile
-				if ((queryParameters.queryTileBitmask & tileBitmask) == 0) {
+				if ((queryParameters.queryTileBitmask & this.wayData.tileBitmask) == 0) {
 					// skip the rest of the way and continue with the next way
 					this.readBuffer.skipBytes(wayDataSize - 2);
+					if (this.queryStatistics != null) {
+						++this.queryStatistics.waysSkipped;
+					}
 					continue;
 				}
 			} else {
 				// ignore the way tile bitmask (2 bytes)
 				this.readBuffer.skipBytes(2);
+				this.wayData.tileBitmask = 0;
+			}
+			this.wayData.wayRecord = numberOfWays - elementCounter;
+			if (this.queryStatistics != null) {
+				++this.queryStatistics.waysDecoded;
 			}
 
 			// get the special byte which encodes multiple flags
 			byte specialByte = this.readBuffer.readByte();
 
 			// bit 1-4 represent the layer
-			byte layer = (byte) ((specialByte & WAY_LAYER_BITMASK) >>> WAY_LAYER_SHIFT);
+			this.wayData.layer = (byte) ((specialByte & WAY_LAYER_BITMASK) >>> WAY_LAYER_SHIFT);
 			// bit 5-8 represent the number of tag IDs
 			byte numberOfTags = (byte) (specialByte & WAY_NUMBER_OF_TAGS_BITMASK);
+			this.wayData.numberOfTags = numberOfTags;
 
-			List<Tag> tags = new ArrayList<Tag>();
-
-			for (byte tagIndex = numberOfTags; tagIndex != 0; --tagIndex) {
+			for (int tagIndex = 0; tagIndex < numberOfTags; ++tagIndex) {
 				int tagId = this.readBuffer.readUnsignedInt();
-				if (tagId < 0 || tagId >= wayTags.length) {
+				if (tagId < 0 || tagId >= numberOfWayTags) {
 					LOGGER.warning("invalid way tag ID: " + tagId);
 					logDebugSignatures();
-					return null;
+					return false;
 				}
-				tags.add(wayTags[tagId]);
+				this.wayData.tagIds[tagIndex] = tagId;
+			}
+
+			// check if the way is accepted by the tag filter
+			if (tagFilter != null && !tagFilter.acceptsWay(this.wayData.tagIds, numberOfTags)) {
+				// skip the rest of the way and continue with the next way
+				this.readBuffer.setBufferPosition(wayDataStart + wayDataSize);
+				continue;
 			}
 
 			// get the feature bitmask (1 byte)
@@ -762,55 +2088,97 @@ public class MapDatabase {
 			boolean featureWayDataBlocksByte = (featureByte & WAY_FEATURE_DATA_BLOCKS_BYTE) != 0;
 			boolean featureWayDoubleDeltaEncoding = (featureByte & WAY_FEATURE_DOUBLE_DELTA_ENCODING) != 0;
 
-			// check if the way has a name
-			if (featureName) {
-				tags.add(new Tag(TAG_KEY_NAME, this.readBuffer.readUTF8EncodedString()));
-			}
+			// check if the way has a name, it is decoded only on request
+			this.wayData.namePosition = featureName ? this.readBuffer.skipUTF8EncodedString() : -1;
 
-			// check if the way has a house number
-			if (featureHouseNumber) {
-				tags.add(new Tag(TAG_KEY_HOUSE_NUMBER, this.readBuffer.readUTF8EncodedString()));
-			}
+			// check if the way has a house number, it is decoded only on request
+			this.wayData.houseNumberPosition = featureHouseNumber ? this.readBuffer.skipUTF8EncodedString() : -1;
 
-			// check if the way has a reference
-			if (featureRef) {
-				tags.add(new Tag(TAG_KEY_REF, this.readBuffer.readUTF8EncodedString()));
-			}
+			// check if the way has a reference, it is decoded only on request
+			this.wayData.refPosition = featureRef ? this.readBuffer.skipUTF8EncodedString() : -1;
 
-			GeoPoint labelPosition = readOptionalLabelPosition(featureLabelPosition);
+			readOptionalLabelPosition(featureLabelPosition);
 
 			int wayDataBlocks = readOptionalWayDataBlocksByte(featureWayDataBlocksByte);
 			if (wayDataBlocks < 1) {
 				LOGGER.warning("invalid number of way data blocks: " + wayDataBlocks);
 				logDebugSignatures();
-				return null;
+				return false;
+			}
+
+			int wayDataEnd = wayDataStart + wayDataSize;
+			if (wayDataEnd > this.readBuffer.getBufferSize()) {
+				LOGGER.warning("invalid way data size: " + wayDataSize);
+				logDebugSignatures();
+				return false;
+			}
+
+			if (wayDataBlocks == 1 && this.wayData.lazyWayNodes) {
+				// the coordinates of a single way data block are decoded only on request
+				int wayDataBlockPosition = this.readBuffer.getBufferPosition();
+				this.wayData.setEncodedCoordinates(wayDataBlockPosition, wayDataEnd - wayDataBlockPosition,
+						featureWayDoubleDeltaEncoding, this.tileLatitude, this.tileLongitude);
+				mapDataSink.onWay(this.wayData);
+				++this.blockWays;
+				this.readBuffer.setBufferPosition(wayDataEnd);
+				continue;
 			}
 
 			for (int wayDataBlock = 0; wayDataBlock < wayDataBlocks; ++wayDataBlock) {
-				float[][] wayNodes = processWayDataBlock(featureWayDoubleDeltaEncoding);
-				if (wayNodes == null) {
-					return null;
+				// the end of a way data block is only known after its coordinates have been decoded
+				this.wayData.setEncodedCoordinates(this.readBuffer.getBufferPosition(), -1,
+						featureWayDoubleDeltaEncoding, this.tileLatitude, this.tileLongitude);
+				int wayDataBlockEnd = this.wayData.decodeCoordinates();
+				if (wayDataBlockEnd < 0 || wayDataBlockEnd > wayDataEnd) {
+					logDebugSignatures();
+					return false;
 				}
-
-				ways.add(new Way(layer, tags, wayNodes, labelPosition));
+				this.readBuffer.setBufferPosition(wayDataBlockEnd);
+				mapDataSink.onWay(this.wayData);
+				++this.blockWays;
 			}
 		}
 
-		return ways;
+		return true;
+	}
+
+	/**
+	 * Reads the given region of the map file into the read buffer and updates the statistics of the current query.
+	 * 
+	 * @param position
+	 *            the absolute position of the region in the file.
+	 * @param length
+	 *            the length of the region in bytes.
+	 * @param numberOfBlocks
+	 *            the number of blocks in the region which have not been counted yet.
+	 * @return true if the region has been read successfully, false otherwise.
+	 * @throws IOException
+	 *             if an error occurs while reading the file.
+	 */
+	private boolean readFromFile(long position, int length, int numberOfBlocks) throws IOException {
+		if (this.queryStatistics == null) {
+			return this.readBuffer.readFromFile(position, length);
+		}
+
+		long startTime = System.nanoTime();
+		boolean success = this.readBuffer.readFromFile(position, length);
+		this.queryStatistics.readTime += System.nanoTime() - startTime;
+		if (success) {
+			this.queryStatistics.blocksRead += numberOfBlocks;
+			this.queryStatistics.bytesRead += length;
+		}
+		return success;
 	}
 
-	private GeoPoint readOptionalLabelPosition(boolean featureLabelPosition) {
+	private void readOptionalLabelPosition(boolean featureLabelPosition) {
+		this.wayData.hasLabelPosition = featureLabelPosition;
 		if (featureLabelPosition) {
 			// get the label position latitude offset (VBE-S)
-			float latitude = this.tileLatitude + this.readBuffer.readSignedInt();
+			this.wayData.labelLatitude = this.tileLatitude + this.readBuffer.readSignedInt();
 
 			// get the label position longitude offset (VBE-S)
-			float longitude = this.tileLongitude + this.readBuffer.readSignedInt();
-
-			return new GeoPoint(latitude, longitude);
+			this.wayData.labelLongitude = this.tileLongitude + this.readBuffer.readSignedInt();
 		}
-
-		return null;
 	}
 
 	private int readOptionalWayDataBlocksByte(boolean featureWayDataBlocksByte) {
@@ -853,4 +2221,47 @@ public class MapDatabase {
 
 		return zoomTable;
 	}
+
+	/**
+	 * Evaluates the given tag filter for all tags of the current map file. The result is kept for subsequent queries
+	 * with the same filter.
+	 * 
+	 * @param tagFilter
+	 *            the tag filter.
+	 * @return the evaluated tag filter.
+	 */
+	private ResolvedTagFilter resolveTagFilter(TagFilter tagFilter) {
+		MapFileInfo mapFileInfo = this.mapFileHeader.getMapFileInfo();
+		if (this.resolvedTagFilter == null || this.resolvedTagFilter.tagFilter != tagFilter
+				|| this.resolvedTagFilter.mapFileInfo != mapFileInfo) {
+			this.resolvedTagFilter = new ResolvedTagFilter(tagFilter, mapFileInfo);
+		}
+		return this.resolvedTagFilter;
+	}
+
+	/**
+	 * Adds the POIs and ways of the decoded content of the given block to all tiles of the block.
+	 * 
+	 * @param batchBlock
+	 *            the block of the batch query.
+	 */
+	private void shareCachedBlock(BatchBlock batchBlock) {
+		for (int i = 0, n = batchBlock.batchTiles.size(); i < n; ++i) {
+			BatchTile batchTile = batchBlock.batchTiles.get(i);
+			if (!batchTile.failed) {
+				batchTile.mapReadResultBuilder.add(batchBlock.cachedBlock.getPoiWayBundle(batchTile.queryParameters,
+						batchBlock.subFileParameter));
+			}
+		}
+	}
+
+	/**
+	 * Starts collecting the statistics of a new query if a query listener is set.
+	 */
+	private void startQuery() {
+		if (this.queryListener != null) {
+			this.queryStatistics = new QueryStatistics();
+			this.queryStartTime = System.nanoTime();
+		}
+	}
 }
@@ -17,7 +17,7 @@ package org.mapsforge.map.reader;
 import java.util.ArrayList;
 import java.util.List;
 
-class MapReadResultBuilder {
+class MapReadResultBuilder implements MapDataSink {
 	boolean isWater;
 	final List<PointOfInterest> pointOfInterests;
 	final List<Way> ways;
@@ -27,6 +27,29 @@ class MapReadResultBuilder {
 		this.ways = new ArrayList<Way>();
 	}
 
+	@Override
+	public void onBlockAborted(int numberOfPois, int numberOfWays) {
+		int poiEnd = this.pointOfInterests.size();
+		this.pointOfInterests.subList(poiEnd - numberOfPois, poiEnd).clear();
+		int wayEnd = this.ways.size();
+		this.ways.subList(wayEnd - numberOfWays, wayEnd).clear();
+	}
+
+	@Override
+	public void onPoi(PoiData poiData) {
+		this.pointOfInterests.add(poiData.toPointOfInterest());
+	}
+
+	@Override
+	public void onQueryFinished(boolean isWater) {
+		this.isWater = isWater;
+	}
+
+	@Override
+	public void onWay(WayData wayData) {
+		this.ways.add(wayData.toWay());
+	}
+
 	void add(PoiWayBundle poiWayBundle) {
 		this.pointOfInterests.addAll(poiWayBundle.pois);
 		this.ways.addAll(poiWayBundle.ways);
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mapsforge.core.LRUCache;
+import org.mapsforge.core.Tile;
+
+/**
+ * Queries a {@link SharedMapDatabase} asynchronously on a fixed number of reader threads, each of which uses its own
+ * cursor.
+ * <p>
+ * If prefetching is enabled, each request also queues the eight neighbours, the parent and the four children of the
+ * requested tile. Prefetches are executed only while no requests are waiting and are dropped if too many of them are
+ * pending. A prefetch does not decode the tile, it only loads the index entries and the blocks of the tile into the
+ * index cache and the page cache of the operating system, see {@link MapDatabase#prefetchMapData(Tile)}. The following
+ * requests of a panning or zooming client then find their data in memory. If a tile is requested while its prefetch
+ * is still waiting, the prefetch is replaced by the request.
+ * <p>
+ * This class is thread-safe. The shared map file must stay open until the service has been shut down.
+ */
+public class MapReadService {
+	/**
+	 * Maximum number of prefetches which may wait for execution.
+	 */
+	private static final int MAXIMUM_PENDING_PREFETCHES = 64;
+
+	/**
+	 * Number of recently read tiles which are not prefetched again.
+	 */
+	private static final int RECENT_TILES_CAPACITY = 256;
+
+	private static final String THREAD_NAME = "MapReadService-";
+
+	private final ThreadLocal<MapDatabase> cursors;
+	private final Map<Tile, ReadTask> pendingPrefetches;
+	private volatile boolean prefetchEnabled;
+	private final Map<Tile, Boolean> recentTiles;
+	private final AtomicLong sequenceNumber;
+	private final ThreadPoolExecutor threadPoolExecutor;
+
+	/**
+	 * @param sharedMapDatabase
+	 *            the opened map file which should be queried.
+	 * @param numberOfThreads
+	 *            the number of reader threads.
+	 * @throws IllegalArgumentException
+	 *             if the number of threads is less than one.
+	 */
+	public MapReadService(final SharedMapDatabase sharedMapDatabase, int numberOfThreads) {
+		if (numberOfThreads < 1) {
+			throw new IllegalArgumentException("numberOfThreads must be positive: " + numberOfThreads);
+		}
+
+		this.cursors = new ThreadLocal<MapDatabase>() {
+			@Override
+			protected MapDatabase initialValue() {
+				return sharedMapDatabase.createCursor();
+			}
+		};
+		this.pendingPrefetches = new HashMap<Tile, ReadTask>();
+		this.recentTiles = new LRUCache<Tile, Boolean>(RECENT_TILES_CAPACITY);
+		this.sequenceNumber = new AtomicLong();
+
+		final AtomicInteger threadNumber = new AtomicInteger();
+		ThreadFactory threadFactory = new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, THREAD_NAME + threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+		this.threadPoolExecutor = new ThreadPoolExecutor(numberOfThreads, numberOfThreads, 0, TimeUnit.MILLISECONDS,
+				new PriorityBlockingQueue<Runnable>(), threadFactory);
+	}
+
+	/**
+	 * Blocks until all queued requests have been executed after a shutdown or the timeout occurs.
+	 * 
+	 * @param timeout
+	 *            the maximum time to wait in milliseconds.
+	 * @return true if this service has terminated, false if the timeout elapsed before.
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted while waiting.
+	 */
+	public boolean awaitTermination(long timeout) throws InterruptedException {
+		return this.threadPoolExecutor.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return true if the neighbours of requested tiles are prefetched, false otherwise.
+	 */
+	public boolean isPrefetchEnabled() {
+		return this.prefetchEnabled;
+	}
+
+	/**
+	 * Queues a query for the given tile, see {@link MapDatabase#readMapData(Tile)}.
+	 * 
+	 * @param tile
+	 *            defines area and zoom level of read map data.
+	 * @return the future result of the query, which is null if the query fails.
+	 * @throws RejectedExecutionException
+	 *             if this service has been shut down.
+	 */
+	public Future<MapReadResult> readMapDataAsync(final Tile tile) {
+		ReadTask pendingPrefetch;
+		synchronized (this.pendingPrefetches) {
+			this.recentTiles.put(tile, Boolean.TRUE);
+			pendingPrefetch = this.pendingPrefetches.remove(tile);
+		}
+		if (pendingPrefetch != null && this.threadPoolExecutor.remove(pendingPrefetch)) {
+			// the request reads the tile anyway, a prefetch which is already running is not interrupted
+			pendingPrefetch.cancel(false);
+		}
+
+		ReadTask readTask = new ReadTask(new Callable<MapReadResult>() {
+			@Override
+			public MapReadResult call() {
+				return MapReadService.this.cursors.get().readMapData(tile);
+			}
+		}, tile, false, this.sequenceNumber.incrementAndGet());
+		this.threadPoolExecutor.execute(readTask);
+
+		if (this.prefetchEnabled) {
+			prefetchRelatedTiles(tile);
+		}
+		return readTask;
+	}
+
+	/**
+	 * Enables or disables prefetching of the neighbours, the parent and the children of requested tiles. Prefetching
+	 * is disabled by default.
+	 * 
+	 * @param prefetchEnabled
+	 *            true if related tiles should be prefetched, false otherwise.
+	 */
+	public void setPrefetchEnabled(boolean prefetchEnabled) {
+		this.prefetchEnabled = prefetchEnabled;
+	}
+
+	/**
+	 * Stops this service. Queued requests are still executed, pending prefetches are dropped. Subsequent calls of
+	 * {@link #readMapDataAsync(Tile)} are rejected.
+	 */
+	public void shutdown() {
+		this.threadPoolExecutor.shutdown();
+
+		Iterator<Runnable> iterator = this.threadPoolExecutor.getQueue().iterator();
+		while (iterator.hasNext()) {
+			ReadTask readTask = (ReadTask) iterator.next();
+			if (readTask.prefetch) {
+				iterator.remove();
+				readTask.cancel(false);
+			}
+		}
+	}
+
+	private void prefetch(final Tile tile) {
+		ReadTask readTask;
+		synchronized (this.pendingPrefetches) {
+			if (this.pendingPrefetches.size() >= MAXIMUM_PENDING_PREFETCHES || this.recentTiles.containsKey(tile)
+					|| this.pendingPrefetches.containsKey(tile)) {
+				return;
+			}
+
+			readTask = new ReadTask(new Callable<MapReadResult>() {
+				@Override
+				public MapReadResult call() {
+					try {
+						MapReadService.this.cursors.get().prefetchMapData(tile);
+						return null;
+					} finally {
+						removePendingPrefetch(tile);
+					}
+				}
+			}, tile, true, this.sequenceNumber.incrementAndGet());
+			this.pendingPrefetches.put(tile, readTask);
+		}
+
+		try {
+			this.threadPoolExecutor.execute(readTask);
+		} catch (RejectedExecutionException e) {
+			// the service has been shut down in the meantime
+			synchronized (this.pendingPrefetches) {
+				this.pendingPrefetches.remove(tile);
+			}
+		}
+	}
+
+	private void prefetchRelatedTiles(Tile tile) {
+		long maximumTileNumber = (1L << tile.zoomLevel) - 1;
+		for (long tileY = tile.tileY - 1; tileY <= tile.tileY + 1; ++tileY) {
+			for (long tileX = tile.tileX - 1; tileX <= tile.tileX + 1; ++tileX) {
+				if (tileX >= 0 && tileY >= 0 && tileX <= maximumTileNumber && tileY <= maximumTileNumber) {
+					prefetch(new Tile(tileX, tileY, tile.zoomLevel));
+				}
+			}
+		}
+
+		if (tile.zoomLevel > 0) {
+			prefetch(new Tile(tile.tileX / 2, tile.tileY / 2, (byte) (tile.zoomLevel - 1)));
+		}
+
+		if (tile.zoomLevel < Byte.MAX_VALUE) {
+			byte childZoomLevel = (byte) (tile.zoomLevel + 1);
+			for (long tileY = tile.tileY * 2; tileY <= tile.tileY * 2 + 1; ++tileY) {
+				for (long tileX = tile.tileX * 2; tileX <= tile.tileX * 2 + 1; ++tileX) {
+					prefetch(new Tile(tileX, tileY, childZoomLevel));
+				}
+			}
+		}
+	}
+
+	private void removePendingPrefetch(Tile tile) {
+		synchronized (this.pendingPrefetches) {
+			this.pendingPrefetches.remove(tile);
+			this.recentTiles.put(tile, Boolean.TRUE);
+		}
+	}
+}
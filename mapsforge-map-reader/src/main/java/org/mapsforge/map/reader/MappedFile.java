@@ -0,0 +1,122 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * A read-only memory mapping of a complete map file.
+ * <p>
+ * A single {@link MappedByteBuffer} can address at most 2 GB. Larger files are therefore mapped as a sequence of
+ * windows which overlap by {@link ReadBuffer#MAXIMUM_BUFFER_SIZE} bytes, so that every region which can be read into
+ * a {@link ReadBuffer} lies completely inside one window.
+ */
+final class MappedFile {
+	/**
+	 * Distance in bytes between the start addresses of two consecutive windows.
+	 */
+	private static final long WINDOW_STRIDE = 1L << 30;
+
+	private final long fileSize;
+	private final int windowOverlap;
+	private final long windowStride;
+	private final MappedByteBuffer[] windows;
+
+	/**
+	 * @param fileChannel
+	 *            the channel of the map file.
+	 * @param fileSize
+	 *            the size of the map file in bytes.
+	 * @throws IOException
+	 *             if an error occurs while mapping the file.
+	 */
+	MappedFile(FileChannel fileChannel, long fileSize) throws IOException {
+		this(fileChannel, fileSize, WINDOW_STRIDE, ReadBuffer.MAXIMUM_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param fileChannel
+	 *            the channel of the map file.
+	 * @param fileSize
+	 *            the size of the map file in bytes.
+	 * @param windowStride
+	 *            the distance in bytes between the start addresses of two consecutive windows.
+	 * @param windowOverlap
+	 *            the number of bytes by which consecutive windows overlap.
+	 * @throws IOException
+	 *             if an error occurs while mapping the file.
+	 */
+	MappedFile(FileChannel fileChannel, long fileSize, long windowStride, int windowOverlap) throws IOException {
+		this.fileSize = fileSize;
+		this.windowStride = windowStride;
+		this.windowOverlap = windowOverlap;
+
+		int numberOfWindows = (int) (Math.max(fileSize - 1, 0) / windowStride) + 1;
+		this.windows = new MappedByteBuffer[numberOfWindows];
+		for (int window = 0; window < numberOfWindows; ++window) {
+			long windowStart = window * windowStride;
+			long windowSize = Math.min(windowStride + windowOverlap, fileSize - windowStart);
+			this.windows[window] = fileChannel.map(MapMode.READ_ONLY, windowStart, windowSize);
+		}
+	}
+
+	/**
+	 * Converts five bytes at the given file position to an unsigned long.
+	 * <p>
+	 * The byte order is big-endian.
+	 * 
+	 * @param position
+	 *            the absolute position in the file.
+	 * @return the long value or -1 if the position is invalid.
+	 */
+	long getFiveBytesLong(long position) {
+		if (position < 0 || position + 5 > this.fileSize) {
+			return -1;
+		}
+
+		int window = (int) (position / this.windowStride);
+		int offset = (int) (position - window * this.windowStride);
+		MappedByteBuffer mappedByteBuffer = this.windows[window];
+		return (mappedByteBuffer.get(offset) & 0xffL) << 32 | (mappedByteBuffer.get(offset + 1) & 0xffL) << 24
+				| (mappedByteBuffer.get(offset + 2) & 0xffL) << 16 | (mappedByteBuffer.get(offset + 3) & 0xffL) << 8
+				| (mappedByteBuffer.get(offset + 4) & 0xffL);
+	}
+
+	/**
+	 * Returns a view of the given file region. No data is copied.
+	 * 
+	 * @param position
+	 *            the absolute start position of the region in the file.
+	 * @param length
+	 *            the length of the region in bytes.
+	 * @return a buffer whose content is the requested region or null if the region is invalid.
+	 */
+	ByteBuffer getRegion(long position, int length) {
+		if (position < 0 || length < 0 || length > this.windowOverlap || position + length > this.fileSize) {
+			return null;
+		}
+
+		int window = (int) (position / this.windowStride);
+		int offset = (int) (position - window * this.windowStride);
+		ByteBuffer region = this.windows[window].duplicate();
+		region.position(offset);
+		region.limit(offset + length);
+		return region.slice();
+	}
+}
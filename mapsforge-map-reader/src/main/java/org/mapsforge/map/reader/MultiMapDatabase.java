@@ -0,0 +1,283 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.mapsforge.core.BoundingBox;
+import org.mapsforge.core.MercatorProjection;
+import org.mapsforge.core.Tile;
+
+/**
+ * Queries several map files as if they were one, for example a set of adjacent countries or continents.
+ * <p>
+ * Each query is sent only to the map files whose bounding box intersects the requested tile. If more than one map file
+ * is affected, they are queried in parallel: the first one on the calling thread, all others on a fixed pool of worker
+ * threads which is shared by all map files. Every thread queries a map file through its own cursor, so that the index
+ * cache and the decoded block cache of each {@link SharedMapDatabase} are shared by all threads. The results are
+ * merged according to the {@link DuplicatePolicy}.
+ * <p>
+ * This class is thread-safe. The added map files must stay open until they are not queried anymore.
+ */
+public class MultiMapDatabase {
+	/**
+	 * An opened map file together with its bounding box and the cursors of all threads.
+	 */
+	private static final class MapFile {
+		final BoundingBox boundingBox;
+		final ThreadLocal<MapDatabase> cursors;
+
+		MapFile(final SharedMapDatabase sharedMapDatabase) {
+			this.boundingBox = sharedMapDatabase.getMapFileInfo().boundingBox;
+			this.cursors = new ThreadLocal<MapDatabase>() {
+				@Override
+				protected MapDatabase initialValue() {
+					return sharedMapDatabase.createCursor();
+				}
+			};
+		}
+
+		boolean intersects(BoundingBox otherBoundingBox) {
+			return this.boundingBox.minLatitudeE6 <= otherBoundingBox.maxLatitudeE6
+					&& this.boundingBox.maxLatitudeE6 >= otherBoundingBox.minLatitudeE6
+					&& this.boundingBox.minLongitudeE6 <= otherBoundingBox.maxLongitudeE6
+					&& this.boundingBox.maxLongitudeE6 >= otherBoundingBox.minLongitudeE6;
+		}
+
+		MapReadResult readMapData(Tile tile) {
+			return this.cursors.get().readMapData(tile);
+		}
+	}
+
+	private static final Logger LOGGER = Logger.getLogger(MultiMapDatabase.class.getName());
+
+	private static final String THREAD_NAME = "MultiMapDatabase-";
+
+	private static BoundingBox getBoundingBox(Tile tile) {
+		int minLatitudeE6 = (int) (MercatorProjection.tileYToLatitude(tile.tileY + 1, tile.zoomLevel) * 1000000);
+		int minLongitudeE6 = (int) (MercatorProjection.tileXToLongitude(tile.tileX, tile.zoomLevel) * 1000000);
+		int maxLatitudeE6 = (int) (MercatorProjection.tileYToLatitude(tile.tileY, tile.zoomLevel) * 1000000);
+		int maxLongitudeE6 = (int) (MercatorProjection.tileXToLongitude(tile.tileX + 1, tile.zoomLevel) * 1000000);
+		return new BoundingBox(minLatitudeE6, minLongitudeE6, maxLatitudeE6, maxLongitudeE6);
+	}
+
+	private static boolean isEmpty(MapReadResult mapReadResult) {
+		return mapReadResult.pointOfInterests.isEmpty() && mapReadResult.ways.isEmpty();
+	}
+
+	private static MapReadResult merge(MapReadResult[] mapReadResults, DuplicatePolicy duplicatePolicy) {
+		MapReadResultBuilder mapReadResultBuilder = new MapReadResultBuilder();
+		mapReadResultBuilder.isWater = mapReadResults.length > 0;
+
+		int numberOfNonEmptyResults = 0;
+		for (MapReadResult mapReadResult : mapReadResults) {
+			mapReadResultBuilder.isWater &= mapReadResult.isWater;
+			if (!isEmpty(mapReadResult)) {
+				++numberOfNonEmptyResults;
+			}
+		}
+
+		if (duplicatePolicy == DuplicatePolicy.REMOVE_DUPLICATES && numberOfNonEmptyResults > 1) {
+			Set<List<Object>> poiKeys = new HashSet<List<Object>>();
+			Set<WayContentKey> wayKeys = new HashSet<WayContentKey>();
+			for (MapReadResult mapReadResult : mapReadResults) {
+				for (PointOfInterest pointOfInterest : mapReadResult.pointOfInterests) {
+					if (poiKeys.add(Arrays.<Object> asList(Byte.valueOf(pointOfInterest.layer),
+							pointOfInterest.position, pointOfInterest.tags))) {
+						mapReadResultBuilder.pointOfInterests.add(pointOfInterest);
+					}
+				}
+				for (Way way : mapReadResult.ways) {
+					if (wayKeys.add(new WayContentKey(way))) {
+						mapReadResultBuilder.ways.add(way);
+					}
+				}
+			}
+			return mapReadResultBuilder.build();
+		}
+
+		for (MapReadResult mapReadResult : mapReadResults) {
+			if (duplicatePolicy == DuplicatePolicy.FIRST_MAP_FILE && isEmpty(mapReadResult)) {
+				continue;
+			}
+			mapReadResultBuilder.pointOfInterests.addAll(mapReadResult.pointOfInterests);
+			mapReadResultBuilder.ways.addAll(mapReadResult.ways);
+			if (duplicatePolicy == DuplicatePolicy.FIRST_MAP_FILE) {
+				break;
+			}
+		}
+		return mapReadResultBuilder.build();
+	}
+
+	private volatile DuplicatePolicy duplicatePolicy;
+	private final List<MapFile> mapFiles;
+	private final ThreadPoolExecutor threadPoolExecutor;
+
+	/**
+	 * @param numberOfThreads
+	 *            the number of worker threads, zero to query all map files one after another on the calling thread.
+	 * @throws IllegalArgumentException
+	 *             if the number of threads is negative.
+	 */
+	public MultiMapDatabase(int numberOfThreads) {
+		if (numberOfThreads < 0) {
+			throw new IllegalArgumentException("numberOfThreads must not be negative: " + numberOfThreads);
+		}
+
+		this.duplicatePolicy = DuplicatePolicy.REMOVE_DUPLICATES;
+		this.mapFiles = new CopyOnWriteArrayList<MapFile>();
+
+		if (numberOfThreads == 0) {
+			this.threadPoolExecutor = null;
+		} else {
+			final AtomicInteger threadNumber = new AtomicInteger();
+			ThreadFactory threadFactory = new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, THREAD_NAME + threadNumber.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			};
+			this.threadPoolExecutor = new ThreadPoolExecutor(numberOfThreads, numberOfThreads, 0,
+					TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+		}
+	}
+
+	/**
+	 * Adds the given map file to this database. Map files which are added first take precedence for
+	 * {@link DuplicatePolicy#FIRST_MAP_FILE}.
+	 * 
+	 * @param sharedMapDatabase
+	 *            the opened map file.
+	 * @throws IllegalArgumentException
+	 *             if the given map file is not opened.
+	 */
+	public void addMapFile(SharedMapDatabase sharedMapDatabase) {
+		if (!sharedMapDatabase.hasOpenFile()) {
+			throw new IllegalArgumentException("map file is not opened");
+		}
+		this.mapFiles.add(new MapFile(sharedMapDatabase));
+	}
+
+	/**
+	 * @return the policy for data which is returned by more than one map file.
+	 */
+	public DuplicatePolicy getDuplicatePolicy() {
+		return this.duplicatePolicy;
+	}
+
+	/**
+	 * Reads all map data for the area covered by the given tile at the tile zoom level from all map files whose
+	 * bounding box intersects the tile. The tile is flagged as water if it is flagged as water in all of them.
+	 * 
+	 * @param tile
+	 *            defines area and zoom level of read map data.
+	 * @return the merged map data or null if one of the map files could not be read.
+	 * @throws RejectedExecutionException
+	 *             if more than one map file has to be queried after this database has been shut down.
+	 */
+	public MapReadResult readMapData(final Tile tile) {
+		BoundingBox tileBoundingBox = getBoundingBox(tile);
+		List<MapFile> intersectingMapFiles = new ArrayList<MapFile>();
+		for (MapFile mapFile : this.mapFiles) {
+			if (mapFile.intersects(tileBoundingBox)) {
+				intersectingMapFiles.add(mapFile);
+			}
+		}
+
+		int numberOfMapFiles = intersectingMapFiles.size();
+		List<Future<MapReadResult>> futures = new ArrayList<Future<MapReadResult>>(numberOfMapFiles);
+		if (this.threadPoolExecutor != null) {
+			for (int i = 1; i < numberOfMapFiles; ++i) {
+				final MapFile mapFile = intersectingMapFiles.get(i);
+				futures.add(this.threadPoolExecutor.submit(new Callable<MapReadResult>() {
+					@Override
+					public MapReadResult call() {
+						return mapFile.readMapData(tile);
+					}
+				}));
+			}
+		}
+
+		try {
+			MapReadResult[] mapReadResults = new MapReadResult[numberOfMapFiles];
+			for (int i = 0; i < numberOfMapFiles; ++i) {
+				if (i == 0 || futures.isEmpty()) {
+					mapReadResults[i] = intersectingMapFiles.get(i).readMapData(tile);
+				} else {
+					mapReadResults[i] = futures.get(i - 1).get();
+				}
+				if (mapReadResults[i] == null) {
+					return null;
+				}
+			}
+			return merge(mapReadResults, this.duplicatePolicy);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			LOGGER.log(Level.SEVERE, null, e);
+			return null;
+		} finally {
+			// stop the remaining queries if this query has been aborted
+			for (Future<MapReadResult> future : futures) {
+				future.cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * Sets the policy for data which is returned by more than one map file, for example POIs and ways at the common
+	 * border of two adjacent map files. The default is {@link DuplicatePolicy#REMOVE_DUPLICATES}.
+	 * 
+	 * @param duplicatePolicy
+	 *            the new policy.
+	 * @throws IllegalArgumentException
+	 *             if the policy is null.
+	 */
+	public void setDuplicatePolicy(DuplicatePolicy duplicatePolicy) {
+		if (duplicatePolicy == null) {
+			throw new IllegalArgumentException("duplicatePolicy must not be null");
+		}
+		this.duplicatePolicy = duplicatePolicy;
+	}
+
+	/**
+	 * Stops the worker threads of this database. Queries which affect more than one map file are rejected afterwards.
+	 * The added map files are not closed.
+	 */
+	public void shutdown() {
+		if (this.threadPoolExecutor != null) {
+			this.threadPoolExecutor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+/**
+ * An immutable container for the result of a nearest-feature lookup of the {@link MapDatabase}, see
+ * {@link MapDatabase#findNearest(org.mapsforge.core.GeoPoint, double, TagFilter)}.
+ */
+public class NearestResult {
+	/**
+	 * The closest POI (may be null).
+	 */
+	public final PointOfInterest pointOfInterest;
+
+	/**
+	 * The distance of the closest POI in meters, {@link Double#NaN} if no POI was found.
+	 */
+	public final double pointOfInterestDistance;
+
+	/**
+	 * The closest way (may be null).
+	 */
+	public final Way way;
+
+	/**
+	 * The distance of the closest point of the closest way in meters, {@link Double#NaN} if no way was found.
+	 */
+	public final double wayDistance;
+
+	NearestResult(NearestResultBuilder nearestResultBuilder) {
+		this.pointOfInterest = nearestResultBuilder.pointOfInterest;
+		this.pointOfInterestDistance = this.pointOfInterest == null ? Double.NaN
+				: nearestResultBuilder.pointOfInterestDistance;
+		this.way = nearestResultBuilder.way;
+		this.wayDistance = this.way == null ? Double.NaN : nearestResultBuilder.wayDistance;
+	}
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import org.mapsforge.core.GeoPoint;
+import org.mapsforge.core.MercatorProjection;
+
+/**
+ * Keeps the closest POI and way of a nearest-feature lookup while the blocks around the query point are decoded.
+ * <p>
+ * Distances are measured in an equirectangular projection around the query point, which is accurate for the short
+ * distances of reverse geocoding. Since tile boundaries are straight lines in this projection, the distance to a block
+ * is a strict lower bound for the distances of all way segments and POIs inside of it.
+ */
+class NearestResultBuilder implements MapDataSink {
+	/**
+	 * Length in meters of one microdegree of latitude.
+	 */
+	private static final double METERS_PER_MICRODEGREE = MercatorProjection.EARTH_CIRCUMFERENCE / 360000000d;
+
+	private PointOfInterest blockStartPointOfInterest;
+	private double blockStartPointOfInterestDistance;
+	private Way blockStartWay;
+	private double blockStartWayDistance;
+	private final double latitude;
+	private final double longitude;
+	private final double metersPerLongitudeMicrodegree;
+	PointOfInterest pointOfInterest;
+	double pointOfInterestDistance;
+	private final boolean searchPois;
+	private final boolean searchWays;
+	Way way;
+	double wayDistance;
+
+	/**
+	 * @param geoPoint
+	 *            the query point.
+	 * @param maxDistance
+	 *            the maximum distance in meters of the returned POI and way.
+	 * @param searchPois
+	 *            false if the query cannot return any POI, true otherwise.
+	 * @param searchWays
+	 *            false if the query cannot return any way, true otherwise.
+	 */
+	NearestResultBuilder(GeoPoint geoPoint, double maxDistance, boolean searchPois, boolean searchWays) {
+		this.latitude = geoPoint.latitudeE6;
+		this.longitude = geoPoint.longitudeE6;
+		this.metersPerLongitudeMicrodegree = METERS_PER_MICRODEGREE * Math.cos(Math.toRadians(geoPoint.getLatitude()));
+		this.pointOfInterestDistance = maxDistance;
+		this.wayDistance = maxDistance;
+		this.searchPois = searchPois;
+		this.searchWays = searchWays;
+	}
+
+	@Override
+	public void onBlockAborted(int numberOfPois, int numberOfWays) {
+		// return to the result of all previous blocks
+		this.pointOfInterest = this.blockStartPointOfInterest;
+		this.pointOfInterestDistance = this.blockStartPointOfInterestDistance;
+		this.way = this.blockStartWay;
+		this.wayDistance = this.blockStartWayDistance;
+	}
+
+	@Override
+	public void onPoi(PoiData poiData) {
+		double distance = calculateDistance(poiData.getLatitude(), poiData.getLongitude());
+		if (distance < this.pointOfInterestDistance
+				|| (this.pointOfInterest == null && distance <= this.pointOfInterestDistance)) {
+			this.pointOfInterestDistance = distance;
+			this.pointOfInterest = poiData.toPointOfInterest();
+		}
+	}
+
+	@Override
+	public void onQueryFinished(boolean isWater) {
+		// the water flag is not part of the result
+	}
+
+	@Override
+	public void onWay(WayData wayData) {
+		int[] coordinates = wayData.getCoordinates();
+		double minimumDistance = Double.POSITIVE_INFINITY;
+		for (int segment = 0, n = wayData.getNumberOfSegments(); segment < n; ++segment) {
+			int offset = wayData.getSegmentOffset(segment);
+			int end = offset + wayData.getSegmentLength(segment);
+
+			// the coordinates are stored in the order longitude/latitude
+			double startX = toX(coordinates[offset]);
+			double startY = toY(coordinates[offset + 1]);
+			for (int i = offset + 2; i < end; i += 2) {
+				double endX = toX(coordinates[i]);
+				double endY = toY(coordinates[i + 1]);
+				minimumDistance = Math.min(minimumDistance, calculateSegmentDistance(startX, startY, endX, endY));
+				startX = endX;
+				startY = endY;
+			}
+		}
+
+		if (minimumDistance < this.wayDistance || (this.way == null && minimumDistance <= this.wayDistance)) {
+			this.wayDistance = minimumDistance;
+			this.way = wayData.toWay();
+		}
+	}
+
+	NearestResult build() {
+		return new NearestResult(this);
+	}
+
+	/**
+	 * @param minLatitude
+	 *            the minimum latitude of the rectangle in degrees.
+	 * @param minLongitude
+	 *            the minimum longitude of the rectangle in degrees.
+	 * @param maxLatitude
+	 *            the maximum latitude of the rectangle in degrees.
+	 * @param maxLongitude
+	 *            the maximum longitude of the rectangle in degrees.
+	 * @return the distance in meters between the query point and the boundary of the given rectangle, which must
+	 *         contain the query point.
+	 */
+	double calculateDistanceToBoundary(double minLatitude, double minLongitude, double maxLatitude,
+			double maxLongitude) {
+		double x = Math.min(-toX(minLongitude * 1000000), toX(maxLongitude * 1000000));
+		double y = Math.min(-toY(minLatitude * 1000000), toY(maxLatitude * 1000000));
+		return Math.max(Math.min(x, y), 0);
+	}
+
+	/**
+	 * @param minLatitude
+	 *            the minimum latitude of the rectangle in degrees.
+	 * @param minLongitude
+	 *            the minimum longitude of the rectangle in degrees.
+	 * @param maxLatitude
+	 *            the maximum latitude of the rectangle in degrees.
+	 * @param maxLongitude
+	 *            the maximum longitude of the rectangle in degrees.
+	 * @return the distance in meters between the query point and the closest point of the given rectangle, zero if the
+	 *         query point lies inside of it.
+	 */
+	double calculateDistanceToRectangle(double minLatitude, double minLongitude, double maxLatitude,
+			double maxLongitude) {
+		double x = Math.max(0, Math.max(toX(minLongitude * 1000000), -toX(maxLongitude * 1000000)));
+		double y = Math.max(0, Math.max(toY(minLatitude * 1000000), -toY(maxLatitude * 1000000)));
+		return Math.sqrt(x * x + y * y);
+	}
+
+	/**
+	 * @return the distance in meters beyond which no further POI or way can improve the result.
+	 */
+	double getDistanceLimit() {
+		if (!this.searchPois) {
+			return this.wayDistance;
+		} else if (!this.searchWays) {
+			return this.pointOfInterestDistance;
+		}
+		return Math.max(this.pointOfInterestDistance, this.wayDistance);
+	}
+
+	/**
+	 * Remembers the current result before the next block is decoded, so that it can be restored if the block turns out
+	 * to be corrupt.
+	 */
+	void startBlock() {
+		this.blockStartPointOfInterest = this.pointOfInterest;
+		this.blockStartPointOfInterestDistance = this.pointOfInterestDistance;
+		this.blockStartWay = this.way;
+		this.blockStartWayDistance = this.wayDistance;
+	}
+
+	private double calculateDistance(int pointLatitude, int pointLongitude) {
+		double x = toX(pointLongitude);
+		double y = toY(pointLatitude);
+		return Math.sqrt(x * x + y * y);
+	}
+
+	/**
+	 * @return the distance in meters between the query point, which is the origin, and the given line segment.
+	 */
+	private double calculateSegmentDistance(double startX, double startY, double endX, double endY) {
+		double deltaX = endX - startX;
+		double deltaY = endY - startY;
+		double lengthSquared = deltaX * deltaX + deltaY * deltaY;
+		double t = 0;
+		if (lengthSquared > 0) {
+			t = Math.max(0, Math.min(1, -(startX * deltaX + startY * deltaY) / lengthSquared));
+		}
+		double x = startX + t * deltaX;
+		double y = startY + t * deltaY;
+		return Math.sqrt(x * x + y * y);
+	}
+
+	private double toX(double pointLongitude) {
+		return (pointLongitude - this.longitude) * this.metersPerLongitudeMicrodegree;
+	}
+
+	private double toY(double pointLatitude) {
+		return (pointLatitude - this.latitude) * METERS_PER_MICRODEGREE;
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.mapsforge.core.GeoPoint;
+import org.mapsforge.core.Tag;
+
+/**
+ * A reusable view of the POI which is currently decoded by the {@link MapDatabase}, see {@link MapDataSink}. The
+ * optional name and house number are decoded only when they are requested.
+ */
+public class PoiData {
+	/**
+	 * Maximum number of tag IDs of a single POI.
+	 */
+	static final int MAXIMUM_NUMBER_OF_TAGS = 15;
+
+	private static final String TAG_KEY_ELE = "ele";
+	private static final String TAG_KEY_HOUSE_NUMBER = "addr:housenumber";
+	private static final String TAG_KEY_NAME = "name";
+
+	int elevation;
+	boolean hasElevation;
+	int houseNumberPosition;
+	int latitude;
+	byte layer;
+	int longitude;
+	int namePosition;
+	int numberOfTags;
+	private final Tag[] poiTags;
+	private final ReadBuffer readBuffer;
+	final int[] tagIds;
+
+	PoiData(ReadBuffer readBuffer, Tag[] poiTags) {
+		this.readBuffer = readBuffer;
+		this.poiTags = poiTags;
+		this.tagIds = new int[MAXIMUM_NUMBER_OF_TAGS];
+	}
+
+	/**
+	 * @return the elevation of this POI in meters, only valid if {@link #hasElevation()} returns true.
+	 */
+	public int getElevation() {
+		return this.elevation;
+	}
+
+	/**
+	 * @return the house number of this POI (may be null).
+	 */
+	public String getHouseNumber() {
+		return this.houseNumberPosition < 0 ? null : this.readBuffer.getUTF8EncodedString(this.houseNumberPosition);
+	}
+
+	/**
+	 * @return the latitude of this POI in microdegrees.
+	 */
+	public int getLatitude() {
+		return this.latitude;
+	}
+
+	/**
+	 * @return the layer of this POI + 5 (to avoid negative values).
+	 */
+	public byte getLayer() {
+		return this.layer;
+	}
+
+	/**
+	 * @return the longitude of this POI in microdegrees.
+	 */
+	public int getLongitude() {
+		return this.longitude;
+	}
+
+	/**
+	 * @return the name of this POI (may be null).
+	 */
+	public String getName() {
+		return this.namePosition < 0 ? null : this.readBuffer.getUTF8EncodedString(this.namePosition);
+	}
+
+	/**
+	 * @return the number of tag IDs of this POI.
+	 */
+	public int getNumberOfTags() {
+		return this.numberOfTags;
+	}
+
+	/**
+	 * @param index
+	 *            the index of the tag, must be less than {@link #getNumberOfTags()}.
+	 * @return the tag with the given index.
+	 */
+	public Tag getTag(int index) {
+		return this.poiTags[this.tagIds[index]];
+	}
+
+	/**
+	 * Returns the tag IDs of this POI. Only the first {@link #getNumberOfTags()} elements of the array are valid.
+	 * 
+	 * @return the reused array of tag IDs.
+	 */
+	public int[] getTagIds() {
+		return this.tagIds;
+	}
+
+	/**
+	 * @return true if this POI has an elevation, false otherwise.
+	 */
+	public boolean hasElevation() {
+		return this.hasElevation;
+	}
+
+	/**
+	 * @return a new immutable POI with all data of this POI.
+	 */
+	PointOfInterest toPointOfInterest() {
+		List<Tag> tags = new ArrayList<Tag>();
+		for (int i = 0; i < this.numberOfTags; ++i) {
+			tags.add(getTag(i));
+		}
+
+		if (this.namePosition >= 0) {
+			tags.add(this.readBuffer.getLabelTag(TAG_KEY_NAME, this.namePosition));
+		}
+
+		if (this.houseNumberPosition >= 0) {
+			tags.add(this.readBuffer.getLabelTag(TAG_KEY_HOUSE_NUMBER, this.houseNumberPosition));
+		}
+
+		if (this.hasElevation) {
+			tags.add(new Tag(TAG_KEY_ELE, Integer.toString(this.elevation)));
+		}
+
+		return new PointOfInterest(this.layer, tags, new GeoPoint(this.latitude, this.longitude));
+	}
+}
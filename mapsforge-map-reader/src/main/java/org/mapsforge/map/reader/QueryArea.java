@@ -0,0 +1,173 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.util.List;
+
+import org.mapsforge.core.BoundingBox;
+import org.mapsforge.core.GeoPoint;
+import org.mapsforge.core.MercatorProjection;
+
+/**
+ * An immutable area of an area query, either a bounding box or a simple polygon. Polygon edges are straight lines in
+ * the longitude/latitude plane.
+ */
+class QueryArea {
+	private static BoundingBox calculateBoundingBox(List<GeoPoint> polygon) {
+		int minLatitudeE6 = Integer.MAX_VALUE;
+		int minLongitudeE6 = Integer.MAX_VALUE;
+		int maxLatitudeE6 = Integer.MIN_VALUE;
+		int maxLongitudeE6 = Integer.MIN_VALUE;
+		for (int i = 0, n = polygon.size(); i < n; ++i) {
+			GeoPoint geoPoint = polygon.get(i);
+			minLatitudeE6 = Math.min(minLatitudeE6, geoPoint.latitudeE6);
+			minLongitudeE6 = Math.min(minLongitudeE6, geoPoint.longitudeE6);
+			maxLatitudeE6 = Math.max(maxLatitudeE6, geoPoint.latitudeE6);
+			maxLongitudeE6 = Math.max(maxLongitudeE6, geoPoint.longitudeE6);
+		}
+		return new BoundingBox(minLatitudeE6, minLongitudeE6, maxLatitudeE6, maxLongitudeE6);
+	}
+
+	/**
+	 * Clips the parameter interval of a line segment against one boundary of a rectangle (Liang-Barsky).
+	 * 
+	 * @param p
+	 *            the negated or positive direction component of the segment.
+	 * @param q
+	 *            the distance of the segment start to the boundary.
+	 * @param interval
+	 *            the current parameter interval, which is narrowed by this method.
+	 * @return false if the segment lies completely outside of the boundary, true otherwise.
+	 */
+	private static boolean clip(double p, double q, double[] interval) {
+		if (p == 0) {
+			return q >= 0;
+		}
+		double r = q / p;
+		if (p < 0) {
+			if (r > interval[1]) {
+				return false;
+			} else if (r > interval[0]) {
+				interval[0] = r;
+			}
+		} else {
+			if (r < interval[0]) {
+				return false;
+			} else if (r < interval[1]) {
+				interval[1] = r;
+			}
+		}
+		return true;
+	}
+
+	final BoundingBox boundingBox;
+	private final double[] polygonLatitudes;
+	private final double[] polygonLongitudes;
+
+	/**
+	 * @param boundingBox
+	 *            the area of the query.
+	 */
+	QueryArea(BoundingBox boundingBox) {
+		this.boundingBox = boundingBox;
+		this.polygonLatitudes = null;
+		this.polygonLongitudes = null;
+	}
+
+	/**
+	 * @param polygon
+	 *            the vertices of the area of the query, the closing edge is implicit.
+	 * @throws IllegalArgumentException
+	 *             if the polygon has less than three vertices.
+	 */
+	QueryArea(List<GeoPoint> polygon) {
+		if (polygon.size() < 3) {
+			throw new IllegalArgumentException("a polygon needs at least three vertices: " + polygon.size());
+		}
+
+		this.boundingBox = calculateBoundingBox(polygon);
+		this.polygonLatitudes = new double[polygon.size()];
+		this.polygonLongitudes = new double[polygon.size()];
+		for (int i = 0; i < this.polygonLatitudes.length; ++i) {
+			this.polygonLatitudes[i] = polygon.get(i).getLatitude();
+			this.polygonLongitudes[i] = polygon.get(i).getLongitude();
+		}
+	}
+
+	/**
+	 * @param tileX
+	 *            the tile X number.
+	 * @param tileY
+	 *            the tile Y number.
+	 * @param zoomLevel
+	 *            the zoom level of the tile.
+	 * @return true if the given tile and this area have at least one point in common, false otherwise.
+	 */
+	boolean intersectsTile(long tileX, long tileY, byte zoomLevel) {
+		double minLongitude = MercatorProjection.tileXToLongitude(tileX, zoomLevel);
+		double maxLongitude = MercatorProjection.tileXToLongitude(tileX + 1, zoomLevel);
+		double maxLatitude = MercatorProjection.tileYToLatitude(tileY, zoomLevel);
+		double minLatitude = MercatorProjection.tileYToLatitude(tileY + 1, zoomLevel);
+
+		if (minLongitude > this.boundingBox.getMaxLongitude() || maxLongitude < this.boundingBox.getMinLongitude()
+				|| minLatitude > this.boundingBox.getMaxLatitude() || maxLatitude < this.boundingBox.getMinLatitude()) {
+			return false;
+		} else if (this.polygonLatitudes == null) {
+			return true;
+		}
+
+		// check if any polygon edge touches the tile
+		double[] interval = new double[2];
+		for (int i = 0, j = this.polygonLatitudes.length - 1; i < this.polygonLatitudes.length; j = i++) {
+			double startLongitude = this.polygonLongitudes[j];
+			double startLatitude = this.polygonLatitudes[j];
+			double deltaLongitude = this.polygonLongitudes[i] - startLongitude;
+			double deltaLatitude = this.polygonLatitudes[i] - startLatitude;
+			interval[0] = 0;
+			interval[1] = 1;
+			if (clip(-deltaLongitude, startLongitude - minLongitude, interval)
+					&& clip(deltaLongitude, maxLongitude - startLongitude, interval)
+					&& clip(-deltaLatitude, startLatitude - minLatitude, interval)
+					&& clip(deltaLatitude, maxLatitude - startLatitude, interval)) {
+				return true;
+			}
+		}
+
+		// no edge touches the tile, so the tile is either completely inside or completely outside of the polygon
+		return containsPoint((minLatitude + maxLatitude) / 2, (minLongitude + maxLongitude) / 2);
+	}
+
+	/**
+	 * @param latitude
+	 *            the latitude of the point.
+	 * @param longitude
+	 *            the longitude of the point.
+	 * @return true if the given point lies inside of the polygon according to the even-odd rule, false otherwise.
+	 */
+	private boolean containsPoint(double latitude, double longitude) {
+		boolean inside = false;
+		for (int i = 0, j = this.polygonLatitudes.length - 1; i < this.polygonLatitudes.length; j = i++) {
+			if ((this.polygonLatitudes[i] > latitude) != (this.polygonLatitudes[j] > latitude)) {
+				double crossingLongitude = this.polygonLongitudes[i] + (latitude - this.polygonLatitudes[i])
+						* (this.polygonLongitudes[j] - this.polygonLongitudes[i])
+						/ (this.polygonLatitudes[j] - this.polygonLatitudes[i]);
+				if (longitude < crossingLongitude) {
+					inside = !inside;
+				}
+			}
+		}
+		return inside;
+	}
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+/**
+ * Receives the statistics of each query of a {@link MapDatabase}. The statistics are collected only while a listener is
+ * set, otherwise queries do not measure anything.
+ * 
+ * @see MapDatabase#setQueryListener(QueryListener)
+ */
+public interface QueryListener {
+	/**
+	 * Called on the querying thread after each query.
+	 * 
+	 * @param queryStatistics
+	 *            the statistics of the finished query, which are not modified afterwards.
+	 */
+	void onQueryFinished(QueryStatistics queryStatistics);
+}
@@ -14,13 +14,18 @@
  */
 package org.mapsforge.map.reader;
 
+import org.mapsforge.core.BoundingBox;
+
 class QueryParameters {
 	long fromBaseTileX;
 	long fromBaseTileY;
 	long fromBlockX;
 	long fromBlockY;
+	BoundingBox poiBoundingBox;
+	boolean poisOnly;
 	int queryTileBitmask;
 	int queryZoomLevel;
+	ResolvedTagFilter tagFilter;
 	long toBaseTileX;
 	long toBaseTileY;
 	long toBlockX;
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+/**
+ * Counters which describe the work done by one or more queries of a {@link MapDatabase}.
+ * 
+ * @see QueryListener
+ */
+public class QueryStatistics {
+	long blocksRead;
+	long bytesRead;
+	long decodeTime;
+	long indexCacheHits;
+	long indexCacheMisses;
+	long poisDecoded;
+	long readTime;
+	long waysDecoded;
+	long waysSkipped;
+
+	QueryStatistics() {
+		// do nothing
+	}
+
+	QueryStatistics(QueryStatistics queryStatistics) {
+		add(queryStatistics);
+	}
+
+	/**
+	 * @return the number of blocks which have been read from the map file.
+	 */
+	public long getBlocksRead() {
+		return this.blocksRead;
+	}
+
+	/**
+	 * @return the number of bytes which have been read from the map file, including index blocks.
+	 */
+	public long getBytesRead() {
+		return this.bytesRead;
+	}
+
+	/**
+	 * Returns the time spent outside of file reads, which is mainly the time needed to decode the blocks. It also
+	 * includes the time spent in the {@link MapDataSink} of the query.
+	 * 
+	 * @return the decoding time in nanoseconds.
+	 */
+	public long getDecodeTime() {
+		return this.decodeTime;
+	}
+
+	/**
+	 * @return the number of index entries which have been found in the index cache, the preloaded index or the mapped
+	 *         index.
+	 */
+	public long getIndexCacheHits() {
+		return this.indexCacheHits;
+	}
+
+	/**
+	 * @return the number of index entries which had to be read from the map file.
+	 */
+	public long getIndexCacheMisses() {
+		return this.indexCacheMisses;
+	}
+
+	/**
+	 * @return the number of POIs which have been decoded, including those which have been rejected by a filter.
+	 */
+	public long getPoisDecoded() {
+		return this.poisDecoded;
+	}
+
+	/**
+	 * Returns the time spent in file reads. If the map file is memory-mapped, reads do not copy any data and page
+	 * faults occur during decoding instead, so this time is close to zero.
+	 * 
+	 * @return the reading time in nanoseconds.
+	 */
+	public long getReadTime() {
+		return this.readTime;
+	}
+
+	/**
+	 * @return the number of ways which have been decoded, including those which have been rejected by a filter.
+	 */
+	public long getWaysDecoded() {
+		return this.waysDecoded;
+	}
+
+	/**
+	 * @return the number of ways which have been skipped because they do not intersect the tile of the query.
+	 */
+	public long getWaysSkipped() {
+		return this.waysSkipped;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder stringBuilder = new StringBuilder();
+		stringBuilder.append("QueryStatistics [blocksRead=");
+		stringBuilder.append(this.blocksRead);
+		stringBuilder.append(", bytesRead=");
+		stringBuilder.append(this.bytesRead);
+		stringBuilder.append(", decodeTime=");
+		stringBuilder.append(this.decodeTime);
+		stringBuilder.append(", indexCacheHits=");
+		stringBuilder.append(this.indexCacheHits);
+		stringBuilder.append(", indexCacheMisses=");
+		stringBuilder.append(this.indexCacheMisses);
+		stringBuilder.append(", poisDecoded=");
+		stringBuilder.append(this.poisDecoded);
+		stringBuilder.append(", readTime=");
+		stringBuilder.append(this.readTime);
+		stringBuilder.append(", waysDecoded=");
+		stringBuilder.append(this.waysDecoded);
+		stringBuilder.append(", waysSkipped=");
+		stringBuilder.append(this.waysSkipped);
+		stringBuilder.append("]");
+		return stringBuilder.toString();
+	}
+
+	void add(QueryStatistics queryStatistics) {
+		this.blocksRead += queryStatistics.blocksRead;
+		this.bytesRead += queryStatistics.bytesRead;
+		this.decodeTime += queryStatistics.decodeTime;
+		this.indexCacheHits += queryStatistics.indexCacheHits;
+		this.indexCacheMisses += queryStatistics.indexCacheMisses;
+		this.poisDecoded += queryStatistics.poisDecoded;
+		this.readTime += queryStatistics.readTime;
+		this.waysDecoded += queryStatistics.waysDecoded;
+		this.waysSkipped += queryStatistics.waysSkipped;
+	}
+
+	void clear() {
+		this.blocksRead = 0;
+		this.bytesRead = 0;
+		this.decodeTime = 0;
+		this.indexCacheHits = 0;
+		this.indexCacheMisses = 0;
+		this.poisDecoded = 0;
+		this.readTime = 0;
+		this.waysDecoded = 0;
+		this.waysSkipped = 0;
+	}
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+/**
+ * A thread-safe {@link QueryListener} which sums up the statistics of all queries, for example of all cursors of a
+ * {@link SharedMapDatabase}.
+ */
+public class QueryStatisticsCollector implements QueryListener {
+	private long numberOfQueries;
+	private final QueryStatistics queryStatistics;
+
+	/**
+	 * Creates a new collector without any queries.
+	 */
+	public QueryStatisticsCollector() {
+		this.queryStatistics = new QueryStatistics();
+	}
+
+	/**
+	 * @return the number of queries since this collector has been created or reset.
+	 */
+	public synchronized long getNumberOfQueries() {
+		return this.numberOfQueries;
+	}
+
+	/**
+	 * @return a copy of the summed up statistics of all queries since this collector has been created or reset.
+	 */
+	public synchronized QueryStatistics getQueryStatistics() {
+		return new QueryStatistics(this.queryStatistics);
+	}
+
+	@Override
+	public synchronized void onQueryFinished(QueryStatistics newQueryStatistics) {
+		++this.numberOfQueries;
+		this.queryStatistics.add(newQueryStatistics);
+	}
+
+	/**
+	 * Removes the statistics of all previous queries.
+	 */
+	public synchronized void reset() {
+		this.numberOfQueries = 0;
+		this.queryStatistics.clear();
+	}
+}
@@ -17,10 +17,17 @@ package org.mapsforge.map.reader;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.logging.Logger;
 
+import org.mapsforge.core.Tag;
+
 /**
- * Reads from a {@link RandomAccessFile} into a buffer and decodes the data.
+ * Reads from a {@link RandomAccessFile} into a buffer and decodes the data. If the map file is memory-mapped, the data
+ * is decoded directly from the mapped memory without copying it into the buffer first. Data in a heap buffer is
+ * decoded from its backing array, which avoids the bounds checks of the {@link ByteBuffer} accessors in the decoding
+ * loops.
  */
 public class ReadBuffer {
 	private static final String CHARSET_UTF8 = "UTF-8";
@@ -31,12 +38,96 @@ public class ReadBuffer {
 	 */
 	static final int MAXIMUM_BUFFER_SIZE = 2500000;
 
-	private byte[] bufferData;
+	/**
+	 * Reads from the given channel at the given position until the buffer is full. The file pointer of the channel is
+	 * not changed, so many threads may read from the same channel at the same time.
+	 * 
+	 * @param fileChannel
+	 *            the channel to read from.
+	 * @param byteBuffer
+	 *            the buffer which should be filled up to its limit.
+	 * @param position
+	 *            the absolute file position at which the read should start.
+	 * @return true if the buffer was filled completely, false if the end of the file was reached before.
+	 * @throws IOException
+	 *             if an error occurs while reading the file.
+	 */
+	static boolean readFully(FileChannel fileChannel, ByteBuffer byteBuffer, long position) throws IOException {
+		byteBuffer.position(0);
+		long readPosition = position;
+		while (byteBuffer.hasRemaining()) {
+			int bytesRead = fileChannel.read(byteBuffer, readPosition);
+			if (bytesRead < 0) {
+				return false;
+			}
+			readPosition += bytesRead;
+		}
+		byteBuffer.position(0);
+		return true;
+	}
+
+	private byte[] bufferArray;
+	private int bufferArrayOffset;
+	private ByteBuffer bufferData;
 	private int bufferPosition;
+	private ByteBuffer fileRegion;
+	private ByteBuffer heapBuffer;
 	private final RandomAccessFile inputFile;
+	private final boolean lazyLabels;
+	private final MappedFile mappedFile;
+	private byte[] stringBuffer;
+	private final StringCache stringCache;
+
+	/**
+	 * Creates a read buffer for the given data, which is not backed by a map file.
+	 * 
+	 * @param data
+	 *            the data which should be decoded.
+	 */
+	ReadBuffer(byte[] data) {
+		this(ByteBuffer.wrap(data));
+	}
+
+	/**
+	 * Creates a read buffer for the given data, which is not backed by a map file.
+	 * 
+	 * @param data
+	 *            the data which should be decoded, starting at index zero.
+	 */
+	ReadBuffer(ByteBuffer data) {
+		this.inputFile = null;
+		this.mappedFile = null;
+		this.stringCache = null;
+		this.lazyLabels = false;
+		setBufferData(data);
+	}
 
-	ReadBuffer(RandomAccessFile inputFile) {
+	/**
+	 * @param inputFile
+	 *            the map file.
+	 * @param mappedFile
+	 *            the memory mapping of the map file (may be null).
+	 */
+	ReadBuffer(RandomAccessFile inputFile, MappedFile mappedFile) {
+		this(inputFile, mappedFile, null, false);
+	}
+
+	/**
+	 * @param inputFile
+	 *            the map file.
+	 * @param mappedFile
+	 *            the memory mapping of the map file (may be null).
+	 * @param stringCache
+	 *            the cache which is used to decode strings and label tags (may be null).
+	 * @param lazyLabels
+	 *            true if label tags should be decoded only when their value is requested, see
+	 *            {@link #getLabelTag(String, int)}.
+	 */
+	ReadBuffer(RandomAccessFile inputFile, MappedFile mappedFile, StringCache stringCache, boolean lazyLabels) {
 		this.inputFile = inputFile;
+		this.mappedFile = mappedFile;
+		this.stringCache = stringCache;
+		this.lazyLabels = lazyLabels;
 	}
 
 	/**
@@ -45,7 +136,10 @@ public class ReadBuffer {
 	 * @return the byte value.
 	 */
 	public byte readByte() {
-		return this.bufferData[this.bufferPosition++];
+		if (this.bufferArray != null) {
+			return this.bufferArray[this.bufferArrayOffset + this.bufferPosition++];
+		}
+		return this.bufferData.get(this.bufferPosition++);
 	}
 
 	/**
@@ -59,19 +153,13 @@ public class ReadBuffer {
 	 *             if an error occurs while reading the file.
 	 */
 	public boolean readFromFile(int length) throws IOException {
-		// ensure that the read buffer is large enough
-		if (this.bufferData == null || this.bufferData.length < length) {
-			// ensure that the read buffer is not too large
-			if (length > MAXIMUM_BUFFER_SIZE) {
-				LOGGER.warning("invalid read length: " + length);
-				return false;
-			}
-			this.bufferData = new byte[length];
+		if (!prepareHeapBuffer(length)) {
+			return false;
 		}
 
 		// reset the buffer position and read the data into the buffer
 		this.bufferPosition = 0;
-		return this.inputFile.read(this.bufferData, 0, length) == length;
+		return this.inputFile.read(this.heapBuffer.array(), 0, length) == length;
 	}
 
 	/**
@@ -83,7 +171,10 @@ public class ReadBuffer {
 	 */
 	public int readInt() {
 		this.bufferPosition += 4;
-		return Deserializer.getInt(this.bufferData, this.bufferPosition - 4);
+		if (this.bufferArray != null) {
+			return Deserializer.getInt(this.bufferArray, this.bufferArrayOffset + this.bufferPosition - 4);
+		}
+		return this.bufferData.getInt(this.bufferPosition - 4);
 	}
 
 	/**
@@ -95,7 +186,10 @@ public class ReadBuffer {
 	 */
 	public long readLong() {
 		this.bufferPosition += 8;
-		return Deserializer.getLong(this.bufferData, this.bufferPosition - 8);
+		if (this.bufferArray != null) {
+			return Deserializer.getLong(this.bufferArray, this.bufferArrayOffset + this.bufferPosition - 8);
+		}
+		return this.bufferData.getLong(this.bufferPosition - 8);
 	}
 
 	/**
@@ -107,7 +201,10 @@ public class ReadBuffer {
 	 */
 	public int readShort() {
 		this.bufferPosition += 2;
-		return Deserializer.getShort(this.bufferData, this.bufferPosition - 2);
+		if (this.bufferArray != null) {
+			return Deserializer.getShort(this.bufferArray, this.bufferArrayOffset + this.bufferPosition - 2);
+		}
+		return this.bufferData.getShort(this.bufferPosition - 2);
 	}
 
 	/**
@@ -119,22 +216,76 @@ public class ReadBuffer {
 	 * @return the int value.
 	 */
 	public int readSignedInt() {
+		byte[] data = this.bufferArray;
+		if (data == null) {
+			return readSignedIntFromRegion();
+		}
+
+		int index = this.bufferArrayOffset + this.bufferPosition;
 		int variableByteDecode = 0;
 		byte variableByteShift = 0;
 
 		// check if the continuation bit is set
-		while ((this.bufferData[this.bufferPosition] & 0x80) != 0) {
-			variableByteDecode |= (this.bufferData[this.bufferPosition++] & 0x7f) << variableByteShift;
+		while ((data[index] & 0x80) != 0) {
+			variableByteDecode |= (data[index++] & 0x7f) << variableByteShift;
 			variableByteShift += 7;
 		}
+		this.bufferPosition = index + 1 - this.bufferArrayOffset;
 
 		// read the six data bits from the last byte
-		if ((this.bufferData[this.bufferPosition] & 0x40) != 0) {
+		if ((data[index] & 0x40) != 0) {
 			// negative
-			return -(variableByteDecode | ((this.bufferData[this.bufferPosition++] & 0x3f) << variableByteShift));
+			return -(variableByteDecode | ((data[index] & 0x3f) << variableByteShift));
 		}
 		// positive
-		return variableByteDecode | ((this.bufferData[this.bufferPosition++] & 0x3f) << variableByteShift);
+		return variableByteDecode | ((data[index] & 0x3f) << variableByteShift);
+	}
+
+	/**
+	 * Converts the given number of consecutive variable-byte encoded signed ints from the read buffer, see
+	 * {@link #readSignedInt()}. Values which fit into one or two bytes, the most frequent cases for coordinate
+	 * offsets, are decoded without entering the continuation loop.
+	 * 
+	 * @param values
+	 *            the array which receives the decoded values.
+	 * @param offset
+	 *            the index of the first decoded value in the array.
+	 * @param count
+	 *            the number of values to decode.
+	 */
+	public void readSignedInts(int[] values, int offset, int count) {
+		byte[] data = this.bufferArray;
+		if (data == null) {
+			readSignedIntsFromRegion(values, offset, count);
+			return;
+		}
+
+		int index = this.bufferArrayOffset + this.bufferPosition;
+		for (int i = offset, end = offset + count; i < end; ++i) {
+			int variableByte = data[index++];
+			int value;
+			if (variableByte >= 0) {
+				// single byte without continuation bit
+				value = variableByte & 0x3f;
+			} else {
+				value = variableByte & 0x7f;
+				variableByte = data[index++];
+				if (variableByte >= 0) {
+					// two bytes, the second one without continuation bit
+					value |= (variableByte & 0x3f) << 7;
+				} else {
+					int variableByteShift = 7;
+					do {
+						value |= (variableByte & 0x7f) << variableByteShift;
+						variableByteShift += 7;
+					} while ((variableByte = data[index++]) < 0);
+					value |= (variableByte & 0x3f) << variableByteShift;
+				}
+			}
+			values[i] = (variableByte & 0x40) == 0 ? value : -value;
+		}
+
+		this.bufferPosition = index - this.bufferArrayOffset;
 	}
 
 	/**
@@ -145,17 +296,24 @@ public class ReadBuffer {
 	 * @return the int value.
 	 */
 	public int readUnsignedInt() {
+		byte[] data = this.bufferArray;
+		if (data == null) {
+			return readUnsignedIntFromRegion();
+		}
+
+		int index = this.bufferArrayOffset + this.bufferPosition;
 		int variableByteDecode = 0;
 		byte variableByteShift = 0;
 
 		// check if the continuation bit is set
-		while ((this.bufferData[this.bufferPosition] & 0x80) != 0) {
-			variableByteDecode |= (this.bufferData[this.bufferPosition++] & 0x7f) << variableByteShift;
+		while ((data[index] & 0x80) != 0) {
+			variableByteDecode |= (data[index++] & 0x7f) << variableByteShift;
 			variableByteShift += 7;
 		}
+		this.bufferPosition = index + 1 - this.bufferArrayOffset;
 
 		// read the seven data bits from the last byte
-		return variableByteDecode | (this.bufferData[this.bufferPosition++] << variableByteShift);
+		return variableByteDecode | (data[index] << variableByteShift);
 	}
 
 	/**
@@ -175,10 +333,25 @@ public class ReadBuffer {
 	 * @return the UTF-8 decoded string (may be null).
 	 */
 	public String readUTF8EncodedString(int stringLength) {
-		if (stringLength > 0 && this.bufferPosition + stringLength <= this.bufferData.length) {
+		if (stringLength > 0 && this.bufferPosition + stringLength <= this.bufferData.limit()) {
 			this.bufferPosition += stringLength;
+			if (this.stringCache != null) {
+				return this.stringCache.getString(this.bufferData, this.bufferPosition - stringLength, stringLength);
+			}
 			try {
-				return new String(this.bufferData, this.bufferPosition - stringLength, stringLength, CHARSET_UTF8);
+				if (this.bufferData.hasArray()) {
+					return new String(this.bufferData.array(), this.bufferData.arrayOffset() + this.bufferPosition
+							- stringLength, stringLength, CHARSET_UTF8);
+				}
+
+				// the buffer refers to a mapped file region, copy the string bytes first
+				if (this.stringBuffer == null || this.stringBuffer.length < stringLength) {
+					this.stringBuffer = new byte[stringLength];
+				}
+				for (int i = 0; i < stringLength; ++i) {
+					this.stringBuffer[i] = this.bufferData.get(this.bufferPosition - stringLength + i);
+				}
+				return new String(this.stringBuffer, 0, stringLength, CHARSET_UTF8);
 			} catch (UnsupportedEncodingException e) {
 				throw new IllegalStateException(e);
 			}
@@ -187,6 +360,24 @@ public class ReadBuffer {
 		return null;
 	}
 
+	/**
+	 * Copies the given amount of bytes at the given buffer position into a new array without changing the current
+	 * buffer position.
+	 * 
+	 * @param position
+	 *            the buffer position of the first byte.
+	 * @param length
+	 *            the number of bytes to copy.
+	 * @return the copied bytes.
+	 */
+	byte[] getBytes(int position, int length) {
+		byte[] bytes = new byte[length];
+		ByteBuffer source = this.bufferData.duplicate();
+		source.position(position);
+		source.get(bytes);
+		return bytes;
+	}
+
 	/**
 	 * @return the current buffer position.
 	 */
@@ -198,7 +389,186 @@ public class ReadBuffer {
 	 * @return the current size of the read buffer.
 	 */
 	int getBufferSize() {
-		return this.bufferData.length;
+		return this.bufferData.limit();
+	}
+
+	/**
+	 * Decodes the label string at the given buffer position to a tag with the given key without changing the current
+	 * buffer position. Depending on the configuration of this buffer, the tag is taken from the string cache or keeps
+	 * the encoded value and decodes it only when it is requested, see {@link LabelTag}.
+	 * 
+	 * @param key
+	 *            the key of the tag.
+	 * @param position
+	 *            the buffer position at which the string, including its length, is stored.
+	 * @return the tag (the value may be null if the string is invalid).
+	 */
+	Tag getLabelTag(String key, int position) {
+		int currentBufferPosition = this.bufferPosition;
+		this.bufferPosition = position;
+		int stringLength = readUnsignedInt();
+		Tag tag;
+		if (stringLength <= 0 || this.bufferPosition + stringLength > this.bufferData.limit()) {
+			tag = new Tag(key, readUTF8EncodedString(stringLength));
+		} else if (this.lazyLabels) {
+			tag = new LabelTag(key, getBytes(this.bufferPosition, stringLength), this.stringCache);
+		} else if (this.stringCache != null) {
+			tag = this.stringCache.getTag(key, this.bufferData, this.bufferPosition, stringLength);
+		} else {
+			tag = new Tag(key, readUTF8EncodedString(stringLength));
+		}
+		this.bufferPosition = currentBufferPosition;
+		return tag;
+	}
+
+	/**
+	 * Decodes the variable amount of bytes at the given buffer position to a string without changing the current
+	 * buffer position.
+	 * 
+	 * @param position
+	 *            the buffer position at which the string, including its length, is stored.
+	 * @return the UTF-8 decoded string (may be null).
+	 */
+	String getUTF8EncodedString(int position) {
+		int currentBufferPosition = this.bufferPosition;
+		this.bufferPosition = position;
+		String string = readUTF8EncodedString();
+		this.bufferPosition = currentBufferPosition;
+		return string;
+	}
+
+	/**
+	 * Decodes a sequence of delta encoded way nodes from the read buffer. The way nodes are stored as pairs of
+	 * variable-byte encoded signed ints, latitude first. The first way node is relative to the given tile
+	 * coordinates, each further way node is relative to its predecessor. With double-delta encoding, the stored
+	 * values are the differences between consecutive deltas instead. The accumulation happens in the decoding loop, so
+	 * that every value is touched only once.
+	 * 
+	 * @param coordinates
+	 *            the array which receives the way nodes in microdegrees, in the order longitude/latitude.
+	 * @param offset
+	 *            the index of the longitude of the first way node in the array.
+	 * @param numberOfWayNodes
+	 *            the number of way nodes to decode, at least one.
+	 * @param latitude
+	 *            the latitude of the tile in microdegrees.
+	 * @param longitude
+	 *            the longitude of the tile in microdegrees.
+	 * @param doubleDelta
+	 *            true if the way nodes are double-delta encoded, false otherwise.
+	 */
+	void readDeltaEncodedCoordinates(int[] coordinates, int offset, int numberOfWayNodes, int latitude, int longitude,
+			boolean doubleDelta) {
+		// the first way node is relative to the tile
+		coordinates[offset + 1] = latitude + readSignedInt();
+		coordinates[offset] = longitude + readSignedInt();
+
+		byte[] data = this.bufferArray;
+		if (data == null) {
+			readDeltaEncodedCoordinatesFromRegion(coordinates, offset, numberOfWayNodes, doubleDelta);
+			return;
+		}
+
+		int position = this.bufferArrayOffset + this.bufferPosition;
+
+		// the values are stored latitude first, so the index of the n-th value is offset + (n ^ 1)
+		for (int n = 2, end = numberOfWayNodes * 2; n < end; ++n) {
+			int variableByte = data[position++];
+			int value;
+			if (variableByte >= 0) {
+				// single byte without continuation bit
+				value = variableByte & 0x3f;
+			} else {
+				value = variableByte & 0x7f;
+				variableByte = data[position++];
+				if (variableByte >= 0) {
+					// two bytes, the second one without continuation bit
+					value |= (variableByte & 0x3f) << 7;
+				} else {
+					int variableByteShift = 7;
+					do {
+						value |= (variableByte & 0x7f) << variableByteShift;
+						variableByteShift += 7;
+					} while ((variableByte = data[position++]) < 0);
+					value |= (variableByte & 0x3f) << variableByteShift;
+				}
+			}
+			if ((variableByte & 0x40) != 0) {
+				value = -value;
+			}
+
+			int index = offset + (n ^ 1);
+			int previous = coordinates[index - 2];
+			if (doubleDelta && n >= 4) {
+				// the previous delta is the difference of the two preceding way nodes
+				coordinates[index] = previous + previous - coordinates[index - 4] + value;
+			} else {
+				coordinates[index] = previous + value;
+			}
+		}
+
+		this.bufferPosition = position - this.bufferArrayOffset;
+	}
+
+	/**
+	 * Reads the given amount of bytes starting at the given position in the file into the read buffer and resets the
+	 * internal buffer position. If the map file is memory-mapped, the read buffer refers directly to the mapped file
+	 * region and no data is copied.
+	 * 
+	 * @param position
+	 *            the absolute position in the file from which the data should be read.
+	 * @param length
+	 *            the amount of bytes to read from the file.
+	 * @return true if the whole data was read successfully, false otherwise.
+	 * @throws IOException
+	 *             if an error occurs while reading the file.
+	 */
+	boolean readFromFile(long position, int length) throws IOException {
+		if (this.mappedFile == null) {
+			if (!prepareHeapBuffer(length)) {
+				return false;
+			}
+
+			// reset the buffer position and read the data into the buffer without moving the file pointer
+			this.bufferPosition = 0;
+			this.fileRegion = this.heapBuffer;
+			return readFully(this.inputFile.getChannel(), this.heapBuffer, position);
+		}
+
+		// ensure that the read buffer is not too large
+		if (length > MAXIMUM_BUFFER_SIZE) {
+			LOGGER.warning("invalid read length: " + length);
+			return false;
+		}
+
+		ByteBuffer mappedRegion = this.mappedFile.getRegion(position, length);
+		if (mappedRegion == null) {
+			return false;
+		}
+
+		// reset the buffer position and use the mapped region as buffer
+		setBufferData(mappedRegion);
+		this.bufferPosition = 0;
+		this.fileRegion = mappedRegion;
+		return true;
+	}
+
+	/**
+	 * Restricts the read buffer to a part of the data which has been read by the last call of
+	 * {@link #readFromFile(long, int)} and resets the internal buffer position. This allows to read several adjacent
+	 * blocks with a single file access and to decode them one after another.
+	 * 
+	 * @param offset
+	 *            the offset of the part relative to the start of the read data.
+	 * @param length
+	 *            the length of the part in bytes.
+	 */
+	void selectRegion(int offset, int length) {
+		ByteBuffer region = this.fileRegion.duplicate();
+		region.limit(offset + length);
+		region.position(offset);
+		setBufferData(region.slice());
+		this.bufferPosition = 0;
 	}
 
 	/**
@@ -220,4 +590,182 @@ public class ReadBuffer {
 	void skipBytes(int bytes) {
 		this.bufferPosition += bytes;
 	}
+
+	/**
+	 * Skips a variable amount of bytes in the read buffer which encode a string.
+	 * 
+	 * @return the buffer position of the skipped string or -1 if the string length is invalid.
+	 */
+	int skipUTF8EncodedString() {
+		int position = this.bufferPosition;
+		int stringLength = readUnsignedInt();
+		if (stringLength > 0 && this.bufferPosition + stringLength <= this.bufferData.limit()) {
+			this.bufferPosition += stringLength;
+			return position;
+		}
+		LOGGER.warning("invalid string length: " + stringLength);
+		return -1;
+	}
+
+	/**
+	 * Ensures that the heap buffer can hold the given amount of bytes and makes it the current read buffer.
+	 * 
+	 * @param length
+	 *            the amount of bytes which should fit into the heap buffer.
+	 * @return true if the heap buffer is large enough, false otherwise.
+	 */
+	private boolean prepareHeapBuffer(int length) {
+		// ensure that the read buffer is large enough
+		if (this.heapBuffer == null || this.heapBuffer.capacity() < length) {
+			// ensure that the read buffer is not too large
+			if (length > MAXIMUM_BUFFER_SIZE) {
+				LOGGER.warning("invalid read length: " + length);
+				return false;
+			}
+			this.heapBuffer = ByteBuffer.wrap(new byte[length]);
+		}
+
+		this.heapBuffer.limit(length);
+		setBufferData(this.heapBuffer);
+		return true;
+	}
+
+	/**
+	 * Decodes way nodes like {@link #readDeltaEncodedCoordinates} from a buffer without backing array, such as a
+	 * mapped file region. The first way node must already be decoded.
+	 */
+	private void readDeltaEncodedCoordinatesFromRegion(int[] coordinates, int offset, int numberOfWayNodes,
+			boolean doubleDelta) {
+		ByteBuffer data = this.bufferData;
+		int position = this.bufferPosition;
+
+		for (int n = 2, end = numberOfWayNodes * 2; n < end; ++n) {
+			int variableByte = data.get(position++);
+			int value;
+			if (variableByte >= 0) {
+				// single byte without continuation bit
+				value = variableByte & 0x3f;
+			} else {
+				value = variableByte & 0x7f;
+				variableByte = data.get(position++);
+				if (variableByte >= 0) {
+					// two bytes, the second one without continuation bit
+					value |= (variableByte & 0x3f) << 7;
+				} else {
+					int variableByteShift = 7;
+					do {
+						value |= (variableByte & 0x7f) << variableByteShift;
+						variableByteShift += 7;
+					} while ((variableByte = data.get(position++)) < 0);
+					value |= (variableByte & 0x3f) << variableByteShift;
+				}
+			}
+			if ((variableByte & 0x40) != 0) {
+				value = -value;
+			}
+
+			int index = offset + (n ^ 1);
+			int previous = coordinates[index - 2];
+			if (doubleDelta && n >= 4) {
+				coordinates[index] = previous + previous - coordinates[index - 4] + value;
+			} else {
+				coordinates[index] = previous + value;
+			}
+		}
+
+		this.bufferPosition = position;
+	}
+
+	/**
+	 * Converts a variable-byte encoded signed int like {@link #readSignedInt()} from a buffer without backing array,
+	 * such as a mapped file region.
+	 */
+	private int readSignedIntFromRegion() {
+		int variableByteDecode = 0;
+		byte variableByteShift = 0;
+
+		// check if the continuation bit is set
+		while ((this.bufferData.get(this.bufferPosition) & 0x80) != 0) {
+			variableByteDecode |= (this.bufferData.get(this.bufferPosition++) & 0x7f) << variableByteShift;
+			variableByteShift += 7;
+		}
+
+		// read the six data bits from the last byte
+		if ((this.bufferData.get(this.bufferPosition) & 0x40) != 0) {
+			// negative
+			return -(variableByteDecode | ((this.bufferData.get(this.bufferPosition++) & 0x3f) << variableByteShift));
+		}
+		// positive
+		return variableByteDecode | ((this.bufferData.get(this.bufferPosition++) & 0x3f) << variableByteShift);
+	}
+
+	/**
+	 * Converts variable-byte encoded signed ints like {@link #readSignedInts} from a buffer without backing array,
+	 * such as a mapped file region.
+	 */
+	private void readSignedIntsFromRegion(int[] values, int offset, int count) {
+		ByteBuffer data = this.bufferData;
+		int position = this.bufferPosition;
+
+		for (int i = offset, end = offset + count; i < end; ++i) {
+			int variableByte = data.get(position++);
+			int value;
+			if (variableByte >= 0) {
+				// single byte without continuation bit
+				value = variableByte & 0x3f;
+			} else {
+				value = variableByte & 0x7f;
+				variableByte = data.get(position++);
+				if (variableByte >= 0) {
+					// two bytes, the second one without continuation bit
+					value |= (variableByte & 0x3f) << 7;
+				} else {
+					int variableByteShift = 7;
+					do {
+						value |= (variableByte & 0x7f) << variableByteShift;
+						variableByteShift += 7;
+					} while ((variableByte = data.get(position++)) < 0);
+					value |= (variableByte & 0x3f) << variableByteShift;
+				}
+			}
+			values[i] = (variableByte & 0x40) == 0 ? value : -value;
+		}
+
+		this.bufferPosition = position;
+	}
+
+	/**
+	 * Converts a variable-byte encoded unsigned int like {@link #readUnsignedInt()} from a buffer without backing
+	 * array, such as a mapped file region.
+	 */
+	private int readUnsignedIntFromRegion() {
+		int variableByteDecode = 0;
+		byte variableByteShift = 0;
+
+		// check if the continuation bit is set
+		while ((this.bufferData.get(this.bufferPosition) & 0x80) != 0) {
+			variableByteDecode |= (this.bufferData.get(this.bufferPosition++) & 0x7f) << variableByteShift;
+			variableByteShift += 7;
+		}
+
+		// read the seven data bits from the last byte
+		return variableByteDecode | (this.bufferData.get(this.bufferPosition++) << variableByteShift);
+	}
+
+	/**
+	 * Makes the given buffer the current read buffer and caches its backing array, if it has one.
+	 * 
+	 * @param byteBuffer
+	 *            the new read buffer.
+	 */
+	private void setBufferData(ByteBuffer byteBuffer) {
+		this.bufferData = byteBuffer;
+		if (byteBuffer.hasArray()) {
+			this.bufferArray = byteBuffer.array();
+			this.bufferArrayOffset = byteBuffer.arrayOffset();
+		} else {
+			this.bufferArray = null;
+			this.bufferArrayOffset = 0;
+		}
+	}
 }
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+import org.mapsforge.core.Tile;
+
+/**
+ * A queued query of a {@link MapReadService}. Requested tiles are executed before prefetched tiles, requests in the
+ * order of their submission and prefetches starting with the most recent one.
+ */
+class ReadTask extends FutureTask<MapReadResult> implements Comparable<ReadTask> {
+	final boolean prefetch;
+	private final long sequenceNumber;
+	final Tile tile;
+
+	ReadTask(Callable<MapReadResult> callable, Tile tile, boolean prefetch, long sequenceNumber) {
+		super(callable);
+		this.tile = tile;
+		this.prefetch = prefetch;
+		this.sequenceNumber = sequenceNumber;
+	}
+
+	@Override
+	public int compareTo(ReadTask readTask) {
+		if (this.prefetch != readTask.prefetch) {
+			return this.prefetch ? 1 : -1;
+		} else if (this.sequenceNumber == readTask.sequenceNumber) {
+			return 0;
+		} else if (this.prefetch) {
+			// the most recent prefetch is the most likely one to be requested next
+			return this.sequenceNumber > readTask.sequenceNumber ? -1 : 1;
+		}
+		return this.sequenceNumber < readTask.sequenceNumber ? -1 : 1;
+	}
+}
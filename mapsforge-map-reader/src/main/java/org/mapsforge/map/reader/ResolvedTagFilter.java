@@ -0,0 +1,97 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import org.mapsforge.core.Tag;
+import org.mapsforge.map.reader.header.MapFileInfo;
+
+/**
+ * A {@link TagFilter} which has been evaluated for all tags of a map file, so that POIs and ways can be filtered by
+ * their tag IDs.
+ */
+class ResolvedTagFilter {
+	private static boolean acceptsAny(boolean[] acceptedTags) {
+		for (int i = 0; i < acceptedTags.length; ++i) {
+			if (acceptedTags[i]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean acceptsAny(boolean[] acceptedTags, int[] tagIds, int numberOfTags) {
+		for (int i = 0; i < numberOfTags; ++i) {
+			if (acceptedTags[tagIds[i]]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private final boolean[] acceptedPoiTags;
+	private final boolean[] acceptedWayTags;
+	final boolean acceptsAnyPoi;
+	final boolean acceptsAnyWay;
+	final MapFileInfo mapFileInfo;
+	final TagFilter tagFilter;
+
+	/**
+	 * @param tagFilter
+	 *            the filter which should be evaluated.
+	 * @param mapFileInfo
+	 *            the metadata of the map file whose tags should be evaluated.
+	 */
+	ResolvedTagFilter(TagFilter tagFilter, MapFileInfo mapFileInfo) {
+		this.tagFilter = tagFilter;
+		this.mapFileInfo = mapFileInfo;
+
+		Tag[] poiTags = mapFileInfo.poiTags;
+		this.acceptedPoiTags = new boolean[poiTags.length];
+		for (int i = 0; i < poiTags.length; ++i) {
+			this.acceptedPoiTags[i] = tagFilter.acceptsPoiTag(poiTags[i]);
+		}
+
+		Tag[] wayTags = mapFileInfo.wayTags;
+		this.acceptedWayTags = new boolean[wayTags.length];
+		for (int i = 0; i < wayTags.length; ++i) {
+			this.acceptedWayTags[i] = tagFilter.acceptsWayTag(wayTags[i]);
+		}
+
+		this.acceptsAnyPoi = acceptsAny(this.acceptedPoiTags);
+		this.acceptsAnyWay = acceptsAny(this.acceptedWayTags);
+	}
+
+	/**
+	 * @param tagIds
+	 *            the tag IDs of the POI.
+	 * @param numberOfTags
+	 *            the number of valid tag IDs.
+	 * @return true if at least one tag of the POI is accepted, false otherwise.
+	 */
+	boolean acceptsPoi(int[] tagIds, int numberOfTags) {
+		return acceptsAny(this.acceptedPoiTags, tagIds, numberOfTags);
+	}
+
+	/**
+	 * @param tagIds
+	 *            the tag IDs of the way.
+	 * @param numberOfTags
+	 *            the number of valid tag IDs.
+	 * @return true if at least one tag of the way is accepted, false otherwise.
+	 */
+	boolean acceptsWay(int[] tagIds, int numberOfTags) {
+		return acceptsAny(this.acceptedWayTags, tagIds, numberOfTags);
+	}
+}
@@ -0,0 +1,534 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.mapsforge.map.reader.header.FileOpenResult;
+import org.mapsforge.map.reader.header.MapFileHeader;
+import org.mapsforge.map.reader.header.MapFileInfo;
+import org.mapsforge.map.reader.header.SubFileParameter;
+
+/**
+ * A binary map file which can be queried by many threads at the same time.
+ * <p>
+ * The file header is parsed and the index cache is allocated only once per opened file. Each thread queries the map
+ * file through its own lightweight {@link MapDatabase} cursor, see {@link #createCursor()}. All cursors read the file
+ * with positional reads, so they never compete for a shared file pointer.
+ * <p>
+ * Opening and closing the map file is not thread-safe and must not happen while cursors are querying it. Note that
+ * interrupting a thread which is blocked in a read of a non memory-mapped file closes the underlying channel for all
+ * cursors.
+ */
+public class SharedMapDatabase {
+	/**
+	 * Default amount of cache blocks that the index cache should store.
+	 */
+	static final int DEFAULT_INDEX_CACHE_CAPACITY = 64;
+
+	private static final Logger LOGGER = Logger.getLogger(SharedMapDatabase.class.getName());
+
+	private static final String READ_ONLY_MODE = "r";
+
+	/**
+	 * Removes all map files from the process-wide header cache, see {@link #setHeaderCacheEnabled(boolean)}. Map files
+	 * which are currently open are not affected.
+	 */
+	public static void clearHeaderCache() {
+		HeaderCache.clear();
+	}
+
+	private Map<SubFileParameter, BlockBitmap> blockBitmaps;
+	private boolean blockBitmapsEnabled;
+	private BlockCache blockCache;
+	private int blockCacheCapacity;
+	private IndexCache databaseIndexCache;
+	private long fileSize;
+	private boolean headerCacheEnabled;
+	private HeaderCache.Entry headerCacheEntry;
+	private int indexCacheCapacity = DEFAULT_INDEX_CACHE_CAPACITY;
+	private boolean indexPreloadEnabled;
+	private RandomAccessFile inputFile;
+	private boolean lazyLabelsEnabled;
+	private boolean lazyWayNodesEnabled;
+	private MapFileHeader mapFileHeader;
+	private MappedFile mappedFile;
+	private boolean memoryMapped;
+	private QueryListener queryListener;
+	private StringCache stringCache;
+	private int stringCacheCapacity;
+
+	/**
+	 * Closes the map file and destroys all internal caches. Has no effect if no map file is currently opened.
+	 */
+	public void closeFile() {
+		try {
+			this.mapFileHeader = null;
+			this.blockBitmaps = null;
+			this.stringCache = null;
+
+			if (this.blockCache != null) {
+				this.blockCache.destroy();
+				this.blockCache = null;
+			}
+
+			if (this.databaseIndexCache != null) {
+				// an index cache which is kept in the header cache stays warm for the next time the file is opened
+				if (this.headerCacheEntry == null) {
+					this.databaseIndexCache.destroy();
+				}
+				this.databaseIndexCache = null;
+			}
+			this.headerCacheEntry = null;
+
+			// the mapping is released as soon as it has been garbage collected
+			this.mappedFile = null;
+
+			if (this.inputFile != null) {
+				this.inputFile.close();
+				this.inputFile = null;
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, null, e);
+		}
+	}
+
+	/**
+	 * Creates a new cursor for the currently opened map file. A cursor holds the per-thread decoding state and is not
+	 * thread-safe itself, each thread should use its own cursor. Closing a cursor does not close this map file.
+	 * 
+	 * @return a new cursor for the current map file.
+	 * @throws IllegalStateException
+	 *             if no map file is currently opened.
+	 */
+	public MapDatabase createCursor() {
+		if (this.mapFileHeader == null) {
+			throw new IllegalStateException("no map file is currently opened");
+		}
+		return new MapDatabase(this);
+	}
+
+	/**
+	 * @return the number of block cache hits since the current map file was opened.
+	 */
+	public long getBlockCacheHits() {
+		return this.blockCache == null ? 0 : this.blockCache.getHits();
+	}
+
+	/**
+	 * @return the number of block cache misses since the current map file was opened.
+	 */
+	public long getBlockCacheMisses() {
+		return this.blockCache == null ? 0 : this.blockCache.getMisses();
+	}
+
+	/**
+	 * @return the metadata for the current map file.
+	 * @throws IllegalStateException
+	 *             if no map file is currently opened.
+	 */
+	public MapFileInfo getMapFileInfo() {
+		if (this.mapFileHeader == null) {
+			throw new IllegalStateException("no map file is currently opened");
+		}
+		return this.mapFileHeader.getMapFileInfo();
+	}
+
+	/**
+	 * @return true if a map file is currently opened, false otherwise.
+	 */
+	public boolean hasOpenFile() {
+		return this.inputFile != null;
+	}
+
+	/**
+	 * @return true if block bitmaps are created when a map file is opened, false otherwise.
+	 * @see #setBlockBitmapsEnabled(boolean)
+	 */
+	public boolean isBlockBitmapsEnabled() {
+		return this.blockBitmapsEnabled;
+	}
+
+	/**
+	 * @return true if the process-wide header cache is used when a map file is opened, false otherwise.
+	 * @see #setHeaderCacheEnabled(boolean)
+	 */
+	public boolean isHeaderCacheEnabled() {
+		return this.headerCacheEnabled;
+	}
+
+	/**
+	 * @return true if the index of each sub-file is preloaded when a map file is opened, false otherwise.
+	 * @see #setIndexPreloadEnabled(boolean)
+	 */
+	public boolean isIndexPreloadEnabled() {
+		return this.indexPreloadEnabled;
+	}
+
+	/**
+	 * @return true if label tags are decoded only when their value is requested, false otherwise.
+	 * @see #setLazyLabelsEnabled(boolean)
+	 */
+	public boolean isLazyLabelsEnabled() {
+		return this.lazyLabelsEnabled;
+	}
+
+	/**
+	 * @return true if the way nodes of ways are decoded only when they are requested, false otherwise.
+	 * @see #setLazyWayNodesEnabled(boolean)
+	 */
+	public boolean isLazyWayNodesEnabled() {
+		return this.lazyWayNodesEnabled;
+	}
+
+	/**
+	 * @return true if map files are memory-mapped, false otherwise.
+	 */
+	public boolean isMemoryMapped() {
+		return this.memoryMapped;
+	}
+
+	/**
+	 * Opens the given map file, reads its header data and validates them.
+	 * 
+	 * @param mapFile
+	 *            the map file.
+	 * @return a FileOpenResult containing an error message in case of a failure.
+	 * @throws IllegalArgumentException
+	 *             if the given map file is null.
+	 */
+	public FileOpenResult openFile(File mapFile) {
+		try {
+			if (mapFile == null) {
+				throw new IllegalArgumentException("mapFile must not be null");
+			}
+
+			// make sure to close any previously opened file first
+			closeFile();
+
+			// check if the file exists and is readable
+			if (!mapFile.exists()) {
+				return new FileOpenResult("file does not exist: " + mapFile);
+			} else if (!mapFile.isFile()) {
+				return new FileOpenResult("not a file: " + mapFile);
+			} else if (!mapFile.canRead()) {
+				return new FileOpenResult("cannot read file: " + mapFile);
+			}
+
+			String canonicalPath = null;
+			long lastModified = 0;
+			HeaderCache.Entry cachedEntry = null;
+			if (this.headerCacheEnabled) {
+				canonicalPath = mapFile.getCanonicalPath();
+				lastModified = mapFile.lastModified();
+				cachedEntry = HeaderCache.get(canonicalPath, mapFile.length(), lastModified);
+			}
+
+			// open the file in read only mode
+			this.inputFile = new RandomAccessFile(mapFile, READ_ONLY_MODE);
+			this.fileSize = this.inputFile.length();
+
+			if (this.memoryMapped) {
+				this.mappedFile = new MappedFile(this.inputFile.getChannel(), this.fileSize);
+			}
+
+			if (cachedEntry != null && cachedEntry.mapFileHeader.getMapFileInfo().fileSize == this.fileSize) {
+				this.mapFileHeader = cachedEntry.mapFileHeader;
+			} else {
+				cachedEntry = null;
+				ReadBuffer readBuffer = new ReadBuffer(this.inputFile, this.mappedFile);
+				this.mapFileHeader = new MapFileHeader();
+				FileOpenResult fileOpenResult = this.mapFileHeader.readHeader(readBuffer, this.fileSize);
+				if (!fileOpenResult.isSuccess()) {
+					closeFile();
+					return fileOpenResult;
+				}
+			}
+
+			if (cachedEntry != null && cachedEntry.indexCache != null) {
+				this.databaseIndexCache = new IndexCache(this.inputFile, this.mappedFile, this.indexCacheCapacity,
+						cachedEntry.indexCache);
+			} else {
+				this.databaseIndexCache = new IndexCache(this.inputFile, this.mappedFile, this.indexCacheCapacity);
+			}
+			if (this.indexPreloadEnabled) {
+				for (SubFileParameter subFileParameter : getSubFileParameters()) {
+					if (!this.databaseIndexCache.isPreloaded(subFileParameter)
+							&& !this.databaseIndexCache.preload(subFileParameter)) {
+						LOGGER.info("index is not preloaded: " + subFileParameter);
+					}
+				}
+			}
+			if (this.blockCacheCapacity > 0) {
+				this.blockCache = new BlockCache(this.blockCacheCapacity);
+			}
+			if (this.blockBitmapsEnabled) {
+				if (cachedEntry != null && cachedEntry.blockBitmaps != null) {
+					this.blockBitmaps = cachedEntry.blockBitmaps;
+				} else {
+					this.blockBitmaps = createBlockBitmaps();
+				}
+			}
+
+			if (this.headerCacheEnabled) {
+				if (cachedEntry == null) {
+					cachedEntry = HeaderCache.put(canonicalPath, this.fileSize, lastModified, this.mapFileHeader);
+				}
+				cachedEntry.indexCache = this.databaseIndexCache;
+				if (this.blockBitmaps != null) {
+					cachedEntry.blockBitmaps = this.blockBitmaps;
+				}
+				this.headerCacheEntry = cachedEntry;
+			}
+			if (this.stringCacheCapacity > 0) {
+				this.stringCache = new StringCache(this.stringCacheCapacity);
+			}
+
+			return FileOpenResult.SUCCESS;
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, null, e);
+			// make sure that the file is closed
+			closeFile();
+			return new FileOpenResult(e.getMessage());
+		}
+	}
+
+	/**
+	 * Enables or disables the block bitmaps. If enabled, the complete index of each sub-file is read when a map file is
+	 * opened and summarized in a bitmap with two bits per block, so that tiles can be classified without any further
+	 * index reads, see {@link MapDatabase#classifyTile(org.mapsforge.core.Tile)}. Sub-files with more than 2^24 blocks
+	 * are not summarized. The new setting takes effect the next time a map file is opened.
+	 * 
+	 * @param blockBitmapsEnabled
+	 *            true if block bitmaps should be created, false otherwise.
+	 */
+	public void setBlockBitmapsEnabled(boolean blockBitmapsEnabled) {
+		this.blockBitmapsEnabled = blockBitmapsEnabled;
+	}
+
+	/**
+	 * Sets the capacity of the decoded block cache. The cache keeps the completely decoded content of recently used
+	 * blocks, so that all tiles above the base zoom level of a sub-file which lie in the same block are answered by a
+	 * single decoding step. A capacity of zero, which is the default, disables the cache. The new setting takes effect
+	 * the next time a map file is opened.
+	 * 
+	 * @param blockCacheCapacity
+	 *            the maximum number of decoded blocks in the cache.
+	 * @throws IllegalArgumentException
+	 *             if the capacity is negative.
+	 */
+	public void setBlockCacheCapacity(int blockCacheCapacity) {
+		if (blockCacheCapacity < 0) {
+			throw new IllegalArgumentException("blockCacheCapacity must not be negative: " + blockCacheCapacity);
+		}
+		this.blockCacheCapacity = blockCacheCapacity;
+	}
+
+	/**
+	 * Enables or disables the process-wide header cache. If enabled, the parsed header of each opened map file is kept
+	 * in a cache which is keyed by the canonical path, the size and the modification time of the file, so that
+	 * reopening an unchanged file only needs to look up these attributes instead of reading and validating the header
+	 * again. The index cache, the preloaded indexes and the block bitmaps of the file are kept as well and stay warm
+	 * across reopening. The cache holds up to 32 map files, see also {@link #clearHeaderCache()}. The new setting
+	 * takes effect the next time a map file is opened.
+	 * 
+	 * @param headerCacheEnabled
+	 *            true if the header cache should be used, false otherwise.
+	 */
+	public void setHeaderCacheEnabled(boolean headerCacheEnabled) {
+		this.headerCacheEnabled = headerCacheEnabled;
+	}
+
+	/**
+	 * Sets the capacity of the index cache, which is shared by all cursors of this map file. Each cached index block
+	 * holds the entries of 128 blocks. Sub-files whose index has been preloaded do not use the index cache. The new
+	 * setting takes effect the next time a map file is opened.
+	 * 
+	 * @param indexCacheCapacity
+	 *            the maximum number of index blocks in the cache (default: 64).
+	 * @throws IllegalArgumentException
+	 *             if the capacity is negative.
+	 */
+	public void setIndexCacheCapacity(int indexCacheCapacity) {
+		if (indexCacheCapacity < 0) {
+			throw new IllegalArgumentException("indexCacheCapacity must not be negative: " + indexCacheCapacity);
+		}
+		this.indexCacheCapacity = indexCacheCapacity;
+	}
+
+	/**
+	 * Enables or disables the index preload. If enabled, the complete index of each sub-file is read into an array
+	 * when a map file is opened, so that looking up an index entry is a plain array access. This needs eight bytes of
+	 * heap per block, sub-files with more than 2^27 blocks are not preloaded and use the index cache instead. The new
+	 * setting takes effect the next time a map file is opened.
+	 * 
+	 * @param indexPreloadEnabled
+	 *            true if the index should be preloaded, false otherwise.
+	 */
+	public void setIndexPreloadEnabled(boolean indexPreloadEnabled) {
+		this.indexPreloadEnabled = indexPreloadEnabled;
+	}
+
+	/**
+	 * Enables or disables lazy label tags. If enabled, the name, house number and ref tags of ways and POIs keep their
+	 * UTF-8 encoded value and decode it only when {@link org.mapsforge.core.Tag#getValue()} is called, so that labels
+	 * which are never drawn are never decoded. The {@link org.mapsforge.core.Tag#value} field of such a tag is null
+	 * and the tag is never equal to a plain tag with the same key and value. The new setting applies to all cursors
+	 * which are created afterwards.
+	 * 
+	 * @param lazyLabelsEnabled
+	 *            true if label tags should be decoded lazily, false otherwise.
+	 */
+	public void setLazyLabelsEnabled(boolean lazyLabelsEnabled) {
+		this.lazyLabelsEnabled = lazyLabelsEnabled;
+	}
+
+	/**
+	 * Enables or disables lazy way nodes. If enabled, ways with a single way data block keep their encoded
+	 * coordinates and decode them only when {@link Way#getWayNodes()} is called, so that ways which are never drawn
+	 * are never decoded. The {@link Way#wayNodes} field of such a way is null. The new setting applies to all cursors
+	 * which are created afterwards.
+	 * 
+	 * @param lazyWayNodesEnabled
+	 *            true if way nodes should be decoded lazily, false otherwise.
+	 */
+	public void setLazyWayNodesEnabled(boolean lazyWayNodesEnabled) {
+		this.lazyWayNodesEnabled = lazyWayNodesEnabled;
+	}
+
+	/**
+	 * Enables or disables memory-mapped file access. If enabled, the map file is mapped into memory and all blocks and
+	 * index entries are decoded directly from the mapping instead of being read into a buffer first. The new setting
+	 * takes effect the next time a map file is opened.
+	 * 
+	 * @param memoryMapped
+	 *            true if map files should be memory-mapped, false otherwise.
+	 */
+	public void setMemoryMapped(boolean memoryMapped) {
+		this.memoryMapped = memoryMapped;
+	}
+
+	/**
+	 * Sets the listener which receives the statistics of each query of all cursors which are created afterwards, see
+	 * {@link MapDatabase#setQueryListener(QueryListener)}. The listener must be thread-safe if the cursors are used by
+	 * different threads, for example a {@link QueryStatisticsCollector}.
+	 * 
+	 * @param queryListener
+	 *            the new listener (may be null).
+	 */
+	public void setQueryListener(QueryListener queryListener) {
+		this.queryListener = queryListener;
+	}
+
+	/**
+	 * Sets the capacity of the string cache, which is shared by all cursors of this map file. The cache interns the
+	 * names, house numbers and refs of ways and POIs together with their tags, keyed by their UTF-8 encoded bytes, so
+	 * that a label which repeats in many blocks is decoded only once. Strings longer than 128 bytes are not cached. A
+	 * capacity of zero, which is the default, disables the cache. The new setting takes effect the next time a map
+	 * file is opened.
+	 * 
+	 * @param stringCacheCapacity
+	 *            the maximum number of strings in the cache, rounded up to the next power of two.
+	 * @throws IllegalArgumentException
+	 *             if the capacity is negative or larger than 2^30.
+	 */
+	public void setStringCacheCapacity(int stringCacheCapacity) {
+		if (stringCacheCapacity < 0 || stringCacheCapacity > 1 << 30) {
+			throw new IllegalArgumentException("invalid stringCacheCapacity: " + stringCacheCapacity);
+		}
+		this.stringCacheCapacity = stringCacheCapacity;
+	}
+
+	/**
+	 * @return a new read buffer for the current map file.
+	 */
+	ReadBuffer createReadBuffer() {
+		return new ReadBuffer(this.inputFile, this.mappedFile, this.stringCache, this.lazyLabelsEnabled);
+	}
+
+	/**
+	 * @return the block bitmaps of all summarized sub-files of the current map file (may be null).
+	 */
+	Map<SubFileParameter, BlockBitmap> getBlockBitmaps() {
+		return this.blockBitmaps;
+	}
+
+	/**
+	 * @return the block cache of the current map file (may be null).
+	 */
+	BlockCache getBlockCache() {
+		return this.blockCache;
+	}
+
+	/**
+	 * @return the index cache of the current map file.
+	 */
+	IndexCache getDatabaseIndexCache() {
+		return this.databaseIndexCache;
+	}
+
+	/**
+	 * @return the size of the current map file in bytes.
+	 */
+	long getFileSize() {
+		return this.fileSize;
+	}
+
+	/**
+	 * @return the header of the current map file.
+	 */
+	MapFileHeader getMapFileHeader() {
+		return this.mapFileHeader;
+	}
+
+	/**
+	 * @return the listener for the cursors of this map file (may be null).
+	 */
+	QueryListener getQueryListener() {
+		return this.queryListener;
+	}
+
+	private Map<SubFileParameter, BlockBitmap> createBlockBitmaps() {
+		Map<SubFileParameter, BlockBitmap> newBlockBitmaps = new HashMap<SubFileParameter, BlockBitmap>();
+		for (SubFileParameter subFileParameter : getSubFileParameters()) {
+			// sub-files without a bitmap are mapped to null
+			newBlockBitmaps.put(subFileParameter, BlockBitmap.create(this.databaseIndexCache, subFileParameter));
+		}
+		return newBlockBitmaps;
+	}
+
+	/**
+	 * @return all distinct sub-files of the current map file.
+	 */
+	private List<SubFileParameter> getSubFileParameters() {
+		List<SubFileParameter> subFileParameters = new ArrayList<SubFileParameter>();
+		byte zoomLevelMaximum = this.mapFileHeader.getQueryZoomLevel(Byte.MAX_VALUE);
+		for (byte zoomLevel = 0; zoomLevel <= zoomLevelMaximum; ++zoomLevel) {
+			SubFileParameter subFileParameter = this.mapFileHeader.getSubFileParameter(zoomLevel);
+			if (subFileParameter != null && !subFileParameters.contains(subFileParameter)) {
+				subFileParameters.add(subFileParameter);
+			}
+		}
+		return subFileParameters;
+	}
+}
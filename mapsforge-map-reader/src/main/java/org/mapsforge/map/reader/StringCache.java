@@ -0,0 +1,169 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+import org.mapsforge.core.Tag;
+
+/**
+ * A bounded intern cache for UTF-8 encoded strings and label tags, keyed by their raw bytes.
+ * <p>
+ * The cache is direct-mapped: each string is stored in the single slot selected by the hash code of its bytes and
+ * replaces any previous entry of that slot. A lookup of a cached string compares the bytes in place and does not
+ * allocate any memory. Entries are immutable and slots are replaced as a whole, so the cache can be shared by many
+ * threads without locking; a concurrent replacement may only cause an additional miss.
+ */
+final class StringCache {
+	private static final class Entry {
+		final byte[] bytes;
+		final int hashCode;
+		final String key;
+		final String string;
+		final Tag tag;
+
+		Entry(String key, byte[] bytes, int hashCode, String string) {
+			this.key = key;
+			this.bytes = bytes;
+			this.hashCode = hashCode;
+			this.string = string;
+			this.tag = key == null ? null : new Tag(key, string);
+		}
+
+		boolean matches(String otherKey, int otherHashCode, ByteBuffer buffer, int offset, int length) {
+			if (this.hashCode != otherHashCode || this.bytes.length != length) {
+				return false;
+			} else if (this.key == null ? otherKey != null : !this.key.equals(otherKey)) {
+				return false;
+			}
+			for (int i = 0; i < length; ++i) {
+				if (this.bytes[i] != buffer.get(offset + i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	private static final String CHARSET_UTF8 = "UTF-8";
+
+	/**
+	 * Maximum length in bytes of a string which is stored in the cache. Longer strings rarely repeat and are decoded
+	 * without the cache.
+	 */
+	static final int MAXIMUM_STRING_LENGTH = 128;
+
+	private static int calculateHashCode(String key, ByteBuffer buffer, int offset, int length) {
+		int result = key == null ? 0 : key.hashCode();
+		for (int i = 0; i < length; ++i) {
+			result = 31 * result + buffer.get(offset + i);
+		}
+		// spread the higher bits, the slot is selected by the lower bits only
+		return result ^ (result >>> 16);
+	}
+
+	private static byte[] copyBytes(ByteBuffer buffer, int offset, int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; ++i) {
+			bytes[i] = buffer.get(offset + i);
+		}
+		return bytes;
+	}
+
+	private static String decode(byte[] bytes) {
+		try {
+			return new String(bytes, CHARSET_UTF8);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private final Entry[] entries;
+
+	/**
+	 * @param capacity
+	 *            the maximum number of strings in the cache, rounded up to the next power of two.
+	 * @throws IllegalArgumentException
+	 *             if the capacity is not positive or larger than 2^30.
+	 */
+	StringCache(int capacity) {
+		if (capacity <= 0 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("invalid capacity: " + capacity);
+		}
+		int numberOfSlots = 1;
+		while (numberOfSlots < capacity) {
+			numberOfSlots <<= 1;
+		}
+		this.entries = new Entry[numberOfSlots];
+	}
+
+	/**
+	 * @return the number of slots of this cache.
+	 */
+	int getCapacity() {
+		return this.entries.length;
+	}
+
+	/**
+	 * Returns the string which is encoded by the given bytes. The content and position of the buffer are not changed.
+	 * 
+	 * @param buffer
+	 *            the buffer which contains the UTF-8 encoded string.
+	 * @param offset
+	 *            the absolute position of the first byte of the string in the buffer.
+	 * @param length
+	 *            the length of the string in bytes.
+	 * @return the decoded string.
+	 */
+	String getString(ByteBuffer buffer, int offset, int length) {
+		return getEntry(null, buffer, offset, length).string;
+	}
+
+	/**
+	 * Returns a tag with the given key whose value is the string which is encoded by the given bytes. The content and
+	 * position of the buffer are not changed.
+	 * 
+	 * @param key
+	 *            the key of the tag.
+	 * @param buffer
+	 *            the buffer which contains the UTF-8 encoded value.
+	 * @param offset
+	 *            the absolute position of the first byte of the value in the buffer.
+	 * @param length
+	 *            the length of the value in bytes.
+	 * @return the tag.
+	 */
+	Tag getTag(String key, ByteBuffer buffer, int offset, int length) {
+		return getEntry(key, buffer, offset, length).tag;
+	}
+
+	private Entry getEntry(String key, ByteBuffer buffer, int offset, int length) {
+		if (length > MAXIMUM_STRING_LENGTH) {
+			byte[] bytes = copyBytes(buffer, offset, length);
+			return new Entry(key, bytes, 0, decode(bytes));
+		}
+
+		int hashCode = calculateHashCode(key, buffer, offset, length);
+		int slot = hashCode & (this.entries.length - 1);
+		Entry entry = this.entries[slot];
+		if (entry == null || !entry.matches(key, hashCode, buffer, offset, length)) {
+			byte[] bytes = copyBytes(buffer, offset, length);
+			entry = new Entry(key, bytes, hashCode, decode(bytes));
+			this.entries[slot] = entry;
+		}
+		return entry;
+	}
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import org.mapsforge.core.Tag;
+
+/**
+ * Selects the POIs and ways which are returned by a tag-filtered query of the {@link MapDatabase}. A POI or way is
+ * returned if at least one of its tags from {@link org.mapsforge.map.reader.header.MapFileInfo#poiTags} or
+ * {@link org.mapsforge.map.reader.header.MapFileInfo#wayTags} is accepted. Names, house numbers, references and
+ * elevations are not passed to the filter.
+ * <p>
+ * The filter is evaluated only once for each tag of a map file, so the result for a given tag must not change.
+ */
+public interface TagFilter {
+	/**
+	 * @param tag
+	 *            a POI tag of the map file.
+	 * @return true if POIs with the given tag should be returned, false otherwise.
+	 */
+	boolean acceptsPoiTag(Tag tag);
+
+	/**
+	 * @param tag
+	 *            a way tag of the map file.
+	 * @return true if ways with the given tag should be returned, false otherwise.
+	 */
+	boolean acceptsWayTag(Tag tag);
+}
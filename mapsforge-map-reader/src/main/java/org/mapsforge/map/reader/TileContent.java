@@ -0,0 +1,38 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+/**
+ * The content of a tile as far as it can be determined from the index of a map file alone.
+ * 
+ * @see MapDatabase#classifyTile(org.mapsforge.core.Tile)
+ */
+public enum TileContent {
+	/**
+	 * All blocks of the tile contain map data which needs to be read. Above the base zoom level of a sub-file, the
+	 * data of a block may lie outside of the tile, so the tile can still turn out to be empty when it is read.
+	 */
+	DATA,
+
+	/**
+	 * No block of the tile contains any map data and not all of them are flagged as water.
+	 */
+	EMPTY,
+
+	/**
+	 * No block of the tile contains any map data and all of them are flagged as water.
+	 */
+	WATER
+}
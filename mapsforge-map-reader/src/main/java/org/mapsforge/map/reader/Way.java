@@ -15,14 +15,145 @@
 package org.mapsforge.map.reader;
 
 import java.util.List;
+import java.util.logging.Logger;
 
 import org.mapsforge.core.GeoPoint;
 import org.mapsforge.core.Tag;
 
 /**
- * An immutable container for all data associated with a single way or area (closed way).
+ * A container for all data associated with a single way or area (closed way).
+ * <p>
+ * By default the way nodes are decoded together with the way. If lazy way nodes are enabled, see
+ * {@link MapDatabase#setLazyWayNodesEnabled(boolean)}, the {@link #wayNodes} field of a way with a single way data
+ * block is null and {@link #getWayNodes()} decodes the coordinates from the retained encoded bytes on its first call.
  */
 public class Way {
+	private static final Logger LOGGER = Logger.getLogger(Way.class.getName());
+	private static final float[][] NO_WAY_NODES = new float[0][];
+
+	/**
+	 * Decodes the given way data block into one coordinate array for each segment. The block is checked while it is
+	 * decoded, a corrupt block results in an empty array.
+	 * 
+	 * @param data
+	 *            the way data block, starting with the number of way coordinate blocks.
+	 * @param doubleDeltaEncoding
+	 *            true if the coordinates are double-delta encoded, false otherwise.
+	 * @param tileLatitude
+	 *            the latitude of the tile to which the coordinates are relative.
+	 * @param tileLongitude
+	 *            the longitude of the tile to which the coordinates are relative.
+	 * @return the way nodes in the order longitude/latitude.
+	 */
+	private static float[][] decodeWayNodes(byte[] data, boolean doubleDeltaEncoding, int tileLatitude,
+			int tileLongitude) {
+		int position = 0;
+		int variableByte;
+		try {
+			// get and check the number of way coordinate blocks (VBE-U)
+			int numberOfWayCoordinateBlocks = 0;
+			int variableByteShift = 0;
+			while ((variableByte = data[position++]) < 0) {
+				numberOfWayCoordinateBlocks |= (variableByte & 0x7f) << variableByteShift;
+				variableByteShift += 7;
+			}
+			numberOfWayCoordinateBlocks |= variableByte << variableByteShift;
+			if (numberOfWayCoordinateBlocks < 1 || numberOfWayCoordinateBlocks > data.length) {
+				LOGGER.warning("invalid number of way coordinate blocks: " + numberOfWayCoordinateBlocks);
+				return NO_WAY_NODES;
+			}
+
+			float[][] wayNodes = new float[numberOfWayCoordinateBlocks][];
+			for (int coordinateBlock = 0; coordinateBlock < numberOfWayCoordinateBlocks; ++coordinateBlock) {
+				// get and check the number of way nodes (VBE-U), each value needs at least one byte
+				int numberOfWayNodes = 0;
+				variableByteShift = 0;
+				while ((variableByte = data[position++]) < 0) {
+					numberOfWayNodes |= (variableByte & 0x7f) << variableByteShift;
+					variableByteShift += 7;
+				}
+				numberOfWayNodes |= variableByte << variableByteShift;
+				if (numberOfWayNodes < 2 || numberOfWayNodes * 2 > data.length - position) {
+					LOGGER.warning("invalid number of way nodes: " + numberOfWayNodes);
+					return NO_WAY_NODES;
+				}
+
+				float[] waySegment = new float[numberOfWayNodes * 2];
+				int latitude = tileLatitude;
+				int longitude = tileLongitude;
+				int latitudeDelta = 0;
+				int longitudeDelta = 0;
+				for (int i = 0; i < waySegment.length; ++i) {
+					// decode the next signed value (VBE-S)
+					int value = 0;
+					variableByteShift = 0;
+					while ((variableByte = data[position++]) < 0) {
+						value |= (variableByte & 0x7f) << variableByteShift;
+						variableByteShift += 7;
+					}
+					value |= (variableByte & 0x3f) << variableByteShift;
+					if ((variableByte & 0x40) != 0) {
+						value = -value;
+					}
+
+					// the values are stored latitude first, the first way node is relative to the tile
+					if (doubleDeltaEncoding && i >= 4) {
+						value += (i & 1) == 0 ? latitudeDelta : longitudeDelta;
+					}
+					if ((i & 1) == 0) {
+						latitudeDelta = value;
+						latitude += value;
+						waySegment[i + 1] = latitude;
+					} else {
+						longitudeDelta = value;
+						longitude += value;
+						waySegment[i - 1] = longitude;
+					}
+				}
+				wayNodes[coordinateBlock] = waySegment;
+			}
+			return wayNodes;
+		} catch (ArrayIndexOutOfBoundsException e) {
+			LOGGER.warning("invalid way data block length: " + data.length);
+			return NO_WAY_NODES;
+		}
+	}
+
+	/**
+	 * @param data
+	 *            the encoded data.
+	 * @param position
+	 *            the position of a variable-byte encoded signed int.
+	 * @return the decoded value.
+	 */
+	private static int readSignedInt(byte[] data, int position) {
+		int value = 0;
+		int variableByteShift = 0;
+		int index = position;
+		int variableByte;
+		while ((variableByte = data[index++]) < 0) {
+			value |= (variableByte & 0x7f) << variableByteShift;
+			variableByteShift += 7;
+		}
+		value |= (variableByte & 0x3f) << variableByteShift;
+		return (variableByte & 0x40) == 0 ? value : -value;
+	}
+
+	/**
+	 * @param data
+	 *            the encoded data.
+	 * @param position
+	 *            the position of a variable-byte encoded int.
+	 * @return the position after the variable-byte encoded int.
+	 */
+	private static int skipVariableByteEncodedInt(byte[] data, int position) {
+		int index = position;
+		while (data[index++] < 0) {
+			// skip all bytes with a continuation bit
+		}
+		return index;
+	}
+
 	/**
 	 * The position of the area label (may be null).
 	 */
@@ -39,14 +170,108 @@ public class Way {
 	public final List<Tag> tags;
 
 	/**
-	 * The geographical coordinates of the way nodes in the order longitude/latitude.
+	 * The geographical coordinates of the way nodes in the order longitude/latitude. Null if the way nodes have not
+	 * been decoded yet, see {@link #getWayNodes()}.
 	 */
 	public final float[][] wayNodes;
 
+	private volatile float[][] decodedWayNodes;
+	private final boolean doubleDeltaEncoding;
+	private final byte[] encodedWayNodes;
+	private final int tileLatitude;
+	private final int tileLongitude;
+
+	Way(byte layer, List<Tag> tags, byte[] encodedWayNodes, boolean doubleDeltaEncoding, int tileLatitude,
+			int tileLongitude, GeoPoint labelPosition) {
+		this.layer = layer;
+		this.tags = tags;
+		this.wayNodes = null;
+		this.encodedWayNodes = encodedWayNodes;
+		this.doubleDeltaEncoding = doubleDeltaEncoding;
+		this.tileLatitude = tileLatitude;
+		this.tileLongitude = tileLongitude;
+		this.labelPosition = labelPosition;
+	}
+
 	Way(byte layer, List<Tag> tags, float[][] wayNodes, GeoPoint labelPosition) {
 		this.layer = layer;
 		this.tags = tags;
 		this.wayNodes = wayNodes;
 		this.labelPosition = labelPosition;
+		this.encodedWayNodes = null;
+		this.doubleDeltaEncoding = false;
+		this.tileLatitude = 0;
+		this.tileLongitude = 0;
+	}
+
+	/**
+	 * Returns the geographical coordinates of the way nodes in the order longitude/latitude. Coordinates which have
+	 * not been decoded together with the way are decoded on the first call, all further calls return the same array.
+	 * 
+	 * @return the way nodes of this way, one array for each segment.
+	 */
+	public float[][] getWayNodes() {
+		if (this.wayNodes != null) {
+			return this.wayNodes;
+		}
+
+		// concurrent callers may decode the same bytes, but all of them return equal arrays
+		float[][] result = this.decodedWayNodes;
+		if (result == null) {
+			result = decodeWayNodes(this.encodedWayNodes, this.doubleDeltaEncoding, this.tileLatitude,
+					this.tileLongitude);
+			this.decodedWayNodes = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Creates a copy of this way whose way nodes can be modified independently of this way. The encoded way nodes are
+	 * shared if they have not been decoded yet.
+	 * 
+	 * @return the copy of this way.
+	 */
+	Way copy() {
+		if (this.wayNodes == null) {
+			return new Way(this.layer, this.tags, this.encodedWayNodes, this.doubleDeltaEncoding, this.tileLatitude,
+					this.tileLongitude, this.labelPosition);
+		}
+
+		float[][] wayNodesCopy = new float[this.wayNodes.length][];
+		for (int i = 0; i < this.wayNodes.length; ++i) {
+			wayNodesCopy[i] = this.wayNodes[i].clone();
+		}
+		return new Way(this.layer, this.tags, wayNodesCopy, this.labelPosition);
+	}
+
+	/**
+	 * Calculates a hash code of the first way node without decoding the remaining way nodes. Equal ways have equal
+	 * hash codes, regardless of whether their way nodes have been decoded or not.
+	 * 
+	 * @return the hash code of the first way node.
+	 */
+	int getFirstWayNodeHashCode() {
+		float longitude;
+		float latitude;
+		float[][] result = this.wayNodes != null ? this.wayNodes : this.decodedWayNodes;
+		if (result != null) {
+			if (result.length == 0) {
+				return 0;
+			}
+			longitude = result[0][0];
+			latitude = result[0][1];
+		} else {
+			try {
+				// skip the number of way coordinate blocks and the number of way nodes of the first block
+				int position = skipVariableByteEncodedInt(this.encodedWayNodes, 0);
+				position = skipVariableByteEncodedInt(this.encodedWayNodes, position);
+				latitude = this.tileLatitude + readSignedInt(this.encodedWayNodes, position);
+				position = skipVariableByteEncodedInt(this.encodedWayNodes, position);
+				longitude = this.tileLongitude + readSignedInt(this.encodedWayNodes, position);
+			} catch (ArrayIndexOutOfBoundsException e) {
+				return 0;
+			}
+		}
+		return 31 * Float.floatToIntBits(longitude) + Float.floatToIntBits(latitude);
 	}
 }
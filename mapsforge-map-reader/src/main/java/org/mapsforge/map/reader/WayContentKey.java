@@ -0,0 +1,87 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.mapsforge.core.GeoPoint;
+import org.mapsforge.core.Tag;
+
+/**
+ * An immutable container class which identifies a decoded way by its content. In contrast to {@link WayKey}, it does
+ * not depend on the tag table of a map file, so that copies of the same way from different map files can be detected.
+ */
+class WayContentKey {
+	private final int hashCodeValue;
+	private final GeoPoint labelPosition;
+	private final byte layer;
+	private final List<Tag> tags;
+	private final Way way;
+
+	/**
+	 * Creates an immutable key for the given way. The hash code only depends on the first way node, all way nodes of
+	 * a lazily decoded way are decoded only if it is compared with a way of equal hash code.
+	 * 
+	 * @param way
+	 *            the way which should be identified.
+	 */
+	WayContentKey(Way way) {
+		this.layer = way.layer;
+		this.tags = way.tags;
+		this.labelPosition = way.labelPosition;
+		this.way = way;
+		this.hashCodeValue = calculateHashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		} else if (!(obj instanceof WayContentKey)) {
+			return false;
+		}
+		WayContentKey other = (WayContentKey) obj;
+		if (this.hashCodeValue != other.hashCodeValue) {
+			return false;
+		} else if (this.layer != other.layer) {
+			return false;
+		} else if (!this.tags.equals(other.tags)) {
+			return false;
+		} else if (this.labelPosition == null ? other.labelPosition != null : !this.labelPosition
+				.equals(other.labelPosition)) {
+			return false;
+		} else if (!Arrays.deepEquals(this.way.getWayNodes(), other.way.getWayNodes())) {
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		return this.hashCodeValue;
+	}
+
+	/**
+	 * @return the hash code of this object.
+	 */
+	private int calculateHashCode() {
+		int result = 7;
+		result = 31 * result + this.layer;
+		result = 31 * result + this.tags.hashCode();
+		result = 31 * result + this.way.getFirstWayNodeHashCode();
+		return result;
+	}
+}
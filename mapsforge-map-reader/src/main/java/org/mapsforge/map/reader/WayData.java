@@ -0,0 +1,366 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.mapsforge.core.GeoPoint;
+import org.mapsforge.core.Tag;
+
+/**
+ * A reusable view of the way which is currently decoded by the {@link MapDatabase}, see {@link MapDataSink}. The
+ * optional name, house number and reference are decoded only when they are requested. The coordinates are decoded
+ * together with the way, unless lazy way nodes are enabled for a way with a single way data block.
+ * <p>
+ * The coordinates of all segments of the way are stored in microdegrees in a single array, in the order
+ * longitude/latitude like in {@link Way#getWayNodes()}. Each segment is described by its offset and length in this
+ * array.
+ */
+public class WayData {
+	/**
+	 * Maximum number of tag IDs of a single way.
+	 */
+	static final int MAXIMUM_NUMBER_OF_TAGS = 15;
+
+	private static final int INITIAL_COORDINATES_CAPACITY = 256;
+	private static final int INITIAL_SEGMENTS_CAPACITY = 4;
+	private static final Logger LOGGER = Logger.getLogger(WayData.class.getName());
+
+	/**
+	 * Maximum way nodes sequence length which is considered as valid.
+	 */
+	private static final int MAXIMUM_WAY_NODES_SEQUENCE_LENGTH = 8192;
+
+	private static final String TAG_KEY_HOUSE_NUMBER = "addr:housenumber";
+	private static final String TAG_KEY_NAME = "name";
+	private static final String TAG_KEY_REF = "ref";
+
+	private int[] coordinates;
+	private boolean coordinatesDecoded;
+	private int coordinatesLength;
+	private int coordinatesPosition;
+	private boolean doubleDeltaEncoding;
+	boolean hasLabelPosition;
+	int houseNumberPosition;
+	int labelLatitude;
+	int labelLongitude;
+	byte layer;
+	final boolean lazyWayNodes;
+	int namePosition;
+	private int numberOfSegments;
+	int numberOfTags;
+	private final ReadBuffer readBuffer;
+	int refPosition;
+	private int[] segmentLengths;
+	private int[] segmentOffsets;
+	final int[] tagIds;
+	int tileBitmask;
+	private int tileLatitude;
+	private int tileLongitude;
+	int wayRecord;
+	private final Tag[] wayTags;
+
+	WayData(ReadBuffer readBuffer, Tag[] wayTags, boolean lazyWayNodes) {
+		this.readBuffer = readBuffer;
+		this.wayTags = wayTags;
+		this.lazyWayNodes = lazyWayNodes;
+		this.tagIds = new int[MAXIMUM_NUMBER_OF_TAGS];
+		this.coordinates = new int[INITIAL_COORDINATES_CAPACITY];
+		this.segmentLengths = new int[INITIAL_SEGMENTS_CAPACITY];
+		this.segmentOffsets = new int[INITIAL_SEGMENTS_CAPACITY];
+	}
+
+	/**
+	 * Returns the coordinates of all segments of this way. Only the ranges which are described by
+	 * {@link #getSegmentOffset(int)} and {@link #getSegmentLength(int)} are valid.
+	 * 
+	 * @return the reused coordinate array.
+	 */
+	public int[] getCoordinates() {
+		ensureCoordinatesDecoded();
+		return this.coordinates;
+	}
+
+	/**
+	 * @return the house number of this way (may be null).
+	 */
+	public String getHouseNumber() {
+		return this.houseNumberPosition < 0 ? null : this.readBuffer.getUTF8EncodedString(this.houseNumberPosition);
+	}
+
+	/**
+	 * @return the latitude of the label position in microdegrees, only valid if {@link #hasLabelPosition()} returns
+	 *         true.
+	 */
+	public int getLabelLatitude() {
+		return this.labelLatitude;
+	}
+
+	/**
+	 * @return the longitude of the label position in microdegrees, only valid if {@link #hasLabelPosition()} returns
+	 *         true.
+	 */
+	public int getLabelLongitude() {
+		return this.labelLongitude;
+	}
+
+	/**
+	 * @return the layer of this way + 5 (to avoid negative values).
+	 */
+	public byte getLayer() {
+		return this.layer;
+	}
+
+	/**
+	 * @return the name of this way (may be null).
+	 */
+	public String getName() {
+		return this.namePosition < 0 ? null : this.readBuffer.getUTF8EncodedString(this.namePosition);
+	}
+
+	/**
+	 * @return the number of segments of this way.
+	 */
+	public int getNumberOfSegments() {
+		ensureCoordinatesDecoded();
+		return this.numberOfSegments;
+	}
+
+	/**
+	 * @return the number of tag IDs of this way.
+	 */
+	public int getNumberOfTags() {
+		return this.numberOfTags;
+	}
+
+	/**
+	 * @return the reference of this way (may be null).
+	 */
+	public String getRef() {
+		return this.refPosition < 0 ? null : this.readBuffer.getUTF8EncodedString(this.refPosition);
+	}
+
+	/**
+	 * @param segment
+	 *            the index of the segment, must be less than {@link #getNumberOfSegments()}.
+	 * @return the number of coordinate values of the given segment, which is twice the number of its way nodes.
+	 */
+	public int getSegmentLength(int segment) {
+		ensureCoordinatesDecoded();
+		return this.segmentLengths[segment];
+	}
+
+	/**
+	 * @param segment
+	 *            the index of the segment, must be less than {@link #getNumberOfSegments()}.
+	 * @return the offset of the first coordinate value of the given segment in the coordinate array.
+	 */
+	public int getSegmentOffset(int segment) {
+		ensureCoordinatesDecoded();
+		return this.segmentOffsets[segment];
+	}
+
+	/**
+	 * @param index
+	 *            the index of the tag, must be less than {@link #getNumberOfTags()}.
+	 * @return the tag with the given index.
+	 */
+	public Tag getTag(int index) {
+		return this.wayTags[this.tagIds[index]];
+	}
+
+	/**
+	 * Returns the tag IDs of this way. Only the first {@link #getNumberOfTags()} elements of the array are valid.
+	 * 
+	 * @return the reused array of tag IDs.
+	 */
+	public int[] getTagIds() {
+		return this.tagIds;
+	}
+
+	/**
+	 * @return true if this way has a label position, false otherwise.
+	 */
+	public boolean hasLabelPosition() {
+		return this.hasLabelPosition;
+	}
+
+	/**
+	 * Decodes the coordinates of this way at the position which has been set via
+	 * {@link #setEncodedCoordinates(int, int, boolean, int, int)}. The current buffer position is not changed.
+	 * 
+	 * @return the buffer position after the coordinates or -1 if the coordinates are invalid.
+	 */
+	int decodeCoordinates() {
+		this.coordinatesDecoded = true;
+		this.numberOfSegments = 0;
+
+		int currentBufferPosition = this.readBuffer.getBufferPosition();
+		this.readBuffer.setBufferPosition(this.coordinatesPosition);
+		try {
+			// get and check the number of way coordinate blocks (VBE-U)
+			int numberOfWayCoordinateBlocks = this.readBuffer.readUnsignedInt();
+			if (numberOfWayCoordinateBlocks < 1 || numberOfWayCoordinateBlocks > Short.MAX_VALUE) {
+				LOGGER.warning("invalid number of way coordinate blocks: " + numberOfWayCoordinateBlocks);
+				return -1;
+			}
+
+			// read the way coordinate blocks
+			for (int coordinateBlock = 0; coordinateBlock < numberOfWayCoordinateBlocks; ++coordinateBlock) {
+				// get and check the number of way nodes (VBE-U)
+				int numberOfWayNodes = this.readBuffer.readUnsignedInt();
+				if (numberOfWayNodes < 2 || numberOfWayNodes > MAXIMUM_WAY_NODES_SEQUENCE_LENGTH) {
+					LOGGER.warning("invalid number of way nodes: " + numberOfWayNodes);
+					this.numberOfSegments = 0;
+					return -1;
+				}
+
+				// each way node consists of latitude and longitude
+				int wayNodesSequenceLength = numberOfWayNodes * 2;
+
+				// append the current way segment to the coordinates of the way
+				int offset = addSegment(wayNodesSequenceLength);
+
+				this.readBuffer.readDeltaEncodedCoordinates(this.coordinates, offset, numberOfWayNodes,
+						this.tileLatitude, this.tileLongitude, this.doubleDeltaEncoding);
+			}
+
+			if (this.coordinatesLength >= 0
+					&& this.readBuffer.getBufferPosition() > this.coordinatesPosition + this.coordinatesLength) {
+				LOGGER.warning("invalid way data block length: " + this.coordinatesLength);
+				this.numberOfSegments = 0;
+				return -1;
+			}
+			return this.readBuffer.getBufferPosition();
+		} finally {
+			this.readBuffer.setBufferPosition(currentBufferPosition);
+		}
+	}
+
+	/**
+	 * Sets the position of the encoded coordinates of this way in the read buffer. The coordinates are decoded when
+	 * they are requested for the first time.
+	 * 
+	 * @param position
+	 *            the buffer position of the way data block.
+	 * @param length
+	 *            the length of the way data block in bytes or -1 if it is unknown.
+	 * @param doubleDelta
+	 *            true if the coordinates are double-delta encoded, false otherwise.
+	 * @param latitude
+	 *            the latitude of the tile to which the coordinates are relative.
+	 * @param longitude
+	 *            the longitude of the tile to which the coordinates are relative.
+	 */
+	void setEncodedCoordinates(int position, int length, boolean doubleDelta, int latitude, int longitude) {
+		this.coordinatesDecoded = false;
+		this.coordinatesPosition = position;
+		this.coordinatesLength = length;
+		this.doubleDeltaEncoding = doubleDelta;
+		this.tileLatitude = latitude;
+		this.tileLongitude = longitude;
+	}
+
+	/**
+	 * @return a new array with the coordinates of all segments of this way, see {@link Way#getWayNodes()}.
+	 */
+	float[][] toWayNodes() {
+		ensureCoordinatesDecoded();
+
+		float[][] wayNodes = new float[this.numberOfSegments][];
+		for (int segment = 0; segment < this.numberOfSegments; ++segment) {
+			int offset = this.segmentOffsets[segment];
+			float[] waySegment = new float[this.segmentLengths[segment]];
+			for (int i = 0; i < waySegment.length; ++i) {
+				waySegment[i] = this.coordinates[offset + i];
+			}
+			wayNodes[segment] = waySegment;
+		}
+		return wayNodes;
+	}
+
+	/**
+	 * @return a new way with all data of this way. If the coordinates have not been decoded yet, the new way keeps a
+	 *         copy of the encoded coordinates, see {@link Way#getWayNodes()}.
+	 */
+	Way toWay() {
+		List<Tag> tags = new ArrayList<Tag>();
+		for (int i = 0; i < this.numberOfTags; ++i) {
+			tags.add(getTag(i));
+		}
+
+		if (this.namePosition >= 0) {
+			tags.add(this.readBuffer.getLabelTag(TAG_KEY_NAME, this.namePosition));
+		}
+
+		if (this.houseNumberPosition >= 0) {
+			tags.add(this.readBuffer.getLabelTag(TAG_KEY_HOUSE_NUMBER, this.houseNumberPosition));
+		}
+
+		if (this.refPosition >= 0) {
+			tags.add(this.readBuffer.getLabelTag(TAG_KEY_REF, this.refPosition));
+		}
+
+		GeoPoint labelPosition = null;
+		if (this.hasLabelPosition) {
+			labelPosition = new GeoPoint(this.labelLatitude, this.labelLongitude);
+		}
+
+		if (!this.coordinatesDecoded && this.coordinatesLength > 0) {
+			// keep a copy of the encoded coordinates and decode them only if they are requested
+			byte[] encodedWayNodes = this.readBuffer.getBytes(this.coordinatesPosition, this.coordinatesLength);
+			return new Way(this.layer, tags, encodedWayNodes, this.doubleDeltaEncoding, this.tileLatitude,
+					this.tileLongitude, labelPosition);
+		}
+
+		return new Way(this.layer, tags, toWayNodes(), labelPosition);
+	}
+
+	/**
+	 * Appends a new segment to this way and ensures that the coordinate array is large enough to hold it.
+	 * 
+	 * @param length
+	 *            the number of coordinate values of the new segment.
+	 * @return the offset of the new segment in the coordinate array.
+	 */
+	private int addSegment(int length) {
+		int offset = 0;
+		if (this.numberOfSegments > 0) {
+			offset = this.segmentOffsets[this.numberOfSegments - 1] + this.segmentLengths[this.numberOfSegments - 1];
+		}
+
+		if (offset + length > this.coordinates.length) {
+			this.coordinates = Arrays.copyOf(this.coordinates, Math.max(offset + length, this.coordinates.length * 2));
+		}
+		if (this.numberOfSegments == this.segmentOffsets.length) {
+			this.segmentLengths = Arrays.copyOf(this.segmentLengths, this.numberOfSegments * 2);
+			this.segmentOffsets = Arrays.copyOf(this.segmentOffsets, this.numberOfSegments * 2);
+		}
+
+		this.segmentLengths[this.numberOfSegments] = length;
+		this.segmentOffsets[this.numberOfSegments] = offset;
+		++this.numberOfSegments;
+		return offset;
+	}
+
+	private void ensureCoordinatesDecoded() {
+		if (!this.coordinatesDecoded) {
+			decodeCoordinates();
+		}
+	}
+}
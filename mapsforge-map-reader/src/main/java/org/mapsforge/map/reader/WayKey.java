@@ -0,0 +1,112 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.util.Arrays;
+
+/**
+ * An immutable container class which identifies a way by its content, so that copies of the same way which are stored
+ * in several blocks can be detected.
+ */
+class WayKey {
+	private static boolean equalsOrNull(String string1, String string2) {
+		return string1 == null ? string2 == null : string1.equals(string2);
+	}
+
+	private final int[] coordinates;
+	private final int hashCodeValue;
+	private final String houseNumber;
+	private final byte layer;
+	private final String name;
+	private final String ref;
+	private final int[] segmentLengths;
+	private final int[] tagIds;
+
+	/**
+	 * Creates an immutable key for the given way.
+	 * 
+	 * @param wayData
+	 *            the way which should be identified.
+	 */
+	WayKey(WayData wayData) {
+		this.layer = wayData.layer;
+		this.tagIds = Arrays.copyOf(wayData.tagIds, wayData.numberOfTags);
+		this.name = wayData.getName();
+		this.houseNumber = wayData.getHouseNumber();
+		this.ref = wayData.getRef();
+
+		int numberOfSegments = wayData.getNumberOfSegments();
+		this.segmentLengths = new int[numberOfSegments];
+		int numberOfCoordinates = 0;
+		for (int segment = 0; segment < numberOfSegments; ++segment) {
+			this.segmentLengths[segment] = wayData.getSegmentLength(segment);
+			numberOfCoordinates += this.segmentLengths[segment];
+		}
+
+		this.coordinates = new int[numberOfCoordinates];
+		int offset = 0;
+		for (int segment = 0; segment < numberOfSegments; ++segment) {
+			System.arraycopy(wayData.getCoordinates(), wayData.getSegmentOffset(segment), this.coordinates, offset,
+					this.segmentLengths[segment]);
+			offset += this.segmentLengths[segment];
+		}
+
+		this.hashCodeValue = calculateHashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		} else if (!(obj instanceof WayKey)) {
+			return false;
+		}
+		WayKey other = (WayKey) obj;
+		if (this.hashCodeValue != other.hashCodeValue) {
+			return false;
+		} else if (this.layer != other.layer) {
+			return false;
+		} else if (!Arrays.equals(this.tagIds, other.tagIds)) {
+			return false;
+		} else if (!Arrays.equals(this.segmentLengths, other.segmentLengths)) {
+			return false;
+		} else if (!Arrays.equals(this.coordinates, other.coordinates)) {
+			return false;
+		} else if (!equalsOrNull(this.name, other.name)) {
+			return false;
+		} else if (!equalsOrNull(this.houseNumber, other.houseNumber)) {
+			return false;
+		} else if (!equalsOrNull(this.ref, other.ref)) {
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		return this.hashCodeValue;
+	}
+
+	/**
+	 * @return the hash code of this object.
+	 */
+	private int calculateHashCode() {
+		int result = 7;
+		result = 31 * result + this.layer;
+		result = 31 * result + Arrays.hashCode(this.tagIds);
+		result = 31 * result + Arrays.hashCode(this.coordinates);
+		return result;
+	}
+}
@@ -55,6 +55,12 @@ public class TagTest {
 		Assert.assertFalse(tag1.equals(tag3));
 		Assert.assertFalse(tag3.equals(tag1));
 		Assert.assertFalse(tag1.equals(new Object()));
+
+		// subclasses which do not override equals are compared like plain tags
+		Tag tag4 = new Tag(KEY, VALUE) {
+			private static final long serialVersionUID = 1L;
+		};
+		TestUtils.equalsTest(tag1, tag4);
 	}
 
 	/**
@@ -66,6 +72,7 @@ public class TagTest {
 
 		Assert.assertEquals(KEY, tag.key);
 		Assert.assertEquals(VALUE, tag.value);
+		Assert.assertEquals(VALUE, tag.getValue());
 	}
 
 	/**
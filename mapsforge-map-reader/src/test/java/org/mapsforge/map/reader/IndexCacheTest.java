@@ -0,0 +1,94 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mapsforge.map.reader.header.FileOpenResult;
+import org.mapsforge.map.reader.header.MapFileHeader;
+import org.mapsforge.map.reader.header.SubFileParameter;
+
+/**
+ * Tests the {@link IndexCache} class.
+ */
+public class IndexCacheTest {
+	private static final int[] INDEX_CACHE_CAPACITIES = { 0, 1, 5, 64 };
+	private static final File MAP_FILE = new File("src/test/resources/with_data/with_data.map");
+
+	private static void assertSameIndex(SharedMapDatabase expected, SharedMapDatabase actual) {
+		MapFileHeader mapFileHeader = expected.getMapFileHeader();
+		for (byte zoomLevel = 0; zoomLevel <= mapFileHeader.getQueryZoomLevel(Byte.MAX_VALUE); ++zoomLevel) {
+			SubFileParameter subFileParameter = mapFileHeader.getSubFileParameter(zoomLevel);
+			if (subFileParameter == null) {
+				continue;
+			}
+
+			// the sub-files of both map files are equal, so that either one can be used as key
+			for (long blockNumber = 0; blockNumber < subFileParameter.numberOfBlocks; ++blockNumber) {
+				long expectedIndexEntry = expected.getDatabaseIndexCache().getIndexEntry(subFileParameter, blockNumber);
+				long actualIndexEntry = actual.getDatabaseIndexCache().getIndexEntry(subFileParameter, blockNumber);
+				Assert.assertEquals(expectedIndexEntry, actualIndexEntry);
+			}
+			Assert.assertEquals(-1, actual.getDatabaseIndexCache().getIndexEntry(subFileParameter,
+					subFileParameter.numberOfBlocks));
+		}
+	}
+
+	private static SharedMapDatabase openSharedMapDatabase(int indexCacheCapacity, boolean indexPreloadEnabled,
+			boolean memoryMapped) {
+		SharedMapDatabase sharedMapDatabase = new SharedMapDatabase();
+		sharedMapDatabase.setIndexCacheCapacity(indexCacheCapacity);
+		sharedMapDatabase.setIndexPreloadEnabled(indexPreloadEnabled);
+		sharedMapDatabase.setMemoryMapped(memoryMapped);
+		FileOpenResult fileOpenResult = sharedMapDatabase.openFile(MAP_FILE);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+		return sharedMapDatabase;
+	}
+
+	/**
+	 * Tests that all configurations of the index cache return the same index entries.
+	 */
+	@Test
+	public void indexCacheTest() {
+		SharedMapDatabase expected = openSharedMapDatabase(SharedMapDatabase.DEFAULT_INDEX_CACHE_CAPACITY, false,
+				false);
+
+		for (int indexCacheCapacity : INDEX_CACHE_CAPACITIES) {
+			for (int i = 0; i < 4; ++i) {
+				boolean indexPreloadEnabled = i % 2 == 1;
+				SharedMapDatabase actual = openSharedMapDatabase(indexCacheCapacity, indexPreloadEnabled, i / 2 == 1);
+				Assert.assertEquals(Boolean.valueOf(indexPreloadEnabled),
+						Boolean.valueOf(actual.isIndexPreloadEnabled()));
+
+				// query each entry twice to hit the cache
+				assertSameIndex(expected, actual);
+				assertSameIndex(expected, actual);
+				actual.closeFile();
+			}
+		}
+
+		expected.closeFile();
+	}
+
+	/**
+	 * Tests that a negative index cache capacity is rejected.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void negativeCapacityTest() {
+		new MapDatabase().setIndexCacheCapacity(-1);
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mapsforge.core.BoundingBox;
+import org.mapsforge.core.GeoPoint;
+import org.mapsforge.core.MercatorProjection;
+import org.mapsforge.core.Tile;
+import org.mapsforge.map.reader.header.FileOpenResult;
+
+/**
+ * Tests the area queries of the {@link MapDatabase} class.
+ */
+public class MapDatabaseAreaTest {
+	private static final File MAP_FILE = new File("src/test/resources/with_data/with_data.map");
+	private static final byte ZOOM_LEVEL_MAX = 16;
+	private static final byte ZOOM_LEVEL_MIN = 6;
+
+	private static void assertEquals(Set<String> expectedPois, Set<String> expectedWays, MapReadResult actual) {
+		List<String> actualPois = new ArrayList<String>();
+		for (PointOfInterest pointOfInterest : actual.pointOfInterests) {
+			actualPois.add(toString(pointOfInterest));
+		}
+		Assert.assertEquals(expectedPois.size(), actualPois.size());
+		Assert.assertEquals(expectedPois, new HashSet<String>(actualPois));
+
+		// each way must be returned only once, even if it is stored in several blocks
+		List<String> actualWays = new ArrayList<String>();
+		for (Way way : actual.ways) {
+			actualWays.add(toString(way));
+		}
+		Assert.assertEquals(expectedWays.size(), actualWays.size());
+		Assert.assertEquals(expectedWays, new HashSet<String>(actualWays));
+	}
+
+	private static MapDatabase openMapDatabase(boolean memoryMapped) {
+		MapDatabase mapDatabase = new MapDatabase();
+		mapDatabase.setMemoryMapped(memoryMapped);
+		FileOpenResult fileOpenResult = mapDatabase.openFile(MAP_FILE);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+		return mapDatabase;
+	}
+
+	private static void runTest(boolean memoryMapped) {
+		MapDatabase mapDatabase = openMapDatabase(memoryMapped);
+
+		BoundingBox boundingBox = new BoundingBox(0, 0, 80000, 80000);
+		List<GeoPoint> rectangle = Arrays.asList(new GeoPoint(0, 0), new GeoPoint(0, 80000), new GeoPoint(80000,
+				80000), new GeoPoint(80000, 0));
+		List<GeoPoint> distantPolygon = Arrays.asList(new GeoPoint(-40000000, -60000000), new GeoPoint(-40000000,
+				-59900000), new GeoPoint(-39900000, -60000000));
+
+		for (byte zoomLevel = ZOOM_LEVEL_MIN; zoomLevel <= ZOOM_LEVEL_MAX; ++zoomLevel) {
+			// the expected data is the union of all tiles which intersect the bounding box
+			Set<String> expectedPois = new HashSet<String>();
+			Set<String> expectedWays = new HashSet<String>();
+			long fromTileX = MercatorProjection.longitudeToTileX(boundingBox.getMinLongitude(), zoomLevel);
+			long toTileX = MercatorProjection.longitudeToTileX(boundingBox.getMaxLongitude(), zoomLevel);
+			long fromTileY = MercatorProjection.latitudeToTileY(boundingBox.getMaxLatitude(), zoomLevel);
+			long toTileY = MercatorProjection.latitudeToTileY(boundingBox.getMinLatitude(), zoomLevel);
+			for (long tileY = fromTileY; tileY <= toTileY; ++tileY) {
+				for (long tileX = fromTileX; tileX <= toTileX; ++tileX) {
+					MapReadResult mapReadResult = mapDatabase.readMapData(new Tile(tileX, tileY, zoomLevel));
+					for (PointOfInterest pointOfInterest : mapReadResult.pointOfInterests) {
+						expectedPois.add(toString(pointOfInterest));
+					}
+					for (Way way : mapReadResult.ways) {
+						expectedWays.add(toString(way));
+					}
+				}
+			}
+
+			assertEquals(expectedPois, expectedWays, mapDatabase.readMapData(boundingBox, zoomLevel));
+			assertEquals(expectedPois, expectedWays, mapDatabase.readMapData(rectangle, zoomLevel));
+
+			MapReadResult mapReadResult = mapDatabase.readMapData(distantPolygon, zoomLevel);
+			Assert.assertTrue(mapReadResult.pointOfInterests.isEmpty());
+			Assert.assertTrue(mapReadResult.ways.isEmpty());
+		}
+
+		mapDatabase.closeFile();
+	}
+
+	private static String toString(PointOfInterest pointOfInterest) {
+		return pointOfInterest.layer + " " + pointOfInterest.position + " " + pointOfInterest.tags;
+	}
+
+	private static String toString(Way way) {
+		return way.layer + " " + way.labelPosition + " " + way.tags + " " + Arrays.deepToString(way.getWayNodes());
+	}
+
+	/**
+	 * Tests the bounding box and polygon queries.
+	 */
+	@Test
+	public void areaQueryTest() {
+		runTest(false);
+	}
+
+	/**
+	 * Tests the area queries with a memory-mapped map file.
+	 */
+	@Test
+	public void areaQueryMemoryMappedTest() {
+		runTest(true);
+	}
+
+	/**
+	 * Tests that a polygon with less than three vertices is rejected.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidPolygonTest() {
+		MapDatabase mapDatabase = openMapDatabase(false);
+		List<GeoPoint> polygon = new ArrayList<GeoPoint>();
+		polygon.add(new GeoPoint(0, 0));
+		polygon.add(new GeoPoint(10000, 10000));
+		mapDatabase.readMapData(polygon, (byte) 10);
+	}
+
+	/**
+	 * Tests that a polygon query skips the POI block which does not intersect the polygon.
+	 */
+	@Test
+	public void polygonQueryTest() {
+		MapDatabase mapDatabase = openMapDatabase(false);
+
+		// a narrow triangle along the western edge touches the way but not the block of the POI
+		List<GeoPoint> polygon = Arrays.asList(new GeoPoint(0, 0), new GeoPoint(80000, 0), new GeoPoint(40000, 5000));
+		MapReadResult mapReadResult = mapDatabase.readMapData(polygon, (byte) 14);
+		Assert.assertFalse(mapReadResult.ways.isEmpty());
+		Assert.assertTrue(mapReadResult.pointOfInterests.isEmpty());
+
+		mapDatabase.closeFile();
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mapsforge.core.MercatorProjection;
+import org.mapsforge.core.Tile;
+import org.mapsforge.map.reader.header.FileOpenResult;
+
+/**
+ * Tests the batch query of the {@link MapDatabase} class.
+ */
+public class MapDatabaseBatchTest {
+	private static final int BLOCK_CACHE_CAPACITY = 16;
+	private static final File MAP_FILE = new File("src/test/resources/with_data/with_data.map");
+
+	private static void assertEquals(MapReadResult expected, MapReadResult actual) {
+		Assert.assertEquals(expected.isWater, actual.isWater);
+		Assert.assertEquals(expected.pointOfInterests.size(), actual.pointOfInterests.size());
+		for (int i = 0; i < expected.pointOfInterests.size(); ++i) {
+			PointOfInterest expectedPoi = expected.pointOfInterests.get(i);
+			PointOfInterest actualPoi = actual.pointOfInterests.get(i);
+			Assert.assertEquals(expectedPoi.layer, actualPoi.layer);
+			Assert.assertEquals(expectedPoi.position, actualPoi.position);
+			Assert.assertEquals(expectedPoi.tags, actualPoi.tags);
+		}
+
+		Assert.assertEquals(expected.ways.size(), actual.ways.size());
+		for (int i = 0; i < expected.ways.size(); ++i) {
+			Way expectedWay = expected.ways.get(i);
+			Way actualWay = actual.ways.get(i);
+			Assert.assertEquals(expectedWay.layer, actualWay.layer);
+			Assert.assertEquals(expectedWay.labelPosition, actualWay.labelPosition);
+			Assert.assertEquals(expectedWay.tags, actualWay.tags);
+			Assert.assertArrayEquals(expectedWay.getWayNodes(), actualWay.getWayNodes());
+		}
+	}
+
+	private static List<Tile> createTiles() {
+		List<Tile> tiles = new ArrayList<Tile>();
+		for (byte zoomLevel = 5; zoomLevel <= 16; ++zoomLevel) {
+			long tileX = MercatorProjection.longitudeToTileX(0.04, zoomLevel);
+			long tileY = MercatorProjection.latitudeToTileY(0.04, zoomLevel);
+			for (long y = tileY - 1; y <= tileY + 1; ++y) {
+				for (long x = tileX - 1; x <= tileX + 1; ++x) {
+					tiles.add(new Tile(x, y, zoomLevel));
+				}
+			}
+		}
+
+		// duplicate tiles must not change the result
+		tiles.add(tiles.get(0));
+		return tiles;
+	}
+
+	private static void runTest(boolean memoryMapped, int blockCacheCapacity) {
+		MapDatabase mapDatabase = new MapDatabase();
+		mapDatabase.setMemoryMapped(memoryMapped);
+		mapDatabase.setBlockCacheCapacity(blockCacheCapacity);
+		FileOpenResult fileOpenResult = mapDatabase.openFile(MAP_FILE);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+
+		MapDatabase referenceMapDatabase = new MapDatabase();
+		fileOpenResult = referenceMapDatabase.openFile(MAP_FILE);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+
+		List<Tile> tiles = createTiles();
+		Map<Tile, MapReadResult> mapReadResults = mapDatabase.readMapData(tiles);
+		Assert.assertEquals(tiles.size() - 1, mapReadResults.size());
+
+		Iterator<Tile> iterator = mapReadResults.keySet().iterator();
+		for (int i = 0; i < tiles.size() - 1; ++i) {
+			Tile tile = tiles.get(i);
+			Assert.assertEquals(tile, iterator.next());
+			assertEquals(referenceMapDatabase.readMapData(tile), mapReadResults.get(tile));
+		}
+
+		// a second batch query must return the same results, even if they are answered from the cache
+		Map<Tile, MapReadResult> repeatedMapReadResults = mapDatabase.readMapData(tiles);
+		for (Tile tile : mapReadResults.keySet()) {
+			assertEquals(mapReadResults.get(tile), repeatedMapReadResults.get(tile));
+		}
+
+		mapDatabase.closeFile();
+		referenceMapDatabase.closeFile();
+	}
+
+	/**
+	 * Tests that a batch query returns the same results as single tile queries.
+	 */
+	@Test
+	public void batchQueryTest() {
+		runTest(false, 0);
+	}
+
+	/**
+	 * Tests the batch query with an enabled block cache.
+	 */
+	@Test
+	public void batchQueryBlockCacheTest() {
+		runTest(false, BLOCK_CACHE_CAPACITY);
+	}
+
+	/**
+	 * Tests the batch query with a memory-mapped map file.
+	 */
+	@Test
+	public void batchQueryMemoryMappedTest() {
+		runTest(true, 0);
+	}
+}
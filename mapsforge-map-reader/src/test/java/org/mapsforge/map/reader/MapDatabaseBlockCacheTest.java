@@ -0,0 +1,103 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mapsforge.core.MercatorProjection;
+import org.mapsforge.core.Tile;
+import org.mapsforge.map.reader.header.FileOpenResult;
+
+/**
+ * Tests the decoded block cache of the {@link MapDatabase} class.
+ */
+public class MapDatabaseBlockCacheTest {
+	private static final int BLOCK_CACHE_CAPACITY = 4;
+	private static final File MAP_FILE = new File("src/test/resources/with_data/with_data.map");
+	private static final byte ZOOM_LEVEL = 11;
+
+	private static void assertEquals(MapReadResult expected, MapReadResult actual) {
+		Assert.assertEquals(expected.isWater, actual.isWater);
+		Assert.assertEquals(expected.pointOfInterests.size(), actual.pointOfInterests.size());
+		for (int i = 0; i < expected.pointOfInterests.size(); ++i) {
+			PointOfInterest expectedPoi = expected.pointOfInterests.get(i);
+			PointOfInterest actualPoi = actual.pointOfInterests.get(i);
+			Assert.assertEquals(expectedPoi.layer, actualPoi.layer);
+			Assert.assertEquals(expectedPoi.position, actualPoi.position);
+			Assert.assertEquals(expectedPoi.tags, actualPoi.tags);
+		}
+
+		Assert.assertEquals(expected.ways.size(), actual.ways.size());
+		for (int i = 0; i < expected.ways.size(); ++i) {
+			Way expectedWay = expected.ways.get(i);
+			Way actualWay = actual.ways.get(i);
+			Assert.assertEquals(expectedWay.layer, actualWay.layer);
+			Assert.assertEquals(expectedWay.labelPosition, actualWay.labelPosition);
+			Assert.assertEquals(expectedWay.tags, actualWay.tags);
+			Assert.assertArrayEquals(expectedWay.getWayNodes(), actualWay.getWayNodes());
+		}
+	}
+
+	private static MapDatabase openMapDatabase(int blockCacheCapacity) {
+		MapDatabase mapDatabase = new MapDatabase();
+		mapDatabase.setBlockCacheCapacity(blockCacheCapacity);
+		FileOpenResult fileOpenResult = mapDatabase.openFile(MAP_FILE);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+		return mapDatabase;
+	}
+
+	/**
+	 * Tests that all sibling tiles of a block are answered from the cache with the same results as without cache.
+	 */
+	@Test
+	public void blockCacheTest() {
+		MapDatabase uncachedMapDatabase = openMapDatabase(0);
+		MapDatabase cachedMapDatabase = openMapDatabase(BLOCK_CACHE_CAPACITY);
+
+		long tileX = MercatorProjection.longitudeToTileX(0.04, ZOOM_LEVEL) & ~1L;
+		long tileY = MercatorProjection.latitudeToTileY(0.04, ZOOM_LEVEL) & ~1L;
+		for (int i = 0; i < 4; ++i) {
+			Tile tile = new Tile(tileX + i % 2, tileY + i / 2, ZOOM_LEVEL);
+			MapReadResult expected = uncachedMapDatabase.readMapData(tile);
+			MapReadResult actual = cachedMapDatabase.readMapData(tile);
+			assertEquals(expected, actual);
+
+			// callers may modify the way nodes, this must not affect the cache
+			for (Way way : actual.ways) {
+				way.getWayNodes()[0][0] = Float.NaN;
+			}
+		}
+
+		Assert.assertEquals(1, cachedMapDatabase.getBlockCacheMisses());
+		Assert.assertEquals(3, cachedMapDatabase.getBlockCacheHits());
+		Assert.assertEquals(0, uncachedMapDatabase.getBlockCacheMisses());
+
+		Tile tile = new Tile(tileX, tileY, ZOOM_LEVEL);
+		assertEquals(uncachedMapDatabase.readMapData(tile), cachedMapDatabase.readMapData(tile));
+
+		uncachedMapDatabase.closeFile();
+		cachedMapDatabase.closeFile();
+	}
+
+	/**
+	 * Tests that a negative cache capacity is rejected.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void negativeCapacityTest() {
+		new MapDatabase().setBlockCacheCapacity(-1);
+	}
+}
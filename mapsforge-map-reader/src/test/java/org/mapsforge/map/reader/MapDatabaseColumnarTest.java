@@ -0,0 +1,197 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mapsforge.core.GeoPoint;
+import org.mapsforge.core.MercatorProjection;
+import org.mapsforge.core.Tag;
+import org.mapsforge.core.Tile;
+import org.mapsforge.map.reader.header.FileOpenResult;
+import org.mapsforge.map.reader.header.MapFileInfo;
+
+/**
+ * Tests the {@link MapDatabase#readMapData(Tile, ColumnarMapReadResult)} method.
+ */
+public class MapDatabaseColumnarTest {
+	private static final File[] MAP_FILES = { new File("src/test/resources/with_data/with_data.map"),
+			new File("src/test/resources/way_node_encoding/double_delta.map"),
+			new File("src/test/resources/way_node_encoding/single_delta.map") };
+
+	private static void assertPoiEquals(PointOfInterest expected, ColumnarMapReadResult actual, int poi,
+			MapFileInfo mapFileInfo) {
+		Assert.assertEquals(expected.layer, actual.getPoiLayer(poi));
+		Assert.assertEquals(expected.position, new GeoPoint(actual.getPoiLatitude(poi), actual.getPoiLongitude(poi)));
+
+		List<Tag> tags = new ArrayList<Tag>();
+		for (int i = actual.getPoiTagOffsets()[poi]; i < actual.getPoiTagOffsets()[poi + 1]; ++i) {
+			tags.add(mapFileInfo.poiTags[actual.getPoiTagIds()[i]]);
+		}
+		if (actual.getPoiName(poi) != null) {
+			tags.add(new Tag("name", actual.getPoiName(poi)));
+		}
+		if (actual.getPoiHouseNumber(poi) != null) {
+			tags.add(new Tag("addr:housenumber", actual.getPoiHouseNumber(poi)));
+		}
+		if (actual.hasPoiElevation(poi)) {
+			tags.add(new Tag("ele", Integer.toString(actual.getPoiElevation(poi))));
+		}
+		Assert.assertEquals(expected.tags, tags);
+	}
+
+	private static void assertWayEquals(Way expected, ColumnarMapReadResult actual, int way, MapFileInfo mapFileInfo) {
+		Assert.assertEquals(expected.layer, actual.getWayLayer(way));
+		if (expected.labelPosition == null) {
+			Assert.assertFalse(actual.hasWayLabelPosition(way));
+		} else {
+			Assert.assertTrue(actual.hasWayLabelPosition(way));
+			GeoPoint labelPosition = new GeoPoint(actual.getWayLabelLatitude(way), actual.getWayLabelLongitude(way));
+			Assert.assertEquals(expected.labelPosition, labelPosition);
+		}
+
+		List<Tag> tags = new ArrayList<Tag>();
+		for (int i = actual.getWayTagOffsets()[way]; i < actual.getWayTagOffsets()[way + 1]; ++i) {
+			tags.add(mapFileInfo.wayTags[actual.getWayTagIds()[i]]);
+		}
+		if (actual.getWayName(way) != null) {
+			tags.add(new Tag("name", actual.getWayName(way)));
+		}
+		if (actual.getWayHouseNumber(way) != null) {
+			tags.add(new Tag("addr:housenumber", actual.getWayHouseNumber(way)));
+		}
+		if (actual.getWayRef(way) != null) {
+			tags.add(new Tag("ref", actual.getWayRef(way)));
+		}
+		Assert.assertEquals(expected.tags, tags);
+
+		float[][] expectedWayNodes = expected.getWayNodes();
+		int firstSegment = actual.getWaySegmentOffsets()[way];
+		Assert.assertEquals(expectedWayNodes.length, actual.getWaySegmentOffsets()[way + 1] - firstSegment);
+		for (int segment = 0; segment < expectedWayNodes.length; ++segment) {
+			int offset = actual.getSegmentOffsets()[firstSegment + segment];
+			int length = actual.getSegmentOffsets()[firstSegment + segment + 1] - offset;
+			Assert.assertEquals(expectedWayNodes[segment].length, length);
+			for (int i = 0; i < length; ++i) {
+				Assert.assertEquals(expectedWayNodes[segment][i], actual.getCoordinates()[offset + i], 0);
+			}
+		}
+	}
+
+	private static void runTest(boolean memoryMapped) {
+		// a single result is reused for all queries
+		ColumnarMapReadResult columnarMapReadResult = new ColumnarMapReadResult();
+
+		for (File mapFile : MAP_FILES) {
+			MapDatabase mapDatabase = new MapDatabase();
+			mapDatabase.setMemoryMapped(memoryMapped);
+			FileOpenResult fileOpenResult = mapDatabase.openFile(mapFile);
+			Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+			MapFileInfo mapFileInfo = mapDatabase.getMapFileInfo();
+
+			for (byte zoomLevel = 5; zoomLevel <= 16; ++zoomLevel) {
+				long tileX = MercatorProjection.longitudeToTileX(0.04, zoomLevel);
+				long tileY = MercatorProjection.latitudeToTileY(0.04, zoomLevel);
+				for (long y = tileY - 1; y <= tileY + 1; ++y) {
+					for (long x = tileX - 1; x <= tileX + 1; ++x) {
+						Tile tile = new Tile(x, y, zoomLevel);
+						MapReadResult expected = mapDatabase.readMapData(tile);
+						Assert.assertEquals(expected != null, mapDatabase.readMapData(tile, columnarMapReadResult));
+						if (expected == null) {
+							continue;
+						}
+
+						Assert.assertEquals(expected.isWater, columnarMapReadResult.isWater());
+						Assert.assertEquals(expected.pointOfInterests.size(), columnarMapReadResult.getNumberOfPois());
+						for (int poi = 0; poi < expected.pointOfInterests.size(); ++poi) {
+							assertPoiEquals(expected.pointOfInterests.get(poi), columnarMapReadResult, poi,
+									mapFileInfo);
+						}
+
+						Assert.assertEquals(expected.ways.size(), columnarMapReadResult.getNumberOfWays());
+						for (int way = 0; way < expected.ways.size(); ++way) {
+							assertWayEquals(expected.ways.get(way), columnarMapReadResult, way, mapFileInfo);
+						}
+					}
+				}
+			}
+
+			mapDatabase.closeFile();
+		}
+	}
+
+	/**
+	 * Tests that the columnar query returns the same data as the object query.
+	 */
+	@Test
+	public void columnarQueryTest() {
+		runTest(false);
+	}
+
+	/**
+	 * Tests the columnar query with a memory-mapped map file.
+	 */
+	@Test
+	public void columnarQueryMemoryMappedTest() {
+		runTest(true);
+	}
+
+	/**
+	 * Tests that the arrays of a result grow beyond their initial capacity.
+	 */
+	@Test
+	public void growTest() {
+		ColumnarMapReadResult columnarMapReadResult = new ColumnarMapReadResult();
+		MapDatabase mapDatabase = new MapDatabase();
+		FileOpenResult fileOpenResult = mapDatabase.openFile(MAP_FILES[0]);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+
+		long tileX = MercatorProjection.longitudeToTileX(0.04, (byte) 11);
+		long tileY = MercatorProjection.latitudeToTileY(0.04, (byte) 11);
+		Tile tile = new Tile(tileX, tileY, (byte) 11);
+		MapReadResult expected = mapDatabase.readMapData(tile);
+
+		// append the same tile many times without clearing the result
+		int repetitions = 1000;
+		for (int i = 0; i < repetitions; ++i) {
+			Assert.assertTrue(mapDatabase.readMapData(tile, (MapDataSink) columnarMapReadResult));
+		}
+		Assert.assertEquals(repetitions * expected.pointOfInterests.size(), columnarMapReadResult.getNumberOfPois());
+		Assert.assertEquals(repetitions * expected.ways.size(), columnarMapReadResult.getNumberOfWays());
+		int numberOfPois = expected.pointOfInterests.size();
+		int numberOfWays = expected.ways.size();
+		for (int i = 0; i < repetitions; ++i) {
+			for (int poi = 0; poi < numberOfPois; ++poi) {
+				assertPoiEquals(expected.pointOfInterests.get(poi), columnarMapReadResult, i * numberOfPois + poi,
+						mapDatabase.getMapFileInfo());
+			}
+			for (int way = 0; way < numberOfWays; ++way) {
+				assertWayEquals(expected.ways.get(way), columnarMapReadResult, i * numberOfWays + way,
+						mapDatabase.getMapFileInfo());
+			}
+		}
+
+		columnarMapReadResult.clear();
+		Assert.assertEquals(0, columnarMapReadResult.getNumberOfPois());
+		Assert.assertEquals(0, columnarMapReadResult.getNumberOfWays());
+		Assert.assertEquals(0, columnarMapReadResult.getNumberOfSegments());
+
+		mapDatabase.closeFile();
+	}
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mapsforge.core.BoundingBox;
+import org.mapsforge.core.MercatorProjection;
+import org.mapsforge.core.Tile;
+import org.mapsforge.map.reader.header.FileOpenResult;
+
+/**
+ * Tests that the {@link MapDatabase} drops corrupt blocks completely, even if some of their POIs have already been
+ * decoded.
+ */
+public class MapDatabaseCorruptBlockTest {
+	private static final File MAP_FILE = new File("src/test/resources/with_data/with_data.map");
+
+	/**
+	 * The reference of the way in the test map file, which is directly followed by its coordinates.
+	 */
+	private static final byte[] WAY_REF = new byte[] { (byte) 0xc3, (byte) 0xa4, (byte) 0xc3, (byte) 0xb6,
+			(byte) 0xc3, (byte) 0xbc };
+
+	private static final byte[] WAY_SIGNATURE = "---WayStart".getBytes();
+	private static final byte ZOOM_LEVEL = 11;
+
+	/**
+	 * Creates a copy of the test map file in which the given byte after each occurrence of the given marker is
+	 * replaced.
+	 * 
+	 * @param marker
+	 *            the bytes which precede the replaced byte.
+	 * @param offset
+	 *            the offset of the replaced byte relative to the start of the marker.
+	 * @param value
+	 *            the new value of the replaced byte.
+	 * @return the corrupt copy of the test map file.
+	 * @throws IOException
+	 *             if the map file cannot be copied.
+	 */
+	private static File createCorruptMapFile(byte[] marker, int offset, byte value) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(MAP_FILE, "r");
+		byte[] content = new byte[(int) randomAccessFile.length()];
+		try {
+			randomAccessFile.readFully(content);
+		} finally {
+			randomAccessFile.close();
+		}
+
+		int replacedBytes = 0;
+		for (int i = 0; i <= content.length - marker.length; ++i) {
+			if (startsWith(content, i, marker)) {
+				content[i + offset] = value;
+				++replacedBytes;
+			}
+		}
+		Assert.assertTrue(replacedBytes > 0);
+
+		File corruptMapFile = File.createTempFile("corrupt_block", ".map");
+		OutputStream outputStream = new FileOutputStream(corruptMapFile);
+		try {
+			outputStream.write(content);
+		} finally {
+			outputStream.close();
+		}
+		return corruptMapFile;
+	}
+
+	private static MapDatabase openMapDatabase(File mapFile) {
+		MapDatabase mapDatabase = new MapDatabase();
+		FileOpenResult fileOpenResult = mapDatabase.openFile(mapFile);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+		return mapDatabase;
+	}
+
+	private static void runTest(File corruptMapFile) {
+		MapDatabase mapDatabase = openMapDatabase(corruptMapFile);
+		long tileX = MercatorProjection.longitudeToTileX(0.04, ZOOM_LEVEL);
+		long tileY = MercatorProjection.latitudeToTileY(0.04, ZOOM_LEVEL);
+		Tile tile = new Tile(tileX, tileY, ZOOM_LEVEL);
+
+		MapReadResult mapReadResult = mapDatabase.readMapData(tile);
+		Assert.assertTrue(mapReadResult.pointOfInterests.isEmpty());
+		Assert.assertTrue(mapReadResult.ways.isEmpty());
+
+		ColumnarMapReadResult columnarMapReadResult = new ColumnarMapReadResult();
+		Assert.assertTrue(mapDatabase.readMapData(tile, columnarMapReadResult));
+		Assert.assertEquals(0, columnarMapReadResult.getNumberOfPois());
+		Assert.assertEquals(0, columnarMapReadResult.getNumberOfWays());
+		Assert.assertNull(columnarMapReadResult.getPoiName(0));
+
+		mapReadResult = mapDatabase.readMapData(new BoundingBox(0, 0, 80000, 80000), ZOOM_LEVEL);
+		Assert.assertTrue(mapReadResult.pointOfInterests.isEmpty());
+		Assert.assertTrue(mapReadResult.ways.isEmpty());
+
+		mapDatabase.closeFile();
+		Assert.assertTrue(corruptMapFile.delete());
+	}
+
+	private static boolean startsWith(byte[] content, int offset, byte[] prefix) {
+		for (int i = 0; i < prefix.length; ++i) {
+			if (content[offset + i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Tests a way whose number of way nodes is invalid with lazy way nodes. The coordinates of such a way are only
+	 * decoded on request, so the way is passed on and has no way nodes.
+	 * 
+	 * @throws IOException
+	 *             if the map file cannot be copied.
+	 */
+	@Test
+	public void invalidNumberOfLazyWayNodesTest() throws IOException {
+		File corruptMapFile = createCorruptMapFile(WAY_REF, WAY_REF.length + 1, (byte) 1);
+		MapDatabase mapDatabase = new MapDatabase();
+		mapDatabase.setLazyWayNodesEnabled(true);
+		FileOpenResult fileOpenResult = mapDatabase.openFile(corruptMapFile);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+
+		long tileX = MercatorProjection.longitudeToTileX(0.04, ZOOM_LEVEL);
+		long tileY = MercatorProjection.latitudeToTileY(0.04, ZOOM_LEVEL);
+		MapReadResult mapReadResult = mapDatabase.readMapData(new Tile(tileX, tileY, ZOOM_LEVEL));
+		Assert.assertEquals(1, mapReadResult.pointOfInterests.size());
+		Assert.assertEquals(1, mapReadResult.ways.size());
+		Assert.assertEquals(0, mapReadResult.ways.get(0).getWayNodes().length);
+
+		mapDatabase.closeFile();
+		Assert.assertTrue(corruptMapFile.delete());
+	}
+
+	/**
+	 * Tests blocks with a way whose number of way nodes is invalid.
+	 * 
+	 * @throws IOException
+	 *             if the map file cannot be copied.
+	 */
+	@Test
+	public void invalidNumberOfWayNodesTest() throws IOException {
+		// the coordinates start with the number of segments, followed by the number of way nodes of the first one
+		runTest(createCorruptMapFile(WAY_REF, WAY_REF.length + 1, (byte) 1));
+	}
+
+	/**
+	 * Tests blocks whose way signatures are invalid, so that each block becomes corrupt after its POIs have been
+	 * decoded.
+	 * 
+	 * @throws IOException
+	 *             if the map file cannot be copied.
+	 */
+	@Test
+	public void invalidWaySignatureTest() throws IOException {
+		runTest(createCorruptMapFile(WAY_SIGNATURE, 3, (byte) 'X'));
+	}
+}
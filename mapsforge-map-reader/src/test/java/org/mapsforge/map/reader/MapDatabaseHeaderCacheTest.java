@@ -0,0 +1,168 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mapsforge.core.MercatorProjection;
+import org.mapsforge.core.Tile;
+import org.mapsforge.map.reader.header.FileOpenResult;
+import org.mapsforge.map.reader.header.MapFileInfo;
+
+/**
+ * Tests the process-wide header cache of the {@link SharedMapDatabase} class.
+ */
+public class MapDatabaseHeaderCacheTest {
+	private static final File MAP_FILE = new File("src/test/resources/with_data/with_data.map");
+	private static final byte ZOOM_LEVEL = 14;
+
+	private static void copyFile(File source, File destination) throws IOException {
+		InputStream inputStream = new FileInputStream(source);
+		try {
+			OutputStream outputStream = new FileOutputStream(destination);
+			try {
+				byte[] buffer = new byte[8192];
+				int bytesRead;
+				while ((bytesRead = inputStream.read(buffer)) > 0) {
+					outputStream.write(buffer, 0, bytesRead);
+				}
+			} finally {
+				outputStream.close();
+			}
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	private static MapDatabase openMapDatabase(File mapFile, boolean headerCacheEnabled) {
+		MapDatabase mapDatabase = new MapDatabase();
+		mapDatabase.setHeaderCacheEnabled(headerCacheEnabled);
+		FileOpenResult fileOpenResult = mapDatabase.openFile(mapFile);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+		return mapDatabase;
+	}
+
+	private static QueryStatistics readTile(MapDatabase mapDatabase) {
+		QueryStatisticsCollector queryStatisticsCollector = new QueryStatisticsCollector();
+		mapDatabase.setQueryListener(queryStatisticsCollector);
+		long tileX = MercatorProjection.longitudeToTileX(0.04, ZOOM_LEVEL);
+		long tileY = MercatorProjection.latitudeToTileY(0.04, ZOOM_LEVEL);
+		MapReadResult mapReadResult = mapDatabase.readMapData(new Tile(tileX, tileY, ZOOM_LEVEL));
+		Assert.assertEquals(1, mapReadResult.ways.size());
+		return queryStatisticsCollector.getQueryStatistics();
+	}
+
+	/**
+	 * Clears the header cache before and after each test.
+	 */
+	@Before
+	@After
+	public void clearHeaderCache() {
+		SharedMapDatabase.clearHeaderCache();
+	}
+
+	/**
+	 * Tests that a modified map file is read again.
+	 * 
+	 * @throws IOException
+	 *             if the map file cannot be copied.
+	 */
+	@Test
+	public void modifiedFileTest() throws IOException {
+		File mapFile = File.createTempFile("header_cache", ".map");
+		try {
+			copyFile(MAP_FILE, mapFile);
+			Assert.assertTrue(mapFile.setLastModified(1000000000000L));
+
+			MapDatabase mapDatabase = openMapDatabase(mapFile, true);
+			MapFileInfo mapFileInfo = mapDatabase.getMapFileInfo();
+			mapDatabase.closeFile();
+
+			Assert.assertTrue(mapFile.setLastModified(1000000010000L));
+			mapDatabase = openMapDatabase(mapFile, true);
+			Assert.assertNotSame(mapFileInfo, mapDatabase.getMapFileInfo());
+			Assert.assertEquals(2, HeaderCache.size());
+			readTile(mapDatabase);
+			mapDatabase.closeFile();
+		} finally {
+			Assert.assertTrue(mapFile.delete());
+		}
+	}
+
+	/**
+	 * Tests that reopening an unchanged map file reuses its header and index cache.
+	 */
+	@Test
+	public void reopenTest() {
+		MapDatabase mapDatabase = openMapDatabase(MAP_FILE, true);
+		Assert.assertTrue(mapDatabase.isHeaderCacheEnabled());
+		Assert.assertEquals(1, HeaderCache.size());
+		MapFileInfo mapFileInfo = mapDatabase.getMapFileInfo();
+		Assert.assertTrue(readTile(mapDatabase).getIndexCacheMisses() > 0);
+		mapDatabase.closeFile();
+
+		// the same file opened through a different path is found as well
+		File otherPath = new File(MAP_FILE.getParentFile(), "../with_data/" + MAP_FILE.getName());
+		mapDatabase = openMapDatabase(otherPath, true);
+		Assert.assertSame(mapFileInfo, mapDatabase.getMapFileInfo());
+		Assert.assertEquals(1, HeaderCache.size());
+		Assert.assertEquals(0, readTile(mapDatabase).getIndexCacheMisses());
+		mapDatabase.closeFile();
+
+		// without the header cache, the header and the index are read again
+		mapDatabase = openMapDatabase(MAP_FILE, false);
+		Assert.assertNotSame(mapFileInfo, mapDatabase.getMapFileInfo());
+		Assert.assertTrue(readTile(mapDatabase).getIndexCacheMisses() > 0);
+		mapDatabase.closeFile();
+	}
+
+	/**
+	 * Tests that preloaded indexes and block bitmaps are kept across reopening.
+	 */
+	@Test
+	public void warmStateTest() {
+		SharedMapDatabase sharedMapDatabase = new SharedMapDatabase();
+		sharedMapDatabase.setHeaderCacheEnabled(true);
+		sharedMapDatabase.setIndexPreloadEnabled(true);
+		sharedMapDatabase.setBlockBitmapsEnabled(true);
+		Assert.assertTrue(sharedMapDatabase.openFile(MAP_FILE).isSuccess());
+		MapDatabase cursor = sharedMapDatabase.createCursor();
+		Assert.assertEquals(0, readTile(cursor).getIndexCacheMisses());
+		cursor.closeFile();
+		sharedMapDatabase.closeFile();
+
+		// the second instance does not preload the index itself
+		SharedMapDatabase otherSharedMapDatabase = new SharedMapDatabase();
+		otherSharedMapDatabase.setHeaderCacheEnabled(true);
+		otherSharedMapDatabase.setBlockBitmapsEnabled(true);
+		Assert.assertTrue(otherSharedMapDatabase.openFile(MAP_FILE).isSuccess());
+		Assert.assertNotNull(otherSharedMapDatabase.getBlockBitmaps());
+		cursor = otherSharedMapDatabase.createCursor();
+		Assert.assertEquals(0, readTile(cursor).getIndexCacheMisses());
+		Assert.assertEquals(TileContent.DATA, cursor.classifyTile(new Tile(MercatorProjection.longitudeToTileX(0.04,
+				ZOOM_LEVEL), MercatorProjection.latitudeToTileY(0.04, ZOOM_LEVEL), ZOOM_LEVEL)));
+		cursor.closeFile();
+		otherSharedMapDatabase.closeFile();
+	}
+}
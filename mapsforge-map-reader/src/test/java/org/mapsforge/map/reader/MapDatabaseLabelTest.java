@@ -0,0 +1,194 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mapsforge.core.MercatorProjection;
+import org.mapsforge.core.Tag;
+import org.mapsforge.core.Tile;
+import org.mapsforge.map.reader.header.FileOpenResult;
+
+/**
+ * Tests the string cache and the lazy label tags of the {@link MapDatabase} class.
+ */
+public class MapDatabaseLabelTest {
+	private static final File MAP_FILE = new File("src/test/resources/with_data/with_data.map");
+	private static final String NAME = "ÄÖÜ";
+	private static final String REF = "äöü";
+	private static final byte ZOOM_LEVEL_MAX = 11;
+	private static final byte ZOOM_LEVEL_MIN = 6;
+
+	private static Tag findTag(Way way, String key) {
+		for (Tag tag : way.tags) {
+			if (key.equals(tag.key)) {
+				return tag;
+			}
+		}
+		Assert.fail("missing tag: " + key);
+		return null;
+	}
+
+	private static MapDatabase openMapDatabase(int stringCacheCapacity, boolean lazyLabelsEnabled) {
+		MapDatabase mapDatabase = new MapDatabase();
+		mapDatabase.setStringCacheCapacity(stringCacheCapacity);
+		mapDatabase.setLazyLabelsEnabled(lazyLabelsEnabled);
+		FileOpenResult fileOpenResult = mapDatabase.openFile(MAP_FILE);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+		return mapDatabase;
+	}
+
+	private static Way readWay(MapDatabase mapDatabase, byte zoomLevel) {
+		long tileX = MercatorProjection.longitudeToTileX(0.04, zoomLevel);
+		long tileY = MercatorProjection.latitudeToTileY(0.04, zoomLevel);
+		MapReadResult mapReadResult = mapDatabase.readMapData(new Tile(tileX, tileY, zoomLevel));
+		Assert.assertEquals(1, mapReadResult.ways.size());
+		return mapReadResult.ways.get(0);
+	}
+
+	private static Tag serialize(Tag tag) throws IOException, ClassNotFoundException {
+		ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+		ObjectOutputStream objectOutputStream = new ObjectOutputStream(byteArrayOutputStream);
+		objectOutputStream.writeObject(tag);
+		objectOutputStream.close();
+
+		ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(
+				byteArrayOutputStream.toByteArray()));
+		Object object = objectInputStream.readObject();
+		objectInputStream.close();
+		return (Tag) object;
+	}
+
+	/**
+	 * Tests the lazy label tags, with and without the string cache.
+	 * 
+	 * @throws IOException
+	 *             see {@link ObjectOutputStream#writeObject(Object)}
+	 * @throws ClassNotFoundException
+	 *             see {@link ObjectInputStream#readObject()}
+	 */
+	@Test
+	public void lazyLabelsTest() throws IOException, ClassNotFoundException {
+		for (int stringCacheCapacity : new int[] { 0, 64 }) {
+			MapDatabase mapDatabase = openMapDatabase(stringCacheCapacity, true);
+			Assert.assertTrue(mapDatabase.isLazyLabelsEnabled());
+
+			Tag previousNameTag = null;
+			for (byte zoomLevel = ZOOM_LEVEL_MIN; zoomLevel <= ZOOM_LEVEL_MAX; ++zoomLevel) {
+				Way way = readWay(mapDatabase, zoomLevel);
+				Tag nameTag = findTag(way, "name");
+				Tag refTag = findTag(way, "ref");
+				Assert.assertTrue(nameTag instanceof LabelTag);
+				Assert.assertNull(nameTag.value);
+				Assert.assertEquals(NAME, nameTag.getValue());
+				Assert.assertEquals(REF, refTag.getValue());
+				Assert.assertEquals("Tag [key=name, value=" + NAME + "]", nameTag.toString());
+
+				// label tags are equal to plain tags with the same key and value in both directions
+				Assert.assertFalse(nameTag.equals(refTag));
+				Assert.assertEquals(new Tag("name", NAME), nameTag);
+				Assert.assertEquals(nameTag, new Tag("name", NAME));
+				Assert.assertEquals(new Tag("name", NAME).hashCode(), nameTag.hashCode());
+				Assert.assertFalse(nameTag.equals(new Tag("name", REF)));
+				Assert.assertFalse(new Tag("name", null).equals(nameTag));
+				Assert.assertFalse(nameTag.equals(new Tag("name", null)));
+				if (previousNameTag != null) {
+					Assert.assertEquals(previousNameTag, nameTag);
+					Assert.assertEquals(previousNameTag.hashCode(), nameTag.hashCode());
+				}
+				previousNameTag = nameTag;
+
+				// the other tags are not affected
+				Assert.assertTrue(way.tags.contains(new Tag("highway=motorway")));
+			}
+
+			Tag serializedTag = serialize(previousNameTag);
+			Assert.assertEquals(Tag.class, serializedTag.getClass());
+			Assert.assertEquals(new Tag("name", NAME), serializedTag);
+			mapDatabase.closeFile();
+		}
+	}
+
+	/**
+	 * Tests that the string cache returns the same label tags for repeated labels.
+	 */
+	@Test
+	public void stringCacheTest() {
+		MapDatabase mapDatabase = openMapDatabase(64, false);
+		Assert.assertFalse(mapDatabase.isLazyLabelsEnabled());
+
+		Way firstWay = readWay(mapDatabase, ZOOM_LEVEL_MIN);
+		Tag nameTag = findTag(firstWay, "name");
+		Assert.assertEquals(new Tag("name", NAME), nameTag);
+		Assert.assertEquals(new Tag("ref", REF), findTag(firstWay, "ref"));
+
+		for (byte zoomLevel = ZOOM_LEVEL_MIN + 1; zoomLevel <= ZOOM_LEVEL_MAX; ++zoomLevel) {
+			Way way = readWay(mapDatabase, zoomLevel);
+			Assert.assertSame(nameTag, findTag(way, "name"));
+		}
+		mapDatabase.closeFile();
+	}
+
+	/**
+	 * Tests the {@link StringCache} class directly.
+	 * 
+	 * @throws IOException
+	 *             if the encoding is not supported.
+	 */
+	@Test
+	public void stringCacheUnitTest() throws IOException {
+		StringCache stringCache = new StringCache(5);
+		Assert.assertEquals(8, stringCache.getCapacity());
+
+		ByteBuffer buffer = ByteBuffer.wrap(("xx" + NAME + REF).getBytes("UTF-8"));
+		int nameLength = NAME.getBytes("UTF-8").length;
+		String name = stringCache.getString(buffer, 2, nameLength);
+		Assert.assertEquals(NAME, name);
+		Assert.assertSame(name, stringCache.getString(buffer, 2, nameLength));
+		Assert.assertEquals(REF, stringCache.getString(buffer, 2 + nameLength, nameLength));
+		Assert.assertEquals(0, buffer.position());
+
+		// tags with different keys are cached independently of the plain string
+		Tag nameTag = stringCache.getTag("name", buffer, 2, nameLength);
+		Assert.assertEquals(new Tag("name", NAME), nameTag);
+		Assert.assertSame(nameTag, stringCache.getTag("name", buffer, 2, nameLength));
+		Assert.assertEquals(new Tag("ref", NAME), stringCache.getTag("ref", buffer, 2, nameLength));
+
+		// long strings are decoded but not cached
+		StringBuilder stringBuilder = new StringBuilder();
+		while (stringBuilder.length() <= StringCache.MAXIMUM_STRING_LENGTH) {
+			stringBuilder.append("abcdefgh");
+		}
+		byte[] longString = stringBuilder.toString().getBytes("UTF-8");
+		String decoded = stringCache.getString(ByteBuffer.wrap(longString), 0, longString.length);
+		Assert.assertEquals(stringBuilder.toString(), decoded);
+		Assert.assertNotSame(decoded, stringCache.getString(ByteBuffer.wrap(longString), 0, longString.length));
+
+		try {
+			new StringCache(0);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
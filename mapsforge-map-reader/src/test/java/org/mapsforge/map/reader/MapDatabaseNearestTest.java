@@ -0,0 +1,126 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mapsforge.core.GeoPoint;
+import org.mapsforge.core.MercatorProjection;
+import org.mapsforge.core.Tag;
+import org.mapsforge.map.reader.header.FileOpenResult;
+
+/**
+ * Tests the nearest-feature lookup of the {@link MapDatabase} class.
+ */
+public class MapDatabaseNearestTest {
+	private static class WaysOnlyTagFilter implements TagFilter {
+		WaysOnlyTagFilter() {
+			// do nothing
+		}
+
+		@Override
+		public boolean acceptsPoiTag(Tag tag) {
+			return false;
+		}
+
+		@Override
+		public boolean acceptsWayTag(Tag tag) {
+			return true;
+		}
+	}
+
+	private static final File MAP_FILE = new File("src/test/resources/with_data/with_data.map");
+	private static final double METERS_PER_DEGREE = MercatorProjection.EARTH_CIRCUMFERENCE / 360;
+
+	/**
+	 * The query point, 0.01 degrees west of the POI and close to the way.
+	 */
+	private static final GeoPoint QUERY_POINT = new GeoPoint(0.04, 0.07);
+
+	private static MapDatabase openMapDatabase() {
+		MapDatabase mapDatabase = new MapDatabase();
+		FileOpenResult fileOpenResult = mapDatabase.openFile(MAP_FILE);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+		return mapDatabase;
+	}
+
+	/**
+	 * Tests that the closest POI and way are found at different zoom levels.
+	 */
+	@Test
+	public void findNearestTest() {
+		MapDatabase mapDatabase = openMapDatabase();
+
+		// the way passes the query point at 0.04 * 0.01 / sqrt(0.08^2 + 0.04^2) degrees
+		double expectedWayDistance = 0.0004 / Math.sqrt(0.0080) * METERS_PER_DEGREE;
+		double expectedPoiDistance = 0.01 * METERS_PER_DEGREE;
+
+		for (byte zoomLevel : new byte[] { 8, 12, Byte.MAX_VALUE }) {
+			NearestResult nearestResult = mapDatabase.findNearest(QUERY_POINT, 5000, null, zoomLevel);
+			Assert.assertNotNull(nearestResult.pointOfInterest);
+			Assert.assertEquals(new GeoPoint(0.04, 0.08), nearestResult.pointOfInterest.position);
+			Assert.assertEquals(expectedPoiDistance, nearestResult.pointOfInterestDistance, 5);
+
+			Assert.assertNotNull(nearestResult.way);
+			Assert.assertTrue(nearestResult.way.tags.contains(new Tag("highway=motorway")));
+			Assert.assertEquals(expectedWayDistance, nearestResult.wayDistance, 5);
+		}
+
+		NearestResult nearestResult = mapDatabase.findNearest(QUERY_POINT, 5000, null);
+		Assert.assertNotNull(nearestResult.way);
+		Assert.assertNotNull(nearestResult.pointOfInterest);
+		mapDatabase.closeFile();
+	}
+
+	/**
+	 * Tests the maximum distance and the tag filter.
+	 */
+	@Test
+	public void limitsTest() {
+		MapDatabase mapDatabase = openMapDatabase();
+
+		// only the way is close enough
+		NearestResult nearestResult = mapDatabase.findNearest(QUERY_POINT, 800, null);
+		Assert.assertNotNull(nearestResult.way);
+		Assert.assertNull(nearestResult.pointOfInterest);
+		Assert.assertTrue(Double.isNaN(nearestResult.pointOfInterestDistance));
+
+		nearestResult = mapDatabase.findNearest(QUERY_POINT, 100, null);
+		Assert.assertNull(nearestResult.way);
+		Assert.assertNull(nearestResult.pointOfInterest);
+
+		nearestResult = mapDatabase.findNearest(QUERY_POINT, 5000, new WaysOnlyTagFilter());
+		Assert.assertNotNull(nearestResult.way);
+		Assert.assertNull(nearestResult.pointOfInterest);
+
+		// a point far away from the map data, no block is close enough to be read
+		QueryStatisticsCollector queryStatisticsCollector = new QueryStatisticsCollector();
+		mapDatabase.setQueryListener(queryStatisticsCollector);
+		nearestResult = mapDatabase.findNearest(new GeoPoint(10.0, 10.0), 5000, null);
+		Assert.assertNull(nearestResult.way);
+		Assert.assertNull(nearestResult.pointOfInterest);
+		Assert.assertEquals(0, queryStatisticsCollector.getQueryStatistics().getBlocksRead());
+
+		try {
+			mapDatabase.findNearest(QUERY_POINT, -1, null);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		mapDatabase.closeFile();
+	}
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mapsforge.core.BoundingBox;
+import org.mapsforge.core.MercatorProjection;
+import org.mapsforge.core.Tag;
+import org.mapsforge.core.Tile;
+import org.mapsforge.map.reader.header.FileOpenResult;
+import org.mapsforge.map.reader.header.MapFileHeader;
+import org.mapsforge.map.reader.header.SubFileParameter;
+
+/**
+ * Tests the POI queries of the {@link MapDatabase} class.
+ */
+public class MapDatabasePoiTest {
+	private static class NameMapDataSink implements MapDataSink {
+		private final String name;
+		int numberOfPois;
+
+		NameMapDataSink(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public void onBlockAborted(int numberOfPois, int numberOfWays) {
+			Assert.fail("the test map file must not contain corrupt blocks");
+		}
+
+		@Override
+		public void onPoi(PoiData poiData) {
+			if (this.name.equals(poiData.getName())) {
+				++this.numberOfPois;
+			}
+		}
+
+		@Override
+		public void onQueryFinished(boolean isWater) {
+			// do nothing
+		}
+
+		@Override
+		public void onWay(WayData wayData) {
+			Assert.fail("a POI query must not return any ways");
+		}
+	}
+
+	private static final TagFilter REJECT_ALL_TAG_FILTER = new TagFilter() {
+		@Override
+		public boolean acceptsPoiTag(Tag tag) {
+			return false;
+		}
+
+		@Override
+		public boolean acceptsWayTag(Tag tag) {
+			return false;
+		}
+	};
+
+	private static final File MAP_FILE = new File("src/test/resources/with_data/with_data.map");
+	private static final int PADDING_SIZE = 10000;
+	private static final byte PADDING_ZOOM_LEVEL = 14;
+	private static final byte ZOOM_LEVEL_MAX = 16;
+	private static final byte ZOOM_LEVEL_MIN = 5;
+
+	private static byte[] encodeUnsignedInt(int value) {
+		int length = 1;
+		while (value >>> (7 * length) != 0) {
+			++length;
+		}
+
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; ++i) {
+			bytes[i] = (byte) ((value >>> (7 * i)) & 0x7f);
+			if (i < length - 1) {
+				bytes[i] |= 0x80;
+			}
+		}
+		return bytes;
+	}
+
+	private static Tile getPaddingTile() {
+		long tileX = MercatorProjection.longitudeToTileX(0.08, PADDING_ZOOM_LEVEL);
+		long tileY = MercatorProjection.latitudeToTileY(0.04, PADDING_ZOOM_LEVEL);
+		return new Tile(tileX, tileY, PADDING_ZOOM_LEVEL);
+	}
+
+	/**
+	 * Writes a copy of the test map file in which the POI section of the block that contains the POI is extended by
+	 * {@link #PADDING_SIZE} unused bytes.
+	 * 
+	 * @return the size of the header and the POI section of the extended block in bytes.
+	 */
+	private static int writePaddedMapFile(File destination) throws IOException {
+		MapFileHeader mapFileHeader = new MapFileHeader();
+		RandomAccessFile inputFile = new RandomAccessFile(MAP_FILE, "r");
+		byte[] data = new byte[(int) inputFile.length()];
+		try {
+			FileOpenResult fileOpenResult = mapFileHeader.readHeader(new ReadBuffer(inputFile, null), data.length);
+			Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+			inputFile.seek(0);
+			inputFile.readFully(data);
+		} finally {
+			inputFile.close();
+		}
+
+		byte queryZoomLevel = mapFileHeader.getQueryZoomLevel(PADDING_ZOOM_LEVEL);
+		SubFileParameter subFileParameter = mapFileHeader.getSubFileParameter(queryZoomLevel);
+		long blockX = MercatorProjection.longitudeToTileX(0.08, subFileParameter.baseZoomLevel)
+				- subFileParameter.boundaryTileLeft;
+		long blockY = MercatorProjection.latitudeToTileY(0.04, subFileParameter.baseZoomLevel)
+				- subFileParameter.boundaryTileTop;
+		long blockPointer = readIndexEntry(data, subFileParameter, blockY * subFileParameter.blocksWidth + blockX)
+				& MapDatabase.BITMASK_INDEX_OFFSET;
+
+		// skip the block signature and the zoom table
+		int blockPosition = (int) (subFileParameter.startAddress + blockPointer);
+		int position = blockPosition;
+		if (mapFileHeader.getMapFileInfo().debugFile) {
+			position += 32;
+		}
+		for (int i = (subFileParameter.zoomLevelMax - subFileParameter.zoomLevelMin + 1) * 2; i > 0; --i) {
+			while ((data[position++] & 0x80) != 0) {
+				// skip the continuation bytes
+			}
+		}
+
+		int offsetPosition = position;
+		int firstWayOffset = 0;
+		for (int shift = 0; (data[position] & 0x80) != 0; shift += 7) {
+			firstWayOffset |= (data[position++] & 0x7f) << shift;
+		}
+		firstWayOffset |= data[position] << (7 * (position - offsetPosition));
+		++position;
+		int firstWayPosition = position + firstWayOffset;
+
+		byte[] encodedOffset = encodeUnsignedInt(firstWayOffset + PADDING_SIZE);
+		int delta = PADDING_SIZE + encodedOffset.length - (position - offsetPosition);
+		ByteBuffer padded = ByteBuffer.allocate(data.length + delta);
+		padded.put(data, 0, offsetPosition);
+		padded.put(encodedOffset);
+		padded.put(data, position, firstWayPosition - position);
+		padded.position(padded.position() + PADDING_SIZE);
+		padded.put(data, firstWayPosition, data.length - firstWayPosition);
+
+		// update the file size, the sub-file addresses and the index entries of the following blocks
+		padded.putLong(28, padded.capacity());
+		int headerSize = 24 + padded.getInt(20);
+		int numberOfSubFiles = mapFileHeader.getMapFileInfo().numberOfSubFiles;
+		for (int i = 0; i < numberOfSubFiles; ++i) {
+			int startAddressPosition = headerSize - (numberOfSubFiles - i) * 19 + 3;
+			long startAddress = padded.getLong(startAddressPosition);
+			if (startAddress == subFileParameter.startAddress) {
+				padded.putLong(startAddressPosition + 8, padded.getLong(startAddressPosition + 8) + delta);
+			} else if (startAddress > subFileParameter.startAddress) {
+				padded.putLong(startAddressPosition, startAddress + delta);
+			}
+		}
+		for (long blockNumber = 0; blockNumber < subFileParameter.numberOfBlocks; ++blockNumber) {
+			long indexEntry = readIndexEntry(data, subFileParameter, blockNumber);
+			if ((indexEntry & MapDatabase.BITMASK_INDEX_OFFSET) > blockPointer) {
+				int indexPosition = (int) (subFileParameter.indexStartAddress + blockNumber * 5);
+				for (int i = 0; i < 5; ++i) {
+					padded.put(indexPosition + i, (byte) ((indexEntry + delta) >>> (8 * (4 - i))));
+				}
+			}
+		}
+
+		OutputStream outputStream = new FileOutputStream(destination);
+		try {
+			outputStream.write(padded.array());
+		} finally {
+			outputStream.close();
+		}
+		return firstWayPosition + delta - blockPosition;
+	}
+
+	private static MapDatabase openMapDatabase(File mapFile, boolean memoryMapped) {
+		MapDatabase mapDatabase = new MapDatabase();
+		mapDatabase.setMemoryMapped(memoryMapped);
+		FileOpenResult fileOpenResult = mapDatabase.openFile(mapFile);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+		return mapDatabase;
+	}
+
+	private static long readIndexEntry(byte[] data, SubFileParameter subFileParameter, long blockNumber) {
+		int indexPosition = (int) (subFileParameter.indexStartAddress + blockNumber * 5);
+		long indexEntry = 0;
+		for (int i = 0; i < 5; ++i) {
+			indexEntry = indexEntry << 8 | (data[indexPosition + i] & 0xff);
+		}
+		return indexEntry;
+	}
+
+	private static void runTest(File mapFile, boolean memoryMapped) {
+		MapDatabase mapDatabase = openMapDatabase(mapFile, memoryMapped);
+
+		for (byte zoomLevel = ZOOM_LEVEL_MIN; zoomLevel <= ZOOM_LEVEL_MAX; ++zoomLevel) {
+			long tileX = MercatorProjection.longitudeToTileX(0.04, zoomLevel);
+			long tileY = MercatorProjection.latitudeToTileY(0.04, zoomLevel);
+			for (long y = tileY - 1; y <= tileY + 1; ++y) {
+				for (long x = tileX - 1; x <= tileX + 1; ++x) {
+					Tile tile = new Tile(x, y, zoomLevel);
+					MapReadResult expected = mapDatabase.readMapData(tile);
+					MapReadResult actual = mapDatabase.readPoiData(tile, null);
+
+					Assert.assertEquals(expected.isWater, actual.isWater);
+					Assert.assertTrue(actual.ways.isEmpty());
+					Assert.assertEquals(expected.pointOfInterests.size(), actual.pointOfInterests.size());
+					for (int i = 0; i < expected.pointOfInterests.size(); ++i) {
+						PointOfInterest expectedPoi = expected.pointOfInterests.get(i);
+						PointOfInterest actualPoi = actual.pointOfInterests.get(i);
+						Assert.assertEquals(expectedPoi.layer, actualPoi.layer);
+						Assert.assertEquals(expectedPoi.position, actualPoi.position);
+						Assert.assertEquals(expectedPoi.tags, actualPoi.tags);
+					}
+
+					Assert.assertTrue(mapDatabase.readPoiData(tile, REJECT_ALL_TAG_FILTER).pointOfInterests.isEmpty());
+
+					NameMapDataSink nameMapDataSink = new NameMapDataSink("АБВГДЕЖЗ");
+					Assert.assertTrue(mapDatabase.readPoiData(tile, null, nameMapDataSink));
+					Assert.assertEquals(expected.pointOfInterests.size(), nameMapDataSink.numberOfPois);
+				}
+			}
+
+			// only POIs inside of the bounding box are returned
+			BoundingBox boundingBox = new BoundingBox(30000, 70000, 50000, 90000);
+			Assert.assertEquals(1, mapDatabase.readPoiData(boundingBox, zoomLevel, null).pointOfInterests.size());
+			boundingBox = new BoundingBox(0, 0, 30000, 30000);
+			Assert.assertTrue(mapDatabase.readPoiData(boundingBox, zoomLevel, null).pointOfInterests.isEmpty());
+		}
+
+		mapDatabase.closeFile();
+	}
+
+	/**
+	 * Tests the POI queries on a block whose POI section is larger than the first read of a POI query.
+	 * 
+	 * @throws IOException
+	 *             if the map file cannot be written.
+	 */
+	@Test
+	public void largePoiSectionTest() throws IOException {
+		File mapFile = File.createTempFile("large_poi_section", ".map");
+		try {
+			int poiSectionSize = writePaddedMapFile(mapFile);
+			Assert.assertTrue(poiSectionSize > 8192);
+			runTest(mapFile, false);
+			runTest(mapFile, true);
+
+			// the POI section is read exactly once after the block header
+			MapDatabase mapDatabase = openMapDatabase(mapFile, false);
+			QueryStatisticsCollector queryStatisticsCollector = new QueryStatisticsCollector();
+			mapDatabase.setQueryListener(queryStatisticsCollector);
+			Assert.assertEquals(1, mapDatabase.readPoiData(getPaddingTile(), null).pointOfInterests.size());
+			long bytesRead = queryStatisticsCollector.getQueryStatistics().getBytesRead();
+			Assert.assertTrue(bytesRead > poiSectionSize);
+			Assert.assertTrue(bytesRead < poiSectionSize + 256);
+			mapDatabase.closeFile();
+		} finally {
+			Assert.assertTrue(mapFile.delete());
+		}
+	}
+
+	/**
+	 * Tests the POI queries.
+	 */
+	@Test
+	public void poiQueryTest() {
+		runTest(MAP_FILE, false);
+	}
+
+	/**
+	 * Tests the POI queries with a memory-mapped map file.
+	 */
+	@Test
+	public void poiQueryMemoryMappedTest() {
+		runTest(MAP_FILE, true);
+	}
+}
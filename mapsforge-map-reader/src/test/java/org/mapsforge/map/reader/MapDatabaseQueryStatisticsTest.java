@@ -0,0 +1,135 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mapsforge.core.MercatorProjection;
+import org.mapsforge.core.Tile;
+import org.mapsforge.map.reader.header.FileOpenResult;
+
+/**
+ * Tests the query statistics of the {@link MapDatabase} class.
+ */
+public class MapDatabaseQueryStatisticsTest {
+	private static final File MAP_FILE = new File("src/test/resources/with_data/with_data.map");
+	private static final byte ZOOM_LEVEL_MAX = 16;
+	private static final byte ZOOM_LEVEL_MIN = 6;
+
+	private static Tile getTile(byte zoomLevel) {
+		long tileX = MercatorProjection.longitudeToTileX(0.04, zoomLevel);
+		long tileY = MercatorProjection.latitudeToTileY(0.04, zoomLevel);
+		return new Tile(tileX, tileY, zoomLevel);
+	}
+
+	/**
+	 * Tests that a prefetch loads the index entries of a tile without reporting a query.
+	 */
+	@Test
+	public void prefetchMapDataTest() {
+		for (byte zoomLevel = ZOOM_LEVEL_MIN; zoomLevel <= ZOOM_LEVEL_MAX; ++zoomLevel) {
+			MapDatabase mapDatabase = new MapDatabase();
+			FileOpenResult fileOpenResult = mapDatabase.openFile(MAP_FILE);
+			Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+
+			QueryStatisticsCollector queryStatisticsCollector = new QueryStatisticsCollector();
+			mapDatabase.setQueryListener(queryStatisticsCollector);
+
+			Tile tile = getTile(zoomLevel);
+			Assert.assertTrue(mapDatabase.prefetchMapData(tile));
+			Assert.assertEquals(0, queryStatisticsCollector.getNumberOfQueries());
+
+			Assert.assertNotNull(mapDatabase.readMapData(tile));
+			Assert.assertEquals(1, queryStatisticsCollector.getNumberOfQueries());
+			Assert.assertEquals(0, queryStatisticsCollector.getQueryStatistics().getIndexCacheMisses());
+			mapDatabase.closeFile();
+		}
+	}
+
+	/**
+	 * Tests the statistics of single queries.
+	 */
+	@Test
+	public void queryStatisticsTest() {
+		MapDatabase mapDatabase = new MapDatabase();
+		FileOpenResult fileOpenResult = mapDatabase.openFile(MAP_FILE);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+
+		QueryStatisticsCollector queryStatisticsCollector = new QueryStatisticsCollector();
+		mapDatabase.setQueryListener(queryStatisticsCollector);
+
+		long waysSkipped = 0;
+		for (byte zoomLevel = ZOOM_LEVEL_MIN; zoomLevel <= ZOOM_LEVEL_MAX; ++zoomLevel) {
+			Tile tile = getTile(zoomLevel);
+			for (int i = 0; i < 2; ++i) {
+				queryStatisticsCollector.reset();
+				MapReadResult mapReadResult = mapDatabase.readMapData(tile);
+				Assert.assertEquals(1, queryStatisticsCollector.getNumberOfQueries());
+
+				QueryStatistics queryStatistics = queryStatisticsCollector.getQueryStatistics();
+				Assert.assertTrue(queryStatistics.getBlocksRead() > 0);
+				Assert.assertTrue(queryStatistics.getBytesRead() >= queryStatistics.getBlocksRead());
+				Assert.assertTrue(queryStatistics.getReadTime() >= 0);
+				Assert.assertTrue(queryStatistics.getDecodeTime() >= 0);
+				Assert.assertTrue(queryStatistics.getPoisDecoded() >= mapReadResult.pointOfInterests.size());
+				Assert.assertTrue(queryStatistics.getWaysDecoded() >= mapReadResult.ways.size());
+				Assert.assertTrue(queryStatistics.getIndexCacheHits() + queryStatistics.getIndexCacheMisses() > 0);
+				if (i == 1) {
+					// the index entries of the second query are cached
+					Assert.assertEquals(0, queryStatistics.getIndexCacheMisses());
+				}
+				waysSkipped += queryStatistics.getWaysSkipped();
+			}
+
+			// the neighbour tiles of the data tiles do not contain the way
+			queryStatisticsCollector.reset();
+			mapDatabase.readMapData(new Tile(tile.tileX + 1, tile.tileY + 1, zoomLevel));
+			waysSkipped += queryStatisticsCollector.getQueryStatistics().getWaysSkipped();
+		}
+		Assert.assertTrue(waysSkipped > 0);
+
+		// without a listener no statistics are collected
+		mapDatabase.setQueryListener(null);
+		long numberOfQueries = queryStatisticsCollector.getNumberOfQueries();
+		mapDatabase.readMapData(getTile(ZOOM_LEVEL_MIN));
+		Assert.assertEquals(numberOfQueries, queryStatisticsCollector.getNumberOfQueries());
+
+		mapDatabase.closeFile();
+	}
+
+	/**
+	 * Tests that the cursors of a shared map file report to the listener of the shared map file.
+	 */
+	@Test
+	public void sharedQueryStatisticsTest() {
+		SharedMapDatabase sharedMapDatabase = new SharedMapDatabase();
+		FileOpenResult fileOpenResult = sharedMapDatabase.openFile(MAP_FILE);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+
+		QueryStatisticsCollector queryStatisticsCollector = new QueryStatisticsCollector();
+		sharedMapDatabase.setQueryListener(queryStatisticsCollector);
+		for (byte zoomLevel = ZOOM_LEVEL_MIN; zoomLevel <= ZOOM_LEVEL_MAX; ++zoomLevel) {
+			sharedMapDatabase.createCursor().readMapData(getTile(zoomLevel));
+		}
+
+		Assert.assertEquals(ZOOM_LEVEL_MAX - ZOOM_LEVEL_MIN + 1, queryStatisticsCollector.getNumberOfQueries());
+		Assert.assertTrue(queryStatisticsCollector.getQueryStatistics().getBlocksRead() >= ZOOM_LEVEL_MAX
+				- ZOOM_LEVEL_MIN + 1);
+
+		sharedMapDatabase.closeFile();
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mapsforge.core.MercatorProjection;
+import org.mapsforge.core.Tag;
+import org.mapsforge.core.Tile;
+import org.mapsforge.map.reader.header.FileOpenResult;
+
+/**
+ * Tests the {@link MapDatabase#readMapData(Tile, MapDataSink)} method.
+ */
+public class MapDatabaseSinkTest {
+	private static class CheckingMapDataSink implements MapDataSink {
+		int numberOfPois;
+		int numberOfQueries;
+		int numberOfWays;
+		PoiData previousPoiData;
+		WayData previousWayData;
+
+		CheckingMapDataSink() {
+			// do nothing
+		}
+
+		@Override
+		public void onBlockAborted(int numberOfPois, int numberOfWays) {
+			Assert.fail("the test map file must not contain corrupt blocks");
+		}
+
+		@Override
+		public void onPoi(PoiData poiData) {
+			Assert.assertEquals(7, poiData.getLayer());
+			Assert.assertEquals(40000, poiData.getLatitude());
+			Assert.assertEquals(80000, poiData.getLongitude());
+			Assert.assertEquals(1, poiData.getNumberOfTags());
+			Assert.assertEquals(new Tag("place=country"), poiData.getTag(0));
+			Assert.assertEquals("АБВГДЕЖЗ", poiData.getName());
+			Assert.assertEquals("абвгдежз", poiData.getHouseNumber());
+			Assert.assertTrue(poiData.hasElevation());
+			Assert.assertEquals(25, poiData.getElevation());
+
+			// the same object must be reused for all POIs
+			if (this.previousPoiData != null) {
+				Assert.assertSame(this.previousPoiData, poiData);
+			}
+			this.previousPoiData = poiData;
+			++this.numberOfPois;
+		}
+
+		@Override
+		public void onQueryFinished(boolean isWater) {
+			++this.numberOfQueries;
+		}
+
+		@Override
+		public void onWay(WayData wayData) {
+			Assert.assertEquals(4, wayData.getLayer());
+			Assert.assertFalse(wayData.hasLabelPosition());
+			Assert.assertEquals(1, wayData.getNumberOfTags());
+			Assert.assertEquals(new Tag("highway=motorway"), wayData.getTag(0));
+			Assert.assertEquals("ÄÖÜ", wayData.getName());
+			Assert.assertNull(wayData.getHouseNumber());
+			Assert.assertEquals("äöü", wayData.getRef());
+
+			Assert.assertEquals(1, wayData.getNumberOfSegments());
+			int[] wayNodesExpected = new int[] { 0, 0, 80000, 40000, 0, 80000 };
+			Assert.assertEquals(wayNodesExpected.length, wayData.getSegmentLength(0));
+			int offset = wayData.getSegmentOffset(0);
+			for (int i = 0; i < wayNodesExpected.length; ++i) {
+				Assert.assertEquals(wayNodesExpected[i], wayData.getCoordinates()[offset + i]);
+			}
+
+			// the same object must be reused for all ways
+			if (this.previousWayData != null) {
+				Assert.assertSame(this.previousWayData, wayData);
+			}
+			this.previousWayData = wayData;
+			++this.numberOfWays;
+		}
+	}
+
+	private static final File MAP_FILE = new File("src/test/resources/with_data/with_data.map");
+	private static final byte ZOOM_LEVEL_MAX = 11;
+	private static final int ZOOM_LEVEL_MIN = 6;
+
+	private static void runTest(MapDatabase mapDatabase) {
+		FileOpenResult fileOpenResult = mapDatabase.openFile(MAP_FILE);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+
+		CheckingMapDataSink checkingMapDataSink = new CheckingMapDataSink();
+		for (byte zoomLevel = ZOOM_LEVEL_MIN; zoomLevel <= ZOOM_LEVEL_MAX; ++zoomLevel) {
+			long tileX = MercatorProjection.longitudeToTileX(0.04, zoomLevel);
+			long tileY = MercatorProjection.latitudeToTileY(0.04, zoomLevel);
+			Tile tile = new Tile(tileX, tileY, zoomLevel);
+
+			Assert.assertTrue(mapDatabase.readMapData(tile, checkingMapDataSink));
+		}
+
+		int numberOfQueries = ZOOM_LEVEL_MAX - ZOOM_LEVEL_MIN + 1;
+		Assert.assertEquals(numberOfQueries, checkingMapDataSink.numberOfQueries);
+		Assert.assertEquals(numberOfQueries, checkingMapDataSink.numberOfPois);
+		Assert.assertEquals(numberOfQueries, checkingMapDataSink.numberOfWays);
+
+		mapDatabase.closeFile();
+	}
+
+	/**
+	 * Tests the sink query.
+	 */
+	@Test
+	public void executeQueryTest() {
+		runTest(new MapDatabase());
+	}
+
+	/**
+	 * Tests the sink query with a memory-mapped map file.
+	 */
+	@Test
+	public void executeQueryMemoryMappedTest() {
+		MapDatabase mapDatabase = new MapDatabase();
+		mapDatabase.setMemoryMapped(true);
+		runTest(mapDatabase);
+	}
+}
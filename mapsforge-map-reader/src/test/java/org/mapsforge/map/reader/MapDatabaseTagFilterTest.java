@@ -0,0 +1,115 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mapsforge.core.MercatorProjection;
+import org.mapsforge.core.Tag;
+import org.mapsforge.core.Tile;
+import org.mapsforge.map.reader.header.FileOpenResult;
+
+/**
+ * Tests the tag-filtered queries of the {@link MapDatabase} class.
+ */
+public class MapDatabaseTagFilterTest {
+	private static class KeyTagFilter implements TagFilter {
+		private final String poiKey;
+		private final String wayKey;
+
+		KeyTagFilter(String poiKey, String wayKey) {
+			this.poiKey = poiKey;
+			this.wayKey = wayKey;
+		}
+
+		@Override
+		public boolean acceptsPoiTag(Tag tag) {
+			return tag.key.equals(this.poiKey);
+		}
+
+		@Override
+		public boolean acceptsWayTag(Tag tag) {
+			return tag.key.equals(this.wayKey);
+		}
+	}
+
+	private static final File MAP_FILE = new File("src/test/resources/with_data/with_data.map");
+	private static final byte ZOOM_LEVEL_MAX = 11;
+	private static final int ZOOM_LEVEL_MIN = 6;
+
+	private static void runTest(TagFilter tagFilter, int expectedPois, int expectedWays) {
+		MapDatabase mapDatabase = new MapDatabase();
+		FileOpenResult fileOpenResult = mapDatabase.openFile(MAP_FILE);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+
+		for (byte zoomLevel = ZOOM_LEVEL_MIN; zoomLevel <= ZOOM_LEVEL_MAX; ++zoomLevel) {
+			long tileX = MercatorProjection.longitudeToTileX(0.04, zoomLevel);
+			long tileY = MercatorProjection.latitudeToTileY(0.04, zoomLevel);
+			Tile tile = new Tile(tileX, tileY, zoomLevel);
+
+			MapReadResult mapReadResult = mapDatabase.readMapData(tile, tagFilter);
+			Assert.assertEquals(expectedPois, mapReadResult.pointOfInterests.size());
+			Assert.assertEquals(expectedWays, mapReadResult.ways.size());
+
+			MapReadResult unfilteredMapReadResult = mapDatabase.readMapData(tile);
+			Assert.assertEquals(unfilteredMapReadResult.isWater, mapReadResult.isWater);
+			if (expectedPois > 0) {
+				Assert.assertEquals(unfilteredMapReadResult.pointOfInterests.get(0).tags,
+						mapReadResult.pointOfInterests.get(0).tags);
+			}
+			if (expectedWays > 0) {
+				Assert.assertEquals(unfilteredMapReadResult.ways.get(0).tags, mapReadResult.ways.get(0).tags);
+				Assert.assertArrayEquals(unfilteredMapReadResult.ways.get(0).getWayNodes(),
+						mapReadResult.ways.get(0).getWayNodes());
+			}
+		}
+
+		mapDatabase.closeFile();
+	}
+
+	/**
+	 * Tests a filter which accepts all POIs and ways.
+	 */
+	@Test
+	public void acceptAllTest() {
+		runTest(new KeyTagFilter("place", "highway"), 1, 1);
+	}
+
+	/**
+	 * Tests a filter which accepts only POIs.
+	 */
+	@Test
+	public void poisOnlyTest() {
+		runTest(new KeyTagFilter("place", null), 1, 0);
+	}
+
+	/**
+	 * Tests a filter which rejects all POIs and ways.
+	 */
+	@Test
+	public void rejectAllTest() {
+		runTest(new KeyTagFilter(null, null), 0, 0);
+	}
+
+	/**
+	 * Tests a filter which accepts only ways.
+	 */
+	@Test
+	public void waysOnlyTest() {
+		runTest(new KeyTagFilter(null, "highway"), 0, 1);
+	}
+}
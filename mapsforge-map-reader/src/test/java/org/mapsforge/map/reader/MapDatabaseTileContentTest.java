@@ -0,0 +1,114 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mapsforge.core.MercatorProjection;
+import org.mapsforge.core.Tile;
+import org.mapsforge.map.reader.header.FileOpenResult;
+
+/**
+ * Tests the index-only tile classification of the {@link MapDatabase} class.
+ */
+public class MapDatabaseTileContentTest {
+	private static final File MAP_FILE = new File("src/test/resources/with_data/with_data.map");
+	private static final int RANGE = 3;
+	private static final byte ZOOM_LEVEL_MAX = 16;
+	private static final byte ZOOM_LEVEL_MIN = 5;
+
+	private static MapDatabase openMapDatabase(boolean blockBitmapsEnabled) {
+		MapDatabase mapDatabase = new MapDatabase();
+		mapDatabase.setBlockBitmapsEnabled(blockBitmapsEnabled);
+		FileOpenResult fileOpenResult = mapDatabase.openFile(MAP_FILE);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+		return mapDatabase;
+	}
+
+	private static void runTest(boolean blockBitmapsEnabled) {
+		MapDatabase mapDatabase = openMapDatabase(blockBitmapsEnabled);
+		Assert.assertEquals(Boolean.valueOf(blockBitmapsEnabled), Boolean.valueOf(mapDatabase.isBlockBitmapsEnabled()));
+
+		int numberOfDataTiles = 0;
+		int numberOfEmptyTiles = 0;
+		for (byte zoomLevel = ZOOM_LEVEL_MIN; zoomLevel <= ZOOM_LEVEL_MAX; ++zoomLevel) {
+			long tileX = MercatorProjection.longitudeToTileX(0.04, zoomLevel);
+			long tileY = MercatorProjection.latitudeToTileY(0.04, zoomLevel);
+			TileContent[] tileContents = mapDatabase.classifyTiles(tileX - RANGE, tileY - RANGE, tileX + RANGE, tileY
+					+ RANGE, zoomLevel);
+			Assert.assertEquals((2 * RANGE + 1) * (2 * RANGE + 1), tileContents.length);
+
+			int index = 0;
+			for (long y = tileY - RANGE; y <= tileY + RANGE; ++y) {
+				for (long x = tileX - RANGE; x <= tileX + RANGE; ++x) {
+					Tile tile = new Tile(x, y, zoomLevel);
+					TileContent tileContent = tileContents[index++];
+					Assert.assertEquals(tileContent, mapDatabase.classifyTile(tile));
+
+					MapReadResult mapReadResult = mapDatabase.readMapData(tile);
+					if (tileContent == TileContent.DATA) {
+						++numberOfDataTiles;
+						continue;
+					}
+
+					// tiles without data blocks must not contain anything
+					++numberOfEmptyTiles;
+					Assert.assertTrue(mapReadResult.pointOfInterests.isEmpty());
+					Assert.assertTrue(mapReadResult.ways.isEmpty());
+					Assert.assertEquals(Boolean.valueOf(tileContent == TileContent.WATER),
+							Boolean.valueOf(mapReadResult.isWater));
+				}
+			}
+		}
+		Assert.assertTrue(numberOfDataTiles > 0);
+		Assert.assertTrue(numberOfEmptyTiles > 0);
+
+		// a tile outside of the map file is empty
+		Assert.assertEquals(TileContent.EMPTY, mapDatabase.classifyTile(new Tile(0, 0, (byte) 10)));
+
+		mapDatabase.closeFile();
+	}
+
+	/**
+	 * Tests the tile classification with block bitmaps.
+	 */
+	@Test
+	public void blockBitmapTest() {
+		runTest(true);
+	}
+
+	/**
+	 * Tests that an empty tile range is rejected.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void emptyRangeTest() {
+		MapDatabase mapDatabase = openMapDatabase(false);
+		try {
+			mapDatabase.classifyTiles(1, 1, 0, 0, (byte) 10);
+		} finally {
+			mapDatabase.closeFile();
+		}
+	}
+
+	/**
+	 * Tests the tile classification with index reads.
+	 */
+	@Test
+	public void indexTest() {
+		runTest(false);
+	}
+}
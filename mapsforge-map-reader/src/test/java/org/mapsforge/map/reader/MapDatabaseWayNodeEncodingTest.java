@@ -30,8 +30,13 @@ public class MapDatabaseWayNodeEncodingTest {
 	private static final File MAP_FILE_SINGLE_DELTA = new File("src/test/resources/way_node_encoding/single_delta.map");
 	private static final byte ZOOM_LEVEL = 8;
 
-	private static void runTest(File mapFile) {
+	private static final float[][] WAY_NODES_EXPECTED = new float[][] { { 0, 0, 100000, 0, 100000, -100000, 0,
+			-100000, 0, 0 } };
+
+	private static Way readWay(File mapFile, boolean memoryMapped, boolean lazyWayNodes) {
 		MapDatabase mapDatabase = new MapDatabase();
+		mapDatabase.setMemoryMapped(memoryMapped);
+		mapDatabase.setLazyWayNodesEnabled(lazyWayNodes);
 		FileOpenResult fileOpenResult = mapDatabase.openFile(mapFile);
 		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
 
@@ -44,10 +49,13 @@ public class MapDatabaseWayNodeEncodingTest {
 
 		Assert.assertTrue(mapReadResult.pointOfInterests.isEmpty());
 		Assert.assertEquals(1, mapReadResult.ways.size());
+		return mapReadResult.ways.get(0);
+	}
 
-		Way way = mapReadResult.ways.get(0);
-		float[][] wayNodesExpected = new float[][] { { 0, 0, 100000, 0, 100000, -100000, 0, -100000, 0, 0 } };
-		Assert.assertArrayEquals(wayNodesExpected, way.wayNodes);
+	private static void runTest(File mapFile, boolean memoryMapped) {
+		Way way = readWay(mapFile, memoryMapped, false);
+		Assert.assertArrayEquals(WAY_NODES_EXPECTED, way.wayNodes);
+		Assert.assertArrayEquals(WAY_NODES_EXPECTED, way.getWayNodes());
 	}
 
 	/**
@@ -55,7 +63,38 @@ public class MapDatabaseWayNodeEncodingTest {
 	 */
 	@Test
 	public void executeQueryTest() {
-		runTest(MAP_FILE_SINGLE_DELTA);
-		runTest(MAP_FILE_DOUBLE_DELTA);
+		runTest(MAP_FILE_SINGLE_DELTA, false);
+		runTest(MAP_FILE_DOUBLE_DELTA, false);
+	}
+
+	/**
+	 * Tests the {@link MapDatabase#readMapData(Tile)} method with lazily decoded way nodes.
+	 */
+	@Test
+	public void executeQueryLazyWayNodesTest() {
+		File[] mapFiles = new File[] { MAP_FILE_SINGLE_DELTA, MAP_FILE_DOUBLE_DELTA };
+		for (File mapFile : mapFiles) {
+			Way way = readWay(mapFile, false, true);
+			Way eagerWay = readWay(mapFile, false, false);
+
+			// the key of a way must not depend on whether its way nodes have been decoded
+			WayContentKey wayContentKey = new WayContentKey(way);
+			Assert.assertNull(way.wayNodes);
+			Assert.assertEquals(new WayContentKey(eagerWay).hashCode(), wayContentKey.hashCode());
+			Assert.assertEquals(new WayContentKey(eagerWay), wayContentKey);
+
+			Assert.assertArrayEquals(WAY_NODES_EXPECTED, way.getWayNodes());
+			Assert.assertSame(way.getWayNodes(), way.getWayNodes());
+			Assert.assertEquals(wayContentKey.hashCode(), new WayContentKey(way).hashCode());
+		}
+	}
+
+	/**
+	 * Tests the {@link MapDatabase#readMapData(Tile)} method with memory-mapped map files.
+	 */
+	@Test
+	public void executeQueryMemoryMappedTest() {
+		runTest(MAP_FILE_SINGLE_DELTA, true);
+		runTest(MAP_FILE_DOUBLE_DELTA, true);
 	}
 }
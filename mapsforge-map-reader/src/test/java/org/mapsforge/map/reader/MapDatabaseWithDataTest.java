@@ -47,19 +47,14 @@ public class MapDatabaseWithDataTest {
 		Assert.assertEquals(4, way.layer);
 		Assert.assertNull(way.labelPosition);
 		float[][] wayNodesExpected = new float[][] { { 0, 0, 80000, 40000, 0, 80000 } };
-		Assert.assertArrayEquals(wayNodesExpected, way.wayNodes);
+		Assert.assertArrayEquals(wayNodesExpected, way.getWayNodes());
 		Assert.assertEquals(3, way.tags.size());
 		Assert.assertTrue(way.tags.contains(new Tag("highway=motorway")));
 		Assert.assertTrue(way.tags.contains(new Tag("name=ÄÖÜ")));
 		Assert.assertTrue(way.tags.contains(new Tag("ref=äöü")));
 	}
 
-	/**
-	 * Tests the {@link MapDatabase#readMapData(Tile)} method.
-	 */
-	@Test
-	public void executeQueryTest() {
-		MapDatabase mapDatabase = new MapDatabase();
+	private static void runTest(MapDatabase mapDatabase) {
 		FileOpenResult fileOpenResult = mapDatabase.openFile(MAP_FILE);
 		Assert.assertTrue(mapDatabase.hasOpenFile());
 		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
@@ -84,4 +79,22 @@ public class MapDatabaseWithDataTest {
 		mapDatabase.closeFile();
 		Assert.assertFalse(mapDatabase.hasOpenFile());
 	}
+
+	/**
+	 * Tests the {@link MapDatabase#readMapData(Tile)} method.
+	 */
+	@Test
+	public void executeQueryTest() {
+		runTest(new MapDatabase());
+	}
+
+	/**
+	 * Tests the {@link MapDatabase#readMapData(Tile)} method with a memory-mapped map file.
+	 */
+	@Test
+	public void executeQueryMemoryMappedTest() {
+		MapDatabase mapDatabase = new MapDatabase();
+		mapDatabase.setMemoryMapped(true);
+		runTest(mapDatabase);
+	}
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mapsforge.core.MercatorProjection;
+import org.mapsforge.core.Tile;
+import org.mapsforge.map.reader.header.FileOpenResult;
+
+/**
+ * Tests the {@link MapReadService} class.
+ */
+public class MapReadServiceTest {
+	private static final int BLOCK_CACHE_CAPACITY = 16;
+	private static final File MAP_FILE = new File("src/test/resources/with_data/with_data.map");
+	private static final int NUMBER_OF_THREADS = 4;
+	private static final long TIMEOUT = 10000;
+
+	private static void runTest(boolean prefetchEnabled) throws Exception {
+		SharedMapDatabase sharedMapDatabase = new SharedMapDatabase();
+		sharedMapDatabase.setBlockCacheCapacity(BLOCK_CACHE_CAPACITY);
+		FileOpenResult fileOpenResult = sharedMapDatabase.openFile(MAP_FILE);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+
+		MapDatabase referenceMapDatabase = new MapDatabase();
+		fileOpenResult = referenceMapDatabase.openFile(MAP_FILE);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+
+		MapReadService mapReadService = new MapReadService(sharedMapDatabase, NUMBER_OF_THREADS);
+		mapReadService.setPrefetchEnabled(prefetchEnabled);
+		Assert.assertEquals(prefetchEnabled, mapReadService.isPrefetchEnabled());
+
+		List<Tile> tiles = new ArrayList<Tile>();
+		List<Future<MapReadResult>> futures = new ArrayList<Future<MapReadResult>>();
+		for (byte zoomLevel = 5; zoomLevel <= 16; ++zoomLevel) {
+			long tileX = MercatorProjection.longitudeToTileX(0.04, zoomLevel);
+			long tileY = MercatorProjection.latitudeToTileY(0.04, zoomLevel);
+			for (long x = tileX - 1; x <= tileX + 1; ++x) {
+				Tile tile = new Tile(x, tileY, zoomLevel);
+				tiles.add(tile);
+				futures.add(mapReadService.readMapDataAsync(tile));
+			}
+		}
+
+		for (int i = 0; i < tiles.size(); ++i) {
+			MapReadResult expected = referenceMapDatabase.readMapData(tiles.get(i));
+			MapReadResult actual = futures.get(i).get();
+			Assert.assertEquals(expected.isWater, actual.isWater);
+			Assert.assertEquals(expected.pointOfInterests.size(), actual.pointOfInterests.size());
+			Assert.assertEquals(expected.ways.size(), actual.ways.size());
+			for (int way = 0; way < expected.ways.size(); ++way) {
+				Assert.assertEquals(expected.ways.get(way).tags, actual.ways.get(way).tags);
+				Assert.assertArrayEquals(expected.ways.get(way).getWayNodes(), actual.ways.get(way).getWayNodes());
+			}
+		}
+
+		mapReadService.shutdown();
+		Assert.assertTrue(mapReadService.awaitTermination(TIMEOUT));
+
+		try {
+			mapReadService.readMapDataAsync(tiles.get(0));
+			Assert.fail();
+		} catch (RejectedExecutionException e) {
+			// expected
+		}
+
+		referenceMapDatabase.closeFile();
+		sharedMapDatabase.closeFile();
+	}
+
+	/**
+	 * Tests that asynchronous queries return the same results as synchronous queries.
+	 * 
+	 * @throws Exception
+	 *             if a query fails.
+	 */
+	@Test
+	public void readMapDataAsyncTest() throws Exception {
+		runTest(false);
+	}
+
+	/**
+	 * Tests asynchronous queries with prefetching of related tiles.
+	 * 
+	 * @throws Exception
+	 *             if a query fails.
+	 */
+	@Test
+	public void readMapDataAsyncPrefetchTest() throws Exception {
+		runTest(true);
+	}
+
+	/**
+	 * Tests that the service cannot be created without reader threads.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidNumberOfThreadsTest() {
+		new MapReadService(new SharedMapDatabase(), 0);
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mapsforge.core.IOUtils;
+
+/**
+ * Tests the {@link MappedFile} class.
+ */
+public class MappedFileTest {
+	private static final File MAP_FILE = new File("src/test/resources/with_data/with_data.map");
+	private static final int REGION_LENGTH = 37;
+	private static final int WINDOW_OVERLAP = 64;
+	private static final long WINDOW_STRIDE = 100;
+
+	/**
+	 * Tests that regions and index entries are read correctly from every window of a multi-window mapping.
+	 * 
+	 * @throws IOException
+	 *             if an error occurs while reading the test file.
+	 */
+	@Test
+	public void windowedMappingTest() throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(MAP_FILE, "r");
+		try {
+			long fileSize = randomAccessFile.length();
+			byte[] fileData = new byte[(int) fileSize];
+			randomAccessFile.readFully(fileData);
+
+			MappedFile mappedFile = new MappedFile(randomAccessFile.getChannel(), fileSize, WINDOW_STRIDE,
+					WINDOW_OVERLAP);
+
+			for (int position = 0; position + REGION_LENGTH <= fileSize; ++position) {
+				ByteBuffer region = mappedFile.getRegion(position, REGION_LENGTH);
+				Assert.assertEquals(REGION_LENGTH, region.limit());
+				for (int i = 0; i < REGION_LENGTH; ++i) {
+					Assert.assertEquals(fileData[position + i], region.get(i));
+				}
+
+				Assert.assertEquals(Deserializer.getFiveBytesLong(fileData, position),
+						mappedFile.getFiveBytesLong(position));
+			}
+
+			Assert.assertNull(mappedFile.getRegion(fileSize - 1, 2));
+			Assert.assertNull(mappedFile.getRegion(0, WINDOW_OVERLAP + 1));
+			Assert.assertEquals(-1, mappedFile.getFiveBytesLong(fileSize - 4));
+		} finally {
+			IOUtils.closeQuietly(randomAccessFile);
+		}
+	}
+}
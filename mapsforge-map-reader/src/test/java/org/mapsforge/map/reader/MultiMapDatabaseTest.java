@@ -0,0 +1,105 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mapsforge.core.MercatorProjection;
+import org.mapsforge.core.Tile;
+import org.mapsforge.map.reader.header.FileOpenResult;
+
+/**
+ * Tests the {@link MultiMapDatabase} class.
+ */
+public class MultiMapDatabaseTest {
+	private static final File MAP_FILE = new File("src/test/resources/with_data/with_data.map");
+	private static final byte ZOOM_LEVEL_MAX = 16;
+	private static final byte ZOOM_LEVEL_MIN = 6;
+
+	private static SharedMapDatabase openSharedMapDatabase() {
+		SharedMapDatabase sharedMapDatabase = new SharedMapDatabase();
+		FileOpenResult fileOpenResult = sharedMapDatabase.openFile(MAP_FILE);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+		return sharedMapDatabase;
+	}
+
+	private static void runTest(int numberOfThreads) {
+		SharedMapDatabase sharedMapDatabase1 = openSharedMapDatabase();
+		SharedMapDatabase sharedMapDatabase2 = openSharedMapDatabase();
+		MapDatabase mapDatabase = sharedMapDatabase1.createCursor();
+
+		MultiMapDatabase multiMapDatabase = new MultiMapDatabase(numberOfThreads);
+		multiMapDatabase.addMapFile(sharedMapDatabase1);
+		multiMapDatabase.addMapFile(sharedMapDatabase2);
+		Assert.assertEquals(DuplicatePolicy.REMOVE_DUPLICATES, multiMapDatabase.getDuplicatePolicy());
+
+		for (byte zoomLevel = ZOOM_LEVEL_MIN; zoomLevel <= ZOOM_LEVEL_MAX; ++zoomLevel) {
+			long tileX = MercatorProjection.longitudeToTileX(0.04, zoomLevel);
+			long tileY = MercatorProjection.latitudeToTileY(0.04, zoomLevel);
+			Tile tile = new Tile(tileX, tileY, zoomLevel);
+			MapReadResult expected = mapDatabase.readMapData(tile);
+
+			for (DuplicatePolicy duplicatePolicy : DuplicatePolicy.values()) {
+				multiMapDatabase.setDuplicatePolicy(duplicatePolicy);
+				MapReadResult actual = multiMapDatabase.readMapData(tile);
+				int factor = duplicatePolicy == DuplicatePolicy.KEEP_ALL ? 2 : 1;
+
+				Assert.assertEquals(expected.isWater, actual.isWater);
+				Assert.assertEquals(factor * expected.pointOfInterests.size(), actual.pointOfInterests.size());
+				Assert.assertEquals(factor * expected.ways.size(), actual.ways.size());
+				for (int i = 0; i < expected.ways.size(); ++i) {
+					Assert.assertArrayEquals(expected.ways.get(i).getWayNodes(), actual.ways.get(i).getWayNodes());
+				}
+			}
+		}
+
+		// tiles outside of all map files are not read at all
+		MapReadResult mapReadResult = multiMapDatabase.readMapData(new Tile(0, 0, (byte) 10));
+		Assert.assertTrue(mapReadResult.pointOfInterests.isEmpty());
+		Assert.assertTrue(mapReadResult.ways.isEmpty());
+		Assert.assertFalse(mapReadResult.isWater);
+
+		multiMapDatabase.shutdown();
+		mapDatabase.closeFile();
+		sharedMapDatabase1.closeFile();
+		sharedMapDatabase2.closeFile();
+	}
+
+	/**
+	 * Tests that a closed map file is rejected.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void closedMapFileTest() {
+		new MultiMapDatabase(0).addMapFile(new SharedMapDatabase());
+	}
+
+	/**
+	 * Tests the queries on the calling thread.
+	 */
+	@Test
+	public void multiMapDatabaseTest() {
+		runTest(0);
+	}
+
+	/**
+	 * Tests the queries on worker threads.
+	 */
+	@Test
+	public void multiMapDatabaseWorkerTest() {
+		runTest(2);
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the variable-byte decoding of the {@link ReadBuffer} class, both from heap buffers and from buffers without
+ * backing array like mapped file regions.
+ */
+public class ReadBufferTest {
+	private static final int[] SIGNED_VALUES = { 0, 1, -1, 63, -63, 64, -64, 8191, -8191, 8192, -8192, 1048575,
+			-1048575, 1048576, -1048576, 180000000, -180000000, Integer.MAX_VALUE, -Integer.MAX_VALUE };
+
+	/**
+	 * @return read buffers for the given data: a heap buffer, a slice of a heap buffer and a direct buffer.
+	 */
+	private static ReadBuffer[] createReadBuffers(byte[] data) {
+		ByteBuffer sliceBuffer = ByteBuffer.allocate(data.length + 7);
+		sliceBuffer.position(7);
+		ByteBuffer slice = sliceBuffer.slice();
+		slice.put(data);
+
+		ByteBuffer directBuffer = ByteBuffer.allocateDirect(data.length);
+		directBuffer.put(data);
+
+		return new ReadBuffer[] { new ReadBuffer(data), new ReadBuffer(slice), new ReadBuffer(directBuffer) };
+	}
+
+	private static void writeSignedInt(ByteArrayOutputStream outputStream, int value) {
+		int absoluteValue = Math.abs(value);
+		while (absoluteValue > 0x3f) {
+			outputStream.write((absoluteValue & 0x7f) | 0x80);
+			absoluteValue >>>= 7;
+		}
+		outputStream.write(value < 0 ? absoluteValue | 0x40 : absoluteValue);
+	}
+
+	/**
+	 * Tests the {@link ReadBuffer#readDeltaEncodedCoordinates} method with single-delta and double-delta encoding.
+	 */
+	@Test
+	public void readDeltaEncodedCoordinatesTest() {
+		Random random = new Random(0);
+		int numberOfWayNodes = 500;
+		int[] latitudes = new int[numberOfWayNodes];
+		int[] longitudes = new int[numberOfWayNodes];
+		for (int i = 0; i < numberOfWayNodes; ++i) {
+			// mostly small steps with some far jumps
+			int step = random.nextInt(10) == 0 ? 1000000 : 100;
+			latitudes[i] = (i == 0 ? 52000000 : latitudes[i - 1]) + random.nextInt(2 * step) - step;
+			longitudes[i] = (i == 0 ? 13000000 : longitudes[i - 1]) + random.nextInt(2 * step) - step;
+		}
+		int tileLatitude = 51900000;
+		int tileLongitude = 13100000;
+
+		for (boolean doubleDelta : new boolean[] { false, true }) {
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			writeSignedInt(outputStream, latitudes[0] - tileLatitude);
+			writeSignedInt(outputStream, longitudes[0] - tileLongitude);
+			for (int i = 1; i < numberOfWayNodes; ++i) {
+				int deltaLatitude = latitudes[i] - latitudes[i - 1];
+				int deltaLongitude = longitudes[i] - longitudes[i - 1];
+				if (doubleDelta && i > 1) {
+					deltaLatitude -= latitudes[i - 1] - latitudes[i - 2];
+					deltaLongitude -= longitudes[i - 1] - longitudes[i - 2];
+				}
+				writeSignedInt(outputStream, deltaLatitude);
+				writeSignedInt(outputStream, deltaLongitude);
+			}
+			outputStream.write(42);
+
+			for (ReadBuffer readBuffer : createReadBuffers(outputStream.toByteArray())) {
+				int offset = 3;
+				int[] coordinates = new int[offset + numberOfWayNodes * 2];
+				readBuffer.readDeltaEncodedCoordinates(coordinates, offset, numberOfWayNodes, tileLatitude,
+						tileLongitude, doubleDelta);
+				for (int i = 0; i < numberOfWayNodes; ++i) {
+					Assert.assertEquals(longitudes[i], coordinates[offset + 2 * i]);
+					Assert.assertEquals(latitudes[i], coordinates[offset + 2 * i + 1]);
+				}
+				Assert.assertEquals(42, readBuffer.readByte());
+			}
+		}
+	}
+
+	/**
+	 * Tests that fixed-size and unsigned values are decoded from all kinds of read buffers.
+	 */
+	@Test
+	public void readFixedSizeAndUnsignedValuesTest() {
+		byte[] data = { 1, 2, 3, 4, 5, 6, 7, 8, -1, -2, (byte) 0x81, 0x01, 0x7f, 42 };
+		for (ReadBuffer readBuffer : createReadBuffers(data)) {
+			Assert.assertEquals(0x0102, readBuffer.readShort());
+			Assert.assertEquals(0x03040506, readBuffer.readInt());
+			readBuffer.setBufferPosition(0);
+			Assert.assertEquals(0x0102030405060708L, readBuffer.readLong());
+			Assert.assertEquals(-2, readBuffer.readShort());
+			Assert.assertEquals(129, readBuffer.readUnsignedInt());
+			Assert.assertEquals(127, readBuffer.readUnsignedInt());
+			Assert.assertEquals(42, readBuffer.readByte());
+		}
+	}
+
+	/**
+	 * Tests {@link ReadBuffer#readSignedInts} at the boundaries between one, two and three byte encodings.
+	 */
+	@Test
+	public void readSignedIntsByteBoundariesTest() {
+		int[][] boundaries = { { 63, 1 }, { 64, 2 }, { 8191, 2 }, { 8192, 3 } };
+		for (int[] boundary : boundaries) {
+			for (int sign = 1; sign >= -1; sign -= 2) {
+				int value = sign * boundary[0];
+				ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+				writeSignedInt(outputStream, value);
+				Assert.assertEquals(boundary[1], outputStream.size());
+				writeSignedInt(outputStream, -value);
+				outputStream.write(42);
+
+				for (ReadBuffer readBuffer : createReadBuffers(outputStream.toByteArray())) {
+					int[] values = new int[2];
+					readBuffer.readSignedInts(values, 0, 2);
+					Assert.assertEquals(value, values[0]);
+					Assert.assertEquals(-value, values[1]);
+					Assert.assertEquals(boundary[1] * 2, readBuffer.getBufferPosition());
+					Assert.assertEquals(42, readBuffer.readByte());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Tests that {@link ReadBuffer#readSignedInts} decodes the same values as {@link ReadBuffer#readSignedInt}.
+	 */
+	@Test
+	public void readSignedIntsTest() {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		for (int value : SIGNED_VALUES) {
+			writeSignedInt(outputStream, value);
+		}
+		outputStream.write(42);
+		byte[] data = outputStream.toByteArray();
+
+		for (ReadBuffer readBuffer : createReadBuffers(data)) {
+			for (int value : SIGNED_VALUES) {
+				Assert.assertEquals(value, readBuffer.readSignedInt());
+			}
+			Assert.assertEquals(42, readBuffer.readByte());
+		}
+
+		for (ReadBuffer readBuffer : createReadBuffers(data)) {
+			int[] values = new int[SIGNED_VALUES.length + 2];
+			readBuffer.readSignedInts(values, 1, SIGNED_VALUES.length);
+			for (int i = 0; i < SIGNED_VALUES.length; ++i) {
+				Assert.assertEquals(SIGNED_VALUES[i], values[i + 1]);
+			}
+			Assert.assertEquals(0, values[0]);
+			Assert.assertEquals(0, values[values.length - 1]);
+			Assert.assertEquals(42, readBuffer.readByte());
+		}
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mapsforge.core.MercatorProjection;
+import org.mapsforge.core.Tile;
+import org.mapsforge.map.reader.header.FileOpenResult;
+
+/**
+ * Tests the {@link SharedMapDatabase} class.
+ */
+public class SharedMapDatabaseTest {
+	private static final File MAP_FILE = new File("src/test/resources/with_data/with_data.map");
+	private static final int NUMBER_OF_QUERIES = 200;
+	private static final int NUMBER_OF_THREADS = 8;
+	private static final byte ZOOM_LEVEL_MAX = 11;
+	private static final int ZOOM_LEVEL_MIN = 6;
+
+	private static void runTest(boolean memoryMapped) throws Exception {
+		final SharedMapDatabase sharedMapDatabase = new SharedMapDatabase();
+		sharedMapDatabase.setMemoryMapped(memoryMapped);
+		FileOpenResult fileOpenResult = sharedMapDatabase.openFile(MAP_FILE);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+
+		ExecutorService executorService = Executors.newFixedThreadPool(NUMBER_OF_THREADS);
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+		for (int i = 0; i < NUMBER_OF_THREADS; ++i) {
+			futures.add(executorService.submit(new Callable<Integer>() {
+				@Override
+				public Integer call() {
+					MapDatabase mapDatabase = sharedMapDatabase.createCursor();
+					int successfulQueries = 0;
+					for (int query = 0; query < NUMBER_OF_QUERIES; ++query) {
+						byte zoomLevel = (byte) (ZOOM_LEVEL_MIN + query % (ZOOM_LEVEL_MAX - ZOOM_LEVEL_MIN + 1));
+						long tileX = MercatorProjection.longitudeToTileX(0.04, zoomLevel);
+						long tileY = MercatorProjection.latitudeToTileY(0.04, zoomLevel);
+						MapReadResult mapReadResult = mapDatabase.readMapData(new Tile(tileX, tileY, zoomLevel));
+						if (mapReadResult.pointOfInterests.size() == 1 && mapReadResult.ways.size() == 1) {
+							++successfulQueries;
+						}
+					}
+					mapDatabase.closeFile();
+					return Integer.valueOf(successfulQueries);
+				}
+			}));
+		}
+
+		for (Future<Integer> future : futures) {
+			Assert.assertEquals(NUMBER_OF_QUERIES, future.get().intValue());
+		}
+		executorService.shutdown();
+
+		// closing the cursors must not close the shared map file
+		Assert.assertTrue(sharedMapDatabase.hasOpenFile());
+		Assert.assertTrue(sharedMapDatabase.createCursor().hasOpenFile());
+
+		sharedMapDatabase.closeFile();
+		Assert.assertFalse(sharedMapDatabase.hasOpenFile());
+	}
+
+	/**
+	 * Tests concurrent queries of many cursors on the same shared map file.
+	 * 
+	 * @throws Exception
+	 *             if a query thread fails.
+	 */
+	@Test
+	public void concurrentQueriesTest() throws Exception {
+		runTest(false);
+		runTest(true);
+	}
+
+	/**
+	 * Tests that no cursor can be created without an opened map file.
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void createCursorWithoutFileTest() {
+		new SharedMapDatabase().createCursor();
+	}
+
+	/**
+	 * Tests cursors which share the map file of a regular {@link MapDatabase}.
+	 */
+	@Test
+	public void mapDatabaseCursorTest() {
+		MapDatabase mapDatabase = new MapDatabase();
+		try {
+			mapDatabase.createCursor();
+			Assert.fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		mapDatabase.setBlockBitmapsEnabled(true);
+		FileOpenResult fileOpenResult = mapDatabase.openFile(MAP_FILE);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+
+		byte zoomLevel = ZOOM_LEVEL_MAX;
+		long tileX = MercatorProjection.longitudeToTileX(0.04, zoomLevel);
+		long tileY = MercatorProjection.latitudeToTileY(0.04, zoomLevel);
+		MapDatabase cursor = mapDatabase.createCursor();
+		Assert.assertTrue(cursor.isBlockBitmapsEnabled());
+		MapReadResult mapReadResult = cursor.readMapData(new Tile(tileX, tileY, zoomLevel));
+		Assert.assertEquals(1, mapReadResult.pointOfInterests.size());
+		Assert.assertEquals(1, mapReadResult.ways.size());
+
+		// closing the cursor must not close the map file of its creator
+		cursor.closeFile();
+		Assert.assertTrue(mapDatabase.hasOpenFile());
+
+		mapDatabase.closeFile();
+		Assert.assertFalse(mapDatabase.hasOpenFile());
+	}
+}
@@ -153,4 +153,12 @@ public abstract class MapActivity extends Activity implements IMapActivity {
 	public Context getContext() {
 		return this;
 	}
+
+	@Override
+	public void onLowMemory() {
+		super.onLowMemory();
+		for (int i = 0, n = this.mapViews.size(); i < n; ++i) {
+			this.mapViews.get(i).onLowMemory();
+		}
+	}
 }
@@ -34,6 +34,7 @@ import org.mapsforge.android.maps.mapgenerator.MapGeneratorFactory;
 import org.mapsforge.android.maps.mapgenerator.MapGeneratorJob;
 import org.mapsforge.android.maps.mapgenerator.MapWorker;
 import org.mapsforge.android.maps.mapgenerator.TileCache;
+import org.mapsforge.android.maps.mapgenerator.WriteBehindTileCache;
 import org.mapsforge.android.maps.mapgenerator.databaserenderer.DatabaseRenderer;
 import org.mapsforge.android.maps.mapgenerator.databaserenderer.ExternalRenderTheme;
 import org.mapsforge.android.maps.mapgenerator.tiledownloader.TileDownloader;
@@ -71,8 +72,16 @@ import android.view.ViewGroup;
  * <p>
  * {@link Overlay Overlays} can be used to display geographical data such as points and ways. To draw an overlay on top
  * of the map, add it to the list returned by {@link #getOverlays()}.
+ * <p>
+ * Map tiles are generated by a pool of {@link MapWorker} threads, see {@link #MapView(Context, MapGenerator, int)}. In
+ * offline rendering mode each MapWorker uses its own {@link DatabaseRenderer} with its own cursor of the map file.
  */
 public class MapView extends ViewGroup {
+	/**
+	 * Default number of MapWorker threads, which is the number of available processors minus one but at least one.
+	 */
+	public static final int DEFAULT_NUMBER_OF_MAP_WORKERS = Math.max(Runtime.getRuntime().availableProcessors() - 1, 1);
+
 	/**
 	 * Default render theme of the MapView.
 	 */
@@ -83,10 +92,10 @@ public class MapView extends ViewGroup {
 	private static final int DEFAULT_TILE_CACHE_SIZE_IN_MEMORY = 20;
 
 	private DebugSettings debugSettings;
-	private final TileCache fileSystemTileCache;
+	private TileCache fileSystemTileCache;
 	private final FpsCounter fpsCounter;
 	private final FrameBuffer frameBuffer;
-	private final TileCache inMemoryTileCache;
+	private TileCache inMemoryTileCache;
 	private JobParameters jobParameters;
 	private final JobQueue jobQueue;
 	private final MapController mapController;
@@ -96,7 +105,7 @@ public class MapView extends ViewGroup {
 	private final MapMover mapMover;
 	private final MapScaleBar mapScaleBar;
 	private final MapViewPosition mapViewPosition;
-	private final MapWorker mapWorker;
+	private final MapWorker[] mapWorkers;
 	private final MapZoomControls mapZoomControls;
 	private final List<Overlay> overlays;
 	private final Projection projection;
@@ -110,7 +119,7 @@ public class MapView extends ViewGroup {
 	 *             if the context object is not an instance of {@link IMapActivity}.
 	 */
 	public MapView(Context context) {
-		this(context, null, new DatabaseRenderer());
+		this(context, null, new DatabaseRenderer(), DEFAULT_NUMBER_OF_MAP_WORKERS);
 	}
 
 	/**
@@ -122,7 +131,8 @@ public class MapView extends ViewGroup {
 	 *             if the context object is not an instance of {@link IMapActivity}.
 	 */
 	public MapView(Context context, AttributeSet attributeSet) {
-		this(context, attributeSet, MapGeneratorFactory.createMapGenerator(attributeSet));
+		this(context, attributeSet, MapGeneratorFactory.createMapGenerator(attributeSet),
+				DEFAULT_NUMBER_OF_MAP_WORKERS);
 	}
 
 	/**
@@ -134,14 +144,32 @@ public class MapView extends ViewGroup {
 	 *             if the context object is not an instance of {@link IMapActivity}.
 	 */
 	public MapView(Context context, MapGenerator mapGenerator) {
-		this(context, null, mapGenerator);
+		this(context, null, mapGenerator, DEFAULT_NUMBER_OF_MAP_WORKERS);
+	}
+
+	/**
+	 * @param context
+	 *            the enclosing MapActivity instance.
+	 * @param mapGenerator
+	 *            the MapGenerator for this MapView.
+	 * @param numberOfMapWorkers
+	 *            the number of threads which generate map tiles in parallel. Only a {@link DatabaseRenderer} is
+	 *            replicated for each thread, all other MapGenerators are used by a single thread.
+	 * @throws IllegalArgumentException
+	 *             if the context object is not an instance of {@link IMapActivity} or the number of MapWorkers is less
+	 *             than one.
+	 */
+	public MapView(Context context, MapGenerator mapGenerator, int numberOfMapWorkers) {
+		this(context, null, mapGenerator, numberOfMapWorkers);
 	}
 
-	private MapView(Context context, AttributeSet attributeSet, MapGenerator mapGenerator) {
+	private MapView(Context context, AttributeSet attributeSet, MapGenerator mapGenerator, int numberOfMapWorkers) {
 		super(context, attributeSet);
 
 		if (!(context instanceof IMapActivity)) {
 			throw new IllegalArgumentException("context is not an instance of MapActivity");
+		} else if (numberOfMapWorkers < 1) {
+			throw new IllegalArgumentException("invalid number of MapWorkers: " + numberOfMapWorkers);
 		}
 		IMapActivity IMapActivity = (IMapActivity) context;
 
@@ -159,6 +187,8 @@ public class MapView extends ViewGroup {
 		this.jobQueue = new JobQueue(this);
 		this.mapController = new MapController(this);
 		this.mapDatabase = new MapDatabase();
+		// lets the renderers skip empty and water tiles without reading the index
+		this.mapDatabase.setBlockBitmapsEnabled(true);
 		this.mapViewPosition = new MapViewPosition(this);
 		this.mapScaleBar = new MapScaleBar(this);
 		this.mapZoomControls = new MapZoomControls(IMapActivity.getContext(), this);
@@ -166,8 +196,11 @@ public class MapView extends ViewGroup {
 		this.projection = new MapViewProjection(this);
 		this.touchEventHandler = TouchEventHandler.getInstance(IMapActivity.getContext(), this);
 
-		this.mapWorker = new MapWorker(this);
-		this.mapWorker.start();
+		this.mapWorkers = new MapWorker[numberOfMapWorkers];
+		for (int i = 0; i < numberOfMapWorkers; ++i) {
+			this.mapWorkers[i] = new MapWorker(this);
+			this.mapWorkers[i].start();
+		}
 
 		this.mapMover = new MapMover(this);
 		this.mapMover.start();
@@ -297,6 +330,13 @@ public class MapView extends ViewGroup {
 		return this.mapZoomControls;
 	}
 
+	/**
+	 * @return the number of threads which generate map tiles for this MapView.
+	 */
+	public int getNumberOfMapWorkers() {
+		return this.mapWorkers.length;
+	}
+
 	/**
 	 * Returns a thread-safe list of overlays for this MapView. It is necessary to manually synchronize on this list
 	 * when iterating over it.
@@ -399,7 +439,13 @@ public class MapView extends ViewGroup {
 
 				if (this.inMemoryTileCache.containsKey(mapGeneratorJob)) {
 					Bitmap bitmap = this.inMemoryTileCache.get(mapGeneratorJob);
-					this.frameBuffer.drawBitmap(mapGeneratorJob.tile, bitmap);
+
+					if (bitmap != null) {
+						this.frameBuffer.drawBitmap(mapGeneratorJob.tile, bitmap);
+					} else {
+						// the compressed image data could not be restored
+						this.jobQueue.addJob(mapGeneratorJob);
+					}
 				} else if (this.fileSystemTileCache.containsKey(mapGeneratorJob)) {
 					Bitmap bitmap = this.fileSystemTileCache.get(mapGeneratorJob);
 
@@ -424,8 +470,10 @@ public class MapView extends ViewGroup {
 		invalidateOnUiThread();
 
 		this.jobQueue.requestSchedule();
-		synchronized (this.mapWorker) {
-			this.mapWorker.notify();
+		for (MapWorker mapWorker : this.mapWorkers) {
+			synchronized (mapWorker) {
+				mapWorker.notify();
+			}
 		}
 	}
 
@@ -459,6 +507,58 @@ public class MapView extends ViewGroup {
 		clearAndRedrawMapView();
 	}
 
+	/**
+	 * Replaces the file system tile cache of this MapView and destroys the previous one. By default a
+	 * {@link FileSystemTileCache} with one file per tile is used. A
+	 * {@link org.mapsforge.android.maps.mapgenerator.SlabTileCache SlabTileCache} stores all tiles in a single
+	 * memory-mapped file instead and can be wrapped in a {@link WriteBehindTileCache} to store tiles asynchronously.
+	 * 
+	 * @param fileSystemTileCache
+	 *            the new file system tile cache.
+	 * @throws IllegalArgumentException
+	 *             if the given tile cache is null.
+	 */
+	public void setFileSystemTileCache(TileCache fileSystemTileCache) {
+		if (fileSystemTileCache == null) {
+			throw new IllegalArgumentException("fileSystemTileCache must not be null");
+		} else if (this.fileSystemTileCache == fileSystemTileCache) {
+			return;
+		}
+
+		// the MapWorkers must not use the previous tile cache while it is destroyed
+		pauseMapWorkers();
+		awaitPausingMapWorkers();
+		TileCache previousTileCache = this.fileSystemTileCache;
+		this.fileSystemTileCache = fileSystemTileCache;
+		previousTileCache.destroy();
+		proceedMapWorkers();
+	}
+
+	/**
+	 * Replaces the in-memory tile cache of this MapView and destroys the previous one. An {@link InMemoryTileCache}
+	 * with a compressed capacity keeps evicted tile images in compressed form, which are compressed by the MapWorkers.
+	 * 
+	 * @param inMemoryTileCache
+	 *            the new in-memory tile cache.
+	 * @throws IllegalArgumentException
+	 *             if the given tile cache is null.
+	 */
+	public void setInMemoryTileCache(TileCache inMemoryTileCache) {
+		if (inMemoryTileCache == null) {
+			throw new IllegalArgumentException("inMemoryTileCache must not be null");
+		} else if (this.inMemoryTileCache == inMemoryTileCache) {
+			return;
+		}
+
+		// the MapWorkers must not use the previous tile cache while it is destroyed
+		pauseMapWorkers();
+		awaitPausingMapWorkers();
+		TileCache previousTileCache = this.inMemoryTileCache;
+		this.inMemoryTileCache = inMemoryTileCache;
+		previousTileCache.destroy();
+		proceedMapWorkers();
+	}
+
 	/**
 	 * Sets the map file for this MapView.
 	 * 
@@ -482,22 +582,25 @@ public class MapView extends ViewGroup {
 		}
 
 		this.zoomAnimator.pause();
-		this.mapWorker.pause();
+		pauseMapWorkers();
 		this.mapMover.pause();
 
 		this.zoomAnimator.awaitPausing();
 		this.mapMover.awaitPausing();
-		this.mapWorker.awaitPausing();
+		awaitPausingMapWorkers();
 
 		this.mapMover.stopMove();
 		this.jobQueue.clear();
 
 		this.zoomAnimator.proceed();
-		this.mapWorker.proceed();
 		this.mapMover.proceed();
 
+		// the cursors of the MapWorkers must not be used while the map file is reopened
 		this.mapDatabase.closeFile();
 		FileOpenResult fileOpenResult = this.mapDatabase.openFile(mapFile);
+		setMapWorkerGenerators();
+		proceedMapWorkers();
+
 		if (fileOpenResult.isSuccess()) {
 			this.mapFile = mapFile;
 
@@ -527,7 +630,10 @@ public class MapView extends ViewGroup {
 	 */
 	public void setMapGenerator(MapGenerator mapGenerator) {
 		if (this.mapGenerator != mapGenerator) {
+			pauseMapWorkers();
+			awaitPausingMapWorkers();
 			setMapGeneratorInternal(mapGenerator);
+			proceedMapWorkers();
 			clearAndRedrawMapView();
 		}
 	}
@@ -645,6 +751,24 @@ public class MapView extends ViewGroup {
 		return true;
 	}
 
+	private void awaitPausingMapWorkers() {
+		for (MapWorker mapWorker : this.mapWorkers) {
+			mapWorker.awaitPausing();
+		}
+	}
+
+	private void pauseMapWorkers() {
+		for (MapWorker mapWorker : this.mapWorkers) {
+			mapWorker.pause();
+		}
+	}
+
+	private void proceedMapWorkers() {
+		for (MapWorker mapWorker : this.mapWorkers) {
+			mapWorker.proceed();
+		}
+	}
+
 	private void setMapGeneratorInternal(MapGenerator mapGenerator) {
 		if (mapGenerator == null) {
 			throw new IllegalArgumentException("mapGenerator must not be null");
@@ -654,7 +778,33 @@ public class MapView extends ViewGroup {
 			((DatabaseRenderer) mapGenerator).setMapDatabase(this.mapDatabase);
 		}
 		this.mapGenerator = mapGenerator;
-		this.mapWorker.setMapGenerator(this.mapGenerator);
+		setMapWorkerGenerators();
+	}
+
+	/**
+	 * Assigns a MapGenerator to each MapWorker. The first MapWorker uses the current MapGenerator. If it is a
+	 * {@link DatabaseRenderer}, every other MapWorker gets its own DatabaseRenderer with its own cursor of the current
+	 * map file. Otherwise all other MapWorkers stay idle, as MapGenerators are not thread-safe. All MapWorkers must be
+	 * pausing or not yet working when this method is called.
+	 */
+	private void setMapWorkerGenerators() {
+		this.mapWorkers[0].setMapGenerator(this.mapGenerator);
+		for (int i = 1; i < this.mapWorkers.length; ++i) {
+			MapGenerator previousMapGenerator = this.mapWorkers[i].getMapGenerator();
+			if (previousMapGenerator != null) {
+				previousMapGenerator.cleanup();
+			}
+
+			MapGenerator workerMapGenerator = null;
+			if (this.mapGenerator instanceof DatabaseRenderer) {
+				DatabaseRenderer databaseRenderer = new DatabaseRenderer();
+				if (this.mapDatabase.hasOpenFile()) {
+					databaseRenderer.setMapDatabase(this.mapDatabase.createCursor());
+				}
+				workerMapGenerator = databaseRenderer;
+			}
+			this.mapWorkers[i].setMapGenerator(workerMapGenerator);
+		}
 	}
 
 	@Override
@@ -718,11 +868,15 @@ public class MapView extends ViewGroup {
 		this.overlays.clear();
 
 		this.mapMover.interrupt();
-		this.mapWorker.interrupt();
+		for (MapWorker mapWorker : this.mapWorkers) {
+			mapWorker.interrupt();
+		}
 		this.zoomAnimator.interrupt();
 
 		try {
-			this.mapWorker.join();
+			for (MapWorker mapWorker : this.mapWorkers) {
+				mapWorker.join();
+			}
 		} catch (InterruptedException e) {
 			// restore the interrupted status
 			Thread.currentThread().interrupt();
@@ -763,14 +917,23 @@ public class MapView extends ViewGroup {
 		return (byte) Math.max(Math.min(zoom, getMaximumPossibleZoomLevel()), this.mapZoomControls.getZoomLevelMin());
 	}
 
+	/**
+	 * Releases the memory of all tile images which wait to be written to the file system tile cache.
+	 */
+	public void onLowMemory() {
+		if (this.fileSystemTileCache instanceof WriteBehindTileCache) {
+			((WriteBehindTileCache) this.fileSystemTileCache).onLowMemory();
+		}
+	}
+
 	public void onPause() {
-		this.mapWorker.pause();
+		pauseMapWorkers();
 		this.mapMover.pause();
 		this.zoomAnimator.pause();
 	}
 
 	public void onResume() {
-		this.mapWorker.proceed();
+		proceedMapWorkers();
 		this.mapMover.proceed();
 		this.zoomAnimator.proceed();
 	}
@@ -67,7 +67,7 @@ public class FileSystemTileCache implements TileCache {
 	 */
 	private static final String SERIALIZATION_FILE_NAME = "cache.ser";
 
-	private static File createDirectory(String pathName) {
+	static File createDirectory(String pathName) {
 		File file = new File(pathName);
 		if (!file.exists() && !file.mkdirs()) {
 			throw new IllegalArgumentException("could not create directory: " + file);
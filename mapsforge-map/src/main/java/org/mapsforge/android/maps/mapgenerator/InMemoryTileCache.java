@@ -21,12 +21,22 @@ import org.mapsforge.core.Tile;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 /**
  * A thread-safe cache for tile images with a fixed size and LRU policy.
+ * <p>
+ * Optionally, tile images which are evicted from the cache are kept in a second tier in compressed form. As map tiles
+ * contain large uniform areas, a compressed tile image needs only a fraction of the memory of a bitmap. Evicted tile
+ * images are not compressed during the eviction but later by {@link #compressEvictedTiles()}, which should be called
+ * by a background thread. On a hit in the second tier, the tile image is decompressed into a pooled bitmap and moves
+ * back to the first tier.
  */
 public class InMemoryTileCache implements TileCache {
 	/**
@@ -45,23 +55,6 @@ public class InMemoryTileCache implements TileCache {
 		return bitmaps;
 	}
 
-	private static Map<MapGeneratorJob, Bitmap> createMap(final int mapCapacity, final List<Bitmap> bitmapPool) {
-		int initialCapacity = (int) (mapCapacity / LOAD_FACTOR) + 2;
-
-		return new LinkedHashMap<MapGeneratorJob, Bitmap>(initialCapacity, LOAD_FACTOR, true) {
-			private static final long serialVersionUID = 1L;
-
-			@Override
-			protected boolean removeEldestEntry(Map.Entry<MapGeneratorJob, Bitmap> eldestEntry) {
-				if (size() > mapCapacity) {
-					remove(eldestEntry.getKey());
-					bitmapPool.add(eldestEntry.getValue());
-				}
-				return false;
-			}
-		};
-	}
-
 	private static int getCapacity(int capacity) {
 		if (capacity < 0) {
 			throw new IllegalArgumentException("capacity must not be negative: " + capacity);
@@ -72,6 +65,15 @@ public class InMemoryTileCache implements TileCache {
 	private final List<Bitmap> bitmapPool;
 	private final ByteBuffer byteBuffer;
 	private final int capacity;
+	private final Map<MapGeneratorJob, byte[]> compressedMap;
+	private final int compressedCapacity;
+	private int compressedSize;
+	private final Deflater deflater;
+	private final ByteBuffer deflaterInput;
+	private final byte[] deflaterOutput;
+	private final Map<MapGeneratorJob, Bitmap> evictedMap;
+	private final Inflater inflater;
+	private final ByteBuffer inflaterOutput;
 	private final Map<MapGeneratorJob, Bitmap> map;
 
 	/**
@@ -81,38 +83,151 @@ public class InMemoryTileCache implements TileCache {
 	 *             if the capacity is negative.
 	 */
 	public InMemoryTileCache(int capacity) {
+		this(capacity, 0);
+	}
+
+	/**
+	 * @param capacity
+	 *            the maximum number of uncompressed entries in this cache.
+	 * @param compressedCapacity
+	 *            the maximum number of bytes which all compressed entries may use together, zero disables the
+	 *            compressed tier.
+	 * @throws IllegalArgumentException
+	 *             if one of the capacities is negative.
+	 */
+	public InMemoryTileCache(int capacity, int compressedCapacity) {
 		this.capacity = getCapacity(capacity);
+		this.compressedCapacity = getCapacity(compressedCapacity);
 		this.bitmapPool = createBitmapPool(this.capacity + 1);
-		this.map = createMap(this.capacity, this.bitmapPool);
+		this.map = createMap(this.capacity);
 		this.byteBuffer = ByteBuffer.allocate(Tile.TILE_SIZE_IN_BYTES);
+
+		this.compressedMap = new LinkedHashMap<MapGeneratorJob, byte[]>(16, LOAD_FACTOR, true);
+		this.evictedMap = new LinkedHashMap<MapGeneratorJob, Bitmap>();
+		if (this.compressedCapacity > 0) {
+			this.deflater = new Deflater(Deflater.BEST_SPEED);
+			this.deflaterInput = ByteBuffer.allocate(Tile.TILE_SIZE_IN_BYTES);
+			this.deflaterOutput = new byte[Tile.TILE_SIZE_IN_BYTES];
+			this.inflater = new Inflater();
+			this.inflaterOutput = ByteBuffer.allocate(Tile.TILE_SIZE_IN_BYTES);
+		} else {
+			this.deflater = null;
+			this.deflaterInput = null;
+			this.deflaterOutput = null;
+			this.inflater = null;
+			this.inflaterOutput = null;
+		}
+	}
+
+	/**
+	 * Compresses all tile images which have been evicted from the first tier into the second tier. The compression
+	 * does not block other threads which access this cache. Does nothing if the compressed tier is disabled.
+	 */
+	public void compressEvictedTiles() {
+		if (this.compressedCapacity == 0) {
+			return;
+		}
+
+		synchronized (this.deflater) {
+			while (true) {
+				MapGeneratorJob mapGeneratorJob;
+				Bitmap evictedBitmap;
+				synchronized (this.map) {
+					Iterator<Map.Entry<MapGeneratorJob, Bitmap>> iterator = this.evictedMap.entrySet().iterator();
+					if (!iterator.hasNext()) {
+						return;
+					}
+					Map.Entry<MapGeneratorJob, Bitmap> entry = iterator.next();
+					mapGeneratorJob = entry.getKey();
+					evictedBitmap = entry.getValue();
+
+					this.deflaterInput.rewind();
+					evictedBitmap.copyPixelsToBuffer(this.deflaterInput);
+				}
+
+				byte[] compressedPixels = compress();
+
+				synchronized (this.map) {
+					// the bitmap may have been reused or moved back to the first tier in the meantime
+					if (this.evictedMap.get(mapGeneratorJob) != evictedBitmap) {
+						continue;
+					}
+					this.evictedMap.remove(mapGeneratorJob);
+					this.bitmapPool.add(evictedBitmap);
+					if (compressedPixels != null) {
+						addCompressed(mapGeneratorJob, compressedPixels);
+					}
+				}
+			}
+		}
 	}
 
 	@Override
 	public boolean containsKey(MapGeneratorJob mapGeneratorJob) {
 		synchronized (this.map) {
-			return this.map.containsKey(mapGeneratorJob);
+			return this.map.containsKey(mapGeneratorJob) || this.evictedMap.containsKey(mapGeneratorJob)
+					|| this.compressedMap.containsKey(mapGeneratorJob);
 		}
 	}
 
 	@Override
 	public void destroy() {
-		synchronized (this.map) {
-			for (Bitmap bitmap : this.map.values()) {
-				bitmap.recycle();
-			}
-			this.map.clear();
+		if (this.compressedCapacity > 0) {
+			// wait for a running compression and decompression
+			synchronized (this.deflater) {
+				synchronized (this.inflater) {
+					destroyTiers();
 
-			for (Bitmap bitmap : this.bitmapPool) {
-				bitmap.recycle();
+					// release the native memory of the compressor, the empty pool prevents any further use
+					this.deflater.end();
+					this.inflater.end();
+				}
 			}
-			this.bitmapPool.clear();
+		} else {
+			destroyTiers();
 		}
 	}
 
 	@Override
 	public Bitmap get(MapGeneratorJob mapGeneratorJob) {
+		byte[] compressedPixels;
 		synchronized (this.map) {
-			return this.map.get(mapGeneratorJob);
+			Bitmap bitmap = this.map.get(mapGeneratorJob);
+			if (bitmap != null || this.compressedCapacity == 0) {
+				return bitmap;
+			}
+
+			bitmap = this.evictedMap.remove(mapGeneratorJob);
+			if (bitmap != null) {
+				this.map.put(mapGeneratorJob, bitmap);
+				return bitmap;
+			}
+
+			compressedPixels = this.compressedMap.remove(mapGeneratorJob);
+			if (compressedPixels == null) {
+				return null;
+			}
+			this.compressedSize -= compressedPixels.length;
+		}
+
+		// the decompression does not block other threads which access this cache
+		synchronized (this.inflater) {
+			if (!decompress(compressedPixels)) {
+				return null;
+			}
+
+			synchronized (this.map) {
+				Bitmap pooledBitmap = obtainBitmap();
+				if (pooledBitmap == null) {
+					return null;
+				}
+
+				// move the tile image back to the first tier, which may evict another one
+				this.inflaterOutput.rewind();
+				pooledBitmap.copyPixelsFromBuffer(this.inflaterOutput);
+				this.map.put(mapGeneratorJob, pooledBitmap);
+				return pooledBitmap;
+			}
 		}
 	}
 
@@ -133,18 +248,30 @@ public class InMemoryTileCache implements TileCache {
 		}
 
 		synchronized (this.map) {
-			if (this.bitmapPool.isEmpty()) {
-				return;
+			// an existing entry of the same key is overwritten in place
+			Bitmap pooledBitmap = this.map.get(mapGeneratorJob);
+			if (pooledBitmap == null) {
+				pooledBitmap = obtainBitmap();
+				if (pooledBitmap == null) {
+					return;
+				}
 			}
 
-			Bitmap pooledBitmap = this.bitmapPool.remove(this.bitmapPool.size() - 1);
-
 			this.byteBuffer.rewind();
 			bitmap.copyPixelsToBuffer(this.byteBuffer);
 			this.byteBuffer.rewind();
 			pooledBitmap.copyPixelsFromBuffer(this.byteBuffer);
 
 			this.map.put(mapGeneratorJob, pooledBitmap);
+
+			Bitmap evictedBitmap = this.evictedMap.remove(mapGeneratorJob);
+			if (evictedBitmap != null) {
+				this.bitmapPool.add(evictedBitmap);
+			}
+			byte[] compressedPixels = this.compressedMap.remove(mapGeneratorJob);
+			if (compressedPixels != null) {
+				this.compressedSize -= compressedPixels.length;
+			}
 		}
 	}
 
@@ -157,4 +284,122 @@ public class InMemoryTileCache implements TileCache {
 	public void setPersistent(boolean persistent) {
 		throw new UnsupportedOperationException();
 	}
+
+	/**
+	 * Adds a compressed tile image to the second tier and evicts the least recently used compressed tile images if
+	 * necessary. Must be called while holding the lock of the map.
+	 * 
+	 * @param mapGeneratorJob
+	 *            the key of the tile image.
+	 * @param compressedPixels
+	 *            the compressed pixels of the tile image.
+	 */
+	private void addCompressed(MapGeneratorJob mapGeneratorJob, byte[] compressedPixels) {
+		this.compressedMap.put(mapGeneratorJob, compressedPixels);
+		this.compressedSize += compressedPixels.length;
+
+		Iterator<byte[]> iterator = this.compressedMap.values().iterator();
+		while (this.compressedSize > this.compressedCapacity) {
+			this.compressedSize -= iterator.next().length;
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Compresses the pixels in the deflater input buffer.
+	 * 
+	 * @return the compressed pixels or null, if the tile image cannot be compressed well enough.
+	 */
+	private byte[] compress() {
+		this.deflater.reset();
+		this.deflater.setInput(this.deflaterInput.array(), 0, Tile.TILE_SIZE_IN_BYTES);
+		this.deflater.finish();
+		int compressedLength = this.deflater.deflate(this.deflaterOutput);
+		if (!this.deflater.finished() || compressedLength > this.compressedCapacity) {
+			return null;
+		}
+
+		byte[] compressedPixels = new byte[compressedLength];
+		System.arraycopy(this.deflaterOutput, 0, compressedPixels, 0, compressedLength);
+		return compressedPixels;
+	}
+
+	private Map<MapGeneratorJob, Bitmap> createMap(final int mapCapacity) {
+		int initialCapacity = (int) (mapCapacity / LOAD_FACTOR) + 2;
+
+		return new LinkedHashMap<MapGeneratorJob, Bitmap>(initialCapacity, LOAD_FACTOR, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<MapGeneratorJob, Bitmap> eldestEntry) {
+				if (size() > mapCapacity) {
+					remove(eldestEntry.getKey());
+					if (InMemoryTileCache.this.compressedCapacity > 0) {
+						// the tile image is compressed later, outside of this callback
+						InMemoryTileCache.this.evictedMap.put(eldestEntry.getKey(), eldestEntry.getValue());
+					} else {
+						InMemoryTileCache.this.bitmapPool.add(eldestEntry.getValue());
+					}
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Decompresses the given tile image into the inflater output buffer.
+	 * 
+	 * @param compressedPixels
+	 *            the compressed pixels of the tile image.
+	 * @return true if the tile image was decompressed successfully, false otherwise.
+	 */
+	private boolean decompress(byte[] compressedPixels) {
+		this.inflater.reset();
+		this.inflater.setInput(compressedPixels);
+		try {
+			int length = this.inflater.inflate(this.inflaterOutput.array(), 0, Tile.TILE_SIZE_IN_BYTES);
+			return length == Tile.TILE_SIZE_IN_BYTES && this.inflater.finished();
+		} catch (DataFormatException e) {
+			return false;
+		}
+	}
+
+	private void destroyTiers() {
+		synchronized (this.map) {
+			for (Bitmap bitmap : this.map.values()) {
+				bitmap.recycle();
+			}
+			this.map.clear();
+
+			for (Bitmap bitmap : this.evictedMap.values()) {
+				bitmap.recycle();
+			}
+			this.evictedMap.clear();
+			this.compressedMap.clear();
+			this.compressedSize = 0;
+
+			for (Bitmap bitmap : this.bitmapPool) {
+				bitmap.recycle();
+			}
+			this.bitmapPool.clear();
+		}
+	}
+
+	/**
+	 * @return a bitmap for a new first tier entry, or null if this cache has been destroyed. If the pool is empty, the
+	 *         oldest evicted tile image which has not been compressed yet is discarded and its bitmap reused.
+	 */
+	private Bitmap obtainBitmap() {
+		if (!this.bitmapPool.isEmpty()) {
+			return this.bitmapPool.remove(this.bitmapPool.size() - 1);
+		}
+
+		Iterator<Bitmap> iterator = this.evictedMap.values().iterator();
+		if (!iterator.hasNext()) {
+			return null;
+		}
+		Bitmap bitmap = iterator.next();
+		iterator.remove();
+		return bitmap;
+	}
 }
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.android.maps.mapgenerator;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.mapsforge.core.MapPosition;
+import org.mapsforge.core.Tile;
+
+/**
+ * A JobHeap is a binary min-heap of {@link MapGeneratorJob MapGeneratorJobs} ordered by their priority.
+ * <p>
+ * Each queued job stores its own position in the heap, and a hash index maps every job to its queued instance. Looking
+ * up a job takes constant time, adding a job, changing the priority of a queued job and removing the most important
+ * job take logarithmic time. Only updating the priorities of all jobs at once restores the heap order in linear time.
+ */
+final class JobHeap {
+	private MapGeneratorJob[] heap;
+	private final Map<MapGeneratorJob, MapGeneratorJob> queuedJobs;
+	private int size;
+
+	/**
+	 * @param initialCapacity
+	 *            the initial number of jobs which can be stored without growing the heap.
+	 */
+	JobHeap(int initialCapacity) {
+		this.heap = new MapGeneratorJob[initialCapacity];
+		this.queuedJobs = new HashMap<MapGeneratorJob, MapGeneratorJob>(initialCapacity * 2);
+	}
+
+	/**
+	 * Removes all jobs from this heap.
+	 */
+	void clear() {
+		Arrays.fill(this.heap, 0, this.size, null);
+		this.queuedJobs.clear();
+		this.size = 0;
+	}
+
+	/**
+	 * @param mapGeneratorJob
+	 *            the job to look up.
+	 * @return true if an equal job is in this heap, false otherwise.
+	 */
+	boolean contains(MapGeneratorJob mapGeneratorJob) {
+		return this.queuedJobs.containsKey(mapGeneratorJob);
+	}
+
+	/**
+	 * @return true if this heap contains no jobs, false otherwise.
+	 */
+	boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Adds the given job with the given priority. If an equal job is already in this heap, only the priority of the
+	 * queued job is changed.
+	 * 
+	 * @param mapGeneratorJob
+	 *            the job to be added.
+	 * @param priority
+	 *            the priority of the job, a smaller number means a higher priority.
+	 */
+	void offer(MapGeneratorJob mapGeneratorJob, double priority) {
+		MapGeneratorJob queuedJob = this.queuedJobs.get(mapGeneratorJob);
+		if (queuedJob != null) {
+			queuedJob.setPriority(priority);
+			siftDown(siftUp(queuedJob.getHeapIndex()));
+			return;
+		}
+
+		if (this.size == this.heap.length) {
+			this.heap = Arrays.copyOf(this.heap, Math.max(this.size * 2, 1));
+		}
+		mapGeneratorJob.setPriority(priority);
+		this.heap[this.size] = mapGeneratorJob;
+		this.queuedJobs.put(mapGeneratorJob, mapGeneratorJob);
+		siftUp(this.size++);
+	}
+
+	/**
+	 * Removes the most important job from this heap.
+	 * 
+	 * @return the job with the smallest priority number or null, if this heap is empty.
+	 */
+	MapGeneratorJob poll() {
+		if (this.size == 0) {
+			return null;
+		}
+
+		MapGeneratorJob mapGeneratorJob = this.heap[0];
+		this.queuedJobs.remove(mapGeneratorJob);
+		--this.size;
+		MapGeneratorJob lastJob = this.heap[this.size];
+		this.heap[this.size] = null;
+		if (this.size > 0) {
+			this.heap[0] = lastJob;
+			siftDown(0);
+		}
+		return mapGeneratorJob;
+	}
+
+	/**
+	 * Removes all jobs whose tiles are not at the given zoom level or not within the given tile range and updates the
+	 * priorities of the remaining jobs for the given map position.
+	 * 
+	 * @param mapPosition
+	 *            the map position which defines the priorities of the jobs.
+	 * @param tileLeft
+	 *            the smallest tile X number to keep.
+	 * @param tileTop
+	 *            the smallest tile Y number to keep.
+	 * @param tileRight
+	 *            the largest tile X number to keep.
+	 * @param tileBottom
+	 *            the largest tile Y number to keep.
+	 */
+	void retainTiles(MapPosition mapPosition, long tileLeft, long tileTop, long tileRight, long tileBottom) {
+		byte zoomLevel = mapPosition.zoomLevel;
+		int retainedJobs = 0;
+		for (int i = 0; i < this.size; ++i) {
+			MapGeneratorJob mapGeneratorJob = this.heap[i];
+			Tile tile = mapGeneratorJob.tile;
+			if (tile.zoomLevel != zoomLevel || tile.tileX < tileLeft || tile.tileX > tileRight || tile.tileY < tileTop
+					|| tile.tileY > tileBottom) {
+				this.queuedJobs.remove(mapGeneratorJob);
+				continue;
+			}
+
+			mapGeneratorJob.setPriority(TileScheduler.getPriority(tile, mapPosition));
+			this.heap[retainedJobs++] = mapGeneratorJob;
+		}
+
+		Arrays.fill(this.heap, retainedJobs, this.size, null);
+		this.size = retainedJobs;
+		heapify();
+	}
+
+	/**
+	 * @return the number of jobs in this heap.
+	 */
+	int size() {
+		return this.size;
+	}
+
+	/**
+	 * Updates the priorities of all jobs for the given map position.
+	 * 
+	 * @param mapPosition
+	 *            the map position which defines the priorities of the jobs.
+	 */
+	void updatePriorities(MapPosition mapPosition) {
+		for (int i = 0; i < this.size; ++i) {
+			this.heap[i].setPriority(TileScheduler.getPriority(this.heap[i].tile, mapPosition));
+		}
+		heapify();
+	}
+
+	/**
+	 * Restores the heap order of all jobs in linear time.
+	 */
+	private void heapify() {
+		for (int i = (this.size >>> 1) - 1; i >= 0; --i) {
+			siftDown(i);
+		}
+		// the leaves which have not been moved by siftDown still need their new positions
+		for (int i = this.size >>> 1; i < this.size; ++i) {
+			this.heap[i].setHeapIndex(i);
+		}
+	}
+
+	/**
+	 * Moves the job at the given heap position down until the heap order is restored.
+	 * 
+	 * @param heapIndex
+	 *            the current position of the job in the heap.
+	 */
+	private void siftDown(int heapIndex) {
+		MapGeneratorJob mapGeneratorJob = this.heap[heapIndex];
+		int index = heapIndex;
+		int half = this.size >>> 1;
+		while (index < half) {
+			int child = (index << 1) + 1;
+			int rightChild = child + 1;
+			if (rightChild < this.size && this.heap[rightChild].compareTo(this.heap[child]) < 0) {
+				child = rightChild;
+			}
+			if (mapGeneratorJob.compareTo(this.heap[child]) <= 0) {
+				break;
+			}
+			this.heap[index] = this.heap[child];
+			this.heap[index].setHeapIndex(index);
+			index = child;
+		}
+		this.heap[index] = mapGeneratorJob;
+		mapGeneratorJob.setHeapIndex(index);
+	}
+
+	/**
+	 * Moves the job at the given heap position up until the heap order is restored.
+	 * 
+	 * @param heapIndex
+	 *            the current position of the job in the heap.
+	 * @return the new position of the job in the heap.
+	 */
+	private int siftUp(int heapIndex) {
+		MapGeneratorJob mapGeneratorJob = this.heap[heapIndex];
+		int index = heapIndex;
+		while (index > 0) {
+			int parent = (index - 1) >>> 1;
+			if (mapGeneratorJob.compareTo(this.heap[parent]) >= 0) {
+				break;
+			}
+			this.heap[index] = this.heap[parent];
+			this.heap[index].setHeapIndex(index);
+			index = parent;
+		}
+		this.heap[index] = mapGeneratorJob;
+		mapGeneratorJob.setHeapIndex(index);
+		return index;
+	}
+}
@@ -14,18 +14,32 @@
  */
 package org.mapsforge.android.maps.mapgenerator;
 
-import java.util.PriorityQueue;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.mapsforge.android.maps.MapView;
+import org.mapsforge.core.GeoPoint;
+import org.mapsforge.core.MapPosition;
+import org.mapsforge.core.MercatorProjection;
 
 /**
  * A JobQueue keeps the list of pending jobs for a MapView and prioritizes them.
+ * <p>
+ * The jobs are kept in a {@link JobHeap}. A new job is prioritized for the map position of the last poll and added in
+ * logarithmic time. The priorities of all jobs are only updated when the position of the MapView has changed since the
+ * last poll, or when all jobs are scheduled again. A schedule also cancels the jobs for tiles which are no longer
+ * visible.
+ * <p>
+ * A job which has been polled stays in progress until {@link #finishJob(MapGeneratorJob)} is called. Jobs in progress
+ * are not added again, so that several {@link MapWorker MapWorkers} never generate the same tile at the same time.
  */
 public class JobQueue {
 	private static final int INITIAL_CAPACITY = 128;
 
+	private final JobHeap jobHeap;
+	private final Set<MapGeneratorJob> jobsInProgress;
+	private MapPosition mapPosition;
 	private final MapView mapView;
-	private PriorityQueue<MapGeneratorJob> priorityQueue;
 	private boolean scheduleNeeded;
 
 	/**
@@ -34,44 +48,75 @@ public class JobQueue {
 	 */
 	public JobQueue(MapView mapView) {
 		this.mapView = mapView;
-		this.priorityQueue = new PriorityQueue<MapGeneratorJob>(INITIAL_CAPACITY);
+		this.jobHeap = new JobHeap(INITIAL_CAPACITY);
+		this.jobsInProgress = new HashSet<MapGeneratorJob>();
 	}
 
 	/**
-	 * Adds the given job to this queue. Does nothing if the given job is already in this queue.
+	 * Adds the given job to this queue or updates the priority of an equal queued job. Does nothing if the given job is
+	 * in progress.
 	 * 
 	 * @param mapGeneratorJob
 	 *            the job to be added to this queue.
 	 */
 	public synchronized void addJob(MapGeneratorJob mapGeneratorJob) {
-		if (!this.priorityQueue.contains(mapGeneratorJob)) {
-			this.priorityQueue.offer(mapGeneratorJob);
+		if (this.jobsInProgress.contains(mapGeneratorJob)) {
+			return;
 		}
+
+		// all jobs are prioritized again by the next poll if the map position has changed in the meantime
+		double priority = 0;
+		if (this.mapPosition != null) {
+			priority = TileScheduler.getPriority(mapGeneratorJob.tile, this.mapPosition);
+		}
+		this.jobHeap.offer(mapGeneratorJob, priority);
 	}
 
 	/**
-	 * Removes all jobs from this queue.
+	 * Removes all jobs from this queue. Jobs which are currently in progress are not affected.
 	 */
 	public synchronized void clear() {
-		this.priorityQueue.clear();
+		this.jobHeap.clear();
+	}
+
+	/**
+	 * Marks the given job, which has been returned by {@link #poll()}, as no longer in progress.
+	 * 
+	 * @param mapGeneratorJob
+	 *            the finished job.
+	 */
+	public synchronized void finishJob(MapGeneratorJob mapGeneratorJob) {
+		this.jobsInProgress.remove(mapGeneratorJob);
 	}
 
 	/**
 	 * @return true if this queue contains no jobs, false otherwise.
 	 */
 	public synchronized boolean isEmpty() {
-		return this.priorityQueue.isEmpty();
+		return this.jobHeap.isEmpty();
 	}
 
 	/**
+	 * Removes the most important job from this queue and marks it as in progress. The caller must pass the returned
+	 * job to {@link #finishJob(MapGeneratorJob)} when it is done.
+	 * 
 	 * @return the most important job from this queue or null, if empty.
 	 */
 	public synchronized MapGeneratorJob poll() {
+		MapPosition currentMapPosition = this.mapView.getMapPosition().getMapPosition();
 		if (this.scheduleNeeded) {
 			this.scheduleNeeded = false;
-			schedule();
+			schedule(currentMapPosition);
+		} else if (currentMapPosition != null && !currentMapPosition.equals(this.mapPosition)) {
+			this.mapPosition = currentMapPosition;
+			this.jobHeap.updatePriorities(currentMapPosition);
+		}
+
+		MapGeneratorJob mapGeneratorJob = this.jobHeap.poll();
+		if (mapGeneratorJob != null) {
+			this.jobsInProgress.add(mapGeneratorJob);
 		}
-		return this.priorityQueue.poll();
+		return mapGeneratorJob;
 	}
 
 	/**
@@ -82,18 +127,30 @@ public class JobQueue {
 	}
 
 	/**
-	 * Schedules all jobs in this queue.
+	 * Schedules all jobs in this queue. Jobs for tiles which are not visible at the current position and zoom level
+	 * of the MapView are cancelled.
+	 * 
+	 * @param currentMapPosition
+	 *            the current position of the MapView, may be null.
 	 */
-	private void schedule() {
-		PriorityQueue<MapGeneratorJob> tempJobQueue = new PriorityQueue<MapGeneratorJob>(INITIAL_CAPACITY);
-
-		while (!this.priorityQueue.isEmpty()) {
-			MapGeneratorJob mapGeneratorJob = this.priorityQueue.poll();
-			double priority = TileScheduler.getPriority(mapGeneratorJob.tile, this.mapView);
-			mapGeneratorJob.setPriority(priority);
-			tempJobQueue.offer(mapGeneratorJob);
+	private void schedule(MapPosition currentMapPosition) {
+		int width = this.mapView.getWidth();
+		int height = this.mapView.getHeight();
+		if (currentMapPosition == null || width <= 0 || height <= 0) {
+			return;
 		}
+		this.mapPosition = currentMapPosition;
+
+		// calculate the visible tiles in the same way as the MapView does
+		byte zoomLevel = currentMapPosition.zoomLevel;
+		GeoPoint geoPoint = currentMapPosition.geoPoint;
+		double pixelLeft = MercatorProjection.longitudeToPixelX(geoPoint.getLongitude(), zoomLevel) - (width >> 1);
+		double pixelTop = MercatorProjection.latitudeToPixelY(geoPoint.getLatitude(), zoomLevel) - (height >> 1);
+		long tileLeft = MercatorProjection.pixelXToTileX(pixelLeft, zoomLevel);
+		long tileTop = MercatorProjection.pixelYToTileY(pixelTop, zoomLevel);
+		long tileRight = MercatorProjection.pixelXToTileX(pixelLeft + width, zoomLevel);
+		long tileBottom = MercatorProjection.pixelYToTileY(pixelTop + height, zoomLevel);
 
-		this.priorityQueue = tempJobQueue;
+		this.jobHeap.retainTiles(currentMapPosition, tileLeft, tileTop, tileRight, tileBottom);
 	}
 }
@@ -44,6 +44,7 @@ public class MapGeneratorJob implements Comparable<MapGeneratorJob>, Serializabl
 	public final Tile tile;
 
 	private transient int hashCodeValue;
+	private transient int heapIndex;
 	private final Object mapGeneratorId;
 	private transient double priority;
 
@@ -146,6 +147,24 @@ public class MapGeneratorJob implements Comparable<MapGeneratorJob>, Serializabl
 		calculateTransientValues();
 	}
 
+	/**
+	 * @return the position of this job in the {@link JobHeap} which contains it.
+	 */
+	int getHeapIndex() {
+		return this.heapIndex;
+	}
+
+	/**
+	 * @return the ID of the MapGenerator for this job.
+	 */
+	Object getMapGeneratorId() {
+		return this.mapGeneratorId;
+	}
+
+	void setHeapIndex(int heapIndex) {
+		this.heapIndex = heapIndex;
+	}
+
 	void setPriority(double priority) {
 		this.priority = priority;
 	}
@@ -23,14 +23,15 @@ import android.graphics.Bitmap;
 /**
  * A MapWorker uses a {@link MapGenerator} to generate map tiles. It runs in a separate thread to avoid blocking the UI
  * thread.
+ * <p>
+ * Several MapWorkers may share the same {@link JobQueue}, each of them with its own MapGenerator and tile bitmap. The
+ * generated tiles are published to the synchronized frame buffer and tile caches of the MapView.
  */
 public class MapWorker extends PausableThread {
 	private static final String THREAD_NAME = "MapWorker";
 
-	private TileCache fileSystemTileCache;
-	private TileCache inMemoryTileCache;
 	private JobQueue jobQueue;
-	private MapGenerator mapGenerator;
+	private volatile MapGenerator mapGenerator;
 	private MapView mapView;
 	private Bitmap tileBitmap;
 
@@ -42,14 +43,19 @@ public class MapWorker extends PausableThread {
 		super();
 		this.mapView = mapView;
 		this.jobQueue = mapView.getJobQueue();
-		this.inMemoryTileCache = mapView.getInMemoryTileCache();
-		this.fileSystemTileCache = mapView.getFileSystemTileCache();
 		this.tileBitmap = Bitmap.createBitmap(Tile.TILE_SIZE, Tile.TILE_SIZE, Bitmap.Config.RGB_565);
 	}
 
+	/**
+	 * @return the MapGenerator which this MapWorker uses or null, if this MapWorker is idle.
+	 */
+	public MapGenerator getMapGenerator() {
+		return this.mapGenerator;
+	}
+
 	/**
 	 * @param mapGenerator
-	 *            the MapGenerator which this MapWorker should use.
+	 *            the MapGenerator which this MapWorker should use or null, if this MapWorker should stay idle.
 	 */
 	public void setMapGenerator(MapGenerator mapGenerator) {
 		this.mapGenerator = mapGenerator;
@@ -59,8 +65,6 @@ public class MapWorker extends PausableThread {
 	protected void afterRun() {
 		this.mapView = null;
 		this.mapGenerator = null;
-		this.fileSystemTileCache = null;
-		this.inMemoryTileCache = null;
 		this.jobQueue = null;
 		this.tileBitmap.recycle();
 		this.tileBitmap = null;
@@ -68,22 +72,44 @@ public class MapWorker extends PausableThread {
 
 	@Override
 	protected void doWork() {
-		MapGeneratorJob mapGeneratorJob = this.jobQueue.poll();
-
-		if (this.inMemoryTileCache.containsKey(mapGeneratorJob)) {
+		MapGenerator currentMapGenerator = this.mapGenerator;
+		if (currentMapGenerator == null) {
 			return;
-		} else if (this.fileSystemTileCache.containsKey(mapGeneratorJob)) {
+		}
+
+		// another MapWorker might have taken the last job in the meantime
+		MapGeneratorJob mapGeneratorJob = this.jobQueue.poll();
+		if (mapGeneratorJob == null) {
 			return;
 		}
 
-		boolean success = this.mapGenerator.executeJob(mapGeneratorJob, this.tileBitmap);
+		// the tile caches may be replaced while this MapWorker is paused
+		TileCache inMemoryTileCache = this.mapView.getInMemoryTileCache();
+		TileCache fileSystemTileCache = this.mapView.getFileSystemTileCache();
+		try {
+			if (inMemoryTileCache.containsKey(mapGeneratorJob)) {
+				return;
+			} else if (fileSystemTileCache.containsKey(mapGeneratorJob)) {
+				return;
+			}
+
+			boolean success = currentMapGenerator.executeJob(mapGeneratorJob, this.tileBitmap);
+
+			if (!isInterrupted() && success) {
+				if (this.mapView.getFrameBuffer().drawBitmap(mapGeneratorJob.tile, this.tileBitmap)) {
+					inMemoryTileCache.put(mapGeneratorJob, this.tileBitmap);
+				}
+				this.mapView.postInvalidate();
+				fileSystemTileCache.put(mapGeneratorJob, this.tileBitmap);
 
-		if (!isInterrupted() && success) {
-			if (this.mapView.getFrameBuffer().drawBitmap(mapGeneratorJob.tile, this.tileBitmap)) {
-				this.inMemoryTileCache.put(mapGeneratorJob, this.tileBitmap);
+				if (inMemoryTileCache instanceof InMemoryTileCache) {
+					// compress the evicted tile images here instead of in the UI thread
+					((InMemoryTileCache) inMemoryTileCache).compressEvictedTiles();
+				}
 			}
-			this.mapView.postInvalidate();
-			this.fileSystemTileCache.put(mapGeneratorJob, this.tileBitmap);
+		} finally {
+			// allow the job to be queued again, for example if it has failed
+			this.jobQueue.finishJob(mapGeneratorJob);
 		}
 	}
 
@@ -99,6 +125,6 @@ public class MapWorker extends PausableThread {
 
 	@Override
 	protected boolean hasWork() {
-		return !this.jobQueue.isEmpty();
+		return this.mapGenerator != null && !this.jobQueue.isEmpty();
 	}
 }
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.android.maps.mapgenerator;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded queue of tile images which wait to be written, together with a pool of images which can be reused.
+ * <p>
+ * Pending writes of the same key are coalesced and the oldest pending write is dropped if the queue is full. This class
+ * is not thread-safe, all calls must be synchronized by the owning cache.
+ * 
+ * @param <T>
+ *            the type of the tile images.
+ */
+final class PendingWrites<T> {
+	private final int maximumPendingWrites;
+	private final Map<MapGeneratorJob, T> pendingWrites;
+	private final List<T> pool;
+	private T writingImage;
+	private MapGeneratorJob writingJob;
+
+	/**
+	 * @param maximumPendingWrites
+	 *            the maximum number of tile images which may wait to be written.
+	 */
+	PendingWrites(int maximumPendingWrites) {
+		this.maximumPendingWrites = maximumPendingWrites;
+		this.pendingWrites = new LinkedHashMap<MapGeneratorJob, T>();
+		this.pool = new ArrayList<T>();
+	}
+
+	/**
+	 * @param mapGeneratorJob
+	 *            the key of the tile image.
+	 * @return true if a tile image for the given key waits to be written or is being written, false otherwise.
+	 */
+	boolean contains(MapGeneratorJob mapGeneratorJob) {
+		return this.pendingWrites.containsKey(mapGeneratorJob) || mapGeneratorJob.equals(this.writingJob);
+	}
+
+	/**
+	 * Moves the tile image which has been written by the last {@link #startWriting()} call into the pool.
+	 */
+	void finishWriting() {
+		this.pool.add(this.writingImage);
+		this.writingImage = null;
+		this.writingJob = null;
+	}
+
+	/**
+	 * @param mapGeneratorJob
+	 *            the key of the tile image.
+	 * @return the tile image which waits to be written or is being written for the given key, or null.
+	 */
+	T get(MapGeneratorJob mapGeneratorJob) {
+		T image = this.pendingWrites.get(mapGeneratorJob);
+		if (image == null && mapGeneratorJob.equals(this.writingJob)) {
+			return this.writingImage;
+		}
+		return image;
+	}
+
+	/**
+	 * @return the tile image which is currently being written, or null.
+	 */
+	T getWritingImage() {
+		return this.writingImage;
+	}
+
+	/**
+	 * @return true if no tile image waits to be written, false otherwise.
+	 */
+	boolean isEmpty() {
+		return this.pendingWrites.isEmpty();
+	}
+
+	/**
+	 * Returns the tile image into which the new image of the given key must be copied. This is the pending image of the
+	 * same key, the image of the oldest pending write if the queue is full, or a pooled image.
+	 * 
+	 * @param mapGeneratorJob
+	 *            the key of the tile image.
+	 * @return the tile image to overwrite, or null if a new image must be added via {@link #put}.
+	 */
+	T obtain(MapGeneratorJob mapGeneratorJob) {
+		T image = this.pendingWrites.get(mapGeneratorJob);
+		if (image != null) {
+			return image;
+		}
+
+		if (this.pendingWrites.size() >= this.maximumPendingWrites) {
+			Iterator<T> iterator = this.pendingWrites.values().iterator();
+			image = iterator.next();
+			iterator.remove();
+		} else if (!this.pool.isEmpty()) {
+			image = this.pool.remove(this.pool.size() - 1);
+		} else {
+			return null;
+		}
+
+		this.pendingWrites.put(mapGeneratorJob, image);
+		return image;
+	}
+
+	/**
+	 * Adds a new tile image to the end of the queue.
+	 * 
+	 * @param mapGeneratorJob
+	 *            the key of the tile image.
+	 * @param image
+	 *            the tile image.
+	 */
+	void put(MapGeneratorJob mapGeneratorJob, T image) {
+		this.pendingWrites.put(mapGeneratorJob, image);
+	}
+
+	/**
+	 * Removes the oldest pending write from the queue. Its tile image is available via {@link #getWritingImage()}
+	 * until {@link #finishWriting()} is called.
+	 * 
+	 * @return the key of the removed tile image, or null if the queue is empty.
+	 */
+	MapGeneratorJob startWriting() {
+		Iterator<Map.Entry<MapGeneratorJob, T>> iterator = this.pendingWrites.entrySet().iterator();
+		if (!iterator.hasNext()) {
+			return null;
+		}
+		Map.Entry<MapGeneratorJob, T> entry = iterator.next();
+		iterator.remove();
+
+		this.writingJob = entry.getKey();
+		this.writingImage = entry.getValue();
+		return this.writingJob;
+	}
+
+	/**
+	 * Discards all pending writes and empties the pool. The tile image which is currently being written is kept.
+	 * 
+	 * @return the discarded tile images.
+	 */
+	List<T> trim() {
+		List<T> discardedImages = new ArrayList<T>(this.pendingWrites.values());
+		discardedImages.addAll(this.pool);
+		this.pendingWrites.clear();
+		this.pool.clear();
+		return discardedImages;
+	}
+}
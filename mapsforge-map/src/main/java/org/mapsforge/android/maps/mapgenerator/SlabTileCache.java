@@ -0,0 +1,706 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.android.maps.mapgenerator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.mapsforge.android.AndroidUtils;
+import org.mapsforge.android.maps.DebugSettings;
+import org.mapsforge.core.IOUtils;
+import org.mapsforge.core.Tile;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.os.Environment;
+
+/**
+ * A thread-safe persistent cache for tile images which stores all images in a single pre-allocated slab file.
+ * <p>
+ * The slab file is divided into fixed-size slots of {@link Tile#TILE_SIZE_IN_BYTES} bytes and accessed through a
+ * memory-mapped buffer, so that reading or writing a tile image is a single copy of its pixels. The key of the image
+ * in each slot is stored in a memory-mapped index file with one fixed-size record per slot, which is scanned once on
+ * startup to build an open-addressing hash table of primitive slot numbers. Slots are reused according to the CLOCK
+ * policy, an approximation of LRU which needs only one reference bit per slot.
+ * <p>
+ * The rendering parameters of a tile are not stored in each record but as a small list of distinct parameter sets,
+ * each record only refers to the number of its parameter set. A parameter set is forgotten as soon as no slot refers
+ * to it anymore, and its number is reused for the next new parameter set.
+ * <p>
+ * The files are created and mapped on the first put, unless the tile images of a previous persistent cache can be
+ * reused. A cache which never receives a tile image therefore does not occupy any memory or storage.
+ */
+public class SlabTileCache implements TileCache {
+	private static final class ParameterSet implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private static boolean isEqual(Object object1, Object object2) {
+			return object1 == null ? object2 == null : object1.equals(object2);
+		}
+
+		private final DebugSettings debugSettings;
+		private final JobParameters jobParameters;
+		private final Object mapGeneratorId;
+
+		ParameterSet(MapGeneratorJob mapGeneratorJob) {
+			this.debugSettings = mapGeneratorJob.debugSettings;
+			this.jobParameters = mapGeneratorJob.jobParameters;
+			this.mapGeneratorId = mapGeneratorJob.getMapGeneratorId();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			} else if (!(obj instanceof ParameterSet)) {
+				return false;
+			}
+			ParameterSet other = (ParameterSet) obj;
+			return isEqual(this.debugSettings, other.debugSettings) && isEqual(this.jobParameters, other.jobParameters)
+					&& isEqual(this.mapGeneratorId, other.mapGeneratorId);
+		}
+
+		@Override
+		public int hashCode() {
+			int result = 1;
+			result = 31 * result + ((this.debugSettings == null) ? 0 : this.debugSettings.hashCode());
+			result = 31 * result + ((this.jobParameters == null) ? 0 : this.jobParameters.hashCode());
+			result = 31 * result + ((this.mapGeneratorId == null) ? 0 : this.mapGeneratorId.hashCode());
+			return result;
+		}
+
+	}
+
+	/**
+	 * Maximum capacity of this cache. The slab file is mapped as a single buffer which must fit into the
+	 * fragmented address space of a 32-bit process, so it is limited to 64 MB.
+	 */
+	public static final int MAXIMUM_CAPACITY = 64 * 1024 * 1024 / Tile.TILE_SIZE_IN_BYTES;
+
+	/**
+	 * Path to the caching folder on the external storage.
+	 */
+	private static final String CACHE_DIRECTORY = "/Android/data/org.mapsforge.android.maps/slabcache/";
+
+	private static final String INDEX_FILE_NAME = "tiles.index";
+
+	/**
+	 * Size of the index file header, which consists of the magic number, version, capacity and clean flag.
+	 */
+	private static final int INDEX_HEADER_SIZE = 16;
+
+	private static final int INDEX_MAGIC = 0x534C4142;
+	private static final int INDEX_OFFSET_CAPACITY = 8;
+	private static final int INDEX_OFFSET_CLEAN = 12;
+	private static final int INDEX_OFFSET_VERSION = 4;
+
+	/**
+	 * Size of one index record, which consists of the tile X and Y number, parameter set number and zoom level.
+	 */
+	private static final int INDEX_RECORD_SIZE = 24;
+
+	private static final int INDEX_VERSION = 1;
+	private static final Logger LOGGER = Logger.getLogger(SlabTileCache.class.getName());
+	private static final String PARAMETER_FILE_NAME = "parameters.ser";
+	private static final String READ_WRITE_MODE = "rw";
+	private static final int RECORD_OFFSET_PARAMETER_SET = 16;
+	private static final int RECORD_OFFSET_ZOOM_LEVEL = 20;
+	private static final String SLAB_FILE_NAME = "tiles.slab";
+
+	private static void deleteFile(File file) {
+		if (file.exists() && !file.delete()) {
+			file.deleteOnExit();
+		}
+	}
+
+	/**
+	 * Restores the persisted parameter sets if possible. The file is deleted afterwards, so that a crash before the
+	 * next regular shutdown never restores a cache whose slots have been modified.
+	 * 
+	 * @param directory
+	 *            the directory of the parameter file.
+	 * @return the restored parameter sets or null, in case of an error.
+	 */
+	private static List<ParameterSet> deserializeParameterSets(File directory) {
+		File parameterFile = new File(directory, PARAMETER_FILE_NAME);
+		if (!parameterFile.exists() || !parameterFile.isFile() || !parameterFile.canRead()) {
+			return null;
+		}
+
+		FileInputStream fileInputStream = null;
+		ObjectInputStream objectInputStream = null;
+		try {
+			fileInputStream = new FileInputStream(parameterFile);
+			objectInputStream = new ObjectInputStream(fileInputStream);
+
+			// the compiler warning in the following line cannot be avoided unfortunately
+			List<ParameterSet> parameterSets = (List<ParameterSet>) objectInputStream.readObject();
+
+			if (!parameterFile.delete()) {
+				parameterFile.deleteOnExit();
+			}
+
+			return parameterSets;
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, null, e);
+			return null;
+		} catch (ClassNotFoundException e) {
+			LOGGER.log(Level.SEVERE, null, e);
+			return null;
+		} finally {
+			IOUtils.closeQuietly(objectInputStream);
+			IOUtils.closeQuietly(fileInputStream);
+		}
+	}
+
+	private static int getCapacity(int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+		} else if (capacity > MAXIMUM_CAPACITY) {
+			throw new IllegalArgumentException("capacity must not exceed " + MAXIMUM_CAPACITY + ": " + capacity);
+		} else if (AndroidUtils.applicationRunsOnAndroidEmulator()) {
+			return 0;
+		}
+		return capacity;
+	}
+
+	private static int getTableSize(int capacity) {
+		// keep the load factor of the hash table at or below one half
+		return Integer.highestOneBit(Math.max(capacity, 1)) << 2;
+	}
+
+	private static int hash(long tileX, long tileY, byte zoomLevel, int parameterSetNumber) {
+		long hash = tileX * 31 + tileY;
+		hash = hash * 31 + zoomLevel;
+		hash = hash * 31 + parameterSetNumber;
+		int result = (int) (hash ^ (hash >>> 32));
+		return result ^ (result >>> 16);
+	}
+
+	/**
+	 * Persists the given parameter sets.
+	 * 
+	 * @param directory
+	 *            the directory of the parameter file.
+	 * @param parameterSets
+	 *            the parameter sets to be persisted.
+	 * @return true if the parameter sets were persisted successfully, false otherwise.
+	 */
+	private static boolean serializeParameterSets(File directory, List<ParameterSet> parameterSets) {
+		File parameterFile = new File(directory, PARAMETER_FILE_NAME);
+		if (parameterFile.exists() && !parameterFile.delete()) {
+			return false;
+		}
+
+		FileOutputStream fileOutputStream = null;
+		ObjectOutputStream objectOutputStream = null;
+		try {
+			fileOutputStream = new FileOutputStream(parameterFile);
+			objectOutputStream = new ObjectOutputStream(fileOutputStream);
+			objectOutputStream.writeObject(parameterSets);
+			return true;
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, null, e);
+			return false;
+		} finally {
+			IOUtils.closeQuietly(objectOutputStream);
+			IOUtils.closeQuietly(fileOutputStream);
+		}
+	}
+
+	private final Bitmap bitmapGet;
+	private final File cacheDirectory;
+	private int capacity;
+	private int clockHand;
+	private MappedByteBuffer indexBuffer;
+	private RandomAccessFile indexFile;
+	private final Map<ParameterSet, Integer> parameterSetNumbers;
+	private int[] parameterSetReferences;
+	private final List<ParameterSet> parameterSets;
+	private boolean persistent;
+	private boolean[] referenced;
+	private MappedByteBuffer slabBuffer;
+	private RandomAccessFile slabFile;
+	private int[] slotTable;
+
+	/**
+	 * @param capacity
+	 *            the maximum number of entries in this cache.
+	 * @param mapViewId
+	 *            the ID of the MapView to separate caches for different MapViews.
+	 * @throws IllegalArgumentException
+	 *             if the capacity is negative or greater than {@link #MAXIMUM_CAPACITY}.
+	 */
+	public SlabTileCache(int capacity, int mapViewId) {
+		this.capacity = getCapacity(capacity);
+
+		String externalStorageDirectory = Environment.getExternalStorageDirectory().getAbsolutePath();
+		String cacheDirectoryPath = externalStorageDirectory + CACHE_DIRECTORY + mapViewId;
+		this.cacheDirectory = FileSystemTileCache.createDirectory(cacheDirectoryPath);
+
+		this.parameterSetNumbers = new HashMap<ParameterSet, Integer>();
+		this.parameterSetReferences = new int[0];
+		this.parameterSets = new ArrayList<ParameterSet>();
+		this.referenced = new boolean[0];
+		this.slotTable = new int[getTableSize(0)];
+		this.bitmapGet = Bitmap.createBitmap(Tile.TILE_SIZE, Tile.TILE_SIZE, Config.RGB_565);
+
+		// only a previous persistent cache leaves its parameter file behind
+		if (new File(this.cacheDirectory, PARAMETER_FILE_NAME).exists()) {
+			openFiles();
+		}
+	}
+
+	@Override
+	public synchronized boolean containsKey(MapGeneratorJob mapGeneratorJob) {
+		return findTablePosition(mapGeneratorJob) >= 0;
+	}
+
+	@Override
+	public synchronized void destroy() {
+		if (this.persistent && this.indexBuffer != null
+				&& serializeParameterSets(this.cacheDirectory, this.parameterSets)) {
+			// the index is marked as clean only after all tile images have been written back
+			this.slabBuffer.force();
+			this.indexBuffer.putInt(INDEX_OFFSET_CLEAN, 1);
+			this.indexBuffer.force();
+			closeFiles();
+		} else {
+			closeFiles();
+			deleteFile(new File(this.cacheDirectory, PARAMETER_FILE_NAME));
+			deleteFile(new File(this.cacheDirectory, INDEX_FILE_NAME));
+			deleteFile(new File(this.cacheDirectory, SLAB_FILE_NAME));
+			deleteFile(this.cacheDirectory);
+		}
+		this.capacity = 0;
+	}
+
+	@Override
+	public synchronized Bitmap get(MapGeneratorJob mapGeneratorJob) {
+		int tablePosition = findTablePosition(mapGeneratorJob);
+		if (tablePosition < 0) {
+			return null;
+		}
+
+		int slot = this.slotTable[tablePosition] - 1;
+		this.referenced[slot] = true;
+		this.bitmapGet.copyPixelsFromBuffer(getSlabRegion(slot));
+		return this.bitmapGet;
+	}
+
+	@Override
+	public synchronized int getCapacity() {
+		return this.capacity;
+	}
+
+	@Override
+	public synchronized boolean isPersistent() {
+		return this.persistent;
+	}
+
+	@Override
+	public synchronized void put(MapGeneratorJob mapGeneratorJob, Bitmap bitmap) {
+		if (this.capacity == 0) {
+			return;
+		} else if (this.indexBuffer == null) {
+			openFiles();
+			if (this.indexBuffer == null) {
+				return;
+			}
+		}
+
+		int slot;
+		int tablePosition = findTablePosition(mapGeneratorJob);
+		if (tablePosition >= 0) {
+			slot = this.slotTable[tablePosition] - 1;
+		} else {
+			slot = nextVictimSlot();
+			if (getParameterSetNumber(slot) != 0) {
+				removeSlot(slot);
+			}
+
+			Tile tile = mapGeneratorJob.tile;
+			int parameterSetNumber = registerParameterSet(mapGeneratorJob);
+			int recordOffset = getRecordOffset(slot);
+			this.indexBuffer.putLong(recordOffset, tile.tileX);
+			this.indexBuffer.putLong(recordOffset + 8, tile.tileY);
+			this.indexBuffer.putInt(recordOffset + RECORD_OFFSET_PARAMETER_SET, parameterSetNumber);
+			this.indexBuffer.put(recordOffset + RECORD_OFFSET_ZOOM_LEVEL, tile.zoomLevel);
+			insertSlot(slot);
+		}
+
+		this.referenced[slot] = true;
+		bitmap.copyPixelsToBuffer(getSlabRegion(slot));
+	}
+
+	@Override
+	public synchronized void setCapacity(int capacity) {
+		if (this.capacity == capacity) {
+			return;
+		}
+
+		this.capacity = getCapacity(capacity);
+		if (this.indexBuffer == null) {
+			// the files are created with the new capacity on the next put
+			return;
+		}
+
+		try {
+			resize(this.capacity);
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, null, e);
+			closeFiles();
+			this.capacity = 0;
+		}
+	}
+
+	@Override
+	public synchronized void setPersistent(boolean persistent) {
+		this.persistent = persistent;
+	}
+
+	private void closeFiles() {
+		IOUtils.closeQuietly(this.indexFile);
+		IOUtils.closeQuietly(this.slabFile);
+		this.indexFile = null;
+		this.slabFile = null;
+
+		// the mappings are released as soon as they have been garbage collected
+		this.indexBuffer = null;
+		this.slabBuffer = null;
+
+		this.referenced = new boolean[0];
+		this.slotTable = new int[getTableSize(0)];
+		this.clockHand = 0;
+	}
+
+	/**
+	 * @param mapGeneratorJob
+	 *            the key of the tile image.
+	 * @return the position of the slot of the given key in the hash table or -1, if this cache does not contain it.
+	 */
+	private int findTablePosition(MapGeneratorJob mapGeneratorJob) {
+		if (this.indexBuffer == null) {
+			return -1;
+		}
+
+		Integer parameterSetIndex = this.parameterSetNumbers.get(new ParameterSet(mapGeneratorJob));
+		if (parameterSetIndex == null) {
+			return -1;
+		}
+
+		Tile tile = mapGeneratorJob.tile;
+		int parameterSetNumber = parameterSetIndex.intValue() + 1;
+		int mask = this.slotTable.length - 1;
+		int tablePosition = hash(tile.tileX, tile.tileY, tile.zoomLevel, parameterSetNumber) & mask;
+		while (this.slotTable[tablePosition] != 0) {
+			int recordOffset = getRecordOffset(this.slotTable[tablePosition] - 1);
+			if (this.indexBuffer.getLong(recordOffset) == tile.tileX
+					&& this.indexBuffer.getLong(recordOffset + 8) == tile.tileY
+					&& this.indexBuffer.getInt(recordOffset + RECORD_OFFSET_PARAMETER_SET) == parameterSetNumber
+					&& this.indexBuffer.get(recordOffset + RECORD_OFFSET_ZOOM_LEVEL) == tile.zoomLevel) {
+				return tablePosition;
+			}
+			tablePosition = (tablePosition + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param slot
+	 *            the slot whose parameter set number should be returned.
+	 * @return the number of the parameter set of the tile image in the given slot or zero, if the slot is empty.
+	 */
+	private int getParameterSetNumber(int slot) {
+		return this.indexBuffer.getInt(getRecordOffset(slot) + RECORD_OFFSET_PARAMETER_SET);
+	}
+
+	private int getRecordOffset(int slot) {
+		return INDEX_HEADER_SIZE + slot * INDEX_RECORD_SIZE;
+	}
+
+	/**
+	 * Checks if the opened index file has been written completely by a previous instance of this cache.
+	 * 
+	 * @return the capacity of the previous cache or -1, if the files cannot be reused.
+	 * @throws IOException
+	 *             if an error occurs while reading the index file.
+	 */
+	private int getReusableCapacity() throws IOException {
+		if (this.indexFile.length() < INDEX_HEADER_SIZE) {
+			return -1;
+		}
+
+		this.indexFile.seek(0);
+		if (this.indexFile.readInt() != INDEX_MAGIC) {
+			return -1;
+		}
+
+		this.indexFile.seek(INDEX_OFFSET_VERSION);
+		int version = this.indexFile.readInt();
+		this.indexFile.seek(INDEX_OFFSET_CAPACITY);
+		int previousCapacity = this.indexFile.readInt();
+		this.indexFile.seek(INDEX_OFFSET_CLEAN);
+		int clean = this.indexFile.readInt();
+		if (version != INDEX_VERSION || clean != 1 || previousCapacity < 0 || previousCapacity > MAXIMUM_CAPACITY) {
+			return -1;
+		} else if (this.indexFile.length() != getRecordOffset(previousCapacity)
+				|| this.slabFile.length() != (long) previousCapacity * Tile.TILE_SIZE_IN_BYTES) {
+			return -1;
+		}
+		return previousCapacity;
+	}
+
+	private ByteBuffer getSlabRegion(int slot) {
+		ByteBuffer region = this.slabBuffer.duplicate();
+		region.position(slot * Tile.TILE_SIZE_IN_BYTES);
+		region.limit((slot + 1) * Tile.TILE_SIZE_IN_BYTES);
+		return region.slice();
+	}
+
+	private int getSlotHash(int slot) {
+		int recordOffset = getRecordOffset(slot);
+		return hash(this.indexBuffer.getLong(recordOffset), this.indexBuffer.getLong(recordOffset + 8),
+				this.indexBuffer.get(recordOffset + RECORD_OFFSET_ZOOM_LEVEL),
+				this.indexBuffer.getInt(recordOffset + RECORD_OFFSET_PARAMETER_SET));
+	}
+
+	private void insertSlot(int slot) {
+		int mask = this.slotTable.length - 1;
+		int tablePosition = getSlotHash(slot) & mask;
+		while (this.slotTable[tablePosition] != 0) {
+			tablePosition = (tablePosition + 1) & mask;
+		}
+		this.slotTable[tablePosition] = slot + 1;
+	}
+
+	/**
+	 * Moves the clock hand to the next slot which is either empty or has not been referenced since the last turn.
+	 * 
+	 * @return the slot which should be used for a new tile image.
+	 */
+	private int nextVictimSlot() {
+		while (true) {
+			int slot = this.clockHand;
+			this.clockHand = (this.clockHand + 1) % this.capacity;
+			if (!this.referenced[slot] || getParameterSetNumber(slot) == 0) {
+				return slot;
+			}
+			this.referenced[slot] = false;
+		}
+	}
+
+	/**
+	 * Opens and maps the slab and index files. Tile images of a previous persistent cache are reused if possible.
+	 */
+	private void openFiles() {
+		if (this.capacity == 0) {
+			return;
+		}
+
+		List<ParameterSet> restoredParameterSets = deserializeParameterSets(this.cacheDirectory);
+		try {
+			this.indexFile = new RandomAccessFile(new File(this.cacheDirectory, INDEX_FILE_NAME), READ_WRITE_MODE);
+			this.slabFile = new RandomAccessFile(new File(this.cacheDirectory, SLAB_FILE_NAME), READ_WRITE_MODE);
+
+			this.parameterSets.clear();
+			this.parameterSetNumbers.clear();
+			int previousCapacity = restoredParameterSets == null ? -1 : getReusableCapacity();
+			if (previousCapacity < 0) {
+				// all records of the new index file are empty
+				this.indexFile.setLength(0);
+				previousCapacity = 0;
+			} else {
+				for (ParameterSet parameterSet : restoredParameterSets) {
+					// the numbers of forgotten parameter sets are kept free
+					if (parameterSet != null) {
+						this.parameterSetNumbers.put(parameterSet, Integer.valueOf(this.parameterSets.size()));
+					}
+					this.parameterSets.add(parameterSet);
+				}
+			}
+
+			this.indexFile.setLength(getRecordOffset(previousCapacity));
+			this.slabFile.setLength((long) previousCapacity * Tile.TILE_SIZE_IN_BYTES);
+			this.indexBuffer = this.indexFile.getChannel().map(MapMode.READ_WRITE, 0, this.indexFile.length());
+			this.slabBuffer = this.slabFile.getChannel().map(MapMode.READ_WRITE, 0, this.slabFile.length());
+			this.referenced = new boolean[previousCapacity];
+
+			this.indexBuffer.putInt(0, INDEX_MAGIC);
+			this.indexBuffer.putInt(INDEX_OFFSET_VERSION, INDEX_VERSION);
+			resize(this.capacity);
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, null, e);
+			closeFiles();
+			this.capacity = 0;
+		}
+	}
+
+	/**
+	 * Rebuilds the hash table and the reference counts of the parameter sets from all records of the index file.
+	 * Parameter sets which are not referred to by any record are forgotten.
+	 */
+	private void rebuildSlotTable() {
+		int numberOfSlots = this.referenced.length;
+		int numberOfParameterSets = this.parameterSets.size();
+		this.slotTable = new int[getTableSize(numberOfSlots)];
+		this.parameterSetReferences = new int[numberOfParameterSets];
+		for (int slot = 0; slot < numberOfSlots; ++slot) {
+			int parameterSetNumber = getParameterSetNumber(slot);
+			if (parameterSetNumber == 0) {
+				continue;
+			} else if (parameterSetNumber < 0 || parameterSetNumber > numberOfParameterSets
+					|| this.parameterSets.get(parameterSetNumber - 1) == null) {
+				// the parameter set of this record is unknown
+				this.indexBuffer.putInt(getRecordOffset(slot) + RECORD_OFFSET_PARAMETER_SET, 0);
+				continue;
+			}
+			insertSlot(slot);
+			++this.parameterSetReferences[parameterSetNumber - 1];
+		}
+
+		for (int i = 0; i < numberOfParameterSets; ++i) {
+			if (this.parameterSetReferences[i] == 0 && this.parameterSets.get(i) != null) {
+				this.parameterSetNumbers.remove(this.parameterSets.get(i));
+				this.parameterSets.set(i, null);
+			}
+		}
+	}
+
+	/**
+	 * Adds a reference to the parameter set of the given job for a new record and registers the parameter set if it is
+	 * not known yet.
+	 * 
+	 * @param mapGeneratorJob
+	 *            the job whose parameter set should be registered.
+	 * @return the number of the parameter set of the given job.
+	 */
+	private int registerParameterSet(MapGeneratorJob mapGeneratorJob) {
+		ParameterSet parameterSet = new ParameterSet(mapGeneratorJob);
+		Integer parameterSetIndex = this.parameterSetNumbers.get(parameterSet);
+		if (parameterSetIndex == null) {
+			// reuse the number of a forgotten parameter set if possible
+			int index = this.parameterSets.indexOf(null);
+			if (index < 0) {
+				index = this.parameterSets.size();
+				this.parameterSets.add(parameterSet);
+			} else {
+				this.parameterSets.set(index, parameterSet);
+			}
+			if (index == this.parameterSetReferences.length) {
+				this.parameterSetReferences = Arrays.copyOf(this.parameterSetReferences, Math.max(index * 2, 4));
+			}
+			parameterSetIndex = Integer.valueOf(index);
+			this.parameterSetNumbers.put(parameterSet, parameterSetIndex);
+		}
+		++this.parameterSetReferences[parameterSetIndex.intValue()];
+		return parameterSetIndex.intValue() + 1;
+	}
+
+	/**
+	 * Removes a reference to the given parameter set and forgets the parameter set if no record refers to it anymore.
+	 * 
+	 * @param parameterSetNumber
+	 *            the number of the parameter set.
+	 */
+	private void releaseParameterSet(int parameterSetNumber) {
+		int index = parameterSetNumber - 1;
+		if (--this.parameterSetReferences[index] == 0) {
+			this.parameterSetNumbers.remove(this.parameterSets.get(index));
+			this.parameterSets.set(index, null);
+		}
+	}
+
+	/**
+	 * Removes the tile image in the given slot from the hash table and marks the slot as empty.
+	 * 
+	 * @param slot
+	 *            the slot which should be emptied.
+	 */
+	private void removeSlot(int slot) {
+		int mask = this.slotTable.length - 1;
+		int tablePosition = getSlotHash(slot) & mask;
+		while (this.slotTable[tablePosition] != slot + 1) {
+			tablePosition = (tablePosition + 1) & mask;
+		}
+
+		// shift back all following entries which would not be found anymore otherwise
+		int emptyPosition = tablePosition;
+		int position = tablePosition;
+		while (true) {
+			position = (position + 1) & mask;
+			if (this.slotTable[position] == 0) {
+				break;
+			}
+			int homePosition = getSlotHash(this.slotTable[position] - 1) & mask;
+			if (((position - homePosition) & mask) >= ((position - emptyPosition) & mask)) {
+				this.slotTable[emptyPosition] = this.slotTable[position];
+				emptyPosition = position;
+			}
+		}
+		this.slotTable[emptyPosition] = 0;
+
+		releaseParameterSet(getParameterSetNumber(slot));
+		this.indexBuffer.putInt(getRecordOffset(slot) + RECORD_OFFSET_PARAMETER_SET, 0);
+		this.referenced[slot] = false;
+	}
+
+	/**
+	 * Changes the number of slots. The tile images in all remaining slots are kept.
+	 * 
+	 * @param newCapacity
+	 *            the new number of slots.
+	 * @throws IOException
+	 *             if an error occurs while resizing the files.
+	 */
+	private void resize(int newCapacity) throws IOException {
+		// mark the index as dirty until it is persisted again
+		this.indexBuffer.putInt(INDEX_OFFSET_CAPACITY, newCapacity);
+		this.indexBuffer.putInt(INDEX_OFFSET_CLEAN, 0);
+
+		if (newCapacity != this.referenced.length) {
+			this.indexBuffer = null;
+			this.slabBuffer = null;
+
+			// new records are filled with zeros, which marks them as empty
+			this.indexFile.setLength(getRecordOffset(newCapacity));
+			this.slabFile.setLength((long) newCapacity * Tile.TILE_SIZE_IN_BYTES);
+			this.indexBuffer = this.indexFile.getChannel().map(MapMode.READ_WRITE, 0, this.indexFile.length());
+			this.slabBuffer = this.slabFile.getChannel().map(MapMode.READ_WRITE, 0, this.slabFile.length());
+			this.referenced = Arrays.copyOf(this.referenced, newCapacity);
+		}
+
+		if (this.clockHand >= newCapacity) {
+			this.clockHand = 0;
+		}
+		rebuildSlotTable();
+	}
+}
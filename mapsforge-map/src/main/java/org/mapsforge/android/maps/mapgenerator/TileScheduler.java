@@ -14,7 +14,6 @@
  */
 package org.mapsforge.android.maps.mapgenerator;
 
-import org.mapsforge.android.maps.MapView;
 import org.mapsforge.core.GeoPoint;
 import org.mapsforge.core.MapPosition;
 import org.mapsforge.core.MercatorProjection;
@@ -24,17 +23,17 @@ final class TileScheduler {
 	private static final int ZOOM_LEVEL_PENALTY = 5;
 
 	/**
-	 * Calculates the priority for the given tile based on the current position and zoom level of the supplied MapView.
-	 * The smaller the distance from the tile center to the MapView center, the higher its priority. If the zoom level
-	 * of a tile differs from the zoom level of the MapView, its priority decreases.
+	 * Calculates the priority for the given tile based on the current position and zoom level of a MapView. The
+	 * smaller the distance from the tile center to the MapView center, the higher its priority. If the zoom level of a
+	 * tile differs from the zoom level of the MapView, its priority decreases.
 	 * 
 	 * @param tile
 	 *            the tile whose priority should be calculated.
-	 * @param mapView
-	 *            the MapView whose current position and zoom level define the priority of the tile.
+	 * @param mapPosition
+	 *            the current position and zoom level of the MapView which define the priority of the tile.
 	 * @return the current priority of the tile. A smaller number means a higher priority.
 	 */
-	static double getPriority(Tile tile, MapView mapView) {
+	static double getPriority(Tile tile, MapPosition mapPosition) {
 		byte tileZoomLevel = tile.zoomLevel;
 
 		// calculate the center coordinates of the tile
@@ -44,7 +43,6 @@ final class TileScheduler {
 		double tileCenterLatitude = MercatorProjection.pixelYToLatitude(tileCenterPixelY, tileZoomLevel);
 
 		// calculate the Euclidian distance from the MapView center to the tile center
-		MapPosition mapPosition = mapView.getMapPosition().getMapPosition();
 		GeoPoint geoPoint = mapPosition.geoPoint;
 		double longitudeDiff = geoPoint.getLongitude() - tileCenterLongitude;
 		double latitudeDiff = geoPoint.getLatitude() - tileCenterLatitude;
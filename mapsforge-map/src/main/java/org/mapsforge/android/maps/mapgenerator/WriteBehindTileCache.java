@@ -0,0 +1,257 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.android.maps.mapgenerator;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.mapsforge.android.maps.PausableThread;
+import org.mapsforge.core.Tile;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+
+/**
+ * A thread-safe cache which writes tile images asynchronously to another, usually persistent, tile cache.
+ * <p>
+ * The pixels of each new tile image are copied into a bounded queue of pending writes, which is drained by a
+ * low-priority thread. The thread which calls {@link #put(MapGeneratorJob, Bitmap)} therefore never waits for the
+ * storage. Pending writes of the same key are coalesced. If the pending tile images would exceed the byte limit, the
+ * oldest pending write is dropped. {@link #onLowMemory()} discards all pending writes at once.
+ * {@link #containsKey(MapGeneratorJob)} and {@link #get(MapGeneratorJob)} also see all tile images which are still
+ * waiting in the queue.
+ */
+public class WriteBehindTileCache implements TileCache {
+	private static final class TileWriter extends PausableThread {
+		private static final String THREAD_NAME = "TileWriter";
+
+		private final WriteBehindTileCache writeBehindTileCache;
+
+		TileWriter(WriteBehindTileCache writeBehindTileCache) {
+			super();
+			this.writeBehindTileCache = writeBehindTileCache;
+		}
+
+		@Override
+		protected void doWork() {
+			this.writeBehindTileCache.writeNext();
+		}
+
+		@Override
+		protected String getThreadName() {
+			return THREAD_NAME;
+		}
+
+		@Override
+		protected int getThreadPriority() {
+			return Thread.MIN_PRIORITY;
+		}
+
+		@Override
+		protected boolean hasWork() {
+			return this.writeBehindTileCache.hasPendingWrites();
+		}
+	}
+
+	private static int getMaximumPendingWrites(int maximumPendingBytes) {
+		int maximumPendingWrites = maximumPendingBytes / Tile.TILE_SIZE_IN_BYTES;
+		if (maximumPendingWrites < 1) {
+			throw new IllegalArgumentException("maximum pending bytes must hold at least one tile: "
+					+ maximumPendingBytes);
+		}
+		return maximumPendingWrites;
+	}
+
+	private static void recycle(List<Bitmap> bitmaps) {
+		for (int i = 0, n = bitmaps.size(); i < n; ++i) {
+			bitmaps.get(i).recycle();
+		}
+	}
+
+	private final Bitmap bitmapGet;
+	private final ByteBuffer byteBuffer;
+	private boolean destroyed;
+	private final PendingWrites<Bitmap> pendingWrites;
+	private final TileCache tileCache;
+	private final TileWriter tileWriter;
+
+	/**
+	 * @param tileCache
+	 *            the tile cache to which all tile images should be written.
+	 * @param maximumPendingBytes
+	 *            the maximum number of bytes of all tile images which wait to be written. One more tile image may be
+	 *            held while it is being written.
+	 * @throws IllegalArgumentException
+	 *             if the maximum number of pending bytes is smaller than one tile image.
+	 */
+	public WriteBehindTileCache(TileCache tileCache, int maximumPendingBytes) {
+		this.tileCache = tileCache;
+		this.pendingWrites = new PendingWrites<Bitmap>(getMaximumPendingWrites(maximumPendingBytes));
+		this.bitmapGet = Bitmap.createBitmap(Tile.TILE_SIZE, Tile.TILE_SIZE, Config.RGB_565);
+		this.byteBuffer = ByteBuffer.allocate(Tile.TILE_SIZE_IN_BYTES);
+
+		this.tileWriter = new TileWriter(this);
+		this.tileWriter.start();
+	}
+
+	@Override
+	public synchronized boolean containsKey(MapGeneratorJob mapGeneratorJob) {
+		if (this.pendingWrites.contains(mapGeneratorJob)) {
+			return true;
+		}
+		return this.tileCache.containsKey(mapGeneratorJob);
+	}
+
+	/**
+	 * Stops the writer thread and destroys the underlying tile cache. Pending writes are completed first if the
+	 * underlying tile cache is persistent.
+	 */
+	@Override
+	public void destroy() {
+		this.tileWriter.interrupt();
+		try {
+			this.tileWriter.join();
+		} catch (InterruptedException e) {
+			// restore the interrupted status
+			Thread.currentThread().interrupt();
+		}
+
+		synchronized (this) {
+			this.destroyed = true;
+			if (this.tileCache.isPersistent()) {
+				MapGeneratorJob mapGeneratorJob;
+				while ((mapGeneratorJob = this.pendingWrites.startWriting()) != null) {
+					this.tileCache.put(mapGeneratorJob, this.pendingWrites.getWritingImage());
+					this.pendingWrites.finishWriting();
+				}
+			}
+			recycle(this.pendingWrites.trim());
+			this.bitmapGet.recycle();
+		}
+
+		this.tileCache.destroy();
+	}
+
+	@Override
+	public synchronized Bitmap get(MapGeneratorJob mapGeneratorJob) {
+		// the writer thread only reads the pixels of the bitmap which is being written
+		Bitmap pendingBitmap = this.pendingWrites.get(mapGeneratorJob);
+		if (pendingBitmap == null) {
+			return this.tileCache.get(mapGeneratorJob);
+		}
+
+		copyPixels(pendingBitmap, this.bitmapGet);
+		return this.bitmapGet;
+	}
+
+	@Override
+	public int getCapacity() {
+		return this.tileCache.getCapacity();
+	}
+
+	@Override
+	public boolean isPersistent() {
+		return this.tileCache.isPersistent();
+	}
+
+	/**
+	 * Discards all tile images which wait to be written and releases their memory. Should be called when the system
+	 * is running low on memory, the discarded tiles are simply rendered again when they are needed.
+	 */
+	public void onLowMemory() {
+		List<Bitmap> discardedBitmaps;
+		synchronized (this) {
+			if (this.destroyed) {
+				return;
+			}
+			discardedBitmaps = this.pendingWrites.trim();
+		}
+		recycle(discardedBitmaps);
+	}
+
+	@Override
+	public void put(MapGeneratorJob mapGeneratorJob, Bitmap bitmap) {
+		if (this.tileCache.getCapacity() == 0) {
+			return;
+		}
+
+		synchronized (this) {
+			if (this.destroyed) {
+				return;
+			}
+
+			// a pending write of the same key is overwritten in place
+			Bitmap pendingBitmap = this.pendingWrites.obtain(mapGeneratorJob);
+			if (pendingBitmap == null) {
+				pendingBitmap = Bitmap.createBitmap(Tile.TILE_SIZE, Tile.TILE_SIZE, Config.RGB_565);
+				this.pendingWrites.put(mapGeneratorJob, pendingBitmap);
+			}
+			copyPixels(bitmap, pendingBitmap);
+		}
+
+		// never hold the lock of this cache while waking up the writer thread
+		synchronized (this.tileWriter) {
+			this.tileWriter.notify();
+		}
+	}
+
+	@Override
+	public void setCapacity(int capacity) {
+		this.tileCache.setCapacity(capacity);
+	}
+
+	@Override
+	public void setPersistent(boolean persistent) {
+		this.tileCache.setPersistent(persistent);
+	}
+
+	/**
+	 * @return true if at least one tile image is waiting to be written, false otherwise.
+	 */
+	synchronized boolean hasPendingWrites() {
+		return !this.pendingWrites.isEmpty();
+	}
+
+	/**
+	 * Writes the oldest pending tile image to the underlying tile cache. Called by the writer thread only.
+	 */
+	void writeNext() {
+		MapGeneratorJob mapGeneratorJob;
+		Bitmap bitmap;
+		synchronized (this) {
+			mapGeneratorJob = this.pendingWrites.startWriting();
+			if (mapGeneratorJob == null) {
+				return;
+			}
+			bitmap = this.pendingWrites.getWritingImage();
+		}
+
+		try {
+			// the slow write happens without holding the lock of this cache
+			this.tileCache.put(mapGeneratorJob, bitmap);
+		} finally {
+			synchronized (this) {
+				this.pendingWrites.finishWriting();
+			}
+		}
+	}
+
+	private void copyPixels(Bitmap source, Bitmap destination) {
+		this.byteBuffer.rewind();
+		source.copyPixelsToBuffer(this.byteBuffer);
+		this.byteBuffer.rewind();
+		destination.copyPixelsFromBuffer(this.byteBuffer);
+	}
+}
@@ -36,6 +36,7 @@ import org.mapsforge.core.Tile;
 import org.mapsforge.map.reader.MapDatabase;
 import org.mapsforge.map.reader.MapReadResult;
 import org.mapsforge.map.reader.PointOfInterest;
+import org.mapsforge.map.reader.TileContent;
 import org.mapsforge.map.reader.Way;
 import org.mapsforge.map.reader.header.MapFileInfo;
 import org.xml.sax.SAXException;
@@ -168,8 +169,18 @@ public class DatabaseRenderer implements MapGenerator, RenderCallback {
 		}
 
 		if (this.mapDatabase != null) {
-			MapReadResult mapReadResult = this.mapDatabase.readMapData(this.currentTile);
-			processReadMapData(mapReadResult);
+			// with block bitmaps, tiles without any data blocks are answered without reading the index, otherwise
+			// the query itself skips empty blocks and reports water tiles from its single pass over the index
+			TileContent tileContent = null;
+			if (this.mapDatabase.isBlockBitmapsEnabled()) {
+				tileContent = this.mapDatabase.classifyTile(this.currentTile);
+			}
+			if (tileContent == TileContent.WATER) {
+				renderWaterBackground();
+			} else if (tileContent != TileContent.EMPTY) {
+				MapReadResult mapReadResult = this.mapDatabase.readMapData(this.currentTile);
+				processReadMapData(mapReadResult);
+			}
 		}
 
 		this.nodes = this.labelPlacement.placeLabels(this.nodes, this.pointSymbols, this.areaLabels, this.currentTile);
@@ -354,7 +365,7 @@ public class DatabaseRenderer implements MapGenerator, RenderCallback {
 		this.drawingLayer = this.ways.get(getValidLayer(way.layer));
 		// TODO what about the label position?
 
-		this.coordinates = way.wayNodes;
+		this.coordinates = way.getWayNodes();
 		for (int i = 0; i < this.coordinates.length; ++i) {
 			for (int j = 0; j < this.coordinates[i].length; j += 2) {
 				this.coordinates[i][j] = scaleLongitude(this.coordinates[i][j]);
@@ -42,7 +42,7 @@ class MultiValueMatcher implements AttributeMatcher {
 	@Override
 	public boolean matches(List<Tag> tags) {
 		for (int i = 0, n = tags.size(); i < n; ++i) {
-			if (this.values.contains(tags.get(i).value)) {
+			if (this.values.contains(tags.get(i).getValue())) {
 				return true;
 			}
 		}
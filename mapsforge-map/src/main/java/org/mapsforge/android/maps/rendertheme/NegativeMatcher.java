@@ -39,7 +39,7 @@ class NegativeMatcher implements AttributeMatcher {
 		}
 
 		for (int i = 0, n = tags.size(); i < n; ++i) {
-			if (this.valueList.contains(tags.get(i).value)) {
+			if (this.valueList.contains(tags.get(i).getValue())) {
 				return true;
 			}
 		}
@@ -16,6 +16,9 @@ package org.mapsforge.android.maps.rendertheme;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Stack;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -51,6 +54,9 @@ public class RenderThemeHandler extends DefaultHandler {
 	private static final String UNEXPECTED_ELEMENT = "unexpected element: ";
 
 	/**
+	 * Parses a render theme. Several threads may call this method at the same time, for example the renderers of all
+	 * map workers, because the matcher caches of the rules belong to the handler of a single render theme.
+	 * 
 	 * @param inputStream
 	 *            an input stream containing valid render theme XML data.
 	 * @return a new RenderTheme which is created by parsing the XML data from the input stream.
@@ -97,9 +103,11 @@ public class RenderThemeHandler extends DefaultHandler {
 
 	private Rule currentRule;
 	private final Stack<Element> elementStack = new Stack<Element>();
+	private final Map<List<String>, AttributeMatcher> keyMatchers = new HashMap<List<String>, AttributeMatcher>();
 	private int level;
 	private RenderTheme renderTheme;
 	private final Stack<Rule> ruleStack = new Stack<Rule>();
+	private final Map<List<String>, AttributeMatcher> valueMatchers = new HashMap<List<String>, AttributeMatcher>();
 
 	@Override
 	public void endDocument() {
@@ -140,7 +148,8 @@ public class RenderThemeHandler extends DefaultHandler {
 
 			else if (ELEMENT_NAME_RULE.equals(localName)) {
 				checkState(localName, Element.RULE);
-				Rule rule = Rule.create(localName, attributes, this.ruleStack);
+				Rule rule = Rule.create(localName, attributes, this.ruleStack, this.keyMatchers,
+						this.valueMatchers);
 				if (!this.ruleStack.empty()) {
 					this.currentRule.addSubRule(rule);
 				}
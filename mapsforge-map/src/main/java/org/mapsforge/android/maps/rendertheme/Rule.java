@@ -16,7 +16,6 @@ package org.mapsforge.android.maps.rendertheme;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -28,15 +27,14 @@ import org.mapsforge.core.Tag;
 import org.xml.sax.Attributes;
 
 abstract class Rule {
-	private static final Map<List<String>, AttributeMatcher> MATCHERS_CACHE_KEY = new HashMap<List<String>, AttributeMatcher>();
-	private static final Map<List<String>, AttributeMatcher> MATCHERS_CACHE_VALUE = new HashMap<List<String>, AttributeMatcher>();
 	private static final Pattern SPLIT_PATTERN = Pattern.compile("\\|");
 	private static final String STRING_NEGATION = "~";
 	private static final String STRING_WILDCARD = "*";
 	private static final String UNKNOWN_ENUM_VALUE = "unknown enum value: ";
 
-	private static Rule createRule(Stack<Rule> ruleStack, Element element, String keys, String values, Closed closed,
-			byte zoomMin, byte zoomMax) {
+	private static Rule createRule(Stack<Rule> ruleStack, Map<List<String>, AttributeMatcher> keyMatchers,
+			Map<List<String>, AttributeMatcher> valueMatchers, Element element, String keys, String values,
+			Closed closed, byte zoomMin, byte zoomMax) {
 		ElementMatcher elementMatcher = getElementMatcher(element);
 		ClosedMatcher closedMatcher = getClosedMatcher(closed);
 		List<String> keyList = new ArrayList<String>(Arrays.asList(SPLIT_PATTERN.split(keys)));
@@ -50,8 +48,8 @@ abstract class Rule {
 			return new NegativeRule(elementMatcher, closedMatcher, zoomMin, zoomMax, attributeMatcher);
 		}
 
-		AttributeMatcher keyMatcher = getKeyMatcher(keyList);
-		AttributeMatcher valueMatcher = getValueMatcher(valueList);
+		AttributeMatcher keyMatcher = getKeyMatcher(keyList, keyMatchers);
+		AttributeMatcher valueMatcher = getValueMatcher(valueList, valueMatchers);
 
 		keyMatcher = RuleOptimizer.optimize(keyMatcher, ruleStack);
 		valueMatcher = RuleOptimizer.optimize(valueMatcher, ruleStack);
@@ -85,36 +83,38 @@ abstract class Rule {
 		throw new IllegalArgumentException(UNKNOWN_ENUM_VALUE + element);
 	}
 
-	private static AttributeMatcher getKeyMatcher(List<String> keyList) {
+	private static AttributeMatcher getKeyMatcher(List<String> keyList,
+			Map<List<String>, AttributeMatcher> keyMatchers) {
 		if (STRING_WILDCARD.equals(keyList.get(0))) {
 			return AnyMatcher.getInstance();
 		}
 
-		AttributeMatcher attributeMatcher = MATCHERS_CACHE_KEY.get(keyList);
+		AttributeMatcher attributeMatcher = keyMatchers.get(keyList);
 		if (attributeMatcher == null) {
 			if (keyList.size() == 1) {
 				attributeMatcher = new SingleKeyMatcher(keyList.get(0));
 			} else {
 				attributeMatcher = new MultiKeyMatcher(keyList);
 			}
-			MATCHERS_CACHE_KEY.put(keyList, attributeMatcher);
+			keyMatchers.put(keyList, attributeMatcher);
 		}
 		return attributeMatcher;
 	}
 
-	private static AttributeMatcher getValueMatcher(List<String> valueList) {
+	private static AttributeMatcher getValueMatcher(List<String> valueList,
+			Map<List<String>, AttributeMatcher> valueMatchers) {
 		if (STRING_WILDCARD.equals(valueList.get(0))) {
 			return AnyMatcher.getInstance();
 		}
 
-		AttributeMatcher attributeMatcher = MATCHERS_CACHE_VALUE.get(valueList);
+		AttributeMatcher attributeMatcher = valueMatchers.get(valueList);
 		if (attributeMatcher == null) {
 			if (valueList.size() == 1) {
 				attributeMatcher = new SingleValueMatcher(valueList.get(0));
 			} else {
 				attributeMatcher = new MultiValueMatcher(valueList);
 			}
-			MATCHERS_CACHE_VALUE.put(valueList, attributeMatcher);
+			valueMatchers.put(valueList, attributeMatcher);
 		}
 		return attributeMatcher;
 	}
@@ -136,7 +136,8 @@ abstract class Rule {
 		}
 	}
 
-	static Rule create(String elementName, Attributes attributes, Stack<Rule> ruleStack) {
+	static Rule create(String elementName, Attributes attributes, Stack<Rule> ruleStack,
+			Map<List<String>, AttributeMatcher> keyMatchers, Map<List<String>, AttributeMatcher> valueMatchers) {
 		Element element = null;
 		String keys = null;
 		String values = null;
@@ -166,7 +167,7 @@ abstract class Rule {
 		}
 
 		validate(elementName, element, keys, values, zoomMin, zoomMax);
-		return createRule(ruleStack, element, keys, values, closed, zoomMin, zoomMax);
+		return createRule(ruleStack, keyMatchers, valueMatchers, element, keys, values, closed, zoomMin, zoomMax);
 	}
 
 	private final ArrayList<RenderInstruction> renderInstructions;
@@ -224,9 +225,6 @@ abstract class Rule {
 	}
 
 	void onComplete() {
-		MATCHERS_CACHE_KEY.clear();
-		MATCHERS_CACHE_VALUE.clear();
-
 		this.renderInstructions.trimToSize();
 		this.subRules.trimToSize();
 		for (int i = 0, n = this.subRules.size(); i < n; ++i) {
@@ -51,7 +51,7 @@ final class TextKey {
 	String getValue(List<Tag> tags) {
 		for (int i = 0, n = tags.size(); i < n; ++i) {
 			if (this.key.equals(tags.get(i).key)) {
-				return tags.get(i).value;
+				return tags.get(i).getValue();
 			}
 		}
 		return null;
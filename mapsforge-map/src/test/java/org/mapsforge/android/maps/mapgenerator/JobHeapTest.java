@@ -0,0 +1,134 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.android.maps.mapgenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.mapsforge.android.maps.DebugSettings;
+import org.mapsforge.core.GeoPoint;
+import org.mapsforge.core.MapPosition;
+import org.mapsforge.core.MercatorProjection;
+import org.mapsforge.core.Tile;
+
+/**
+ * Tests the {@link JobHeap} class.
+ */
+public class JobHeapTest {
+	private static final DebugSettings DEBUG_SETTINGS = new DebugSettings(false, false, false);
+	private static final int NUMBER_OF_JOBS = 500;
+	private static final byte ZOOM_LEVEL = 10;
+
+	private static MapGeneratorJob createJob(long tileX, long tileY, byte zoomLevel) {
+		return new MapGeneratorJob(new Tile(tileX, tileY, zoomLevel), "test", null, DEBUG_SETTINGS);
+	}
+
+	private static List<MapGeneratorJob> pollAll(JobHeap jobHeap) {
+		List<MapGeneratorJob> polledJobs = new ArrayList<MapGeneratorJob>();
+		MapGeneratorJob previousJob = null;
+		MapGeneratorJob mapGeneratorJob;
+		while ((mapGeneratorJob = jobHeap.poll()) != null) {
+			if (previousJob != null) {
+				Assert.assertTrue(previousJob.compareTo(mapGeneratorJob) <= 0);
+			}
+			Assert.assertFalse(jobHeap.contains(mapGeneratorJob));
+			polledJobs.add(mapGeneratorJob);
+			previousJob = mapGeneratorJob;
+		}
+		Assert.assertTrue(jobHeap.isEmpty());
+		return polledJobs;
+	}
+
+	/**
+	 * Tests that a job which is offered again only changes the priority of the queued job.
+	 */
+	@Test
+	public void offerQueuedJobTest() {
+		JobHeap jobHeap = new JobHeap(1);
+		for (int i = 0; i < 10; ++i) {
+			jobHeap.offer(createJob(i, 0, ZOOM_LEVEL), i);
+		}
+
+		jobHeap.offer(createJob(9, 0, ZOOM_LEVEL), -1);
+		jobHeap.offer(createJob(0, 0, ZOOM_LEVEL), 100);
+		Assert.assertEquals(10, jobHeap.size());
+
+		List<MapGeneratorJob> polledJobs = pollAll(jobHeap);
+		Assert.assertEquals(10, polledJobs.size());
+		Assert.assertEquals(createJob(9, 0, ZOOM_LEVEL), polledJobs.get(0));
+		Assert.assertEquals(createJob(1, 0, ZOOM_LEVEL), polledJobs.get(1));
+		Assert.assertEquals(createJob(0, 0, ZOOM_LEVEL), polledJobs.get(9));
+	}
+
+	/**
+	 * Tests that jobs are polled in the order of their priorities.
+	 */
+	@Test
+	public void pollOrderTest() {
+		JobHeap jobHeap = new JobHeap(4);
+		Random random = new Random(1);
+		for (int i = 0; i < NUMBER_OF_JOBS; ++i) {
+			jobHeap.offer(createJob(i, 0, ZOOM_LEVEL), random.nextDouble());
+		}
+		Assert.assertEquals(NUMBER_OF_JOBS, jobHeap.size());
+
+		// interleave polls and offers of new and queued jobs
+		for (int i = 0; i < NUMBER_OF_JOBS; ++i) {
+			MapGeneratorJob mapGeneratorJob = jobHeap.poll();
+			Assert.assertNotNull(mapGeneratorJob);
+			jobHeap.offer(createJob(random.nextInt(NUMBER_OF_JOBS * 2), 1, ZOOM_LEVEL), random.nextDouble());
+			jobHeap.offer(createJob(random.nextInt(NUMBER_OF_JOBS), 0, ZOOM_LEVEL), random.nextDouble());
+		}
+		int size = jobHeap.size();
+		Assert.assertEquals(size, pollAll(jobHeap).size());
+
+		jobHeap.offer(createJob(0, 0, ZOOM_LEVEL), 0);
+		jobHeap.clear();
+		Assert.assertTrue(jobHeap.isEmpty());
+		Assert.assertNull(jobHeap.poll());
+	}
+
+	/**
+	 * Tests that jobs for tiles outside of the retained tile range are removed.
+	 */
+	@Test
+	public void retainTilesTest() {
+		MapPosition mapPosition = new MapPosition(new GeoPoint(52.5, 13.4), ZOOM_LEVEL);
+		long centerTileX = MercatorProjection.longitudeToTileX(13.4, ZOOM_LEVEL);
+		long centerTileY = MercatorProjection.latitudeToTileY(52.5, ZOOM_LEVEL);
+
+		JobHeap jobHeap = new JobHeap(16);
+		for (long tileY = centerTileY - 3; tileY <= centerTileY + 3; ++tileY) {
+			for (long tileX = centerTileX - 3; tileX <= centerTileX + 3; ++tileX) {
+				jobHeap.offer(createJob(tileX, tileY, ZOOM_LEVEL), 0);
+				jobHeap.offer(createJob(tileX, tileY, (byte) (ZOOM_LEVEL + 1)), 0);
+			}
+		}
+
+		jobHeap.retainTiles(mapPosition, centerTileX - 1, centerTileY - 1, centerTileX + 1, centerTileY + 1);
+		Assert.assertEquals(9, jobHeap.size());
+		Assert.assertTrue(jobHeap.contains(createJob(centerTileX, centerTileY, ZOOM_LEVEL)));
+		Assert.assertFalse(jobHeap.contains(createJob(centerTileX + 2, centerTileY, ZOOM_LEVEL)));
+		Assert.assertFalse(jobHeap.contains(createJob(centerTileX, centerTileY, (byte) (ZOOM_LEVEL + 1))));
+
+		List<MapGeneratorJob> polledJobs = pollAll(jobHeap);
+		Assert.assertEquals(9, polledJobs.size());
+		Assert.assertEquals(createJob(centerTileX, centerTileY, ZOOM_LEVEL), polledJobs.get(0));
+	}
+}
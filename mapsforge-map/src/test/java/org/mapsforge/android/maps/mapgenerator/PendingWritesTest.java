@@ -0,0 +1,119 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.android.maps.mapgenerator;
+
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.mapsforge.android.maps.DebugSettings;
+import org.mapsforge.core.Tile;
+
+/**
+ * Tests the {@link PendingWrites} class.
+ */
+public class PendingWritesTest {
+	private static final DebugSettings DEBUG_SETTINGS = new DebugSettings(false, false, false);
+	private static final int MAXIMUM_PENDING_WRITES = 3;
+	private static final byte ZOOM_LEVEL = 10;
+
+	private static MapGeneratorJob createJob(long tileX) {
+		return new MapGeneratorJob(new Tile(tileX, 0, ZOOM_LEVEL), "test", null, DEBUG_SETTINGS);
+	}
+
+	private static PendingWrites<Object> createPendingWrites(Object[] images) {
+		PendingWrites<Object> pendingWrites = new PendingWrites<Object>(MAXIMUM_PENDING_WRITES);
+		for (int i = 0; i < images.length; ++i) {
+			Assert.assertNull(pendingWrites.obtain(createJob(i)));
+			pendingWrites.put(createJob(i), images[i]);
+		}
+		return pendingWrites;
+	}
+
+	/**
+	 * Tests that a full queue reuses the image of the oldest pending write and that the queue keeps its order.
+	 */
+	@Test
+	public void obtainTest() {
+		Object[] images = { new Object(), new Object(), new Object() };
+		PendingWrites<Object> pendingWrites = createPendingWrites(images);
+
+		// a pending write of the same key is reused in place
+		Assert.assertSame(images[1], pendingWrites.obtain(createJob(1)));
+
+		// the oldest pending write is dropped
+		Assert.assertSame(images[0], pendingWrites.obtain(createJob(3)));
+		Assert.assertFalse(pendingWrites.contains(createJob(0)));
+		Assert.assertSame(images[0], pendingWrites.get(createJob(3)));
+
+		Assert.assertEquals(createJob(1), pendingWrites.startWriting());
+		pendingWrites.finishWriting();
+		Assert.assertEquals(createJob(2), pendingWrites.startWriting());
+		pendingWrites.finishWriting();
+		Assert.assertEquals(createJob(3), pendingWrites.startWriting());
+		pendingWrites.finishWriting();
+		Assert.assertNull(pendingWrites.startWriting());
+		Assert.assertTrue(pendingWrites.isEmpty());
+	}
+
+	/**
+	 * Tests that written images are pooled and reused.
+	 */
+	@Test
+	public void poolTest() {
+		Object[] images = { new Object() };
+		PendingWrites<Object> pendingWrites = createPendingWrites(images);
+
+		MapGeneratorJob mapGeneratorJob = pendingWrites.startWriting();
+		Assert.assertEquals(createJob(0), mapGeneratorJob);
+		Assert.assertSame(images[0], pendingWrites.getWritingImage());
+
+		// the image which is being written is still visible but can not be reused
+		Assert.assertTrue(pendingWrites.contains(mapGeneratorJob));
+		Assert.assertSame(images[0], pendingWrites.get(mapGeneratorJob));
+		Assert.assertNull(pendingWrites.obtain(createJob(1)));
+
+		pendingWrites.finishWriting();
+		Assert.assertFalse(pendingWrites.contains(mapGeneratorJob));
+		Assert.assertNull(pendingWrites.getWritingImage());
+		Assert.assertSame(images[0], pendingWrites.obtain(createJob(2)));
+	}
+
+	/**
+	 * Tests that trimming discards all pending and pooled images but keeps the image which is being written.
+	 */
+	@Test
+	public void trimTest() {
+		Object[] images = { new Object(), new Object(), new Object() };
+		PendingWrites<Object> pendingWrites = createPendingWrites(images);
+
+		pendingWrites.startWriting();
+		pendingWrites.finishWriting();
+		pendingWrites.startWriting();
+
+		List<Object> discardedImages = pendingWrites.trim();
+		Assert.assertEquals(2, discardedImages.size());
+		Assert.assertTrue(discardedImages.contains(images[0]));
+		Assert.assertTrue(discardedImages.contains(images[2]));
+		Assert.assertTrue(pendingWrites.isEmpty());
+		Assert.assertFalse(pendingWrites.contains(createJob(2)));
+		Assert.assertTrue(pendingWrites.contains(createJob(1)));
+
+		pendingWrites.finishWriting();
+		Assert.assertSame(images[1], pendingWrites.obtain(createJob(3)));
+		Assert.assertNull(pendingWrites.obtain(createJob(4)));
+	}
+}